@@ -42,6 +42,8 @@ import org.copperengine.core.internal.WorkflowAccessor;
 import org.copperengine.core.persistent.RegisterCall;
 import org.copperengine.core.persistent.ScottyDBStorageInterface;
 import org.copperengine.core.persistent.Serializer;
+import org.copperengine.core.persistent.WorkflowInstanceConsumer;
+import org.copperengine.core.persistent.WorkflowInstanceProjection;
 import org.copperengine.core.util.Blocker;
 import org.copperengine.management.model.AuditTrailInfo;
 import org.copperengine.management.model.AuditTrailInstanceFilter;
@@ -115,6 +117,21 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
         ack.onSuccess();
     }
 
+    /**
+     * Inserts the workflow instances within the calling thread, as {@link #insert(List, Acknowledge)} does, but
+     * signals all errors through the Acknowledge object.
+     */
+    @Override
+    public void insertAsync(List<Workflow<?>> wfs, Acknowledge ack) throws Exception {
+        try {
+            insert(wfs, ACK);
+        } catch (Exception e) {
+            ack.onException(e);
+            return;
+        }
+        ack.onSuccess();
+    }
+
     @Override
     public void insert(Workflow<?> wf, Connection con) throws DuplicateIdException, Exception {
         insert(wf, ACK);
@@ -157,15 +174,31 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
 
     @Override
     public List<Workflow<?>> dequeue(final String ppoolId, final int max) throws Exception {
-        logger.debug("dequeue({},{})", ppoolId, max);
-        final long startTS = System.currentTimeMillis();
+        startupBlocker.pass();
+        // block if we read the first element - since we don't want to return an empty list
+        return dequeue(ppoolId, max, true);
+    }
 
+    @Override
+    public Map<String, List<Workflow<?>>> dequeue(final Map<String, Integer> ppoolId2max) throws Exception {
         startupBlocker.pass();
+        final Map<String, List<Workflow<?>>> rv = new HashMap<>();
+        for (Entry<String, Integer> e : ppoolId2max.entrySet()) {
+            final List<Workflow<?>> wfList = dequeue(e.getKey(), e.getValue(), false);
+            if (!wfList.isEmpty()) {
+                rv.put(e.getKey(), wfList);
+            }
+        }
+        return rv;
+    }
+
+    private List<Workflow<?>> dequeue(final String ppoolId, final int max, final boolean block) throws Exception {
+        logger.debug("dequeue({},{})", ppoolId, max);
+        final long startTS = System.currentTimeMillis();
 
         final List<Workflow<?>> wfList = new ArrayList<>(max);
         while (wfList.size() < max) {
-            // block if we read the first element - since we don't want to return an empty list
-            final QueueElement element = wfList.isEmpty() ? _take(ppoolId) : _poll(ppoolId);
+            final QueueElement element = wfList.isEmpty() && block ? _take(ppoolId) : _poll(ppoolId);
             if (element == null)
                 break;
 
@@ -614,6 +647,11 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
         return resultList;
     }
 
+    @Override
+    public String streamWorkflowInstances(WorkflowInstanceFilter filter, WorkflowInstanceProjection projection, String startAfterId, int chunkSize, WorkflowInstanceConsumer consumer) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public String queryObjectState(String id) throws Exception {
         throw new UnsupportedOperationException();
@@ -0,0 +1 @@
+create index IDX_COP_WAIT_TIMEOUT on COP_WAIT (STATE, TIMEOUT_TS);
\ No newline at end of file
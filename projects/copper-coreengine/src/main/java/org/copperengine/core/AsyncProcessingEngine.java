@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous variants of the {@link ProcessingEngine}'s <code>run</code>, <code>runBatch</code> and
+ * <code>notify</code> methods. They return immediately and complete the returned future, as soon as the engine has
+ * accepted the request, i.e. for a persistent engine after the workflow instances or the response are committed to
+ * the database. The futures are completed within the engine's threads, so dependent actions should be short or use
+ * the <code>...Async</code> methods of the future.
+ * <p>
+ * The number of requests in flight, i.e. of workflow instances and responses submitted but not yet accepted, may be
+ * limited. Requests exceeding the limit are not queued, their future fails immediately with a
+ * {@link RejectedExecutionException}, so that callers may apply backpressure, e.g. by pausing to read from their
+ * connection.
+ */
+public interface AsyncProcessingEngine extends ProcessingEngine {
+
+    /**
+     * Enqueues the specified workflow instance description into the engine for execution.
+     *
+     * @param wfInstanceDescr
+     *        the workflow instance description out of which a workflow is generated and put into the engine for execution
+     * @return a future, that is completed with the workflow instance id, or exceptionally, e.g. with a
+     *         {@link DuplicateIdException}, if a workflow instance with the same id already exists
+     */
+    public CompletableFuture<String> runAsync(WorkflowInstanceDescr<?> wfInstanceDescr);
+
+    /**
+     * Enqueues the specified batch of workflow instance descriptions into the engine for execution. The batch counts as
+     * one request in flight per workflow instance. A batch larger than the limit is accepted, if no other request is in
+     * flight.
+     *
+     * @param wfInstanceDescr
+     *        batch or workflow instance descriptions to be put into the engine for execution
+     * @return a future, that is completed, when all workflow instances are enqueued, or exceptionally, if at least one
+     *         of them could not be enqueued
+     */
+    public CompletableFuture<Void> runBatchAsync(List<WorkflowInstanceDescr<?>> wfInstanceDescr);
+
+    /**
+     * Adds a response to the engine, see {@link ProcessingEngine#notify(Response, Acknowledge)}.
+     *
+     * @param response
+     *        the reponse
+     * @return a future, that is completed, when the response is processed by the engine, not when the workflow was
+     *         waked up with this response
+     */
+    public CompletableFuture<Void> notifyAsync(Response<?> response);
+
+    /**
+     * @return the number of workflow instances and responses submitted asynchronously, that are not yet accepted by
+     *         the engine
+     */
+    public int getNumberOfAsyncRequestsInFlight();
+
+}
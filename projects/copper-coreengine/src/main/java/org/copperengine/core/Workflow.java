@@ -28,6 +28,7 @@ import java.util.Stack;
 import java.util.concurrent.TimeUnit;
 
 import org.copperengine.core.instrument.Transformed;
+import org.copperengine.core.monitoring.WorkflowTimeline;
 import org.copperengine.core.persistent.SavepointAware;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,6 +72,7 @@ public abstract class Workflow<D> implements Serializable {
     private transient Date creationTS = new Date();
     private transient Date lastActivityTS = new Date();
     private transient Date timeoutTS;
+    private transient WorkflowTimeline timeline;
     
     private String lastWaitStackTrace;
 
@@ -295,6 +297,32 @@ public abstract class Workflow<D> implements Serializable {
         }
     }
 
+    /**
+     * Internal use only - called while holding the response map's lock, before responses are read from it. Allows
+     * subclasses to put responses, that are decoded on first access.
+     *
+     * @param correlationId
+     *        the correlation id of the responses to be read or <code>null</code>, if all responses are read
+     */
+    protected void beforeResponseAccess(String correlationId) {
+    }
+
+    /**
+     * Internal use only - used by the transient engine's snapshot facility
+     *
+     * @return a copy of all responses, that are not yet consumed by this workflow instance
+     */
+    List<Response<?>> getPendingResponses() {
+        synchronized (responseMap) {
+            beforeResponseAccess(null);
+            final List<Response<?>> rv = new ArrayList<Response<?>>();
+            for (List<Response<?>> l : responseMap.values()) {
+                rv.addAll(l);
+            }
+            return rv;
+        }
+    }
+
     /**
      * Gets and removes a response for the specified correlation id.
      * <p>
@@ -312,6 +340,7 @@ public abstract class Workflow<D> implements Serializable {
     @SuppressWarnings({ "rawtypes", "unchecked" })
     protected <T> Response<T> getAndRemoveResponse(final String correlationId) {
         synchronized (responseMap) {
+            beforeResponseAccess(correlationId);
             final List<Response<T>> responseList = (List) responseMap.get(correlationId);
             if (responseList == null)
                 return null;
@@ -340,6 +369,7 @@ public abstract class Workflow<D> implements Serializable {
     @SuppressWarnings({ "rawtypes", "unchecked" })
     protected <T> List<Response<T>> getAndRemoveResponses(final String correlationId) {
         synchronized (responseMap) {
+            beforeResponseAccess(correlationId);
             final List rv = responseMap.remove(correlationId);
             return rv == null ? Collections.emptyList() : new ArrayList(rv);
         }
@@ -373,6 +403,7 @@ public abstract class Workflow<D> implements Serializable {
     @SuppressWarnings({ "unchecked" })
     protected <T> Response<T> getAnyNonTimedOutAndRemoveResponse(Class<? extends T> type) {
         synchronized (responseMap) {
+            beforeResponseAccess(null);
             for(Map.Entry<String, List<Response<?> > > correlationResponse : responseMap.entrySet()) {
                 assert(correlationResponse.getValue() != null);
                 ListIterator<Response<?> > li = correlationResponse.getValue().listIterator(correlationResponse.getValue().size());
@@ -552,4 +583,12 @@ public abstract class Workflow<D> implements Serializable {
     void setTimeoutTS(Date timeoutTS) {
         this.timeoutTS = timeoutTS;
     }
+
+    WorkflowTimeline getTimeline() {
+        return timeline;
+    }
+
+    void setTimeline(WorkflowTimeline timeline) {
+        this.timeline = timeline;
+    }
 }
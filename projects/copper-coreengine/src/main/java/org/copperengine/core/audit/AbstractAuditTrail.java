@@ -17,6 +17,7 @@ package org.copperengine.core.audit;
 
 import org.copperengine.core.batcher.CommandCallback;
 import org.copperengine.core.db.utility.JdbcUtils;
+import org.copperengine.core.db.utility.StatementCache;
 import org.copperengine.management.AuditTrailMXBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,6 +86,13 @@ public abstract class AbstractAuditTrail implements AuditTrail, AuditTrailMXBean
     // TODO: do not explore the database type, set it as an parameter (isOracle)
     private boolean isOracle;
     private String sqlStmt;
+    private AuditTrailEventBinder binder;
+    private volatile StatementCache statementCache;
+    private int preferredBatchSize = BatchInsertIntoAutoTrail.Executor.DEFAULT_PREFERRED_BATCH_SIZE;
+    private int maximumBatchSize = BatchInsertIntoAutoTrail.Executor.DEFAULT_MAXIMUM_BATCH_SIZE;
+    private AuditTrailInsertMode insertMode = AuditTrailInsertMode.BATCH;
+    private int sequenceBlockSize;
+    private BatchInsertIntoAutoTrail.Executor executor;
 
     public AbstractAuditTrail() {
         mapping = createDefaultMapping();
@@ -113,6 +121,75 @@ public abstract class AbstractAuditTrail implements AuditTrail, AuditTrailMXBean
         this.dataSource = dataSource;
     }
 
+    /**
+     * Sets the maximum number of cached insert statements. The cache only pays off with connection pools that hand
+     * out the same physical connection repeatedly and do not close its statements on return. 0, the default, disables
+     * the cache.
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0)
+            throw new IllegalArgumentException("statementCacheSize must not be negative");
+        final StatementCache oldCache = statementCache;
+        statementCache = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+        if (oldCache != null) {
+            oldCache.clear();
+        }
+    }
+
+    /**
+     * Sets the number of audit trail events, that are preferably inserted in one database batch. Defaults to 20.
+     * Must be set before startup.
+     */
+    public void setPreferredBatchSize(int preferredBatchSize) {
+        this.preferredBatchSize = preferredBatchSize;
+    }
+
+    public int getPreferredBatchSize() {
+        return preferredBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of audit trail events, that are inserted in one database batch. Defaults to 50.
+     * Must be set before startup.
+     */
+    public void setMaximumBatchSize(int maximumBatchSize) {
+        this.maximumBatchSize = maximumBatchSize;
+    }
+
+    public int getMaximumBatchSize() {
+        return maximumBatchSize;
+    }
+
+    /**
+     * Sets how batches of audit trail events are written to the database. Defaults to
+     * {@link AuditTrailInsertMode#BATCH}. Must be set before startup.
+     */
+    public void setInsertMode(AuditTrailInsertMode insertMode) {
+        if (insertMode == null)
+            throw new NullPointerException();
+        this.insertMode = insertMode;
+    }
+
+    public AuditTrailInsertMode getInsertMode() {
+        return insertMode;
+    }
+
+    /**
+     * Oracle only: if greater than 0, the ids of audit trail events without a sequence id are fetched from
+     * <code>COP_SEQ_AUDIT_TRAIL</code> in blocks of this size, instead of calling the sequence once per row. Unused
+     * ids are lost on shutdown, and with several engines the ids no longer reflect the order of insertion. Defaults to
+     * 0. Must be set before startup.
+     */
+    public void setSequenceBlockSize(int sequenceBlockSize) {
+        if (sequenceBlockSize < 0)
+            throw new IllegalArgumentException("sequenceBlockSize must not be negative");
+        this.sequenceBlockSize = sequenceBlockSize;
+    }
+
+    public int getSequenceBlockSize() {
+        return sequenceBlockSize;
+    }
+
     public void setLevel(int level) {
         this.level = level;
     }
@@ -148,10 +225,21 @@ public abstract class AbstractAuditTrail implements AuditTrail, AuditTrailMXBean
         } finally {
             JdbcUtils.closeConnection(con);
         }
-        sqlStmt = createSqlStmt();
+        final SequenceBlockAllocator sequenceBlockAllocator = isOracle && sequenceBlockSize > 0 ? new SequenceBlockAllocator("COP_SEQ_AUDIT_TRAIL", sequenceBlockSize) : null;
+        sqlStmt = createSqlStmt(sequenceBlockAllocator != null);
+        binder = AuditTrailEventBinder.compile(propertyGetters);
+        if (isOracle && insertMode == AuditTrailInsertMode.MULTI_ROW) {
+            logger.warn("Insert mode {} is not supported by Oracle, using {}", insertMode, AuditTrailInsertMode.BATCH);
+        }
+        executor = new BatchInsertIntoAutoTrail.Executor(preferredBatchSize, maximumBatchSize, insertMode, sequenceBlockAllocator);
     }
 
-    private String createSqlStmt() throws IntrospectionException {
+    /**
+     * @param sequenceBlocks
+     *        true, if the sequence ids are always bound, so that the statement must not call the sequence itself. Oracle
+     *        increments NEXTVAL for each row referencing it, even if NVL returns the bound value.
+     */
+    private String createSqlStmt(boolean sequenceBlocks) throws IntrospectionException {
         final BeanInfo beanInfo = Introspector.getBeanInfo(auditTrailEventClass);
         final StringBuilder sql = new StringBuilder();
         sql.append("INSERT INTO ").append(dbTable).append(" (");
@@ -180,7 +268,7 @@ public abstract class AbstractAuditTrail implements AuditTrail, AuditTrailMXBean
         }
         sql.append(") VALUES (");
         if (isOracle) {
-            sql.append("NVL(?,COP_SEQ_AUDIT_TRAIL.NEXTVAL),");
+            sql.append(sequenceBlocks ? "?," : "NVL(?,COP_SEQ_AUDIT_TRAIL.NEXTVAL),");
             numbOfParams--;
         }
         for (int i = 0; i < numbOfParams; i++) {
@@ -215,7 +303,7 @@ public abstract class AbstractAuditTrail implements AuditTrail, AuditTrailMXBean
 
     public BatchInsertIntoAutoTrail.Command createBatchCommand(AuditTrailEvent e, boolean immediate,
             CommandCallback<BatchInsertIntoAutoTrail.Command> callback) {
-        return new BatchInsertIntoAutoTrail.Command(e, isOracle, sqlStmt, propertyGetters, callback, immediate ? 0 : 250);
+        return new BatchInsertIntoAutoTrail.Command(e, isOracle, sqlStmt, binder, callback, immediate ? 0 : 250, statementCache, executor);
     }
 
 
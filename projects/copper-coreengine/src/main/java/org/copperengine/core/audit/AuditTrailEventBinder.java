@@ -0,0 +1,343 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import org.copperengine.core.CopperRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binds the mapped properties of an {@link AuditTrailEvent} to the parameters of a prepared statement.
+ * <p>
+ * A binder is compiled once from the property getters of an audit trail mapping. Getters of public classes, that are
+ * visible to COPPER's class loader, are called through functions generated by the {@link LambdaMetafactory}, other
+ * getters through method handles. Each value is bound with the typed setter matching the getter's return type, so
+ * binding a row needs neither reflection nor boxing of primitive values.
+ */
+public final class AuditTrailEventBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditTrailEventBinder.class);
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private interface PropertyBinder {
+        void bind(PreparedStatement stmt, int idx, AuditTrailEvent event) throws SQLException;
+    }
+
+    private final List<Method> propertyGetters;
+    private final PropertyBinder[] binders;
+
+    private AuditTrailEventBinder(List<Method> propertyGetters, PropertyBinder[] binders) {
+        this.propertyGetters = Collections.unmodifiableList(new ArrayList<Method>(propertyGetters));
+        this.binders = binders;
+    }
+
+    /**
+     * Compiles a binder for the specified property getters.
+     *
+     * @throws UnsupportedOperationException
+     *         if a getter's return type cannot be mapped to a JDBC type
+     */
+    public static AuditTrailEventBinder compile(List<Method> propertyGetters) {
+        final PropertyBinder[] binders = new PropertyBinder[propertyGetters.size()];
+        for (int i = 0; i < binders.length; i++) {
+            binders[i] = compile(propertyGetters.get(i));
+        }
+        return new AuditTrailEventBinder(propertyGetters, binders);
+    }
+
+    /**
+     * Creates a binder, that calls the property getters via reflection on each invocation. This is the behaviour of
+     * COPPER versions up to 5.0 and is used where no compiled binder is available.
+     */
+    public static AuditTrailEventBinder reflective(List<Method> propertyGetters) {
+        final PropertyBinder[] binders = new PropertyBinder[propertyGetters.size()];
+        for (int i = 0; i < binders.length; i++) {
+            final Method m = propertyGetters.get(i);
+            binders[i] = new PropertyBinder() {
+                @Override
+                public void bind(PreparedStatement stmt, int idx, AuditTrailEvent event) throws SQLException {
+                    Object value = null;
+                    if (m.getDeclaringClass().isAssignableFrom(event.getClass())) {
+                        try {
+                            value = m.invoke(event, (Object[]) null);
+                        } catch (Exception e) {
+                            throw new CopperRuntimeException("Reading property " + m + " failed", e);
+                        }
+                    }
+                    if (value != null) {
+                        if (value instanceof Date) {
+                            value = new Timestamp(((Date) value).getTime());
+                        }
+                        stmt.setObject(idx, value, BatchInsertIntoAutoTrail.guessJdbcType(m));
+                    } else {
+                        stmt.setNull(idx, BatchInsertIntoAutoTrail.guessJdbcType(m));
+                    }
+                }
+            };
+        }
+        return new AuditTrailEventBinder(propertyGetters, binders);
+    }
+
+    /**
+     * Binds the properties of the event to the statement's parameters, starting at the specified parameter index.
+     *
+     * @return the index of the next unbound parameter
+     */
+    public int bind(final PreparedStatement stmt, final AuditTrailEvent event, int parameterIndex) throws SQLException {
+        for (int i = 0; i < binders.length; i++) {
+            try {
+                binders[i].bind(stmt, parameterIndex++, event);
+            } catch (SQLException e) {
+                logger.error("Setting property " + propertyGetters.get(i) + " failed", e);
+                throw e;
+            }
+        }
+        return parameterIndex;
+    }
+
+    public List<Method> getPropertyGetters() {
+        return propertyGetters;
+    }
+
+    private static PropertyBinder compile(final Method getter) {
+        final Class<?> type = getter.getReturnType();
+        final int jdbcType = BatchInsertIntoAutoTrail.guessJdbcType(getter);
+        final PropertyBinder binder;
+        if (type == Integer.TYPE) {
+            final ToIntFunction<Object> f = toIntFunction(getter);
+            binder = (stmt, idx, event) -> stmt.setInt(idx, f.applyAsInt(event));
+        } else if (type == Long.TYPE) {
+            final ToLongFunction<Object> f = toLongFunction(getter);
+            binder = (stmt, idx, event) -> stmt.setLong(idx, f.applyAsLong(event));
+        } else if (type == Double.TYPE) {
+            final ToDoubleFunction<Object> f = toDoubleFunction(getter);
+            binder = (stmt, idx, event) -> stmt.setDouble(idx, f.applyAsDouble(event));
+        } else if (type == Float.TYPE) {
+            final ToDoubleFunction<Object> f = toDoubleFunction(getter);
+            binder = (stmt, idx, event) -> stmt.setFloat(idx, (float) f.applyAsDouble(event));
+        } else {
+            final Function<Object, Object> f = function(getter);
+            if (type == String.class) {
+                binder = (stmt, idx, event) -> {
+                    final String value = (String) f.apply(event);
+                    if (value == null)
+                        stmt.setNull(idx, jdbcType);
+                    else
+                        stmt.setString(idx, value);
+                };
+            } else if (type == Integer.class) {
+                binder = (stmt, idx, event) -> {
+                    final Integer value = (Integer) f.apply(event);
+                    if (value == null)
+                        stmt.setNull(idx, jdbcType);
+                    else
+                        stmt.setInt(idx, value.intValue());
+                };
+            } else if (type == Long.class) {
+                binder = (stmt, idx, event) -> {
+                    final Long value = (Long) f.apply(event);
+                    if (value == null)
+                        stmt.setNull(idx, jdbcType);
+                    else
+                        stmt.setLong(idx, value.longValue());
+                };
+            } else if (type == Double.class) {
+                binder = (stmt, idx, event) -> {
+                    final Double value = (Double) f.apply(event);
+                    if (value == null)
+                        stmt.setNull(idx, jdbcType);
+                    else
+                        stmt.setDouble(idx, value.doubleValue());
+                };
+            } else if (type == Float.class) {
+                binder = (stmt, idx, event) -> {
+                    final Float value = (Float) f.apply(event);
+                    if (value == null)
+                        stmt.setNull(idx, jdbcType);
+                    else
+                        stmt.setFloat(idx, value.floatValue());
+                };
+            } else {
+                // one of the date types, see BatchInsertIntoAutoTrail.guessJdbcType
+                binder = (stmt, idx, event) -> {
+                    final Date value = (Date) f.apply(event);
+                    if (value == null)
+                        stmt.setNull(idx, jdbcType);
+                    else
+                        stmt.setTimestamp(idx, new Timestamp(value.getTime()));
+                };
+            }
+        }
+        final Class<?> declaringClass = getter.getDeclaringClass();
+        if (declaringClass.isAssignableFrom(AuditTrailEvent.class)) {
+            return binder;
+        }
+        // getter of an AuditTrailEvent subclass - other events get NULL for this property
+        return (stmt, idx, event) -> {
+            if (declaringClass.isInstance(event))
+                binder.bind(stmt, idx, event);
+            else
+                stmt.setNull(idx, jdbcType);
+        };
+    }
+
+    private static Function<Object, Object> function(Method getter) {
+        final Function<Object, Object> f = spin(getter, Function.class, "apply", Object.class);
+        if (f != null)
+            return f;
+        final MethodHandle mh = unreflect(getter, Object.class);
+        if (mh == null)
+            return event -> invoke(getter, event);
+        return event -> {
+            try {
+                return (Object) mh.invokeExact(event);
+            } catch (Throwable e) {
+                throw rethrow(getter, e);
+            }
+        };
+    }
+
+    private static ToIntFunction<Object> toIntFunction(Method getter) {
+        final ToIntFunction<Object> f = spin(getter, ToIntFunction.class, "applyAsInt", Integer.TYPE);
+        if (f != null)
+            return f;
+        final MethodHandle mh = unreflect(getter, Integer.TYPE);
+        if (mh == null)
+            return event -> ((Number) invoke(getter, event)).intValue();
+        return event -> {
+            try {
+                return (int) mh.invokeExact(event);
+            } catch (Throwable e) {
+                throw rethrow(getter, e);
+            }
+        };
+    }
+
+    private static ToLongFunction<Object> toLongFunction(Method getter) {
+        final ToLongFunction<Object> f = spin(getter, ToLongFunction.class, "applyAsLong", Long.TYPE);
+        if (f != null)
+            return f;
+        final MethodHandle mh = unreflect(getter, Long.TYPE);
+        if (mh == null)
+            return event -> ((Number) invoke(getter, event)).longValue();
+        return event -> {
+            try {
+                return (long) mh.invokeExact(event);
+            } catch (Throwable e) {
+                throw rethrow(getter, e);
+            }
+        };
+    }
+
+    private static ToDoubleFunction<Object> toDoubleFunction(Method getter) {
+        final ToDoubleFunction<Object> f = spin(getter, ToDoubleFunction.class, "applyAsDouble", Double.TYPE);
+        if (f != null)
+            return f;
+        final MethodHandle mh = unreflect(getter, Double.TYPE);
+        if (mh == null)
+            return event -> ((Number) invoke(getter, event)).doubleValue();
+        return event -> {
+            try {
+                return (double) mh.invokeExact(event);
+            } catch (Throwable e) {
+                throw rethrow(getter, e);
+            }
+        };
+    }
+
+    /**
+     * Generates an implementation of the functional interface, that calls the getter directly. Returns
+     * <code>null</code> if this is not possible for the getter.
+     */
+    private static <T> T spin(Method getter, Class<? super T> functionalInterface, String methodName, Class<?> returnType) {
+        if (!isLinkable(getter))
+            return null;
+        try {
+            final MethodHandle mh = lookup.unreflect(getter);
+            final Class<?> instantiatedReturnType = returnType == Object.class ? getter.getReturnType() : returnType;
+            final CallSite site = LambdaMetafactory.metafactory(lookup, methodName,
+                    MethodType.methodType(functionalInterface),
+                    MethodType.methodType(returnType, Object.class),
+                    mh,
+                    MethodType.methodType(instantiatedReturnType, getter.getDeclaringClass()));
+            @SuppressWarnings("unchecked")
+            final T f = (T) site.getTarget().invoke();
+            return f;
+        } catch (Throwable e) {
+            logger.debug("Unable to generate accessor for {}, using method handle: {}", getter, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * The generated class refers to the getter's declaring class by name, so that class has to be public and must be
+     * resolvable through COPPER's class loader.
+     */
+    private static boolean isLinkable(Method getter) {
+        final Class<?> declaringClass = getter.getDeclaringClass();
+        if (!Modifier.isPublic(getter.getModifiers()) || !Modifier.isPublic(declaringClass.getModifiers()))
+            return false;
+        try {
+            return Class.forName(declaringClass.getName(), false, AuditTrailEventBinder.class.getClassLoader()) == declaringClass;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle unreflect(Method getter, Class<?> returnType) {
+        try {
+            return lookup.unreflect(getter).asType(MethodType.methodType(returnType, Object.class));
+        } catch (IllegalAccessException e) {
+            logger.debug("Unable to access {} via method handle, using reflection: {}", getter, e.toString());
+            return null;
+        }
+    }
+
+    private static Object invoke(Method getter, Object event) {
+        try {
+            return getter.invoke(event, (Object[]) null);
+        } catch (Exception e) {
+            throw new CopperRuntimeException("Reading property " + getter + " failed", e);
+        }
+    }
+
+    private static RuntimeException rethrow(Method getter, Throwable e) {
+        if (e instanceof RuntimeException)
+            return (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        return new CopperRuntimeException("Reading property " + getter + " failed", e);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+/**
+ * Defines how a batch of audit trail events is written to the database, see
+ * {@link AbstractAuditTrail#setInsertMode(AuditTrailInsertMode)}.
+ */
+public enum AuditTrailInsertMode {
+
+    /**
+     * One single row <code>INSERT</code> per event, sent to the database as JDBC batch. Works on every database.
+     */
+    BATCH,
+
+    /**
+     * <code>INSERT ... VALUES (...),(...),...</code> statements with several rows each. Usually considerably faster on
+     * PostgreSQL, MySQL, H2 and Derby, as the database parses and executes one statement per chunk of rows. Oracle does
+     * not support this syntax, so {@link #BATCH} is used there instead.
+     */
+    MULTI_ROW
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Internally used class.
+ * <p>
+ * Append-only segment files for audit trail events, that could not be written to the database in time. Events are
+ * appended to the active segment <code>audit-&lt;n&gt;.open</code>, which is sealed by renaming it to
+ * <code>audit-&lt;n&gt;.seg</code> when it reaches its maximum size or when a reader asks for the next segment.
+ * Each record consists of its length, a CRC32 checksum and the serialized event, so a record that was only partially
+ * written before a crash is detected and ignored together with anything behind it. Active segments left behind by a
+ * previous run are sealed when the store is opened.
+ */
+class AuditTrailSegmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditTrailSegmentStore.class);
+
+    private static final int MAGIC = 0x43504154;
+    private static final String OPEN_SUFFIX = ".open";
+    private static final String SEALED_SUFFIX = ".seg";
+
+    private final File directory;
+    private final long maxSegmentSize;
+    private final AtomicLong eventCount = new AtomicLong();
+    private long nextSegmentNumber;
+    private File activeFile;
+    private FileOutputStream activeStream;
+    private long activeSize;
+    private int activeEventCount;
+
+    public AuditTrailSegmentStore(File directory, long maxSegmentSize) throws IOException {
+        if (maxSegmentSize <= 0)
+            throw new IllegalArgumentException("maxSegmentSize must be positive");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create spill directory " + directory);
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        for (File f : listFiles(OPEN_SUFFIX)) {
+            logger.info("Sealing segment {} of a previous run", f);
+            seal(f);
+        }
+        final List<File> sealed = listFiles(SEALED_SUFFIX);
+        for (File f : sealed) {
+            eventCount.addAndGet(count(f));
+        }
+        nextSegmentNumber = sealed.isEmpty() ? 1 : segmentNumber(sealed.get(sealed.size() - 1)) + 1;
+        if (!sealed.isEmpty()) {
+            logger.info("Found {} spilled audit trail event(s) in {} segment(s)", eventCount.get(), sealed.size());
+        }
+    }
+
+    /**
+     * Appends the events to the active segment. The data is handed to the operating system before this method
+     * returns.
+     */
+    public synchronized void append(Collection<? extends AuditTrailEvent> events) throws IOException {
+        if (events.isEmpty())
+            return;
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(events.size() * 512);
+        final DataOutputStream out = new DataOutputStream(buffer);
+        for (AuditTrailEvent event : events) {
+            final byte[] data = serialize(event);
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            out.writeInt(data.length);
+            out.writeInt((int) crc.getValue());
+            out.write(data);
+        }
+        out.flush();
+        if (activeStream == null) {
+            activeFile = new File(directory, name(nextSegmentNumber++, OPEN_SUFFIX));
+            activeStream = new FileOutputStream(activeFile);
+            activeStream.write(header());
+            activeSize = 8;
+            activeEventCount = 0;
+        }
+        try {
+            buffer.writeTo(activeStream);
+            activeStream.flush();
+        } catch (IOException e) {
+            // the segment may end with a partial record now, so start a new one for subsequent events
+            try {
+                sealActive();
+            } catch (IOException e2) {
+                logger.error("Unable to seal segment " + activeFile, e2);
+            }
+            throw e;
+        }
+        activeSize += buffer.size();
+        activeEventCount += events.size();
+        eventCount.addAndGet(events.size());
+        if (activeSize >= maxSegmentSize) {
+            sealActive();
+        }
+    }
+
+    /**
+     * Returns the oldest sealed segment. If there is none, the active segment is sealed and returned.
+     *
+     * @return the segment or <code>null</code>, if there are no spilled events
+     */
+    public synchronized File nextSegment() throws IOException {
+        List<File> sealed = listFiles(SEALED_SUFFIX);
+        if (sealed.isEmpty() && activeStream != null) {
+            sealActive();
+            sealed = listFiles(SEALED_SUFFIX);
+        }
+        return sealed.isEmpty() ? null : sealed.get(0);
+    }
+
+    /**
+     * Reads all intact events of the segment.
+     */
+    public List<AuditTrailEvent> read(File segment) throws IOException {
+        final List<AuditTrailEvent> events = new ArrayList<AuditTrailEvent>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(segment.toPath())))) {
+            if (in.available() < 8 || in.readInt() != MAGIC || in.readInt() != 1) {
+                logger.error("Ignoring segment {} with unknown format", segment);
+                return events;
+            }
+            while (in.available() > 0) {
+                final byte[] data;
+                try {
+                    final int length = in.readInt();
+                    final int checksum = in.readInt();
+                    if (length < 0 || length > in.available())
+                        throw new EOFException();
+                    data = new byte[length];
+                    in.readFully(data);
+                    final CRC32 crc = new CRC32();
+                    crc.update(data, 0, data.length);
+                    if ((int) crc.getValue() != checksum)
+                        throw new EOFException();
+                } catch (EOFException e) {
+                    logger.warn("Segment {} ends with an incomplete record, skipping the rest of it", segment);
+                    break;
+                }
+                try {
+                    events.add(deserialize(data));
+                } catch (ClassNotFoundException e) {
+                    logger.error("Skipping undecodable audit trail event in segment " + segment, e);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Deletes the segment, after its events have been written to the database.
+     */
+    public void delete(File segment, int numberOfEvents) throws IOException {
+        Files.deleteIfExists(segment.toPath());
+        eventCount.addAndGet(-numberOfEvents);
+    }
+
+    public synchronized void close() throws IOException {
+        if (activeStream != null) {
+            sealActive();
+        }
+    }
+
+    /**
+     * @return the number of events in the segment files
+     */
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    private void sealActive() throws IOException {
+        try {
+            activeStream.getFD().sync();
+        } finally {
+            activeStream.close();
+            activeStream = null;
+        }
+        seal(activeFile);
+        logger.debug("Sealed segment {} with {} event(s)", activeFile, activeEventCount);
+        activeFile = null;
+    }
+
+    private void seal(File f) throws IOException {
+        final String name = f.getName();
+        final File sealed = new File(directory, name.substring(0, name.length() - OPEN_SUFFIX.length()) + SEALED_SUFFIX);
+        Files.move(f.toPath(), sealed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int count(File segment) throws IOException {
+        return read(segment).size();
+    }
+
+    private List<File> listFiles(final String suffix) {
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith("audit-") && name.endsWith(suffix));
+        if (files == null)
+            return new ArrayList<File>();
+        // the segment number is zero padded, so names are ordered by number
+        Arrays.sort(files);
+        return new ArrayList<File>(Arrays.asList(files));
+    }
+
+    private static String name(long segmentNumber, String suffix) {
+        return String.format("audit-%019d%s", segmentNumber, suffix);
+    }
+
+    private static long segmentNumber(File segment) {
+        final String name = segment.getName();
+        return Long.parseLong(name.substring("audit-".length(), name.indexOf('.')));
+    }
+
+    private static byte[] header() throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8);
+        final DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeInt(1);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] serialize(AuditTrailEvent event) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(event);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static AuditTrailEvent deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                try {
+                    return super.resolveClass(desc);
+                } catch (ClassNotFoundException e) {
+                    // custom event classes might only be visible to the application's class loader
+                    final ClassLoader cl = Thread.currentThread().getContextClassLoader();
+                    if (cl == null)
+                        throw e;
+                    return Class.forName(desc.getName(), false, cl);
+                }
+            }
+        }) {
+            return (AuditTrailEvent) in.readObject();
+        }
+    }
+}
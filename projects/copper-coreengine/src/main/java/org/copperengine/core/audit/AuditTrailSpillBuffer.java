@@ -0,0 +1,240 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Internally used class.
+ * <p>
+ * Asynchronous pipeline for audit trail events with its own drainer thread. Events are kept in a bounded in-memory
+ * queue. When the queue is full, or while the database is slow or unavailable, they are appended to local segment
+ * files (see {@link AuditTrailSegmentStore}) instead. The drainer writes the queued events to the database and loads
+ * the spilled segments back in large batches, as soon as inserts succeed within the configured threshold again.
+ * <p>
+ * Events are written at least once: a segment is deleted after all of its events were committed, so a crash in
+ * between causes duplicates for that segment. There is no ordering guarantee between queued and spilled events.
+ * On shutdown, queued events are spilled to disk and written to the database after the next startup.
+ */
+class AuditTrailSpillBuffer {
+
+    /**
+     * Writes a list of events to the database in one transaction.
+     */
+    interface Sink {
+        void insert(List<AuditTrailEvent> events) throws Exception;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditTrailSpillBuffer.class);
+
+    private final Sink sink;
+    private final AuditTrailSegmentStore store;
+    private final BlockingQueue<AuditTrailEvent> queue;
+    private final int batchSize;
+    private final int drainBatchSize;
+    private final long slowInsertThresholdMSec;
+    private final long retryIntervalMSec;
+    private volatile boolean spilling;
+    private volatile boolean shutdown;
+    private Thread drainer;
+
+    // state of the segment that is currently loaded back, only accessed by the drainer thread
+    private File segment;
+    private List<AuditTrailEvent> segmentEvents;
+    private int segmentPosition;
+
+    public AuditTrailSpillBuffer(Sink sink, File spillDirectory, int capacity, int batchSize, int drainBatchSize, long maxSegmentSize, long slowInsertThresholdMSec, long retryIntervalMSec) throws IOException {
+        if (sink == null)
+            throw new NullPointerException();
+        if (capacity <= 0 || batchSize <= 0 || drainBatchSize <= 0)
+            throw new IllegalArgumentException();
+        this.sink = sink;
+        this.store = new AuditTrailSegmentStore(spillDirectory, maxSegmentSize);
+        this.queue = new ArrayBlockingQueue<AuditTrailEvent>(capacity);
+        this.batchSize = batchSize;
+        this.drainBatchSize = drainBatchSize;
+        this.slowInsertThresholdMSec = slowInsertThresholdMSec;
+        this.retryIntervalMSec = retryIntervalMSec;
+    }
+
+    public synchronized void startup() {
+        if (drainer != null)
+            return;
+        drainer = new Thread("AuditTrailDrainer") {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    public synchronized void shutdown() throws InterruptedException {
+        if (drainer == null || shutdown)
+            return;
+        shutdown = true;
+        drainer.interrupt();
+        drainer.join();
+        final List<AuditTrailEvent> remaining = new ArrayList<AuditTrailEvent>(queue.size());
+        queue.drainTo(remaining);
+        try {
+            store.append(remaining);
+            store.close();
+            if (!remaining.isEmpty()) {
+                logger.info("Spilled {} queued audit trail event(s) on shutdown", remaining.size());
+            }
+        } catch (IOException e) {
+            logger.error("Unable to spill " + remaining.size() + " queued audit trail event(s) on shutdown - they are lost", e);
+        }
+    }
+
+    /**
+     * Adds the event to the in-memory queue, or appends it to the spill segments if the queue is full or the database
+     * is slow.
+     *
+     * @return <code>false</code> if the event could not be stored
+     */
+    public boolean offer(AuditTrailEvent event) {
+        if (!shutdown && !spilling && queue.offer(event)) {
+            return true;
+        }
+        try {
+            store.append(Collections.singletonList(event));
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to spill audit trail event", e);
+            return false;
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getSpilledEventCount() {
+        return store.getEventCount();
+    }
+
+    public boolean isSpilling() {
+        return spilling;
+    }
+
+    private void drain() {
+        final List<AuditTrailEvent> batch = new ArrayList<AuditTrailEvent>(batchSize);
+        while (!shutdown) {
+            try {
+                final AuditTrailEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    if (!insert(batch)) {
+                        store.append(batch);
+                        batch.clear();
+                        Thread.sleep(retryIntervalMSec);
+                        continue;
+                    }
+                    batch.clear();
+                }
+                // load back one chunk of spilled events between two queue batches, so neither of them starves
+                loadSpilledEvents();
+            } catch (InterruptedException e) {
+                // shutdown
+            } catch (Exception e) {
+                logger.error("Audit trail drainer failed", e);
+                try {
+                    if (!batch.isEmpty()) {
+                        store.append(batch);
+                        batch.clear();
+                    }
+                    Thread.sleep(retryIntervalMSec);
+                } catch (InterruptedException e1) {
+                    // shutdown
+                } catch (IOException e1) {
+                    logger.error("Unable to spill " + batch.size() + " audit trail event(s) - they are lost", e1);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a chunk of spilled events was written to the database
+     */
+    private boolean loadSpilledEvents() throws IOException, InterruptedException {
+        if (segment == null) {
+            if (store.getEventCount() == 0)
+                return false;
+            segment = store.nextSegment();
+            if (segment == null)
+                return false;
+            segmentEvents = store.read(segment);
+            segmentPosition = 0;
+        }
+        final int end = Math.min(segmentPosition + drainBatchSize, segmentEvents.size());
+        if (end > segmentPosition) {
+            if (!insert(segmentEvents.subList(segmentPosition, end))) {
+                Thread.sleep(retryIntervalMSec);
+                return false;
+            }
+            segmentPosition = end;
+        }
+        if (segmentPosition == segmentEvents.size()) {
+            store.delete(segment, segmentEvents.size());
+            logger.debug("Loaded back {} spilled audit trail event(s) from {}", segmentEvents.size(), segment);
+            segment = null;
+            segmentEvents = null;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the events to the database and switches to spilling, if this fails or takes longer than the threshold.
+     */
+    private boolean insert(List<AuditTrailEvent> events) {
+        final long startTS = System.currentTimeMillis();
+        try {
+            sink.insert(events);
+        } catch (Exception e) {
+            if (!spilling) {
+                logger.warn("Writing audit trail events failed, spilling to disk: {}", e.toString());
+            }
+            spilling = true;
+            return false;
+        }
+        final long duration = System.currentTimeMillis() - startTS;
+        if (duration > slowInsertThresholdMSec) {
+            if (!spilling) {
+                logger.info("Writing {} audit trail event(s) took {} msec, spilling to disk", events.size(), duration);
+            }
+            spilling = true;
+        } else if (spilling && queue.isEmpty()) {
+            logger.info("Audit trail database recovered, stop spilling");
+            spilling = false;
+        }
+        return true;
+    }
+}
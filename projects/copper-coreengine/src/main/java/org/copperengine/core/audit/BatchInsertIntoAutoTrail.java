@@ -21,6 +21,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -29,7 +30,7 @@ import org.copperengine.core.batcher.AbstractBatchCommand;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutor;
 import org.copperengine.core.batcher.CommandCallback;
-import org.copperengine.core.db.utility.JdbcUtils;
+import org.copperengine.core.db.utility.StatementCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,41 +42,87 @@ public class BatchInsertIntoAutoTrail {
         final boolean isOracle;
         final String sqlStmt;
         final List<Method> propertyGetters;
+        final AuditTrailEventBinder binder;
+        final StatementCache statementCache;
+        final Executor executor;
 
         public Command(AuditTrailEvent data, boolean isOracle, String sqlStmt, List<Method> propertyGetters, CommandCallback<Command> callback, int timeout) {
+            this(data, isOracle, sqlStmt, AuditTrailEventBinder.reflective(propertyGetters), callback, timeout, null, Executor.INSTANCE);
+        }
+
+        public Command(AuditTrailEvent data, boolean isOracle, String sqlStmt, AuditTrailEventBinder binder, CommandCallback<Command> callback, int timeout, StatementCache statementCache, Executor executor) {
             super(callback, System.currentTimeMillis() + timeout);
             if (data == null)
                 throw new NullPointerException();
             if (sqlStmt == null)
                 throw new NullPointerException();
-            if (propertyGetters == null)
+            if (binder == null)
+                throw new NullPointerException();
+            if (executor == null)
                 throw new NullPointerException();
             this.data = data;
             this.isOracle = isOracle;
             this.sqlStmt = sqlStmt;
-            this.propertyGetters = propertyGetters;
+            this.propertyGetters = binder.getPropertyGetters();
+            this.binder = binder;
+            this.statementCache = statementCache;
+            this.executor = executor;
         }
 
         @Override
         public Executor executor() {
-            return Executor.INSTANCE;
+            return executor;
         }
 
     }
 
     public static final class Executor extends BatchExecutor<Executor, Command> {
 
+        public static final int DEFAULT_PREFERRED_BATCH_SIZE = 20;
+        public static final int DEFAULT_MAXIMUM_BATCH_SIZE = 50;
+
+        // keeps multi row statements well below the bind parameter limits of the supported databases
+        private static final int MAX_PARAMETERS_PER_STATEMENT = 2000;
+
         private static final Executor INSTANCE = new Executor();
         private static final Logger logger = LoggerFactory.getLogger(Executor.class);
 
+        private final int preferredBatchSize;
+        private final int maximumBatchSize;
+        private final AuditTrailInsertMode insertMode;
+        private final SequenceBlockAllocator sequenceBlockAllocator;
+
+        public Executor() {
+            this(DEFAULT_PREFERRED_BATCH_SIZE, DEFAULT_MAXIMUM_BATCH_SIZE);
+        }
+
+        public Executor(int preferredBatchSize, int maximumBatchSize) {
+            this(preferredBatchSize, maximumBatchSize, AuditTrailInsertMode.BATCH, null);
+        }
+
+        /**
+         * @param sequenceBlockAllocator
+         *            pre-allocates the sequence ids of events without one on Oracle, may be <code>null</code>
+         */
+        Executor(int preferredBatchSize, int maximumBatchSize, AuditTrailInsertMode insertMode, SequenceBlockAllocator sequenceBlockAllocator) {
+            if (preferredBatchSize <= 0 || maximumBatchSize < preferredBatchSize)
+                throw new IllegalArgumentException("invalid batch sizes: preferred=" + preferredBatchSize + ", maximum=" + maximumBatchSize);
+            if (insertMode == null)
+                throw new NullPointerException();
+            this.preferredBatchSize = preferredBatchSize;
+            this.maximumBatchSize = maximumBatchSize;
+            this.insertMode = insertMode;
+            this.sequenceBlockAllocator = sequenceBlockAllocator;
+        }
+
         @Override
         public int maximumBatchSize() {
-            return 50;
+            return maximumBatchSize;
         }
 
         @Override
         public int preferredBatchSize() {
-            return 20;
+            return preferredBatchSize;
         }
 
         @SuppressWarnings("resource")
@@ -87,46 +134,38 @@ public class BatchInsertIntoAutoTrail {
             final Command firstCommand = (Command) commands.iterator().next();
             final boolean isOracle = firstCommand.isOracle;
             final String sqlStmt = firstCommand.sqlStmt;
-            final List<Method> propertyGetters = firstCommand.propertyGetters;
+            final AuditTrailEventBinder binder = firstCommand.binder;
+            final StatementCache statementCache = firstCommand.statementCache;
+            final int valuesIdx = sqlStmt.indexOf(" VALUES ");
+            if (!isOracle && insertMode == AuditTrailInsertMode.MULTI_ROW && valuesIdx > 0) {
+                doExecMultiRow(commands, con, sqlStmt.substring(0, valuesIdx + 8), sqlStmt.substring(valuesIdx + 8), binder, statementCache);
+                return;
+            }
+            final long[] sequenceIds = isOracle && sequenceBlockAllocator != null ? allocateSequenceIds(commands, con) : null;
 
             PreparedStatement preparedStmt = null;
             try {
 
-                preparedStmt = con.prepareStatement(sqlStmt);
+                preparedStmt = StatementCache.prepareStatement(statementCache, con, sqlStmt);
+                int sequenceIdx = 0;
                 for (BatchCommand<Executor, Command> _cmd : commands) {
                     Command cmd = (Command) _cmd;
                     int idx = 1;
                     AuditTrailEvent data = cmd.data;
                     if (isOracle) {
-                        if (data.getSequenceId() == null) {
-                            preparedStmt.setNull(idx++, Types.NUMERIC);
-                        } else {
+                        if (data.getSequenceId() != null) {
                             preparedStmt.setLong(idx++, data.getSequenceId().longValue());
+                        } else if (sequenceIds != null) {
+                            preparedStmt.setLong(idx++, sequenceIds[sequenceIdx++]);
+                        } else {
+                            preparedStmt.setNull(idx++, Types.NUMERIC);
                         }
                     } else {
                         if (data.getSequenceId() != null) {
                             throw new UnsupportedOperationException("Custom SequenceId currently not supported for this DBMS");
                         }
                     }
-                    for (Method m : propertyGetters) {
-                        try {
-                            Object value = null;
-                            if (m.getDeclaringClass().isAssignableFrom(data.getClass())) {
-                                value = m.invoke(data, (Object[]) null);
-                            }
-                            if (value != null) {
-                                if (value instanceof Date) {
-                                    value = new Timestamp(((Date) value).getTime());
-                                }
-                                preparedStmt.setObject(idx++, value, guessJdbcType(m));
-                            } else {
-                                preparedStmt.setNull(idx++, guessJdbcType(m));
-                            }
-                        } catch (SQLException e) {
-                            logger.error("Setting property " + m + " failed", e);
-                            throw e;
-                        }
-                    }
+                    binder.bind(preparedStmt, data, idx);
                     preparedStmt.addBatch();
                 }
                 preparedStmt.executeBatch();
@@ -134,8 +173,67 @@ public class BatchInsertIntoAutoTrail {
                 logger.error(firstCommand.sqlStmt + " failed", e);
                 throw e;
             } finally {
-                JdbcUtils.closeStatement(preparedStmt);
+                StatementCache.releaseStatement(statementCache, preparedStmt);
+            }
+        }
+
+        /**
+         * Inserts the events with multi row INSERT statements. To limit the number of distinct statements, the rows
+         * are split into chunks of the maximum size and powers of two.
+         */
+        private void doExecMultiRow(final Collection<BatchCommand<Executor, Command>> commands, final Connection con, final String sqlPrefix, final String row, final AuditTrailEventBinder binder, final StatementCache statementCache) throws SQLException {
+            final List<AuditTrailEvent> events = new ArrayList<AuditTrailEvent>(commands.size());
+            for (BatchCommand<Executor, Command> cmd : commands) {
+                final AuditTrailEvent data = ((Command) cmd).data;
+                if (data.getSequenceId() != null) {
+                    throw new UnsupportedOperationException("Custom SequenceId currently not supported for this DBMS");
+                }
+                events.add(data);
+            }
+            final int maxRows = Math.max(1, Math.min(maximumBatchSize, MAX_PARAMETERS_PER_STATEMENT / Math.max(1, binder.getPropertyGetters().size())));
+            int offset = 0;
+            while (offset < events.size()) {
+                final int remaining = events.size() - offset;
+                final int rows = remaining >= maxRows ? maxRows : Integer.highestOneBit(remaining);
+                final String sql = multiRowSql(sqlPrefix, row, rows);
+                PreparedStatement preparedStmt = null;
+                try {
+                    preparedStmt = StatementCache.prepareStatement(statementCache, con, sql);
+                    int idx = 1;
+                    for (int i = offset; i < offset + rows; i++) {
+                        idx = binder.bind(preparedStmt, events.get(i), idx);
+                    }
+                    preparedStmt.executeUpdate();
+                } catch (SQLException e) {
+                    logger.error(sql + " failed", e);
+                    throw e;
+                } finally {
+                    StatementCache.releaseStatement(statementCache, preparedStmt);
+                }
+                offset += rows;
+            }
+        }
+
+        private long[] allocateSequenceIds(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws SQLException {
+            int count = 0;
+            for (BatchCommand<Executor, Command> cmd : commands) {
+                if (((Command) cmd).data.getSequenceId() == null) {
+                    count++;
+                }
+            }
+            return sequenceBlockAllocator.allocate(con, count);
+        }
+
+        static String multiRowSql(String sqlPrefix, String row, int rows) {
+            final StringBuilder sql = new StringBuilder(sqlPrefix.length() + rows * (row.length() + 1));
+            sql.append(sqlPrefix);
+            for (int i = 0; i < rows; i++) {
+                if (i > 0) {
+                    sql.append(",");
+                }
+                sql.append(row);
             }
+            return sql.toString();
         }
 
     }
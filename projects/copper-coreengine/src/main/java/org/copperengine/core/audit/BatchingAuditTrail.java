@@ -16,17 +16,30 @@
 package org.copperengine.core.audit;
 
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.copperengine.core.Acknowledge;
+import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.Batcher;
 import org.copperengine.core.batcher.CommandCallback;
+import org.copperengine.core.batcher.NullCallback;
+import org.copperengine.core.db.utility.JdbcUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Fast db based audit trail implementation. It is possible to extend the COPPER audit trail with custom attributes.
  * See JUnitTest {@code BatchingAuditTrailTest.testCustomTable()} for an example.
+ * <p>
+ * If a spill directory is configured, events logged via {@link #asynchLog(AuditTrailEvent)} bypass the batcher. They
+ * are written by a dedicated thread and spilled to local segment files while the database is slow or unavailable, so
+ * that audit trail volume does not compete with workflow persistence for the batcher's threads and connections.
+ * Spilled events are written to the database later on, at least once.
  *
  * @author austermann
  */
@@ -34,6 +47,13 @@ public class BatchingAuditTrail extends AbstractAuditTrail {
 
     private static final Logger logger = LoggerFactory.getLogger(BatchingAuditTrail.class);
     private Batcher batcher;
+    private File spillDirectory;
+    private int bufferCapacity = 10000;
+    private int drainBatchSize = 500;
+    private long maxSegmentSize = 16L * 1024 * 1024;
+    private long slowInsertThresholdMSec = 1000;
+    private long retryIntervalMSec = 5000;
+    private AuditTrailSpillBuffer spillBuffer;
 
     /**
      * returns immediately after queueing the log message
@@ -105,6 +125,14 @@ public class BatchingAuditTrail extends AbstractAuditTrail {
      *            the AuditTrailEvent to be logged
      */
     public void asynchLog(AuditTrailEvent e) {
+        if (spillBuffer != null) {
+            if (isEnabled(e.logLevel)) {
+                logger.debug("asynchLog({})", e);
+                e.setMessage(messagePostProcessor.serialize(e.message));
+                spillBuffer.offer(e);
+            }
+            return;
+        }
         doLog(e, new Acknowledge.BestEffortAcknowledge(), false);
     }
 
@@ -165,7 +193,120 @@ public class BatchingAuditTrail extends AbstractAuditTrail {
     }
 
 
+    @Override
+    public void startup() throws Exception {
+        super.startup();
+        if (spillDirectory != null) {
+            logger.info("Spilling audit trail events to {}", spillDirectory);
+            spillBuffer = new AuditTrailSpillBuffer(new AuditTrailSpillBuffer.Sink() {
+                @Override
+                public void insert(List<AuditTrailEvent> events) throws Exception {
+                    insertEvents(events);
+                }
+            }, spillDirectory, bufferCapacity, getMaximumBatchSize(), drainBatchSize, maxSegmentSize, slowInsertThresholdMSec, retryIntervalMSec);
+            spillBuffer.startup();
+        }
+    }
+
+    /**
+     * Stops the spill buffer's thread, if any. Events, that are still queued in memory, are spilled to disk.
+     */
+    public void shutdown() throws InterruptedException {
+        if (spillBuffer != null) {
+            spillBuffer.shutdown();
+        }
+    }
+
+    /**
+     * Inserts the events in one JDBC batch and one transaction.
+     */
+    private void insertEvents(List<AuditTrailEvent> events) throws Exception {
+        final List<BatchCommand<BatchInsertIntoAutoTrail.Executor, BatchInsertIntoAutoTrail.Command>> cmds = new ArrayList<BatchCommand<BatchInsertIntoAutoTrail.Executor, BatchInsertIntoAutoTrail.Command>>(events.size());
+        for (AuditTrailEvent e : events) {
+            cmds.add(createBatchCommand(e, true, NullCallback.<BatchInsertIntoAutoTrail.Command>get()));
+        }
+        final Connection con = getDataSource().getConnection();
+        final boolean autoCommit = con.getAutoCommit();
+        try {
+            con.setAutoCommit(false);
+            cmds.get(0).executor().doExec(cmds, con);
+            con.commit();
+        } catch (Exception e) {
+            try {
+                con.rollback();
+            } catch (SQLException e2) {
+                e.addSuppressed(e2);
+            }
+            throw e;
+        } finally {
+            try {
+                con.setAutoCommit(autoCommit);
+            } finally {
+                JdbcUtils.closeConnection(con);
+            }
+        }
+    }
+
     public void setBatcher(Batcher batcher) {
         this.batcher = batcher;
     }
+
+    /**
+     * Sets the directory for spilled audit trail events and enables the spill buffer. Must be set before startup.
+     * The directory must not be shared with other audit trail instances.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Sets the number of audit trail events, that are queued in memory before further events are spilled to disk.
+     * Defaults to 10000.
+     */
+    public void setBufferCapacity(int bufferCapacity) {
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    /**
+     * Sets the number of spilled audit trail events, that are loaded back into the database in one batch.
+     * Defaults to 500.
+     */
+    public void setDrainBatchSize(int drainBatchSize) {
+        this.drainBatchSize = drainBatchSize;
+    }
+
+    /**
+     * Sets the size in bytes, at which a segment file is closed and a new one is started. Defaults to 16 MB.
+     */
+    public void setMaxSegmentSize(long maxSegmentSize) {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Inserts taking longer than this threshold switch the audit trail to spilling. Defaults to 1000 msec.
+     */
+    public void setSlowInsertThresholdMSec(long slowInsertThresholdMSec) {
+        this.slowInsertThresholdMSec = slowInsertThresholdMSec;
+    }
+
+    /**
+     * Sets the pause after a failed insert, before the database is tried again. Defaults to 5000 msec.
+     */
+    public void setRetryIntervalMSec(long retryIntervalMSec) {
+        this.retryIntervalMSec = retryIntervalMSec;
+    }
+
+    /**
+     * @return the number of audit trail events queued in memory, or 0 if the spill buffer is not enabled
+     */
+    public int getBufferedEventCount() {
+        return spillBuffer != null ? spillBuffer.getQueueSize() : 0;
+    }
+
+    /**
+     * @return the number of audit trail events in the spill directory, or 0 if the spill buffer is not enabled
+     */
+    public long getSpilledEventCount() {
+        return spillBuffer != null ? spillBuffer.getSpilledEventCount() : 0;
+    }
 }
@@ -22,6 +22,9 @@ import org.copperengine.management.model.AuditTrailInstanceFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
 import java.util.List;
 
 public class ScottyAuditTrailQueryEngine implements AuditTrailQueryMXBean {
@@ -96,6 +99,32 @@ public class ScottyAuditTrailQueryEngine implements AuditTrailQueryMXBean {
         }
     }
 
+    /**
+     * Writes the decoded message of the audit trail event to <code>out</code>. The encoded message is read from the
+     * database as a whole. With a {@link StreamingMessagePostProcessor}, only its decompression and decoding are
+     * streamed, so the decoded message is never held in memory as a whole.
+     */
+    public void writeMessage(long id, Writer out) throws IOException {
+        if (messagePostProcessor == null) {
+            throw new RuntimeException("Message Post Processor should be set to decode message");
+        }
+
+        final String message;
+        try {
+            message = dbStorage.queryAuditTrailMessage(id);
+        } catch (Exception e) {
+            logger.error("writeMessage for id: " + id + " failed: " + e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+        if (message == null)
+            return;
+        if (messagePostProcessor instanceof StreamingMessagePostProcessor) {
+            ((StreamingMessagePostProcessor) messagePostProcessor).deserialize(new StringReader(message), out);
+        } else {
+            out.write(messagePostProcessor.deserialize(message));
+        }
+    }
+
     public MessagePostProcessor getMessagePostProcessor() {
         return messagePostProcessor;
     }
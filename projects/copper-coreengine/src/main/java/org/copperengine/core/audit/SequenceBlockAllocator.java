@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.copperengine.core.db.utility.JdbcUtils;
+
+/**
+ * Internally used class.
+ * <p>
+ * Hands out values of an Oracle sequence, that are fetched from the database in blocks with one round trip each.
+ * Unused values of a block are lost on shutdown, and with several engines the values are not in insertion order.
+ */
+class SequenceBlockAllocator {
+
+    private final String sql;
+    private final int blockSize;
+    private final long[] block;
+    private int position;
+    private int limit;
+
+    public SequenceBlockAllocator(String sequenceName, int blockSize) {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("blockSize must be positive");
+        this.sql = "SELECT " + sequenceName + ".NEXTVAL FROM DUAL CONNECT BY LEVEL <= ?";
+        this.blockSize = blockSize;
+        this.block = new long[blockSize];
+    }
+
+    /**
+     * Returns <code>count</code> sequence values, fetching new blocks using <code>con</code> if required.
+     */
+    public synchronized long[] allocate(Connection con, int count) throws SQLException {
+        final long[] ids = new long[count];
+        int n = 0;
+        while (n < count) {
+            if (position == limit) {
+                fetch(con);
+            }
+            final int chunk = Math.min(count - n, limit - position);
+            System.arraycopy(block, position, ids, n, chunk);
+            position += chunk;
+            n += chunk;
+        }
+        return ids;
+    }
+
+    private void fetch(Connection con) throws SQLException {
+        final PreparedStatement stmt = con.prepareStatement(sql);
+        try {
+            stmt.setInt(1, blockSize);
+            stmt.setFetchSize(blockSize);
+            final ResultSet rs = stmt.executeQuery();
+            int n = 0;
+            while (rs.next() && n < blockSize) {
+                block[n++] = rs.getLong(1);
+            }
+            rs.close();
+            if (n == 0)
+                throw new SQLException("No values returned by " + sql);
+            position = 0;
+            limit = n;
+        } finally {
+            JdbcUtils.closeStatement(stmt);
+        }
+    }
+}
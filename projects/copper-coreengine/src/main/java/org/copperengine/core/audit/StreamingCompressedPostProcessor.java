@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Compresses audit trail messages as they are streamed, without the intermediate copies of
+ * {@link CompressedBase64PostProcessor}, which Java-serializes the message into a byte array before compressing and
+ * Base64 encoding it. Only the compressed, Base64 encoded form is kept in memory, and with
+ * {@link #deserialize(Reader, Writer)} a stored message is decoded straight into a writer.
+ * <p>
+ * Messages shorter than the compress threshold are stored as they are, with a one character prefix. Each thread
+ * reuses its own {@link Deflater} and {@link Inflater}, which pays off for many small messages. An optional preset
+ * dictionary, e.g. with the tags and namespaces of typical XML messages, further improves the compression of short
+ * messages. The dictionary must not change as long as messages compressed with it are stored in the database.
+ * <p>
+ * The format is not compatible with {@link CompressedBase64PostProcessor}.
+ */
+public class StreamingCompressedPostProcessor implements StreamingMessagePostProcessor {
+
+    private static final char PLAIN = 'P';
+    private static final char DEFLATED = 'D';
+    private static final int BUFFER_SIZE = 8192;
+
+    private int compressThresholdSize = 256;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private byte[] dictionary;
+
+    private final ThreadLocal<Deflater> deflaterTL = ThreadLocal.withInitial(() -> new Deflater(compressionLevel));
+    private final ThreadLocal<Inflater> inflaterTL = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * Messages shorter than this number of characters are stored uncompressed. Defaults to 256.
+     */
+    public void setCompressThresholdSize(int compressThresholdSize) {
+        this.compressThresholdSize = compressThresholdSize;
+    }
+
+    /**
+     * Sets the {@link Deflater} compression level. Defaults to {@link Deflater#DEFAULT_COMPRESSION}. Must be set before
+     * the first message is compressed.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Sets a preset dictionary, i.e. text that is likely to occur in the messages. Must be set before the first
+     * message is compressed or decompressed.
+     */
+    public void setDictionary(String dictionary) {
+        this.dictionary = dictionary == null ? null : dictionary.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String serialize(String msg) {
+        if (msg == null)
+            return null;
+        final StringWriter out = new StringWriter(msg.length() < compressThresholdSize ? msg.length() + 1 : msg.length() / 4);
+        try {
+            serialize(msg, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String deserialize(String msg) {
+        if (msg == null)
+            return null;
+        final StringWriter out = new StringWriter(msg.length() * 4);
+        try {
+            deserialize(new StringReader(msg), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void serialize(String msg, Writer out) throws IOException {
+        if (msg.length() < compressThresholdSize) {
+            out.write(PLAIN);
+            out.write(msg);
+            return;
+        }
+        out.write(DEFLATED);
+        final Deflater deflater = deflaterTL.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        final OutputStream base64 = Base64.getEncoder().wrap(new WriterOutputStream(out));
+        // closing the writer finishes the deflater and writes the Base64 padding, but neither ends the deflater nor
+        // closes out
+        try (Writer writer = new OutputStreamWriter(new DeflaterOutputStream(base64, deflater, BUFFER_SIZE), StandardCharsets.UTF_8)) {
+            writer.write(msg);
+        }
+    }
+
+    @Override
+    public void deserialize(Reader in, Writer out) throws IOException {
+        final int marker = in.read();
+        if (marker == -1)
+            return;
+        final Reader reader;
+        if (marker == PLAIN) {
+            reader = in;
+        } else if (marker == DEFLATED) {
+            final Inflater inflater = inflaterTL.get();
+            inflater.reset();
+            final InputStream base64 = Base64.getMimeDecoder().wrap(new ReaderInputStream(in));
+            reader = new InputStreamReader(new InflatingInputStream(base64, inflater, dictionary), StandardCharsets.UTF_8);
+        } else {
+            throw new IOException("Unknown message format '" + (char) marker + "'");
+        }
+        final char[] buffer = new char[BUFFER_SIZE];
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * Inflates the stream using the specified inflater, which is not ended on close. Unlike
+     * {@link java.util.zip.InflaterInputStream}, it supports preset dictionaries.
+     */
+    private static final class InflatingInputStream extends InputStream {
+
+        private final InputStream in;
+        private final Inflater inflater;
+        private final byte[] dictionary;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        InflatingInputStream(InputStream in, Inflater inflater, byte[] dictionary) {
+            this.in = in;
+            this.inflater = inflater;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            try {
+                for (;;) {
+                    final int n = inflater.inflate(b, off, len);
+                    if (n > 0)
+                        return n;
+                    if (inflater.finished())
+                        return -1;
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null)
+                            throw new ZipException("Message was compressed with a preset dictionary");
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        final int read = in.read(buffer);
+                        if (read == -1)
+                            throw new EOFException("Unexpected end of compressed message");
+                        inflater.setInput(buffer, 0, read);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Passes the ASCII characters of the Base64 encoder to a writer. Closing it does not close the writer.
+     */
+    private static final class WriterOutputStream extends OutputStream {
+
+        private final Writer out;
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        WriterOutputStream(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b & 0xff);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                final int n = Math.min(len, buffer.length);
+                for (int i = 0; i < n; i++) {
+                    buffer[i] = (char) (b[off + i] & 0xff);
+                }
+                out.write(buffer, 0, n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    /**
+     * Reads the ASCII characters of a Base64 encoded message from a reader.
+     */
+    private static final class ReaderInputStream extends InputStream {
+
+        private final Reader in;
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        ReaderInputStream(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int c = in.read();
+            return c == -1 ? -1 : c & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = in.read(buffer, 0, Math.min(len, buffer.length));
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) buffer[i];
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * A {@link MessagePostProcessor}, that encodes and decodes messages as character streams. The query engines use it to
+ * decode stored messages straight into a {@link Writer}, without building the whole message in memory.
+ */
+public interface StreamingMessagePostProcessor extends MessagePostProcessor {
+
+    /**
+     * Writes the encoded form of the message to <code>out</code>. The writer is not closed.
+     */
+    public void serialize(String msg, Writer out) throws IOException;
+
+    /**
+     * Decodes the encoded message read from <code>in</code> and writes the result to <code>out</code>. Neither reader
+     * nor writer are closed.
+     */
+    public void deserialize(Reader in, Writer out) throws IOException;
+}
@@ -18,6 +18,7 @@ package org.copperengine.core.batcher.impl;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutor;
@@ -63,7 +64,9 @@ public class BatcherImpl implements Batcher, BatcherMXBean {
                     final BatchExecutorBase e = commands.get(0).executor();
                     final long startTS = System.currentTimeMillis();
                     batchRunner.run(commands, e);
-                    statisticsCollector.submit(e.id(), commands.size(), System.currentTimeMillis() - startTS, TimeUnit.MILLISECONDS);
+                    final long et = System.currentTimeMillis() - startTS;
+                    statisticsCollector.submit(e.id(), commands.size(), et, TimeUnit.MILLISECONDS);
+                    recordBatchLatency(et);
 
                 } catch (InterruptedException e) {
                     logger.warn("Interrupted", e);
@@ -80,6 +83,7 @@ public class BatcherImpl implements Batcher, BatcherMXBean {
     BatcherQueue queue = new BatcherQueue();
     private RuntimeStatisticsCollector statisticsCollector = new NullRuntimeStatisticsCollector();
     private List<WorkerThread> threads = new ArrayList<WorkerThread>();
+    private final AtomicLong avgBatchLatencyMicros = new AtomicLong(-1);
     private int numThreads;
     @SuppressWarnings("rawtypes")
     private BatchRunner batchRunner;
@@ -175,4 +179,20 @@ public class BatcherImpl implements Batcher, BatcherMXBean {
         return queue.size();
     }
 
+    @Override
+    public double getAverageBatchLatencyMSec() {
+        final long micros = avgBatchLatencyMicros.get();
+        return micros < 0 ? -1 : micros / 1000.0;
+    }
+
+    private void recordBatchLatency(long msec) {
+        final long micros = msec * 1000;
+        for (;;) {
+            final long current = avgBatchLatencyMicros.get();
+            final long next = current < 0 ? micros : current + (micros - current) / 8;
+            if (avgBatchLatencyMicros.compareAndSet(current, next))
+                return;
+        }
+    }
+
 }
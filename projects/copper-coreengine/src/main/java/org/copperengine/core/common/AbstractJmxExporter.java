@@ -16,6 +16,7 @@
 package org.copperengine.core.common;
 
 import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -28,6 +29,7 @@ import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
 
+import org.copperengine.management.AdmissionControllerMXBean;
 import org.copperengine.management.AuditTrailMXBean;
 import org.copperengine.management.AuditTrailQueryMXBean;
 import org.copperengine.management.BatcherMXBean;
@@ -36,6 +38,8 @@ import org.copperengine.management.DatabaseDialectMXBean;
 import org.copperengine.management.ProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
 import org.copperengine.management.StatisticsCollectorMXBean;
+import org.copperengine.management.TicketPoolMXBean;
+import org.copperengine.management.WorkflowParkingMXBean;
 import org.copperengine.management.WorkflowRepositoryMXBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +68,9 @@ public abstract class AbstractJmxExporter {
         register(mBeanServer, getDBStorageMXBeans(), "copper.db");
         register(mBeanServer, getDatabaseDialectMXBeans(), "copper.db");
         register(mBeanServer, getAuditTrailQueryMXBeans(), "copper.audittrail");
+        register(mBeanServer, getTicketPoolMXBeans(), "copper.ticketpool");
+        register(mBeanServer, getAdmissionControllerMXBeans(), "copper.admissioncontrol");
+        register(mBeanServer, getWorkflowParkingMXBeans(), "copper.workflowparking");
     }
 
     public void shutdown() throws MBeanRegistrationException, InstanceNotFoundException {
@@ -118,6 +125,27 @@ public abstract class AbstractJmxExporter {
      */
     protected abstract Map<String, AuditTrailQueryMXBean> getAuditTrailQueryMXBeans();
 
+    /**
+     * @return a map with entries { "name" -&gt; TicketPoolMXBean }. The map may be empty, which is the default.
+     */
+    protected Map<String, TicketPoolMXBean> getTicketPoolMXBeans() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @return a map with entries { "name" -&gt; AdmissionControllerMXBean }. The map may be empty, which is the default.
+     */
+    protected Map<String, AdmissionControllerMXBean> getAdmissionControllerMXBeans() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @return a map with entries { "name" -&gt; WorkflowParkingMXBean }. The map may be empty, which is the default.
+     */
+    protected Map<String, WorkflowParkingMXBean> getWorkflowParkingMXBeans() {
+        return Collections.emptyMap();
+    }
+
     private void register(MBeanServer mBeanServer, Map<String, ?> map, String domain) throws MalformedObjectNameException, InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException {
         for (Map.Entry<String, ?> entry : map.entrySet()) {
             ObjectName name = new ObjectName(domain, "name", entry.getKey());
@@ -19,8 +19,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.AsyncProcessingEngine;
 import org.copperengine.core.CopperException;
 import org.copperengine.core.CopperRuntimeException;
 import org.copperengine.core.DependencyInjector;
@@ -29,12 +34,14 @@ import org.copperengine.core.EngineIdProviderBean;
 import org.copperengine.core.EngineState;
 import org.copperengine.core.ProcessingEngine;
 import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Response;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.WorkflowDescription;
 import org.copperengine.core.WorkflowFactory;
 import org.copperengine.core.WorkflowInstanceDescr;
 import org.copperengine.core.monitoring.NullRuntimeStatisticsCollector;
 import org.copperengine.core.monitoring.RuntimeStatisticsCollector;
+import org.copperengine.core.monitoring.WorkflowTimelineRecorder;
 import org.copperengine.core.util.EventCounter;
 import org.copperengine.core.util.Blocker;
 import org.copperengine.management.ProcessingEngineMXBean;
@@ -50,7 +57,7 @@ import org.copperengine.management.model.WorkflowInstanceFilter;
  * 
  * @author austermann
  */
-public abstract class AbstractProcessingEngine implements ProcessingEngine, ProcessingEngineMXBean {
+public abstract class AbstractProcessingEngine implements AsyncProcessingEngine, ProcessingEngineMXBean {
 
     private IdFactory idFactory = new AtomicLongIdFactory();
     protected WorkflowRepository wfRepository;
@@ -59,10 +66,13 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
     private List<Runnable> shutdownObserver = new ArrayList<Runnable>();
     private EngineIdProvider engineIdProvider = new EngineIdProviderBean("default");
     protected RuntimeStatisticsCollector statisticsCollector = new NullRuntimeStatisticsCollector();
+    protected volatile WorkflowTimelineRecorder workflowTimelineRecorder;
     protected DependencyInjector dependencyInjector;
     protected Date startupTS;
     private final AtomicLong lastActivityTS = new AtomicLong(System.currentTimeMillis());
     private final EventCounter startedWorkflowInstances = new EventCounter(24*60);
+    private volatile int maxAsyncRequestsInFlight = Integer.MAX_VALUE;
+    private final AtomicInteger asyncRequestsInFlight = new AtomicInteger();
 
     public void setStatisticsCollector(RuntimeStatisticsCollector statisticsCollector) {
         this.statisticsCollector = statisticsCollector;
@@ -72,6 +82,18 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
         return statisticsCollector;
     }
 
+    /**
+     * Enables recording a latency breakdown of each resumption of a workflow instance, see
+     * {@link WorkflowTimelineRecorder}. Defaults to <code>null</code>, i.e. disabled.
+     */
+    public void setWorkflowTimelineRecorder(WorkflowTimelineRecorder workflowTimelineRecorder) {
+        this.workflowTimelineRecorder = workflowTimelineRecorder;
+    }
+
+    public WorkflowTimelineRecorder getWorkflowTimelineRecorder() {
+        return workflowTimelineRecorder;
+    }
+
     @Override
     public String getStatisticsCollectorType() {
         return (statisticsCollector != null) ? statisticsCollector.getClass().getSimpleName() : "UNKNOWN";
@@ -186,6 +208,21 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
 
     protected abstract void run(List<Workflow<?>> w) throws CopperException;
 
+    /**
+     * Enqueues the workflow instances without blocking the calling thread.
+     *
+     * @return a future, that is completed, when all workflow instances are enqueued
+     */
+    protected abstract CompletableFuture<Void> runAsync(List<Workflow<?>> w);
+
+    /**
+     * Notifies the engine about a response without blocking the calling thread, e.g. by admission control. Defaults
+     * to {@link #notify(Response, Acknowledge)}.
+     */
+    protected void notifyAsync(Response<?> response, Acknowledge ack) {
+        notify(response, ack);
+    }
+
     @Override
     public String run(String wfname, Object data) throws CopperException {
         try {
@@ -250,6 +287,107 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
         }
     }
 
+    /**
+     * Limits the number of workflow instances and responses submitted by the {@link AsyncProcessingEngine} methods,
+     * that are not yet accepted by the engine. Defaults to unlimited.
+     */
+    public void setMaxAsyncRequestsInFlight(int maxAsyncRequestsInFlight) {
+        if (maxAsyncRequestsInFlight <= 0)
+            throw new IllegalArgumentException("maxAsyncRequestsInFlight must be positive");
+        this.maxAsyncRequestsInFlight = maxAsyncRequestsInFlight;
+    }
+
+    public int getMaxAsyncRequestsInFlight() {
+        return maxAsyncRequestsInFlight;
+    }
+
+    @Override
+    public int getNumberOfAsyncRequestsInFlight() {
+        return asyncRequestsInFlight.get();
+    }
+
+    @Override
+    public CompletableFuture<String> runAsync(WorkflowInstanceDescr<?> wfInstanceDescr) {
+        if (!tryAcquireAsyncRequests(1))
+            return rejected();
+        try {
+            final Workflow<?> wf = createWorkflowInstance(wfInstanceDescr);
+            if (wf.getId() == null) {
+                wf.setId(createUUID());
+            }
+            final List<Workflow<?>> wfList = new ArrayList<Workflow<?>>(1);
+            wfList.add(wf);
+            return releaseWhenAccepted(runAsync(wfList), 1).thenApply(v -> wf.getId());
+        } catch (Exception e) {
+            asyncRequestsInFlight.addAndGet(-1);
+            return failed(e instanceof RuntimeException ? e : new CopperException("run failed", e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> runBatchAsync(List<WorkflowInstanceDescr<?>> wfInstanceDescr) {
+        final int count = wfInstanceDescr.size();
+        if (!tryAcquireAsyncRequests(count))
+            return rejected();
+        try {
+            final List<Workflow<?>> wfList = new ArrayList<Workflow<?>>(count);
+            for (WorkflowInstanceDescr<?> wfInsDescr : wfInstanceDescr) {
+                wfList.add(createWorkflowInstance(wfInsDescr));
+            }
+            return releaseWhenAccepted(runAsync(wfList), count);
+        } catch (Exception e) {
+            asyncRequestsInFlight.addAndGet(-count);
+            return failed(e instanceof RuntimeException ? e : new CopperException("run failed", e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> notifyAsync(Response<?> response) {
+        if (!tryAcquireAsyncRequests(1))
+            return rejected();
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try {
+            notifyAsync(response, new Acknowledge() {
+                @Override
+                public void onSuccess() {
+                    future.complete(null);
+                }
+
+                @Override
+                public void onException(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return releaseWhenAccepted(future, 1);
+    }
+
+    private boolean tryAcquireAsyncRequests(int count) {
+        for (;;) {
+            final int current = asyncRequestsInFlight.get();
+            if (current > 0 && count > maxAsyncRequestsInFlight - current)
+                return false;
+            if (asyncRequestsInFlight.compareAndSet(current, current + count))
+                return true;
+        }
+    }
+
+    private <T> CompletableFuture<T> releaseWhenAccepted(CompletableFuture<T> future, int count) {
+        return future.whenComplete((r, t) -> asyncRequestsInFlight.addAndGet(-count));
+    }
+
+    private <T> CompletableFuture<T> rejected() {
+        return failed(new RejectedExecutionException("Too many asynchronous requests in flight (max=" + maxAsyncRequestsInFlight + ")"));
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
     @Override
     public WorkflowRepositoryMXBean getWorkflowRepository() {
         return (WorkflowRepositoryMXBean) ((this.wfRepository instanceof WorkflowRepositoryMXBean) ? this.wfRepository : null);
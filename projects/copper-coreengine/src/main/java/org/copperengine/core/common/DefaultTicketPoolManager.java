@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.copperengine.core.Workflow;
 import org.slf4j.Logger;
@@ -104,6 +105,21 @@ public class DefaultTicketPoolManager implements TicketPoolManager {
         findPool(wf.getClass().getName()).obtain();
     }
 
+    @Override
+    public boolean tryObtain(Workflow<?> wf) {
+        return findPool(wf.getClass().getName()).tryObtain();
+    }
+
+    @Override
+    public void obtainForced(Workflow<?> wf) {
+        findPool(wf.getClass().getName()).obtain(1, true);
+    }
+
+    @Override
+    public CompletableFuture<Void> obtainAsync(Workflow<?> wf) {
+        return findPool(wf.getClass().getName()).obtainAsync();
+    }
+
     /**
      * For testing..
      *
@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.copperengine.management.AdmissionControllerMXBean;
 import org.copperengine.management.AuditTrailMXBean;
 import org.copperengine.management.AuditTrailQueryMXBean;
 import org.copperengine.management.BatcherMXBean;
@@ -27,6 +28,8 @@ import org.copperengine.management.DatabaseDialectMXBean;
 import org.copperengine.management.ProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
 import org.copperengine.management.StatisticsCollectorMXBean;
+import org.copperengine.management.TicketPoolMXBean;
+import org.copperengine.management.WorkflowParkingMXBean;
 import org.copperengine.management.WorkflowRepositoryMXBean;
 
 /**
@@ -47,6 +50,9 @@ public class SimpleJmxExporter extends AbstractJmxExporter {
     private Map<String, DatabaseDialectMXBean> databaseDialectMXBeans = new HashMap<>();
     private Map<String, DBStorageMXBean> dbStorageMXBeans = new HashMap<>();
     private Map<String, AuditTrailQueryMXBean> auditTrailQueryMXBeans = new HashMap<>();
+    private Map<String, TicketPoolMXBean> ticketPoolMXBeans = new HashMap<>();
+    private Map<String, AdmissionControllerMXBean> admissionControllerMXBeans = new HashMap<>();
+    private Map<String, WorkflowParkingMXBean> workflowParkingMXBeans = new HashMap<>();
 
     public void addWorkflowRepositoryMXBean(String mxbeanName, WorkflowRepositoryMXBean workflowRepositoryMXBean) {
         this.workflowRepositoryMXBeans.put(mxbeanName, workflowRepositoryMXBean);
@@ -84,6 +90,18 @@ public class SimpleJmxExporter extends AbstractJmxExporter {
         this.auditTrailQueryMXBeans.put(mxbeanName, auditTrailQueryMXBean);
     }
 
+    public void addTicketPoolMXBean(String mxbeanName, TicketPoolMXBean ticketPoolMXBean) {
+        this.ticketPoolMXBeans.put(mxbeanName, ticketPoolMXBean);
+    }
+
+    public void addAdmissionControllerMXBean(String mxbeanName, AdmissionControllerMXBean admissionControllerMXBean) {
+        this.admissionControllerMXBeans.put(mxbeanName, admissionControllerMXBean);
+    }
+
+    public void addWorkflowParkingMXBean(String mxbeanName, WorkflowParkingMXBean workflowParkingMXBean) {
+        this.workflowParkingMXBeans.put(mxbeanName, workflowParkingMXBean);
+    }
+
     @Override
     public Map<String, WorkflowRepositoryMXBean> getWorkflowRepositoryMXBeans() {
         return workflowRepositoryMXBeans;
@@ -164,6 +182,33 @@ public class SimpleJmxExporter extends AbstractJmxExporter {
         this.auditTrailQueryMXBeans = auditTrailQueryMXBeans;
     }
 
+    @Override
+    public Map<String, TicketPoolMXBean> getTicketPoolMXBeans() {
+        return ticketPoolMXBeans;
+    }
+
+    public void setTicketPoolMXBeans(Map<String, TicketPoolMXBean> ticketPoolMXBeans) {
+        this.ticketPoolMXBeans = ticketPoolMXBeans;
+    }
+
+    @Override
+    public Map<String, AdmissionControllerMXBean> getAdmissionControllerMXBeans() {
+        return admissionControllerMXBeans;
+    }
+
+    public void setAdmissionControllerMXBeans(Map<String, AdmissionControllerMXBean> admissionControllerMXBeans) {
+        this.admissionControllerMXBeans = admissionControllerMXBeans;
+    }
+
+    @Override
+    public Map<String, WorkflowParkingMXBean> getWorkflowParkingMXBeans() {
+        return workflowParkingMXBeans;
+    }
+
+    public void setWorkflowParkingMXBeans(Map<String, WorkflowParkingMXBean> workflowParkingMXBeans) {
+        this.workflowParkingMXBeans = workflowParkingMXBeans;
+    }
+
     private static <T> Map<String, T> createSingletonMap(String key, T object) {
         if (object != null) {
             return Collections.singletonMap(key, object);
@@ -16,10 +16,20 @@
 package org.copperengine.core.common;
 
 import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.management.Notification;
 import javax.management.NotificationBroadcasterSupport;
 
+import org.copperengine.management.TicketPoolMXBean;
+import org.copperengine.management.model.WaitTimeHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,29 +39,32 @@ import org.slf4j.LoggerFactory;
  * maximum amount of tickets in the pool is reached, the request is delayed
  * until another process has released its ticket. After obtaining a ticket, the
  * system must release this ticket back to the TicketPool.
- * 
+ * <p>
+ * Tickets are obtained using compare-and-set without locking. Callers, that have to wait, are queued and served in
+ * FIFO order, i.e. a later request does not overtake a waiting one, even if it needs fewer tickets.
+ *
  * @author jsiebeck
  */
-public class TicketPool {
+public class TicketPool implements TicketPoolMXBean {
     private static final long TIMESLICE_WIDTH = 10000;
 
     private static Logger logger = LoggerFactory.getLogger(TicketPool.class);
 
     private final String id;
-    private int maxTickets;
-    private int used;
+    private volatile int maxTickets;
+    private final AtomicInteger used = new AtomicInteger();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+    /* serializes the dispatching of tickets to waiters, counting the pending dispatch requests */
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+
+    private volatile WaitTimes waitTimes = new WaitTimes();
 
     /* variables for JMX observation */
-    private long lastTimeslice = System.currentTimeMillis() / TIMESLICE_WIDTH;
-    private long notificationSequence = 0;
-    /**
-     * stores the number of waits and the wait times within one time slice,
-     * broken down logarithmically into wait times of <code><10, <100, <1000, ... msec</code> as follows:
-     * <code>pos 2n</code>: number of waits <= (n+1)^10 msec <code>pos 2n+1</code>: sum of wait ms of waits in pos 2n
-     */
-    long waitTimes[] = new long[10];
-    private boolean traceEnabled = false;
-    private NotificationBroadcasterSupport notificationSupport = null;
+    private final AtomicLong lastTimeslice = new AtomicLong(System.currentTimeMillis() / TIMESLICE_WIDTH);
+    private final AtomicLong notificationSequence = new AtomicLong();
+    private volatile WaitTimes timesliceWaitTimes = new WaitTimes();
+    private volatile boolean traceEnabled = false;
+    private volatile NotificationBroadcasterSupport notificationSupport = null;
 
     public TicketPool(String id, int availableTickets) {
         super();
@@ -66,22 +79,25 @@ public class TicketPool {
         this(null, availableTickets);
     }
 
-    public synchronized long availableTickets() {
-        return maxTickets - used;
+    public long availableTickets() {
+        return maxTickets - used.get();
     }
 
-    public synchronized int getUsedTickets() {
-        return used;
+    @Override
+    public int getUsedTickets() {
+        return used.get();
     }
 
-    public synchronized int getMaxTickets() {
+    public int getMaxTickets() {
         return maxTickets;
     }
 
-    public synchronized void setCapacity(int availableTickets) {
+    @Override
+    public void setCapacity(int availableTickets) {
         if (availableTickets <= 0)
             throw new IllegalArgumentException("There should be at least one ticket available!");
         maxTickets = availableTickets;
+        dispatch();
     }
 
     /**
@@ -94,7 +110,7 @@ public class TicketPool {
     /**
      * Obtain a given amount of tickets. The thread is locked, until all tickets
      * are obtained.
-     * 
+     *
      * @param count
      *        number of tickets to obtain. must be 0 &gt; count &lt; maxTickets
      * @throws IllegalArgumentException
@@ -108,84 +124,173 @@ public class TicketPool {
         obtain(count, force, false);
     }
 
-    public synchronized boolean obtain(int count, boolean force, boolean noWait) throws IllegalArgumentException {
-        boolean waited = false;
-        final long startWait = System.currentTimeMillis();
+    public boolean obtain(int count, boolean force, boolean noWait) throws IllegalArgumentException {
+        checkCount(count, force);
+        if (force) {
+            used.addAndGet(count);
+            return true;
+        }
+        if (waiters.isEmpty() && tryAcquire(count))
+            return true;
+        if (noWait)
+            return false;
+
+        if (logger.isDebugEnabled())
+            logger.debug("Waiting for " + count + " tickets. " + this.toString());
+        final Waiter waiter = new Waiter(count, Thread.currentThread(), null);
+        waiters.add(waiter);
+        dispatch();
+        boolean interrupted = false;
+        while (!waiter.granted) {
+            LockSupport.park(this);
+            if (Thread.interrupted())
+                interrupted = true;
+        }
+        if (interrupted) {
+            logger.warn("wait interrupted");
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Obtains a ticket, if one is available and no one else is waiting for tickets.
+     *
+     * @return <code>true</code>, if the ticket was obtained
+     */
+    public boolean tryObtain() {
+        return tryObtain(1);
+    }
+
+    /**
+     * Obtains the given number of tickets, if they are available and no one else is waiting for tickets.
+     *
+     * @param count
+     *        number of tickets to obtain
+     * @return <code>true</code>, if the tickets were obtained
+     */
+    public boolean tryObtain(int count) {
+        return obtain(count, false, true);
+    }
+
+    /**
+     * Obtains a ticket without blocking the calling thread.
+     *
+     * @return a future, that is completed as soon as the ticket is obtained
+     * @see #obtainAsync(int)
+     */
+    public CompletableFuture<Void> obtainAsync() {
+        return obtainAsync(1);
+    }
+
+    /**
+     * Obtains the given number of tickets without blocking the calling thread. The returned future is completed
+     * within the thread, that releases the tickets, so dependent actions should be registered using the
+     * <code>...Async</code> methods of the future, unless they are short. Cancelling the future withdraws the request.
+     *
+     * @param count
+     *        number of tickets to obtain. must be 0 &gt; count &lt; maxTickets
+     * @return a future, that is completed as soon as the tickets are obtained
+     */
+    public CompletableFuture<Void> obtainAsync(int count) {
+        checkCount(count, false);
+        if (waiters.isEmpty() && tryAcquire(count))
+            return CompletableFuture.completedFuture(null);
+        final Waiter waiter = new Waiter(count, null, new CompletableFuture<Void>());
+        waiters.add(waiter);
+        dispatch();
+        return waiter.future;
+    }
+
+    private void checkCount(int count, boolean force) {
         if (!force && count > maxTickets)
             throw new IllegalArgumentException("Cannot obtain more tickets than maximum.");
         if (count <= 0)
             throw new IllegalArgumentException("Cannot obtain zero or less tickets.");
-        if (!force) {
-            if (logger.isDebugEnabled())
-                logger.debug("Trying to obtain " + count + " tickets. " + this.toString());
-        } else {
-            if (logger.isDebugEnabled())
-                logger.debug("Forcing to obtain " + count + " tickets. " + this.toString());
+    }
+
+    private boolean tryAcquire(int count) {
+        for (;;) {
+            final int current = used.get();
+            if (current + count > maxTickets)
+                return false;
+            if (used.compareAndSet(current, current + count))
+                return true;
         }
-        if (!force) {
-            while (used + count > maxTickets) {
-                try {
-                    if (!noWait) {
-                        if (logger.isDebugEnabled())
-                            logger.debug("I am waiting...");
-                        wait();
-                        waited = true;
-                    } else {
-                        return false;
-                    }
-                } catch (InterruptedException e) {
-                    logger.warn("wait interrupted", e);
+    }
+
+    /**
+     * Hands out tickets to the waiters in FIFO order. Only one thread at a time dispatches; a thread calling this
+     * method while another one is dispatching makes the other thread do one more round.
+     */
+    private void dispatch() {
+        if (dispatchRequests.getAndIncrement() != 0)
+            return;
+        int requests = 1;
+        for (;;) {
+            Waiter waiter;
+            while ((waiter = waiters.peek()) != null) {
+                if (waiter.isCancelled()) {
+                    waiters.poll();
+                    continue;
+                }
+                if (!tryAcquire(waiter.count))
+                    break;
+                waiters.poll();
+                if (waiter.grant()) {
+                    recordWait(System.nanoTime() - waiter.startNanos);
+                } else {
+                    // cancelled in the meantime
+                    used.addAndGet(-waiter.count);
                 }
             }
+            requests = dispatchRequests.addAndGet(-requests);
+            if (requests == 0)
+                return;
         }
-        used += count;
-        if (logger.isDebugEnabled())
-            logger.debug("Obtained my tickets! " + this.toString());
-        notifyAll();
-
-        /* if enabled, collect statistics for JMX Notifications */
-        if (waited && traceEnabled && notificationSupport != null) {
-            long stopWait = System.currentTimeMillis() - startWait;
+    }
 
-            final int pos = Math.min((int) Math.log10(stopWait + 1), 4);
-            waitTimes[2 * pos]++;
-            waitTimes[2 * pos + 1] += stopWait;
+    private void recordWait(long waitNanos) {
+        waitTimes.record(waitNanos);
 
-            long currentTimeslice = System.currentTimeMillis() / TIMESLICE_WIDTH;
-            if (currentTimeslice > lastTimeslice) {
-                final Notification notification = new Notification("10sec. stats", this, notificationSequence++, Arrays.toString(waitTimes));
-                notification.setUserData(waitTimes);
+        /* if enabled, collect statistics for JMX Notifications */
+        if (traceEnabled && notificationSupport != null) {
+            timesliceWaitTimes.record(waitNanos);
+            final long currentTimeslice = System.currentTimeMillis() / TIMESLICE_WIDTH;
+            final long last = lastTimeslice.get();
+            if (currentTimeslice > last && lastTimeslice.compareAndSet(last, currentTimeslice)) {
+                final long[] stats = timesliceWaitTimes.toNotificationData();
+                timesliceWaitTimes = new WaitTimes();
+                final Notification notification = new Notification("10sec. stats", this, notificationSequence.getAndIncrement(), Arrays.toString(stats));
+                notification.setUserData(stats);
                 notificationSupport.sendNotification(notification);
-                waitTimes = new long[10];
-                lastTimeslice = currentTimeslice;
             }
         }
-        return true;
     }
 
     /**
-     * Releases the given number of tickets and notifies potentially waiting
-     * threads, that new tickets are in the pool.
-     * 
+     * Releases the given number of tickets and hands them out to waiting callers.
+     *
      * @param count
      *        number of tickets to be released
      */
-    public synchronized void release(int count) {
-        used -= count;
-        if (used < 0)
-            used = 0; // no negative number of ticket!
-        if (logger.isDebugEnabled())
-            logger.debug("Released " + count + " tickets! (Now " + this.toString() + ")");
-        notifyAll();
+    public void release(int count) {
+        for (;;) {
+            final int current = used.get();
+            // no negative number of tickets!
+            if (used.compareAndSet(current, Math.max(0, current - count)))
+                break;
+        }
+        if (!waiters.isEmpty())
+            dispatch();
     }
 
-    public synchronized String toString() {
-        return id + ": " + used + " of " + maxTickets + " tickets used";
+    public String toString() {
+        return id + ": " + used.get() + " of " + maxTickets + " tickets used";
     }
 
     /**
-     * Releases a ticket and notifies potentially waiting threads, that new
-     * tickets are in the pool.
+     * Releases a ticket and hands it out to a waiting caller.
      */
     public void release() {
         this.release(1);
@@ -195,15 +300,37 @@ public class TicketPool {
         return id;
     }
 
+    @Override
     public String getId() {
         return id;
     }
 
-    public synchronized int getCapacity() {
+    @Override
+    public int getCapacity() {
         return getMaxTickets();
     }
 
-    public synchronized boolean isTraceEnabled() {
+    @Override
+    public int getWaitingCount() {
+        int n = 0;
+        for (Waiter waiter : waiters) {
+            if (!waiter.isCancelled())
+                n++;
+        }
+        return n;
+    }
+
+    @Override
+    public WaitTimeHistogram getWaitTimeHistogram() {
+        return waitTimes.toHistogram();
+    }
+
+    @Override
+    public void resetWaitTimeHistogram() {
+        waitTimes = new WaitTimes();
+    }
+
+    public boolean isTraceEnabled() {
         return traceEnabled;
     }
 
@@ -211,11 +338,11 @@ public class TicketPool {
      * you must set {@link #traceEnabled} to <code>true</code> and set a {@link NotificationBroadcasterSupport} to allow
      * monitoring wait times via
      * JMX {@link Notification}s
-     * 
+     *
      * @param traceEnabled boolean to be set if tracing via JMX is desired
      * @see #setNotificationBroadcasterSupport(NotificationBroadcasterSupport)
      */
-    public synchronized void setTraceEnabled(boolean traceEnabled) {
+    public void setTraceEnabled(boolean traceEnabled) {
         this.traceEnabled = traceEnabled;
     }
 
@@ -223,11 +350,90 @@ public class TicketPool {
      * you must set a {@link NotificationBroadcasterSupport} and set {@link #traceEnabled} to <code>true</code> and to
      * allow monitoring wait
      * times via JMX {@link Notification}s
-     * 
+     *
      * @param nbs NotificationBroadcasterSupport to be set if monitoring wait via JMX is desired
      * @see #setTraceEnabled(boolean)
      */
     public void setNotificationBroadcasterSupport(NotificationBroadcasterSupport nbs) {
         notificationSupport = nbs;
     }
+
+    private static final class Waiter {
+        final int count;
+        final Thread thread;
+        final CompletableFuture<Void> future;
+        final long startNanos = System.nanoTime();
+        volatile boolean granted;
+
+        Waiter(int count, Thread thread, CompletableFuture<Void> future) {
+            this.count = count;
+            this.thread = thread;
+            this.future = future;
+        }
+
+        boolean isCancelled() {
+            return future != null && future.isDone();
+        }
+
+        boolean grant() {
+            if (future != null)
+                return future.complete(null);
+            granted = true;
+            LockSupport.unpark(thread);
+            return true;
+        }
+    }
+
+    /**
+     * Lock free histogram of wait times, broken down logarithmically into wait times of
+     * <code>&lt;1, &lt;10, &lt;100, ... msec</code>.
+     */
+    private static final class WaitTimes {
+        private static final long[] UPPER_BOUNDS_MSEC = { 1, 10, 100, 1000, 10000, Long.MAX_VALUE };
+
+        private final AtomicLongArray counts = new AtomicLongArray(UPPER_BOUNDS_MSEC.length);
+        /* sum of the wait times in microseconds per bucket */
+        private final AtomicLongArray sums = new AtomicLongArray(UPPER_BOUNDS_MSEC.length);
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long waitNanos) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(waitNanos);
+            final long msec = micros / 1000;
+            int pos = 0;
+            while (msec >= UPPER_BOUNDS_MSEC[pos])
+                pos++;
+            counts.incrementAndGet(pos);
+            sums.addAndGet(pos, micros);
+            long max;
+            while ((max = maxMicros.get()) < micros && !maxMicros.compareAndSet(max, micros))
+                ;
+        }
+
+        WaitTimeHistogram toHistogram() {
+            final long[] c = new long[UPPER_BOUNDS_MSEC.length];
+            long count = 0;
+            long total = 0;
+            for (int i = 0; i < c.length; i++) {
+                c[i] = counts.get(i);
+                count += c[i];
+                total += sums.get(i);
+            }
+            return new WaitTimeHistogram(UPPER_BOUNDS_MSEC.clone(), c, count, total, maxMicros.get());
+        }
+
+        /**
+         * Returns the number of waits and the wait times in the format of the former time slice notifications:
+         * <code>pos 2n</code>: number of waits &lt; 10^(n+1) msec, <code>pos 2n+1</code>: sum of wait ms of waits in
+         * pos 2n, with waits longer than 10 seconds in the last position.
+         */
+        long[] toNotificationData() {
+            final long[] data = new long[10];
+            for (int i = 0; i < UPPER_BOUNDS_MSEC.length; i++) {
+                final int pos = Math.max(0, i - 1);
+                data[2 * pos] += counts.get(i);
+                data[2 * pos + 1] += sums.get(i) / 1000;
+            }
+            return data;
+        }
+    }
 }
@@ -17,6 +17,7 @@ package org.copperengine.core.common;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.copperengine.core.Workflow;
 
@@ -57,6 +58,35 @@ public interface TicketPoolManager {
 
     void obtain(Workflow<?> wf);
 
+    /**
+     * Obtains a ticket for the workflow without blocking.
+     *
+     * @param wf
+     *            the workflow instance
+     * @return true, if a ticket was obtained
+     * @see TicketPool#tryObtain()
+     */
+    boolean tryObtain(Workflow<?> wf);
+
+    /**
+     * Obtains a ticket for the workflow without blocking, even if this exceeds the capacity of the ticket pool.
+     *
+     * @param wf
+     *            the workflow instance
+     * @see TicketPool#obtain(int, boolean)
+     */
+    void obtainForced(Workflow<?> wf);
+
+    /**
+     * Obtains a ticket for the workflow without blocking the calling thread.
+     *
+     * @param wf
+     *            the workflow instance
+     * @return a future, that is completed as soon as the ticket is obtained
+     * @see TicketPool#obtainAsync()
+     */
+    CompletableFuture<Void> obtainAsync(Workflow<?> wf);
+
     void release(Workflow<?> wf);
 
     void obtain(String workflowClass);
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of the {@link IdFactory} interface, that creates time ordered ids similar to ULIDs.
+ * <p>
+ * An id consists of 26 characters of Crockford's base 32 alphabet. The first 13 characters contain the creation time in
+ * milliseconds and a sequence number, the last 13 characters contain a hash of the engine id and a random value, that
+ * is chosen when the factory is created. Ids created by one factory are strictly increasing, also if the system clock
+ * is set back, and ids created by different factories are ordered by their creation time. So ids used as primary keys
+ * are appended at the end of the database indexes instead of being spread across them, like random UUIDs are, and the
+ * indexes stay smaller.
+ * <p>
+ * Ids are created lock free, using an {@link AtomicLong}. If more than 65536 ids are created within one millisecond,
+ * the sequence number overflows into the next millisecond.
+ */
+public class TimeOrderedIdFactory implements IdFactory {
+
+    public static final int ID_LENGTH = 26;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int SEQUENCE_BITS = 16;
+    private static final int ENGINE_BITS = 24;
+    private static final int HALF_LENGTH = ID_LENGTH / 2;
+
+    private final AtomicLong state = new AtomicLong();
+    private final char[] suffix = new char[HALF_LENGTH];
+
+    /**
+     * Creates a factory with a random engine component.
+     */
+    public TimeOrderedIdFactory() {
+        this(null);
+    }
+
+    /**
+     * Creates a factory, whose ids contain a hash of the specified engine id, so that ids created by different engines
+     * of a cluster differ, even if they are created at the same time.
+     */
+    public TimeOrderedIdFactory(String engineId) {
+        final SecureRandom random = new SecureRandom();
+        final long engineHash = engineId == null ? random.nextLong() : fnv1a(engineId);
+        final long node = (engineHash << (64 - ENGINE_BITS)) | (random.nextLong() >>> ENGINE_BITS);
+        encode(node, suffix, 0);
+    }
+
+    @Override
+    public String createId() {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            final long now = System.currentTimeMillis() << SEQUENCE_BITS;
+            next = now > current ? now : current + 1;
+        } while (!state.compareAndSet(current, next));
+
+        final char[] id = new char[ID_LENGTH];
+        encode(next, id, 0);
+        System.arraycopy(suffix, 0, id, HALF_LENGTH, HALF_LENGTH);
+        return new String(id);
+    }
+
+    /**
+     * Returns the creation time of an id created by a <code>TimeOrderedIdFactory</code>, in milliseconds since the
+     * epoch.
+     */
+    public static long getTimestamp(String id) {
+        if (id == null || id.length() != ID_LENGTH)
+            throw new IllegalArgumentException("Not a time ordered id: " + id);
+        long value = 0;
+        for (int i = 0; i < HALF_LENGTH; i++) {
+            final int digit = decode(id.charAt(i));
+            if (digit < 0 || (i == 0 && digit > 0xF))
+                throw new IllegalArgumentException("Not a time ordered id: " + id);
+            value = (value << 5) | digit;
+        }
+        return value >>> SEQUENCE_BITS;
+    }
+
+    /**
+     * Encodes 64 bits in 13 characters, the first one containing the upper 4 bits.
+     */
+    private static void encode(long value, char[] target, int offset) {
+        for (int i = offset + HALF_LENGTH - 1; i >= offset; i--) {
+            target[i] = ALPHABET[(int) (value & 0x1F)];
+            value >>>= 5;
+        }
+    }
+
+    private static int decode(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c)
+                return i;
+        }
+        return -1;
+    }
+
+    private static long fnv1a(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public void startup() {
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.db.utility;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache of prepared statements, keyed by connection and SQL.
+ * <p>
+ * Statements obtained by {@link #prepare(Connection, String)} must be handed back using
+ * {@link #release(PreparedStatement)} instead of being closed. A cached statement is handed out to one user at a time;
+ * its parameters and batch are cleared on release. Statements that were closed behind the cache's back, e.g. by a
+ * connection pool when a connection is returned to it, are detected and prepared again.
+ * <p>
+ * The cache pays off with connection pools that hand out the same connection object repeatedly and do not close its
+ * statements on return. Use the hit and miss counters to check its effectiveness with a particular pool.
+ */
+public class StatementCache {
+
+    private static final class Key {
+        final Connection con;
+        final String sql;
+        final int hashCode;
+
+        Key(Connection con, String sql) {
+            this.con = con;
+            this.sql = sql;
+            this.hashCode = 31 * System.identityHashCode(con) + sql.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return con == other.con && sql.equals(other.sql);
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final PreparedStatement stmt;
+        boolean inUse;
+
+        Entry(Key key, PreparedStatement stmt) {
+            this.key = key;
+            this.stmt = stmt;
+        }
+    }
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+    private final Map<PreparedStatement, Entry> entriesByStatement = new IdentityHashMap<PreparedStatement, Entry>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public StatementCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns a prepared statement for the specified SQL on the specified connection, either from the cache or newly
+     * prepared.
+     */
+    public PreparedStatement prepare(final Connection con, final String sql) throws SQLException {
+        final Key key = new Key(con, sql);
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null && !entry.inUse) {
+                if (!isClosed(entry.stmt)) {
+                    entry.inUse = true;
+                    hitCount.incrementAndGet();
+                    return entry.stmt;
+                }
+                remove(entry);
+            }
+        }
+        missCount.incrementAndGet();
+        final PreparedStatement stmt = con.prepareStatement(sql);
+        final List<PreparedStatement> evicted = new ArrayList<PreparedStatement>();
+        synchronized (this) {
+            if (!entries.containsKey(key)) {
+                // if the statement for this key is in use (the same SQL twice at a time on one connection), the new
+                // statement stays uncached and is closed on release
+                final Entry entry = new Entry(key, stmt);
+                entry.inUse = true;
+                entries.put(key, entry);
+                entriesByStatement.put(stmt, entry);
+                evict(evicted);
+            }
+        }
+        for (PreparedStatement s : evicted) {
+            JdbcUtils.closeStatement(s);
+        }
+        return stmt;
+    }
+
+    /**
+     * Hands a statement back to the cache. Statements that are not cached are closed.
+     */
+    public void release(final PreparedStatement stmt) {
+        if (stmt == null)
+            return;
+        final Entry entry;
+        synchronized (this) {
+            entry = entriesByStatement.get(stmt);
+        }
+        if (entry == null) {
+            JdbcUtils.closeStatement(stmt);
+            return;
+        }
+        try {
+            stmt.clearParameters();
+            stmt.clearBatch();
+        } catch (Exception e) {
+            synchronized (this) {
+                remove(entry);
+            }
+            JdbcUtils.closeStatement(stmt);
+            return;
+        }
+        synchronized (this) {
+            entry.inUse = false;
+        }
+    }
+
+    /**
+     * Closes and removes all statements that are currently not in use.
+     */
+    public void clear() {
+        final List<PreparedStatement> removed = new ArrayList<PreparedStatement>();
+        synchronized (this) {
+            for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+                final Entry entry = i.next();
+                if (!entry.inUse) {
+                    i.remove();
+                    entriesByStatement.remove(entry.stmt);
+                    removed.add(entry.stmt);
+                }
+            }
+        }
+        for (PreparedStatement s : removed) {
+            JdbcUtils.closeStatement(s);
+        }
+    }
+
+    private void evict(List<PreparedStatement> evicted) {
+        // statements in use are skipped, so the cache may temporarily exceed its maximum size
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext() && entries.size() > maxSize;) {
+            final Entry entry = i.next();
+            if (!entry.inUse) {
+                i.remove();
+                entriesByStatement.remove(entry.stmt);
+                evicted.add(entry.stmt);
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.key);
+        entriesByStatement.remove(entry.stmt);
+    }
+
+    private static boolean isClosed(PreparedStatement stmt) {
+        try {
+            return stmt.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return hits divided by lookups, or 0.0 if there was no lookup yet
+     */
+    public double getHitRate() {
+        final long hits = hitCount.get();
+        final long lookups = hits + missCount.get();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * Null-safe convenience method: prepares the statement using the cache, or directly on the connection if
+     * <code>cache</code> is <code>null</code>.
+     */
+    public static PreparedStatement prepareStatement(StatementCache cache, Connection con, String sql) throws SQLException {
+        return cache != null ? cache.prepare(con, sql) : con.prepareStatement(sql);
+    }
+
+    /**
+     * Null-safe convenience method: hands the statement back to the cache, or closes it if <code>cache</code> is
+     * <code>null</code>.
+     */
+    public static void releaseStatement(StatementCache cache, PreparedStatement stmt) {
+        if (cache != null) {
+            cache.release(stmt);
+        } else {
+            JdbcUtils.closeStatement(stmt);
+        }
+    }
+}
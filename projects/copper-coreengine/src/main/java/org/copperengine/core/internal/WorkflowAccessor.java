@@ -18,9 +18,12 @@ package org.copperengine.core.internal;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Date;
+import java.util.List;
 
 import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Response;
 import org.copperengine.core.Workflow;
+import org.copperengine.core.monitoring.WorkflowTimeline;
 import org.copperengine.core.persistent.ErrorData;
 import org.copperengine.core.persistent.PersistentWorkflow;
 import org.copperengine.core.persistent.RegisterCall;
@@ -31,7 +34,10 @@ public class WorkflowAccessor {
     private static final Method methodSetCreationTS;
     private static final Method methodSetLastActivityTS;
     private static final Method methodSetTimeoutTS;
+    private static final Method methodGetTimeline;
+    private static final Method methodSetTimeline;
     private static final Method methodSetErrorData;
+    private static final Method methodGetPendingResponses;
     private static final Field fieldRegisterCall;
 
     static {
@@ -47,6 +53,15 @@ public class WorkflowAccessor {
 
             methodSetTimeoutTS = Workflow.class.getDeclaredMethod("setTimeoutTS", Date.class);
             methodSetTimeoutTS.setAccessible(true);
+
+            methodGetTimeline = Workflow.class.getDeclaredMethod("getTimeline");
+            methodGetTimeline.setAccessible(true);
+
+            methodSetTimeline = Workflow.class.getDeclaredMethod("setTimeline", WorkflowTimeline.class);
+            methodSetTimeline.setAccessible(true);
+
+            methodGetPendingResponses = Workflow.class.getDeclaredMethod("getPendingResponses");
+            methodGetPendingResponses.setAccessible(true);
             
             methodSetErrorData = PersistentWorkflow.class.getDeclaredMethod("setErrorData", ErrorData.class);
             methodSetErrorData.setAccessible(true);
@@ -98,6 +113,37 @@ public class WorkflowAccessor {
         }
     }
 
+    public static WorkflowTimeline getTimeline(Workflow<?> w) {
+        try {
+            return (WorkflowTimeline) methodGetTimeline.invoke(w);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void setTimeline(Workflow<?> w, WorkflowTimeline timeline) {
+        try {
+            methodSetTimeline.invoke(w, timeline);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Response<?>> getPendingResponses(Workflow<?> w) {
+        try {
+            return (List<Response<?>>) methodGetPendingResponses.invoke(w);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static void setErrorData(PersistentWorkflow<?> w, ErrorData errorData) {
         try {
             methodSetErrorData.invoke(w, errorData);
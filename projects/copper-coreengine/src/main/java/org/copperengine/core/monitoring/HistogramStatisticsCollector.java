@@ -0,0 +1,266 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.core.monitoring.LoggingStatisticCollector.Filter;
+import org.copperengine.management.StatisticsCollectorMXBean;
+import org.copperengine.management.model.MeasurePointData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects runtime statistics in a histogram per measure point, so that besides averages the percentiles of the
+ * elapsed times are available, e.g. the tail latencies of dequeue and batch executions. Recording takes no locks and
+ * is cheap enough to be left enabled in production.
+ * <p>
+ * The median, 99th and 99.9th percentile, maximum and rate per measure point are available via
+ * {@link #queryAll()} and {@link #print()}, and in a plain text format suitable for scraping via {@link #scrape()}.
+ * If started, the statistics are also logged periodically.
+ */
+public class HistogramStatisticsCollector implements RuntimeStatisticsCollector, StatisticsCollectorMXBean {
+
+    private static final class StatSet {
+        final String mpId;
+        volatile LatencyHistogram histogram = new LatencyHistogram();
+
+        public StatSet(String mpId) {
+            this.mpId = mpId;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(HistogramStatisticsCollector.class);
+    private static final Logger statLogger = LoggerFactory.getLogger("stat");
+
+    private Filter dataFilter = null;
+    private int loggingIntervalSec = 15;
+    private boolean resetAfterLogging = false;
+
+    private Thread thread;
+    private volatile boolean shutdown = false;
+    private volatile Map<String, StatSet> map = new HashMap<String, StatSet>();
+    private final Object mutex = new Object();
+
+    public void setLoggingIntervalSec(int loggingIntervalSec) {
+        this.loggingIntervalSec = loggingIntervalSec;
+    }
+
+    /**
+     * @param resetAfterLogging
+     *        If set to true, the internal statistics are reseted after a each periodical logging, so that the logged
+     *        percentiles and rates refer to the last interval.
+     */
+    public void setResetAfterLogging(boolean resetAfterLogging) {
+        this.resetAfterLogging = resetAfterLogging;
+    }
+
+    public Filter getDataFilter() {
+        return dataFilter;
+    }
+
+    public void setDataFilter(Filter dataFilter) {
+        this.dataFilter = dataFilter;
+    }
+
+    /**
+     * Starts periodical logging of the statistics. Collecting them does not require the collector to be started.
+     */
+    public synchronized void start() {
+        if (thread != null)
+            throw new IllegalStateException();
+        thread = new Thread("StatisticsCollector") {
+            @Override
+            public void run() {
+                while (!shutdown) {
+                    try {
+                        Thread.sleep(loggingIntervalSec * 1000L);
+                        log();
+                        if (resetAfterLogging) {
+                            reset();
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore
+                    } catch (Exception e) {
+                        logger.error("", e);
+                    }
+                }
+            }
+        };
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        if (shutdown)
+            return;
+        shutdown = true;
+        if (thread != null) {
+            thread.interrupt();
+            log();
+        }
+    }
+
+    @Override
+    public void submit(String measurePointId, int elementCount, long elapsedTime, TimeUnit timeUnit) {
+        if (measurePointId == null)
+            throw new NullPointerException();
+        if (measurePointId.isEmpty())
+            throw new IllegalArgumentException();
+        if (elapsedTime < 0)
+            throw new IllegalArgumentException();
+        if (elementCount < 0)
+            throw new IllegalArgumentException();
+        if (timeUnit == null)
+            throw new NullPointerException();
+
+        if ((dataFilter != null) && !dataFilter.accept(measurePointId, elementCount, elapsedTime, timeUnit)) {
+            return;
+        }
+        StatSet ss = map.get(measurePointId);
+        if (ss == null) {
+            synchronized (mutex) {
+                ss = map.get(measurePointId);
+                if (ss == null) {
+                    ss = new StatSet(measurePointId);
+                    Map<String, StatSet> map2 = new HashMap<String, StatSet>(map);
+                    map2.put(measurePointId, ss);
+                    map = map2;
+                }
+            }
+        }
+        ss.histogram.record(timeUnit.toMicros(elapsedTime), elementCount);
+    }
+
+    private List<StatSet> sortedStatSets() {
+        final List<StatSet> list = new ArrayList<StatSet>(map.values());
+        Collections.sort(list, (o1, o2) -> o1.mpId.compareToIgnoreCase(o2.mpId));
+        return list;
+    }
+
+    @Override
+    public String print() {
+        final StringBuilder sb = new StringBuilder(1024);
+        for (StatSet ss : sortedStatSets()) {
+            sb.append(toString(ss.mpId, ss.histogram.snapshot()));
+            sb.append("\n");
+        }
+        if (sb.length() > 0) {
+            sb.deleteCharAt(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String print(String mpId) {
+        final StatSet ss = map.get(mpId);
+        if (ss == null) {
+            return "-";
+        } else {
+            return toString(ss.mpId, ss.histogram.snapshot());
+        }
+    }
+
+    private void log() {
+        for (StatSet ss : sortedStatSets()) {
+            statLogger.info(toString(ss.mpId, ss.histogram.snapshot()));
+        }
+    }
+
+    private static String toString(String mpId, LatencyHistogram.Snapshot s) {
+        final String DOTS = ".................................................1";
+        final long count = s.getCount() > 0 ? s.getCount() : 1;
+        return String.format("%1$55.55s #exec=%2$6d; #elements=%3$6d; rate=%4$10.2f/s; avg=%5$12.5f msec; p50=%6$12.5f msec; p99=%7$12.5f msec; p999=%8$12.5f msec; max=%9$12.5f msec",
+                mpId + DOTS, s.getCount(), s.getElementCount(), s.getRatePerSecond(), s.getSum() / (double) count / 1000.0,
+                s.getValueAtPercentile(50.0) / 1000.0, s.getValueAtPercentile(99.0) / 1000.0, s.getValueAtPercentile(99.9) / 1000.0, s.getMax() / 1000.0);
+    }
+
+    /**
+     * Returns the statistics in the Prometheus text exposition format, i.e. per measure point the number of
+     * executions and elements, and a summary of the elapsed times in microseconds with the quantiles 0.5, 0.99, 0.999
+     * and 1.0 (the maximum). Counters start at zero again after {@link #reset()}.
+     */
+    public String scrape() {
+        final List<StatSet> list = sortedStatSets();
+        final List<String> labels = new ArrayList<String>(list.size());
+        final List<LatencyHistogram.Snapshot> snapshots = new ArrayList<LatencyHistogram.Snapshot>(list.size());
+        for (StatSet ss : list) {
+            labels.add("mp=\"" + escape(ss.mpId) + "\"");
+            snapshots.add(ss.histogram.snapshot());
+        }
+        final StringBuilder sb = new StringBuilder(256 + list.size() * 512);
+        sb.append("# TYPE copper_statistics_executions counter\n");
+        for (int i = 0; i < labels.size(); i++) {
+            sb.append("copper_statistics_executions{").append(labels.get(i)).append("} ").append(snapshots.get(i).getCount()).append('\n');
+        }
+        sb.append("# TYPE copper_statistics_elements counter\n");
+        for (int i = 0; i < labels.size(); i++) {
+            sb.append("copper_statistics_elements{").append(labels.get(i)).append("} ").append(snapshots.get(i).getElementCount()).append('\n');
+        }
+        sb.append("# TYPE copper_statistics_elapsed_micros summary\n");
+        for (int i = 0; i < labels.size(); i++) {
+            final LatencyHistogram.Snapshot s = snapshots.get(i);
+            for (String quantile : new String[] { "0.5", "0.99", "0.999" }) {
+                final long value = s.getValueAtPercentile(Double.parseDouble(quantile) * 100.0);
+                sb.append("copper_statistics_elapsed_micros{").append(labels.get(i)).append(",quantile=\"").append(quantile).append("\"} ").append(value).append('\n');
+            }
+            sb.append("copper_statistics_elapsed_micros{").append(labels.get(i)).append(",quantile=\"1.0\"} ").append(s.getMax()).append('\n');
+            sb.append("copper_statistics_elapsed_micros_sum{").append(labels.get(i)).append("} ").append(s.getSum()).append('\n');
+            sb.append("copper_statistics_elapsed_micros_count{").append(labels.get(i)).append("} ").append(s.getCount()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public void reset() {
+        logger.debug("Attention! Resetting current statistics");
+        for (StatSet ss : map.values()) {
+            ss.histogram = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public List<MeasurePointData> queryAll() {
+        final List<StatSet> list = new ArrayList<StatSet>(map.values());
+        final List<MeasurePointData> resultList = new ArrayList<MeasurePointData>(list.size());
+        for (StatSet ss : list) {
+            resultList.add(convert(ss));
+        }
+        Collections.sort(resultList, (data1, data2) -> data1.getMpId().compareTo(data2.getMpId()));
+        return resultList;
+    }
+
+    @Override
+    public MeasurePointData query(String measurePointId) {
+        final StatSet ss = map.get(measurePointId);
+        if (ss == null)
+            return null;
+        return convert(ss);
+    }
+
+    private static MeasurePointData convert(StatSet ss) {
+        final LatencyHistogram.Snapshot s = ss.histogram.snapshot();
+        return new MeasurePointData(ss.mpId, s.getElementCount(), s.getSum(), s.getCount(), s.getValueAtPercentile(50.0), s.getValueAtPercentile(99.0), s.getValueAtPercentile(99.9), s.getMax(), s.getRatePerSecond());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.monitoring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Internally used class.
+ * <p>
+ * Histogram of values, e.g. elapsed times in microseconds, in the style of HdrHistogram: values below 64 are counted
+ * exactly, larger values in logarithmic buckets, that are divided into 32 linear sub-buckets each. Reported
+ * percentiles are thus at most 1/32 above the exact value. Values of 2^37 and above are counted in the last bucket.
+ * <p>
+ * Recording uses atomic increments only. To keep recording threads from contending on the same counters, values are
+ * recorded into one of several stripes, selected by the recording thread. Stripes are allocated on first use.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 36;
+    static final int BUCKETS = 2 * SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int ELEMENTS = BUCKETS + 2;
+    private static final int MAX = BUCKETS + 3;
+    private static final int LENGTH = BUCKETS + 4;
+
+    private static final int STRIPES = stripes();
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+    private final long startTS = System.currentTimeMillis();
+
+    private static int stripes() {
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors() && n < 64)
+            n <<= 1;
+        return n;
+    }
+
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE)
+            return BUCKETS - 1;
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the highest value counted in the bucket with the specified index.
+     */
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        final int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+        final long subBucket = (index - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long value, int elementCount) {
+        final AtomicLongArray stripe = stripe();
+        stripe.incrementAndGet(index(value));
+        stripe.addAndGet(SUM, value);
+        stripe.addAndGet(ELEMENTS, elementCount);
+        long max;
+        while ((max = stripe.get(MAX)) < value && !stripe.compareAndSet(MAX, max, value))
+            ;
+    }
+
+    private AtomicLongArray stripe() {
+        final int i = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        final AtomicLongArray stripe = stripes.get(i);
+        if (stripe != null)
+            return stripe;
+        stripes.compareAndSet(i, null, new AtomicLongArray(LENGTH));
+        return stripes.get(i);
+    }
+
+    /**
+     * Returns a copy of the counters, merged over all stripes. Values recorded concurrently may or may not be included.
+     */
+    public Snapshot snapshot() {
+        final long[] data = new long[LENGTH];
+        for (int s = 0; s < STRIPES; s++) {
+            final AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null)
+                continue;
+            for (int i = 0; i < MAX; i++) {
+                data[i] += stripe.get(i);
+            }
+            data[MAX] = Math.max(data[MAX], stripe.get(MAX));
+        }
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += data[i];
+        }
+        data[COUNT] = count;
+        return new Snapshot(data, System.currentTimeMillis() - startTS);
+    }
+
+    static final class Snapshot {
+        private final long[] data;
+        private final long durationMSec;
+
+        Snapshot(long[] data, long durationMSec) {
+            this.data = data;
+            this.durationMSec = durationMSec;
+        }
+
+        public long getCount() {
+            return data[COUNT];
+        }
+
+        public long getSum() {
+            return data[SUM];
+        }
+
+        public long getElementCount() {
+            return data[ELEMENTS];
+        }
+
+        public long getMax() {
+            return data[MAX];
+        }
+
+        /**
+         * @return the number of recorded values per second since the histogram was created
+         */
+        public double getRatePerSecond() {
+            return durationMSec > 0 ? data[COUNT] * 1000.0 / durationMSec : 0.0;
+        }
+
+        /**
+         * @param percentile
+         *        the percentile, between 0.0 and 100.0
+         * @return the value, that the specified percentage of the recorded values are less than or equal to
+         */
+        public long getValueAtPercentile(double percentile) {
+            final long count = data[COUNT];
+            if (count == 0)
+                return 0;
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                n += data[i];
+                if (n >= rank)
+                    return Math.min(highestValue(i), data[MAX]);
+            }
+            return data[MAX];
+        }
+    }
+}
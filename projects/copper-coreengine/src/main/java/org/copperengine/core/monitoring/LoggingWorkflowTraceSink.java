@@ -0,0 +1,33 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the sampled timelines to the logger <code>org.copperengine.core.monitoring.trace</code>.
+ */
+public class LoggingWorkflowTraceSink implements WorkflowTraceSink {
+
+    private static final Logger logger = LoggerFactory.getLogger("org.copperengine.core.monitoring.trace");
+
+    @Override
+    public void trace(String workflowInstanceId, String workflowClassName, WorkflowTimeline timeline) {
+        logger.info("{} {}: {}", workflowClassName, workflowInstanceId, timeline);
+    }
+
+}
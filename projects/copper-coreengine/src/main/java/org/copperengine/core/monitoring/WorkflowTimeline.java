@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.monitoring;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamps of one resumption of a workflow instance, i.e. of its way from becoming ready to run until its next
+ * checkpoint is committed. The engines stamp the timeline as the instance passes through them; stamps that do not
+ * apply to an engine, e.g. the database queue for the transient engine, remain unset.
+ * <p>
+ * Stamps taken within this JVM are based on {@link System#nanoTime()}, stamps read from the database (ready and
+ * notify time) are converted from wall clock time and are thus only as exact as the clocks of the database writers.
+ * A timeline is handed from thread to thread together with its workflow instance and is not thread safe otherwise.
+ *
+ * @see WorkflowTimelineRecorder
+ */
+public final class WorkflowTimeline {
+
+    /**
+     * The phases of a resumption, each one measured between two stamps.
+     */
+    public static enum Phase {
+        /** from storing the (first) response until the instance was ready to run, e.g. waiting in COP_WAIT */
+        NOTIFY,
+        /** from becoming ready until dequeued by the engine, e.g. waiting in COP_QUEUE */
+        QUEUE,
+        /** deserialization of the instance during dequeue */
+        DESERIALIZATION,
+        /** from dequeue (or being ready for transient instances) until a processor thread picks it up */
+        POOL_QUEUE,
+        /** execution of the workflow's code until its next wait, savepoint or end */
+        EXECUTION,
+        /** from the end of execution until the checkpoint is committed to the database */
+        CHECKPOINT,
+        /** from becoming ready until the checkpoint is committed or, without checkpoint, the end of execution */
+        TOTAL
+    }
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private long notifyNanos = UNSET;
+    private long readyNanos = UNSET;
+    private long dequeuedNanos = UNSET;
+    private long deserializationNanos = UNSET;
+    private long poolQueuedNanos = UNSET;
+    private long runStartNanos = UNSET;
+    private long runEndNanos = UNSET;
+    private long committedNanos = UNSET;
+
+    private static long toNanos(long epochMillis) {
+        return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - epochMillis);
+    }
+
+    /**
+     * Stamps the time a response for the instance was stored. Only the earliest response counts.
+     */
+    public void stampNotify(long epochMillis) {
+        final long nanos = toNanos(epochMillis);
+        if (notifyNanos == UNSET || nanos < notifyNanos)
+            notifyNanos = nanos;
+    }
+
+    public void stampReady(long epochMillis) {
+        readyNanos = toNanos(epochMillis);
+    }
+
+    public void stampReady() {
+        readyNanos = System.nanoTime();
+    }
+
+    public void stampDequeued() {
+        dequeuedNanos = System.nanoTime();
+    }
+
+    public void setDeserializationNanos(long deserializationNanos) {
+        this.deserializationNanos = deserializationNanos;
+    }
+
+    public void stampPoolQueued() {
+        poolQueuedNanos = System.nanoTime();
+    }
+
+    public void stampRunStart() {
+        runStartNanos = System.nanoTime();
+    }
+
+    public void stampRunEnd() {
+        runEndNanos = System.nanoTime();
+    }
+
+    public void stampCommitted() {
+        committedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the duration of the phase in nanoseconds, or -1 if it was not stamped
+     */
+    public long getDurationNanos(Phase phase) {
+        switch (phase) {
+        case NOTIFY:
+            return between(notifyNanos, readyNanos);
+        case QUEUE:
+            return between(readyNanos, dequeuedNanos);
+        case DESERIALIZATION:
+            return deserializationNanos == UNSET ? -1 : deserializationNanos;
+        case POOL_QUEUE:
+            return between(poolQueuedNanos, runStartNanos);
+        case EXECUTION:
+            return between(runStartNanos, runEndNanos);
+        case CHECKPOINT:
+            return between(runEndNanos, committedNanos);
+        case TOTAL:
+            return between(readyNanos != UNSET ? readyNanos : poolQueuedNanos, committedNanos != UNSET ? committedNanos : runEndNanos);
+        default:
+            throw new IllegalArgumentException(phase.toString());
+        }
+    }
+
+    private static long between(long from, long to) {
+        if (from == UNSET || to == UNSET)
+            return -1;
+        // clock differences may let converted database timestamps lie in the future
+        return Math.max(0, to - from);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(160);
+        for (Phase phase : Phase.values()) {
+            final long nanos = getDurationNanos(phase);
+            if (nanos < 0)
+                continue;
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(phase).append('=').append(String.format("%.3f", nanos / 1000000.0)).append("ms");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.monitoring;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.copperengine.management.StatisticsCollectorMXBean;
+import org.copperengine.management.model.MeasurePointData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the {@link WorkflowTimeline}s of an engine into histograms per workflow class and phase, e.g. to find
+ * out whether the latency of a workflow is spent waiting in the database queue, in the processor pool's queue, in
+ * execution or in committing the checkpoint. The measure point ids are
+ * <code>&lt;workflow class name&gt;.&lt;phase&gt;</code>, e.g. <code>com.acme.OrderWorkflow.POOL_QUEUE</code>.
+ * <p>
+ * Optionally, full timelines are passed to a {@link WorkflowTraceSink}, either every n-th one or all the ones that
+ * took longer than a threshold.
+ * <p>
+ * Activate it using <code>setWorkflowTimelineRecorder</code> on the engine.
+ */
+public class WorkflowTimelineRecorder implements StatisticsCollectorMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowTimelineRecorder.class);
+    private static final WorkflowTimeline.Phase[] PHASES = WorkflowTimeline.Phase.values();
+
+    private final HistogramStatisticsCollector histograms = new HistogramStatisticsCollector();
+    private final ConcurrentMap<String, String[]> measurePointIds = new ConcurrentHashMap<String, String[]>();
+    private final AtomicLong counter = new AtomicLong();
+    private WorkflowTraceSink traceSink;
+    private int traceSampleInterval = 0;
+    private long traceThresholdNanos = 0;
+
+    /**
+     * Sets the sink for sampled timelines. Without a sink, timelines are aggregated only.
+     */
+    public void setTraceSink(WorkflowTraceSink traceSink) {
+        this.traceSink = traceSink;
+    }
+
+    /**
+     * Passes every n-th timeline to the trace sink. Defaults to 0, i.e. no sampling.
+     */
+    public void setTraceSampleInterval(int traceSampleInterval) {
+        if (traceSampleInterval < 0)
+            throw new IllegalArgumentException("traceSampleInterval must not be negative");
+        this.traceSampleInterval = traceSampleInterval;
+    }
+
+    /**
+     * Passes every timeline, whose total duration exceeds the threshold, to the trace sink. Defaults to 0, i.e.
+     * disabled.
+     */
+    public void setTraceThresholdMSec(long traceThresholdMSec) {
+        this.traceThresholdNanos = TimeUnit.MILLISECONDS.toNanos(traceThresholdMSec);
+    }
+
+    /**
+     * Records the timeline of a resumption of the specified workflow instance. Called by the engine.
+     */
+    public void record(String workflowInstanceId, Class<?> workflowClass, WorkflowTimeline timeline) {
+        final String[] ids = measurePointIds(workflowClass);
+        for (int i = 0; i < PHASES.length; i++) {
+            final long nanos = timeline.getDurationNanos(PHASES[i]);
+            if (nanos >= 0) {
+                histograms.submit(ids[i], 1, nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        final WorkflowTraceSink sink = traceSink;
+        if (sink == null)
+            return;
+        final boolean sampled = traceSampleInterval > 0 && counter.incrementAndGet() % traceSampleInterval == 0;
+        final boolean slow = traceThresholdNanos > 0 && timeline.getDurationNanos(WorkflowTimeline.Phase.TOTAL) > traceThresholdNanos;
+        if (sampled || slow) {
+            try {
+                sink.trace(workflowInstanceId, workflowClass.getName(), timeline);
+            } catch (RuntimeException e) {
+                logger.error("trace sink failed", e);
+            }
+        }
+    }
+
+    /**
+     * Keyed by class name, so that workflow classes of a former deployment and their class loader are not retained.
+     */
+    private String[] measurePointIds(Class<?> workflowClass) {
+        final String className = workflowClass.getName();
+        String[] ids = measurePointIds.get(className);
+        if (ids == null) {
+            ids = new String[PHASES.length];
+            for (int i = 0; i < PHASES.length; i++) {
+                ids[i] = className + "." + PHASES[i];
+            }
+            measurePointIds.putIfAbsent(className, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * @see HistogramStatisticsCollector#scrape()
+     */
+    public String scrape() {
+        return histograms.scrape();
+    }
+
+    @Override
+    public void reset() {
+        histograms.reset();
+    }
+
+    @Override
+    public String print() {
+        return histograms.print();
+    }
+
+    @Override
+    public String print(String measurePointId) {
+        return histograms.print(measurePointId);
+    }
+
+    @Override
+    public List<MeasurePointData> queryAll() {
+        return histograms.queryAll();
+    }
+
+    @Override
+    public MeasurePointData query(String measurePointId) {
+        return histograms.query(measurePointId);
+    }
+}
@@ -26,10 +26,12 @@ import org.copperengine.core.*;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.common.WorkflowRepository;
 import org.copperengine.core.db.utility.JdbcUtils;
+import org.copperengine.core.db.utility.StatementCache;
 import org.copperengine.core.internal.WorkflowAccessor;
 import org.copperengine.core.monitoring.NullRuntimeStatisticsCollector;
 import org.copperengine.core.monitoring.RuntimeStatisticsCollector;
 import org.copperengine.core.monitoring.StmtStatistic;
+import org.copperengine.core.monitoring.WorkflowTimeline;
 import org.copperengine.core.util.FunctionWithException;
 import org.copperengine.management.DatabaseDialectMXBean;
 import org.copperengine.management.model.AuditTrailInfo;
@@ -52,6 +54,8 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
     private WorkflowRepository wfRepository;
     private RuntimeStatisticsCollector runtimeStatisticsCollector = new NullRuntimeStatisticsCollector();
     private boolean removeWhenFinished = true;
+    private boolean lazyResponseDecoding = false;
+    private volatile boolean recordTimelines = false;
     /**
      * if multiple engines could be running together, you MUST turn it on
      */
@@ -61,6 +65,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
     protected final int ACQUIRE_BLOCKING_WAIT_SEC = 10;
     protected Serializer serializer = new StandardJavaSerializer();
     protected int dbBatchingLatencyMSec = 20;
+    protected volatile StatementCache statementCache;
     private WorkflowPersistencePlugin workflowPersistencePlugin = WorkflowPersistencePlugin.NULL_PLUGIN;
     protected String queryUpdateQueueState = getResourceAsString("/sql-query-ready-bpids.sql");
     private String engineId;
@@ -71,6 +76,8 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
     private StmtStatistic insertStmtStatistic;
     private StmtStatistic deleteStaleResponsesStmtStatistic;
     protected StmtStatistic selectQueueSizeStmtStatistic;
+    private StmtStatistic selectReadyProcessorPoolsStmtStatistic;
+    private StmtStatistic enqueueTimedOutStmtStatistic;
 
     public AbstractSqlDialect() {
         this(false, false);
@@ -112,6 +119,63 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         return dbBatchingLatencyMSec;
     }
 
+    /**
+     * Sets the maximum number of prepared statements, that are cached for reuse on the hot paths of this dialect, i.e.
+     * dequeue, queue state updates and the batch commands. The cache is keyed by connection and SQL, so it is only
+     * effective with connection pools that hand out the same physical connection repeatedly and do not close its
+     * statements when the connection is returned. A size of 0, which is the default, disables the cache.
+     *
+     * @param statementCacheSize
+     *        maximum number of cached statements
+     */
+    @Override
+    public void setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0)
+            throw new IllegalArgumentException("statementCacheSize must not be negative");
+        logger.info("setStatementCacheSize({})", statementCacheSize);
+        final StatementCache oldCache = statementCache;
+        statementCache = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+        if (oldCache != null) {
+            oldCache.clear();
+        }
+    }
+
+    @Override
+    public int getStatementCacheSize() {
+        final StatementCache cache = statementCache;
+        return cache != null ? cache.getMaxSize() : 0;
+    }
+
+    @Override
+    public long getStatementCacheHitCount() {
+        final StatementCache cache = statementCache;
+        return cache != null ? cache.getHitCount() : 0L;
+    }
+
+    @Override
+    public long getStatementCacheMissCount() {
+        final StatementCache cache = statementCache;
+        return cache != null ? cache.getMissCount() : 0L;
+    }
+
+    @Override
+    public double getStatementCacheHitRate() {
+        final StatementCache cache = statementCache;
+        return cache != null ? cache.getHitRate() : 0.0;
+    }
+
+    /**
+     * Prepares a statement, using the statement cache if it is enabled. Statements obtained here must be handed back
+     * with {@link #releaseStatement(PreparedStatement)}.
+     */
+    protected PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+        return StatementCache.prepareStatement(statementCache, con, sql);
+    }
+
+    protected void releaseStatement(PreparedStatement stmt) {
+        StatementCache.releaseStatement(statementCache, stmt);
+    }
+
     /**
      * Sets the default removal timeout for stale responses in the underlying database. A response is stale/timed out
      * when there is no workflow instance waiting for it within the specified amount of time.
@@ -134,6 +198,25 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         this.serializer = serializer;
     }
 
+    /**
+     * If true, the responses of dequeued workflow instances are kept in their serialized form and decoded, when the
+     * workflow instance first accesses the responses of their correlation id, e.g. by
+     * <code>getAndRemoveResponse</code>. Responses, that are never accessed, e.g. if the workflow instance resumes on a
+     * timeout without reading them, are never decoded.
+     * <p>
+     * If a response cannot be decoded, the access fails with a {@link org.copperengine.core.CopperRuntimeException}
+     * while the workflow instance is executed, instead of failing the dequeue.
+     * Defaults to false.
+     */
+    public void setLazyResponseDecoding(boolean lazyResponseDecoding) {
+        logger.info("setLazyResponseDecoding({})", lazyResponseDecoding);
+        this.lazyResponseDecoding = lazyResponseDecoding;
+    }
+
+    public boolean isLazyResponseDecoding() {
+        return lazyResponseDecoding;
+    }
+
     public void setRuntimeStatisticsCollector(RuntimeStatisticsCollector runtimeStatisticsCollector) {
         this.runtimeStatisticsCollector = runtimeStatisticsCollector;
     }
@@ -145,6 +228,8 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         insertStmtStatistic = new StmtStatistic("DBStorage.insert", runtimeStatisticsCollector);
         deleteStaleResponsesStmtStatistic = new StmtStatistic("DBStorage.deleteStaleResponses", runtimeStatisticsCollector);
         selectQueueSizeStmtStatistic = new StmtStatistic("DBStorage.selectQueueSize", runtimeStatisticsCollector);
+        selectReadyProcessorPoolsStmtStatistic = new StmtStatistic("DBStorage.selectReadyProcessorPools", runtimeStatisticsCollector);
+        enqueueTimedOutStmtStatistic = new StmtStatistic("DBStorage.enqueue.timedOut", runtimeStatisticsCollector);
     }
 
     /**
@@ -193,6 +278,17 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         this.removeWhenFinished = removeWhenFinished;
     }
 
+    @Override
+    public void setUpdateQueueStateIncludesTimeouts(boolean updateQueueStateIncludesTimeouts) {
+        logger.info("setUpdateQueueStateIncludesTimeouts({})", updateQueueStateIncludesTimeouts);
+        queryUpdateQueueState = getResourceAsString(updateQueueStateIncludesTimeouts ? "/sql-query-ready-bpids.sql" : "/sql-query-ready-bpids-responses.sql");
+    }
+
+    @Override
+    public void setRecordTimelines(boolean recordTimelines) {
+        this.recordTimelines = recordTimelines;
+    }
+
     @Override
     public boolean isRemoveWhenFinished() {
         return removeWhenFinished;
@@ -230,10 +326,11 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             final List<BatchCommand> invalidWorkflowInstances = new ArrayList<BatchCommand>();
 
             dequeueStmt = createDequeueStmt(con, ppoolId, max);
-            updateQueueStmt = con.prepareStatement("update COP_QUEUE set ENGINE_ID=? where WORKFLOW_INSTANCE_ID=?");
+            updateQueueStmt = prepareStatement(con, "update COP_QUEUE set ENGINE_ID=? where WORKFLOW_INSTANCE_ID=?");
             dequeueStmtStatistic.start();
             final ResultSet rs = dequeueStmt.executeQuery();
             final Map<String, Workflow<?>> map = new HashMap<String, Workflow<?>>(max * 3);
+            final boolean stampTimelines = recordTimelines;
             while (rs.next()) {
                 final String id = rs.getString(1);
                 final int prio = rs.getInt(2);
@@ -246,12 +343,20 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
                     SerializedWorkflow sw = new SerializedWorkflow();
                     sw.setData(rs.getString(3));
                     sw.setObjectState(rs.getString(4));
+                    final long deserializationStart = System.nanoTime();
                     PersistentWorkflow<?> wf = (PersistentWorkflow<?>) serializer.deserializeWorkflow(sw, wfRepository);
+                    final long deserializationNanos = System.nanoTime() - deserializationStart;
                     wf.setId(id);
                     wf.setProcessorPoolId(ppoolId);
                     wf.setPriority(prio);
                     WorkflowAccessor.setCreationTS(wf, new Date(rs.getTimestamp(5).getTime()));
                     WorkflowAccessor.setLastActivityTS(wf, new Date(rs.getTimestamp(6).getTime()));
+                    if (stampTimelines) {
+                        final WorkflowTimeline timeline = new WorkflowTimeline();
+                        timeline.setDeserializationNanos(deserializationNanos);
+                        timeline.stampReady(rs.getTimestamp(6).getTime());
+                        WorkflowAccessor.setTimeline(wf, timeline);
+                    }
                     map.put(wf.getId(), wf);
                 } catch (Exception e) {
                     logger.error("decoding of '" + id + "' failed: " + e.toString(), e);
@@ -259,11 +364,12 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
                 }
             }
             rs.close();
-            dequeueStmt.close();
+            releaseStatement(dequeueStmt);
+            dequeueStmt = null;
             dequeueStmtStatistic.stop(map.size());
 
             if (!map.isEmpty()) {
-                selectResponsesStmt = con.prepareStatement("select w.WORKFLOW_INSTANCE_ID, w.correlation_id, w.timeout_ts, r.response from (select WORKFLOW_INSTANCE_ID, correlation_id, timeout_ts from COP_WAIT where WORKFLOW_INSTANCE_ID in (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)) w LEFT OUTER JOIN COP_RESPONSE r ON w.correlation_id = r.correlation_id order by r.correlation_id, r.response_id");
+                selectResponsesStmt = prepareStatement(con, "select w.WORKFLOW_INSTANCE_ID, w.correlation_id, w.timeout_ts, r.response, r.response_ts, r.response_id from (select WORKFLOW_INSTANCE_ID, correlation_id, timeout_ts from COP_WAIT where WORKFLOW_INSTANCE_ID in (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)) w LEFT OUTER JOIN COP_RESPONSE r ON w.correlation_id = r.correlation_id order by r.correlation_id, r.response_id");
                 List<List<String>> ids = splitt(map.keySet(), 25);
                 for (List<String> id : ids) {
                     selectResponsesStmt.clearParameters();
@@ -280,8 +386,17 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
                         PersistentWorkflow<?> wf = (PersistentWorkflow<?>) map.get(bpId);
                         Response<?> r = null;
                         if (response != null) {
-                            r = serializer.deserializeResponse(response);
-                            wf.addResponseId(r.getResponseId());
+                            if (lazyResponseDecoding) {
+                                wf.addLazyResponse(cid, response, () -> serializer.deserializeResponse(response));
+                                wf.addResponseId(rsResponses.getString(6));
+                            } else {
+                                r = serializer.deserializeResponse(response);
+                                wf.addResponseId(r.getResponseId());
+                            }
+                            final Timestamp responseTS = rsResponses.getTimestamp(5);
+                            if (stampTimelines && responseTS != null) {
+                                WorkflowAccessor.getTimeline(wf).stampNotify(responseTS.getTime());
+                            }
                         } else if (isTimeout) {
                             // timeout
                             r = new Response<Object>(cid);
@@ -311,9 +426,9 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             return rv;
         } finally {
             JdbcUtils.closeStatement(updateBpStmt);
-            JdbcUtils.closeStatement(dequeueStmt);
-            JdbcUtils.closeStatement(updateQueueStmt);
-            JdbcUtils.closeStatement(selectResponsesStmt);
+            releaseStatement(dequeueStmt);
+            releaseStatement(updateQueueStmt);
+            releaseStatement(selectResponsesStmt);
             releaseLock(con, lockContext);
         }
     }
@@ -343,8 +458,8 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             enqueueUpdateStateStmtStatistic.start();
             queryStmt = createUpdateStateStmt(con, max);
             ResultSet rs = queryStmt.executeQuery();
-            updStmt = con.prepareStatement("update COP_WAIT set state=1, timeout_ts=timeout_ts where WORKFLOW_INSTANCE_ID=?");
-            insStmt = con.prepareStatement("INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) VALUES (?,?,?,?)");
+            updStmt = prepareStatement(con, "update COP_WAIT set state=1, timeout_ts=timeout_ts where WORKFLOW_INSTANCE_ID=?");
+            insStmt = prepareStatement(con, "INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) VALUES (?,?,?,?)");
             while (rs.next()) {
                 rowcount++;
 
@@ -378,13 +493,80 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             }
             throw e;
         } finally {
-            JdbcUtils.closeStatement(insStmt);
-            JdbcUtils.closeStatement(updStmt);
-            JdbcUtils.closeStatement(queryStmt);
+            releaseStatement(insStmt);
+            releaseStatement(updStmt);
+            releaseStatement(queryStmt);
             releaseLock(con, lockContext);
         }
     }
 
+    @Override
+    public int enqueueTimedOut(int max, Connection con) throws SQLException {
+        PreparedStatement queryStmt = null;
+        PreparedStatement updStmt = null;
+        PreparedStatement insStmt = null;
+        final String lockContext = "updateQueueState";
+
+        try {
+            final long startTS = System.currentTimeMillis();
+            lock(con, lockContext);
+
+            final Timestamp NOW = new Timestamp(System.currentTimeMillis());
+            enqueueTimedOutStmtStatistic.start();
+            final StringBuilder sql = new StringBuilder("SELECT WORKFLOW_INSTANCE_ID, PPOOL_ID, PRIORITY FROM COP_WAIT WHERE STATE=0 AND TIMEOUT_TS <= ?");
+            addLimitation(sql, max);
+            queryStmt = prepareStatement(con, sql.toString());
+            queryStmt.setTimestamp(1, NOW);
+            ResultSet rs = queryStmt.executeQuery();
+            updStmt = prepareStatement(con, "update COP_WAIT set state=1, timeout_ts=timeout_ts where WORKFLOW_INSTANCE_ID=?");
+            insStmt = prepareStatement(con, "INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) VALUES (?,?,?,?)");
+            // a workflow instance waiting for several correlation ids has one row per correlation id
+            final Set<String> wfiIds = new HashSet<String>();
+            while (rs.next()) {
+                final String wfiId = rs.getString(1);
+                if (!wfiIds.add(wfiId))
+                    continue;
+
+                updStmt.setString(1, wfiId);
+                updStmt.addBatch();
+
+                insStmt.setString(1, rs.getString(2));
+                insStmt.setInt(2, rs.getInt(3));
+                insStmt.setTimestamp(3, NOW);
+                insStmt.setString(4, wfiId);
+                insStmt.addBatch();
+
+                logger.debug("Inserting timed out {} into COP_QUEUE", wfiId);
+            }
+            rs.close();
+            if (!wfiIds.isEmpty()) {
+                insStmt.executeBatch();
+                updStmt.executeBatch();
+            }
+            enqueueTimedOutStmtStatistic.stop(wfiIds.isEmpty() ? 1 : wfiIds.size());
+            logger.debug("Enqueued {} timed out workflow instances in {} msec", wfiIds.size(), (System.currentTimeMillis() - startTS));
+            return wfiIds.size();
+        } finally {
+            releaseStatement(insStmt);
+            releaseStatement(updStmt);
+            releaseStatement(queryStmt);
+            releaseLock(con, lockContext);
+        }
+    }
+
+    @Override
+    public Date queryNextTimeout(Connection con) throws SQLException {
+        final PreparedStatement pstmt = prepareStatement(con, "SELECT MIN(TIMEOUT_TS) FROM COP_WAIT WHERE STATE=0");
+        try {
+            final ResultSet rs = pstmt.executeQuery();
+            final Timestamp nextTimeout = rs.next() ? rs.getTimestamp(1) : null;
+            rs.close();
+            return nextTimeout;
+        } finally {
+            releaseStatement(pstmt);
+        }
+    }
+
     @Override
     public int deleteStaleResponse(Connection con, int maxRows) throws Exception {
         if (logger.isTraceEnabled())
@@ -400,7 +582,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             logger.trace("deleted {} stale response(s).", rowCount);
             return rowCount;
         } finally {
-            JdbcUtils.closeStatement(stmt);
+            releaseStatement(stmt);
             releaseLock(con, lockContext);
         }
     }
@@ -824,7 +1006,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
     @Override
     @SuppressWarnings({ "rawtypes" })
     public BatchCommand createBatchCommand4Finish(Workflow<?> w, Acknowledge ack) {
-        return new SqlRemove.Command((PersistentWorkflow<?>) w, removeWhenFinished, System.currentTimeMillis() + dbBatchingLatencyMSec, workflowPersistencePlugin, ack);
+        return new SqlRemove.Command((PersistentWorkflow<?>) w, removeWhenFinished, System.currentTimeMillis() + dbBatchingLatencyMSec, workflowPersistencePlugin, ack, statementCache);
     }
 
     @Override
@@ -833,7 +1015,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         if (response == null)
             throw new NullPointerException();
         if (response.isEarlyResponseHandling())
-            return new SqlNotify.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+            return new SqlNotify.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack, statementCache);
         else
             return createBatchCommand4NotifyNoEarlyResponseHandling(response, ack);
     }
@@ -846,7 +1028,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
     public BatchCommand createBatchCommand4registerCallback(RegisterCall rc, ScottyDBStorageInterface dbStorageInterface, Acknowledge ack) throws Exception {
         if (rc == null)
             throw new NullPointerException();
-        return new SqlRegisterCallback.Command(rc, serializer, dbStorageInterface, System.currentTimeMillis() + dbBatchingLatencyMSec, workflowPersistencePlugin, ack);
+        return new SqlRegisterCallback.Command(rc, serializer, dbStorageInterface, System.currentTimeMillis() + dbBatchingLatencyMSec, workflowPersistencePlugin, ack, statementCache);
     }
 
     @Override
@@ -927,6 +1109,10 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
     @SuppressWarnings({ "rawtypes" })
     public abstract BatchCommand createBatchCommand4error(Workflow<?> w, Throwable t, DBProcessingState dbProcessingState, Acknowledge ack);
 
+    /**
+     * Creates the statement selecting the workflow instances, that are ready to be enqueued. Implementations should use
+     * {@link #prepareStatement(Connection, String)} with constant SQL, so that the statement can be cached.
+     */
     protected abstract PreparedStatement createUpdateStateStmt(final Connection c, final int max) throws SQLException;
 
     protected abstract PreparedStatement createDequeueStmt(final Connection c, final String ppoolId, final int max) throws SQLException;
@@ -1117,7 +1303,30 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         return queueSize;
     }
 
-    private StringBuilder appendQueryBase(StringBuilder sql, List<Object> params, WorkflowInstanceFilter filter) {
+    @Override
+    public Set<String> queryReadyProcessorPools(Collection<String> processorPoolIds, Connection con) throws SQLException {
+        final Set<String> readyProcessorPools = new HashSet<String>();
+        selectReadyProcessorPoolsStmtStatistic.start();
+        final PreparedStatement pstmt = prepareStatement(con, "SELECT 1 FROM COP_QUEUE WHERE PPOOL_ID=? AND ENGINE_ID IS NULL");
+        try {
+            // one row is enough, so the query stops at the first ready workflow instance of the pool
+            pstmt.setMaxRows(1);
+            for (String ppoolId : processorPoolIds) {
+                pstmt.setString(1, ppoolId);
+                final ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    readyProcessorPools.add(ppoolId);
+                }
+                rs.close();
+            }
+        } finally {
+            releaseStatement(pstmt);
+        }
+        selectReadyProcessorPoolsStmtStatistic.stop(readyProcessorPools.size());
+        return readyProcessorPools;
+    }
+
+    protected StringBuilder appendQueryBase(StringBuilder sql, List<Object> params, WorkflowInstanceFilter filter) {
         sql.append(" FROM (SELECT w.timeout, w.classname, (CASE WHEN q.WORKFLOW_INSTANCE_ID IS NOT NULL AND w.STATE=2 THEN 0 ELSE w.STATE END) STATE, w.ID, w.PRIORITY, w.PPOOL_ID, w.DATA, w.OBJECT_STATE, w.CREATION_TS, w.LAST_MOD_TS, q.ENGINE_ID FROM COP_WORKFLOW_INSTANCE w LEFT OUTER JOIN COP_QUEUE q on w.id = q.WORKFLOW_INSTANCE_ID) x WHERE 1=1");
         if (filter.getWorkflowClassname() != null) {
             sql.append(" AND x.CLASSNAME=?");
@@ -1182,6 +1391,32 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         return CommonSQLHelper.processResult(sql.toString(), params, sqlQueryErrorData.toString(), con, (FunctionWithException<ResultSet,PersistentWorkflow<?>>) this::decode);
     }
 
+    @Override
+    public List<WorkflowInstanceHeader> queryWorkflowInstanceHeaders(WorkflowInstanceFilter filter, WorkflowInstanceProjection projection, String startAfterId, int max, Connection con) throws SQLException {
+        final StringBuilder sql = new StringBuilder();
+        if (projection == WorkflowInstanceProjection.FULL) {
+            sql.append("SELECT x.*");
+        } else {
+            sql.append("SELECT x.ID, x.CLASSNAME, x.STATE, x.PRIORITY, x.PPOOL_ID, x.CREATION_TS, x.LAST_MOD_TS, x.TIMEOUT");
+        }
+        final List<Object> params = new ArrayList<>();
+        appendQueryBase(sql, params, filter);
+        if (startAfterId != null) {
+            sql.append(" AND x.ID > ?");
+            params.add(startAfterId);
+        }
+        sql.append(" ORDER BY x.ID");
+        addLimitation(sql, max);
+
+        logger.debug("queryWorkflowInstanceHeaders: sql={}, params={}", sql, params);
+
+        final StringBuilder sqlQueryErrorData = new StringBuilder("select x.* from (select * from COP_WORKFLOW_INSTANCE_ERROR where WORKFLOW_INSTANCE_ID=? order by ERROR_TS desc) x where 1=1");
+        addLimitation(sqlQueryErrorData, 1);
+
+        return CommonSQLHelper.processHeaderResult(sql.toString(), params, sqlQueryErrorData.toString(), con, Math.min(max, 1000),
+                projection == WorkflowInstanceProjection.FULL ? (FunctionWithException<ResultSet,PersistentWorkflow<?>>) this::decode : null);
+    }
+
     @Override
     public int countWorkflowInstances(WorkflowInstanceFilter filter, Connection con) throws SQLException {
         final StringBuilder sql = new StringBuilder();
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes dequeue bulk size and memory queue thresholds for a {@link PersistentPriorityProcessorPool} from the
+ * measured processing rate and dequeue latency.
+ * <p>
+ * The goal is to keep roughly <code>targetBufferMSec</code> milliseconds of work in the pool's memory queue: enough to
+ * bridge the time a dequeue takes, but not so much that a slow pool holds thousands of instances that no other engine
+ * can take.
+ */
+class AdaptiveDequeueController {
+
+    private static final double SMOOTHING = 0.3;
+
+    private final AtomicLong processedCounter = new AtomicLong();
+
+    private final int targetBufferMSec;
+    private final int minBulkSize;
+    private final int maxBulkSize;
+    private final int maxUpperThreshold;
+    private final long sampleIntervalMSec;
+
+    private long lastSampleTS = -1L;
+    private long lastProcessedCount = 0L;
+    private double processingRatePerSec = -1.0;
+    private double dequeueLatencyMSec = -1.0;
+
+    private int lowerThreshold;
+    private int upperThreshold;
+    private int dequeueBulkSize;
+
+    public AdaptiveDequeueController(int targetBufferMSec, int minBulkSize, int maxBulkSize, int maxUpperThreshold, long sampleIntervalMSec) {
+        if (targetBufferMSec <= 0 || minBulkSize <= 0 || maxBulkSize < minBulkSize || maxUpperThreshold < minBulkSize || sampleIntervalMSec <= 0)
+            throw new IllegalArgumentException();
+        this.targetBufferMSec = targetBufferMSec;
+        this.minBulkSize = minBulkSize;
+        this.maxBulkSize = maxBulkSize;
+        this.maxUpperThreshold = maxUpperThreshold;
+        this.sampleIntervalMSec = sampleIntervalMSec;
+    }
+
+    /**
+     * Seeds the controller with the statically configured values, which are used until the first measurement is
+     * available.
+     */
+    public synchronized void init(int lowerThreshold, int upperThreshold, int dequeueBulkSize, long now) {
+        this.lowerThreshold = lowerThreshold;
+        this.upperThreshold = upperThreshold;
+        this.dequeueBulkSize = dequeueBulkSize;
+        this.lastSampleTS = now;
+        this.lastProcessedCount = processedCounter.get();
+    }
+
+    /**
+     * Called by the processor pool each time a workflow instance is taken from the memory queue.
+     */
+    public void recordProcessed() {
+        processedCounter.incrementAndGet();
+    }
+
+    /**
+     * Called by the processor pool after each dequeue from the storage.
+     */
+    public synchronized void recordDequeue(long durationMSec) {
+        dequeueLatencyMSec = dequeueLatencyMSec < 0 ? durationMSec : smooth(dequeueLatencyMSec, durationMSec);
+    }
+
+    /**
+     * Takes a new processing rate sample, if the sample interval has elapsed, and recomputes the sizing values.
+     *
+     * @param now
+     *        current timestamp in milliseconds
+     * @param memoryQueueSize
+     *        current size of the pool's memory queue
+     * @return <code>true</code>, if new sizing values were computed
+     */
+    public synchronized boolean update(long now, int memoryQueueSize) {
+        if (lastSampleTS < 0) {
+            lastSampleTS = now;
+            lastProcessedCount = processedCounter.get();
+            return false;
+        }
+        final long elapsed = now - lastSampleTS;
+        if (elapsed < sampleIntervalMSec) {
+            return false;
+        }
+        final long processedCount = processedCounter.get();
+        final double sample = (processedCount - lastProcessedCount) * 1000.0 / elapsed;
+        lastSampleTS = now;
+        lastProcessedCount = processedCount;
+
+        if (processingRatePerSec < 0) {
+            processingRatePerSec = sample;
+        } else if (memoryQueueSize == 0 && sample < processingRatePerSec) {
+            // the memory queue ran dry, so the sample is bounded by our own supply and
+            // not by the pool's capacity - do not let a starving pool shrink its buffer
+        } else {
+            processingRatePerSec = smooth(processingRatePerSec, sample);
+        }
+        compute();
+        return true;
+    }
+
+    private void compute() {
+        final double ratePerMSec = processingRatePerSec / 1000.0;
+        final double latency = Math.max(dequeueLatencyMSec, 0.0);
+
+        int upper = (int) Math.min(maxUpperThreshold, Math.ceil(ratePerMSec * targetBufferMSec));
+        upper = Math.max(upper, 2 * minBulkSize);
+
+        // the lower threshold has to cover the time a dequeue round trip takes (with a safety factor of 2)
+        int lower = (int) Math.min(Integer.MAX_VALUE, Math.ceil(ratePerMSec * latency * 2.0));
+        lower = Math.max(lower, upper / 2);
+        lower = Math.min(lower, upper - minBulkSize);
+
+        final int bulk = Math.max(minBulkSize, Math.min(maxBulkSize, upper - lower));
+
+        this.upperThreshold = upper;
+        this.lowerThreshold = lower;
+        this.dequeueBulkSize = bulk;
+    }
+
+    private static double smooth(double current, double sample) {
+        return current + SMOOTHING * (sample - current);
+    }
+
+    public synchronized int getLowerThreshold() {
+        return lowerThreshold;
+    }
+
+    public synchronized int getUpperThreshold() {
+        return upperThreshold;
+    }
+
+    public synchronized int getDequeueBulkSize() {
+        return dequeueBulkSize;
+    }
+
+    public int getTargetBufferMSec() {
+        return targetBufferMSec;
+    }
+
+    /**
+     * @return the smoothed processing rate in workflow instances per second, or -1 if not yet measured
+     */
+    public synchronized double getProcessingRatePerSec() {
+        return processingRatePerSec;
+    }
+
+    /**
+     * @return the smoothed dequeue latency in milliseconds, or -1 if not yet measured
+     */
+    public synchronized double getDequeueLatencyMSec() {
+        return dequeueLatencyMSec;
+    }
+}
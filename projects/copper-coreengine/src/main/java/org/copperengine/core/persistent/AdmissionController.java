@@ -0,0 +1,293 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+
+import org.copperengine.core.EngineOverloadedException;
+import org.copperengine.core.Workflow;
+import org.copperengine.management.AdmissionControllerMXBean;
+
+/**
+ * Admission control for a {@link PersistentScottyEngine}. When the database falls behind, the engine's batcher queue
+ * and its commit latency grow, and so do the memory queues of the processor pools. Without admission control the
+ * engine keeps accepting new workflow instances and responses until it runs out of heap.
+ * <p>
+ * The controller samples these signals, at most every {@link #setSampleIntervalMSec(int) sample interval}, and
+ * computes the pressure as the highest ratio of a signal to its configured limit. A limit of 0 disables the respective
+ * signal. The commit latency only counts while commands are waiting in the batcher, so that the last measurement of
+ * an idle batcher does not keep the engine overloaded. At a pressure of 1 or more the engine is overloaded and the
+ * {@link Policy} decides what happens to new requests:
+ * <ul>
+ * <li>{@link Policy#BLOCK} blocks the caller until the pressure drops or the {@link #setMaxBlockMSec(long) maximum
+ * blocking time} elapsed, in which case the request is rejected,</li>
+ * <li>{@link Policy#REJECT} rejects the request immediately,</li>
+ * <li>{@link Policy#SHED_LOW_PRIORITY} rejects new workflow instances with a low priority, see
+ * {@link #setLowPriorityThreshold(int)}, and accepts all others.</li>
+ * </ul>
+ * Rejected requests fail with an {@link EngineOverloadedException}. The asynchronous methods and the methods taking the
+ * caller's database connection never block, they are rejected instead, so that neither a caller thread nor an open
+ * transaction is held during database lag. Responses are never shed, as they let waiting workflow instances complete
+ * and so reduce the load.
+ * <p>
+ * Use {@link PersistentScottyEngine#setAdmissionController(AdmissionController)} to enable it. The pressure and the
+ * signals are exposed via {@link AdmissionControllerMXBean}, so that upstream adapters can throttle.
+ */
+public class AdmissionController implements AdmissionControllerMXBean {
+
+    public enum Policy {
+        BLOCK, REJECT, SHED_LOW_PRIORITY
+    }
+
+    private volatile Policy policy = Policy.REJECT;
+    private volatile int maxBatcherQueueSize = 0;
+    private volatile int maxCommitLatencyMSec = 0;
+    private volatile int maxProcessorPoolQueueSize = 0;
+    private volatile long maxBlockMSec = 1000;
+    private volatile int lowPriorityThreshold = 6;
+    private volatile int sampleIntervalMSec = 10;
+
+    private IntSupplier batcherQueueSizeSupplier = () -> 0;
+    private DoubleSupplier commitLatencySupplier = () -> -1;
+    private IntSupplier processorPoolQueueSizeSupplier = () -> 0;
+
+    private final AtomicLong nextSampleTS = new AtomicLong();
+    private volatile int batcherQueueSize;
+    private volatile double commitLatencyMSec = -1;
+    private volatile int processorPoolQueueSize;
+    private volatile double pressure;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong shedCount = new AtomicLong();
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the policy applied to new requests while the engine is overloaded. Defaults to {@link Policy#REJECT}.
+     */
+    public void setPolicy(Policy policy) {
+        if (policy == null)
+            throw new NullPointerException();
+        this.policy = policy;
+    }
+
+    @Override
+    public int getMaxBatcherQueueSize() {
+        return maxBatcherQueueSize;
+    }
+
+    @Override
+    public void setMaxBatcherQueueSize(int maxBatcherQueueSize) {
+        this.maxBatcherQueueSize = checkLimit(maxBatcherQueueSize);
+    }
+
+    @Override
+    public int getMaxCommitLatencyMSec() {
+        return maxCommitLatencyMSec;
+    }
+
+    @Override
+    public void setMaxCommitLatencyMSec(int maxCommitLatencyMSec) {
+        this.maxCommitLatencyMSec = checkLimit(maxCommitLatencyMSec);
+    }
+
+    @Override
+    public int getMaxProcessorPoolQueueSize() {
+        return maxProcessorPoolQueueSize;
+    }
+
+    @Override
+    public void setMaxProcessorPoolQueueSize(int maxProcessorPoolQueueSize) {
+        this.maxProcessorPoolQueueSize = checkLimit(maxProcessorPoolQueueSize);
+    }
+
+    public long getMaxBlockMSec() {
+        return maxBlockMSec;
+    }
+
+    /**
+     * Sets the maximum time a caller is blocked by {@link Policy#BLOCK}. Defaults to one second.
+     */
+    public void setMaxBlockMSec(long maxBlockMSec) {
+        if (maxBlockMSec < 0)
+            throw new IllegalArgumentException("maxBlockMSec must not be negative");
+        this.maxBlockMSec = maxBlockMSec;
+    }
+
+    public int getLowPriorityThreshold() {
+        return lowPriorityThreshold;
+    }
+
+    /**
+     * Workflow instances with a priority value greater than or equal to the threshold have a low priority and are shed
+     * by {@link Policy#SHED_LOW_PRIORITY}. Defaults to 6, i.e. to everything below the default priority of 5.
+     */
+    public void setLowPriorityThreshold(int lowPriorityThreshold) {
+        this.lowPriorityThreshold = lowPriorityThreshold;
+    }
+
+    public int getSampleIntervalMSec() {
+        return sampleIntervalMSec;
+    }
+
+    /**
+     * Sets the minimum interval between two samples of the signals. Defaults to 10 milliseconds.
+     */
+    public void setSampleIntervalMSec(int sampleIntervalMSec) {
+        if (sampleIntervalMSec <= 0)
+            throw new IllegalArgumentException("sampleIntervalMSec must be positive");
+        this.sampleIntervalMSec = sampleIntervalMSec;
+    }
+
+    synchronized void startup(IntSupplier batcherQueueSizeSupplier, DoubleSupplier commitLatencySupplier, IntSupplier processorPoolQueueSizeSupplier) {
+        this.batcherQueueSizeSupplier = batcherQueueSizeSupplier;
+        this.commitLatencySupplier = commitLatencySupplier;
+        this.processorPoolQueueSizeSupplier = processorPoolQueueSizeSupplier;
+        nextSampleTS.set(0);
+    }
+
+    @Override
+    public double getPressure() {
+        sample();
+        return pressure;
+    }
+
+    @Override
+    public boolean isOverloaded() {
+        return getPressure() >= 1.0;
+    }
+
+    @Override
+    public int getBatcherQueueSize() {
+        sample();
+        return batcherQueueSize;
+    }
+
+    @Override
+    public double getCommitLatencyMSec() {
+        sample();
+        return commitLatencyMSec;
+    }
+
+    @Override
+    public int getProcessorPoolQueueSize() {
+        sample();
+        return processorPoolQueueSize;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    /**
+     * Admits new workflow instances or rejects them with an {@link EngineOverloadedException}.
+     *
+     * @param mayBlock
+     *        false, if the caller must not be blocked
+     */
+    void admitWorkflows(List<Workflow<?>> wfs, boolean mayBlock) {
+        if (!isOverloaded())
+            return;
+        if (policy == Policy.SHED_LOW_PRIORITY) {
+            for (Workflow<?> wf : wfs) {
+                if (wf.getPriority() >= lowPriorityThreshold) {
+                    shedCount.incrementAndGet();
+                    throw reject("low priority workflow instance " + wf.getId() + " shed");
+                }
+            }
+            return;
+        }
+        admit(mayBlock);
+    }
+
+    /**
+     * Admits new responses or rejects them with an {@link EngineOverloadedException}.
+     *
+     * @param mayBlock
+     *        false, if the caller must not be blocked
+     */
+    void admitResponses(boolean mayBlock) {
+        if (!isOverloaded() || policy == Policy.SHED_LOW_PRIORITY)
+            return;
+        admit(mayBlock);
+    }
+
+    private void admit(boolean mayBlock) {
+        if (policy == Policy.BLOCK && mayBlock) {
+            final long endTS = System.currentTimeMillis() + maxBlockMSec;
+            try {
+                do {
+                    final long wait = Math.min(sampleIntervalMSec, endTS - System.currentTimeMillis());
+                    if (wait <= 0)
+                        break;
+                    Thread.sleep(wait);
+                    if (!isOverloaded())
+                        return;
+                } while (true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        throw reject("request rejected");
+    }
+
+    private EngineOverloadedException reject(String msg) {
+        rejectedCount.incrementAndGet();
+        return new EngineOverloadedException("Engine overloaded (pressure=" + pressure + ") - " + msg);
+    }
+
+    private void sample() {
+        final long now = System.currentTimeMillis();
+        final long ts = nextSampleTS.get();
+        if (now < ts || !nextSampleTS.compareAndSet(ts, now + sampleIntervalMSec))
+            return;
+        final int queueSize = batcherQueueSizeSupplier.getAsInt();
+        final double latency = commitLatencySupplier.getAsDouble();
+        final int poolQueueSize = processorPoolQueueSizeSupplier.getAsInt();
+        double p = 0;
+        if (maxBatcherQueueSize > 0) {
+            p = Math.max(p, (double) queueSize / maxBatcherQueueSize);
+        }
+        if (maxCommitLatencyMSec > 0 && queueSize > 0) {
+            p = Math.max(p, latency / maxCommitLatencyMSec);
+        }
+        if (maxProcessorPoolQueueSize > 0) {
+            p = Math.max(p, (double) poolQueueSize / maxProcessorPoolQueueSize);
+        }
+        batcherQueueSize = queueSize;
+        commitLatencyMSec = latency;
+        processorPoolQueueSize = poolQueueSize;
+        pressure = p;
+    }
+
+    private static int checkLimit(int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("limit must not be negative");
+        return limit;
+    }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.copperengine.core.Response;
+
+/**
+ * Internally used class.
+ * <p>
+ * Compact binary format of a {@link Response}. The envelope consists of a format version, a byte of flags and the
+ * fields of the response, that are set. The payload is encoded by the first {@link PayloadCodec} able to encode it, and
+ * the exception, if any, by java serialization.
+ */
+final class BinaryResponseCodec {
+
+    static final int VERSION = 1;
+
+    private static final int TIMEOUT = 1;
+    private static final int EARLY_RESPONSE_HANDLING = 1 << 1;
+    private static final int CORRELATION_ID = 1 << 2;
+    private static final int RESPONSE_ID = 1 << 3;
+    private static final int META_DATA = 1 << 4;
+    private static final int INTERNAL_PROCESSING_TIMEOUT = 1 << 5;
+    private static final int SEQUENCE_ID = 1 << 6;
+    private static final int EXCEPTION = 1 << 7;
+
+    static final int MIN_APPLICATION_CODEC_ID = 32;
+    static final int JAVA_SERIALIZATION_CODEC_ID = 31;
+
+    private static final PayloadCodec NULL_CODEC = new BuiltinCodec(0, null) {
+        @Override
+        public boolean canEncode(Object payload) {
+            return payload == null;
+        }
+
+        @Override
+        public void encode(Object payload, DataOutput out) {
+        }
+
+        @Override
+        public Object decode(DataInput in) {
+            return null;
+        }
+    };
+
+    private static final PayloadCodec STRING_CODEC = new BuiltinCodec(1, String.class) {
+        @Override
+        public void encode(Object payload, DataOutput out) throws IOException {
+            writeString(out, (String) payload);
+        }
+
+        @Override
+        public Object decode(DataInput in) throws IOException {
+            return readString(in);
+        }
+    };
+
+    private static final PayloadCodec INTEGER_CODEC = new BuiltinCodec(2, Integer.class) {
+        @Override
+        public void encode(Object payload, DataOutput out) throws IOException {
+            out.writeInt((Integer) payload);
+        }
+
+        @Override
+        public Object decode(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    private static final PayloadCodec LONG_CODEC = new BuiltinCodec(3, Long.class) {
+        @Override
+        public void encode(Object payload, DataOutput out) throws IOException {
+            out.writeLong((Long) payload);
+        }
+
+        @Override
+        public Object decode(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    private static final PayloadCodec BOOLEAN_CODEC = new BuiltinCodec(4, Boolean.class) {
+        @Override
+        public void encode(Object payload, DataOutput out) throws IOException {
+            out.writeBoolean((Boolean) payload);
+        }
+
+        @Override
+        public Object decode(DataInput in) throws IOException {
+            return in.readBoolean();
+        }
+    };
+
+    private static final PayloadCodec BYTES_CODEC = new BuiltinCodec(5, byte[].class) {
+        @Override
+        public void encode(Object payload, DataOutput out) throws IOException {
+            writeBytes(out, (byte[]) payload);
+        }
+
+        @Override
+        public Object decode(DataInput in) throws IOException {
+            return readBytes(in);
+        }
+    };
+
+    /**
+     * Codec for exactly one class of payloads.
+     */
+    private static abstract class BuiltinCodec implements PayloadCodec {
+        private final int id;
+        private final Class<?> payloadClass;
+
+        BuiltinCodec(int id, Class<?> payloadClass) {
+            this.id = id;
+            this.payloadClass = payloadClass;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public boolean canEncode(Object payload) {
+            return payload.getClass() == payloadClass;
+        }
+    }
+
+    private final PayloadCodec[] encoders;
+    private final PayloadCodec[] decoders = new PayloadCodec[256];
+    private final PayloadCodec javaSerialization;
+
+    /**
+     * @param applicationCodecs
+     *        the codecs provided by the application, tried in the given order after the built-in codecs
+     * @param javaSerialization
+     *        the codec used for payloads no other codec is able to encode and for exceptions
+     */
+    BinaryResponseCodec(List<PayloadCodec> applicationCodecs, PayloadCodec javaSerialization) {
+        if (javaSerialization.getId() != JAVA_SERIALIZATION_CODEC_ID)
+            throw new IllegalArgumentException("java serialization codec must have id " + JAVA_SERIALIZATION_CODEC_ID);
+        this.javaSerialization = javaSerialization;
+        final PayloadCodec[] builtins = { NULL_CODEC, STRING_CODEC, INTEGER_CODEC, LONG_CODEC, BOOLEAN_CODEC, BYTES_CODEC };
+        this.encoders = new PayloadCodec[builtins.length + applicationCodecs.size()];
+        int i = 0;
+        for (PayloadCodec codec : builtins) {
+            encoders[i++] = codec;
+            decoders[codec.getId()] = codec;
+        }
+        for (PayloadCodec codec : applicationCodecs) {
+            if (codec.getId() < MIN_APPLICATION_CODEC_ID || codec.getId() > 255)
+                throw new IllegalArgumentException("id of " + codec.getClass().getName() + " must be in the range from " + MIN_APPLICATION_CODEC_ID + " to 255");
+            if (decoders[codec.getId()] != null)
+                throw new IllegalArgumentException("duplicate payload codec id " + codec.getId());
+            encoders[i++] = codec;
+            decoders[codec.getId()] = codec;
+        }
+        decoders[JAVA_SERIALIZATION_CODEC_ID] = javaSerialization;
+    }
+
+    byte[] encode(Response<?> r) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
+        final DataOutputStream out = new DataOutputStream(baos);
+        int flags = 0;
+        if (r.isTimeout())
+            flags |= TIMEOUT;
+        if (r.isEarlyResponseHandling())
+            flags |= EARLY_RESPONSE_HANDLING;
+        if (r.getCorrelationId() != null)
+            flags |= CORRELATION_ID;
+        if (r.getResponseId() != null)
+            flags |= RESPONSE_ID;
+        if (r.getMetaData() != null)
+            flags |= META_DATA;
+        if (r.getInternalProcessingTimeout() != null)
+            flags |= INTERNAL_PROCESSING_TIMEOUT;
+        if (r.getSequenceId() != null)
+            flags |= SEQUENCE_ID;
+        if (r.getException() != null)
+            flags |= EXCEPTION;
+        out.writeByte(VERSION);
+        out.writeByte(flags);
+        if (r.getCorrelationId() != null)
+            writeString(out, r.getCorrelationId());
+        if (r.getResponseId() != null)
+            writeString(out, r.getResponseId());
+        if (r.getMetaData() != null)
+            writeString(out, r.getMetaData());
+        if (r.getInternalProcessingTimeout() != null)
+            out.writeLong(r.getInternalProcessingTimeout());
+        if (r.getSequenceId() != null)
+            out.writeLong(r.getSequenceId());
+
+        final Object payload = r.getResponse();
+        PayloadCodec codec = javaSerialization;
+        for (PayloadCodec encoder : encoders) {
+            if (encoder.canEncode(payload)) {
+                codec = encoder;
+                break;
+            }
+        }
+        out.writeByte(codec.getId());
+        codec.encode(payload, out);
+        if (r.getException() != null)
+            javaSerialization.encode(r.getException(), out);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    Response<?> decode(byte[] data) throws IOException, ClassNotFoundException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("unsupported binary response format version " + version);
+        final int flags = in.readUnsignedByte();
+        final String correlationId = (flags & CORRELATION_ID) != 0 ? readString(in) : null;
+        final String responseId = (flags & RESPONSE_ID) != 0 ? readString(in) : null;
+        final String metaData = (flags & META_DATA) != 0 ? readString(in) : null;
+        final Long internalProcessingTimeout = (flags & INTERNAL_PROCESSING_TIMEOUT) != 0 ? in.readLong() : null;
+        final Long sequenceId = (flags & SEQUENCE_ID) != 0 ? in.readLong() : null;
+
+        final int codecId = in.readUnsignedByte();
+        final PayloadCodec codec = decoders[codecId];
+        if (codec == null)
+            throw new IOException("no payload codec with id " + codecId);
+        final Object payload = codec.decode(in);
+        final Exception exception = (flags & EXCEPTION) != 0 ? (Exception) javaSerialization.decode(in) : null;
+
+        final Response<Object> r = new Response<Object>(correlationId, payload, exception, (flags & TIMEOUT) != 0, metaData, internalProcessingTimeout, responseId);
+        r.setEarlyResponseHandling((flags & EARLY_RESPONSE_HANDLING) != 0);
+        r.setSequenceId(sequenceId);
+        return r;
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        writeLength(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInput in) throws IOException {
+        final byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes a length with seven bits per byte, so that the usual lengths below 128 take a single byte.
+     */
+    private static void writeLength(DataOutput out, int length) throws IOException {
+        while ((length & ~0x7F) != 0) {
+            out.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.writeByte(length);
+    }
+
+    private static int readLength(DataInput in) throws IOException {
+        int length = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (length < 0)
+                    throw new IOException("invalid length " + length);
+                return length;
+            }
+        }
+        throw new IOException("invalid length");
+    }
+
+}
@@ -150,14 +150,9 @@ public class CommonSQLHelper {
                 try {
                     final PersistentWorkflow<?> wf = decode.apply(rs);
                     if (wf.getProcessingState() == ProcessingState.ERROR) {
-                        pStmtQueryErrorData.setString(1, wf.getId());
-                        try (ResultSet rsErrorData = pStmtQueryErrorData.executeQuery()) {
-                            if (rsErrorData.next()) {
-                                final org.copperengine.core.persistent.ErrorData errorData = new org.copperengine.core.persistent.ErrorData();
-                                errorData.setExceptionStackTrace(rsErrorData.getString("EXCEPTION"));
-                                errorData.setErrorTS(rsErrorData.getTimestamp("ERROR_TS"));
-                                WorkflowAccessor.setErrorData(wf, errorData);
-                            }
+                        final org.copperengine.core.persistent.ErrorData errorData = queryErrorData(pStmtQueryErrorData, wf.getId());
+                        if (errorData != null) {
+                            WorkflowAccessor.setErrorData(wf, errorData);
                         }
                     }
                     result.add(wf);
@@ -169,6 +164,62 @@ public class CommonSQLHelper {
         return result;
     }
 
+    /**
+     * Reads the rows of a workflow instance header query. If <code>decode</code> is not null, the workflow instances are
+     * deserialized and the error data of instances in state ERROR is read, too.
+     */
+    public static List<WorkflowInstanceHeader> processHeaderResult(String sql, List<Object> params, String sqlQueryErrorData, Connection con, int fetchSize, FunctionWithException<ResultSet, PersistentWorkflow<?>> decode) throws SQLException {
+        final List<WorkflowInstanceHeader> result = new ArrayList<>();
+        try (PreparedStatement pStmtQueryWFIs = con.prepareStatement(sql); PreparedStatement pStmtQueryErrorData = con.prepareStatement(sqlQueryErrorData)) {
+            for (int i=1; i<=params.size(); i++) {
+                pStmtQueryWFIs.setObject(i, params.get(i-1));
+            }
+            pStmtQueryWFIs.setFetchSize(fetchSize);
+            try (ResultSet rs = pStmtQueryWFIs.executeQuery()) {
+                while (rs.next()) {
+                    final WorkflowInstanceHeader header = new WorkflowInstanceHeader();
+                    header.setId(rs.getString("ID"));
+                    header.setClassname(rs.getString("CLASSNAME"));
+                    header.setState(DBProcessingState.getProcessingStateByState(DBProcessingState.getByOrdinal(rs.getInt("STATE"))));
+                    header.setPriority(rs.getInt("PRIORITY"));
+                    header.setProcessorPoolId(rs.getString("PPOOL_ID"));
+                    header.setCreationTS(toDate(rs.getTimestamp("CREATION_TS")));
+                    header.setLastModTS(toDate(rs.getTimestamp("LAST_MOD_TS")));
+                    header.setTimeoutTS(toDate(rs.getTimestamp("TIMEOUT")));
+                    if (decode != null) {
+                        try {
+                            header.setWorkflow(decode.apply(rs));
+                        } catch (Exception e) {
+                            logger.error("decoding of '" + header.getId() + "' failed: " + e.toString(), e);
+                        }
+                        if (header.getState() == ProcessingState.ERROR) {
+                            header.setErrorData(queryErrorData(pStmtQueryErrorData, header.getId()));
+                        }
+                    }
+                    result.add(header);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static org.copperengine.core.persistent.ErrorData queryErrorData(PreparedStatement pStmtQueryErrorData, String workflowInstanceId) throws SQLException {
+        pStmtQueryErrorData.setString(1, workflowInstanceId);
+        try (ResultSet rsErrorData = pStmtQueryErrorData.executeQuery()) {
+            if (rsErrorData.next()) {
+                final org.copperengine.core.persistent.ErrorData errorData = new org.copperengine.core.persistent.ErrorData();
+                errorData.setExceptionStackTrace(rsErrorData.getString("EXCEPTION"));
+                errorData.setErrorTS(rsErrorData.getTimestamp("ERROR_TS"));
+                return errorData;
+            }
+        }
+        return null;
+    }
+
+    private static java.util.Date toDate(Timestamp ts) {
+        return ts == null ? null : new java.util.Date(ts.getTime());
+    }
+
     public static List<AuditTrailInfo> processAuditResult(String sql, List<Object> params, Connection con, boolean loadMessage) throws SQLException {
         final List<AuditTrailInfo> result = new ArrayList<>();
         try (PreparedStatement pStmtQueryWFIs = con.prepareStatement(sql.toString())) {
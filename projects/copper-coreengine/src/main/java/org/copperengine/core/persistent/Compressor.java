@@ -15,9 +15,12 @@
  */
 package org.copperengine.core.persistent;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,10 +33,14 @@ import org.slf4j.LoggerFactory;
 public class Compressor {
 
     private static final Logger logger = LoggerFactory.getLogger(Compressor.class);
+    private static final int STREAM_BUFFER_SIZE = 4096;
 
     private final Deflater deflater;
     private final Inflater inflater;
     private final byte[] buffer;
+    private final Inflater streamInflater = new Inflater();
+    private final byte[] streamBuffer = new byte[STREAM_BUFFER_SIZE];
+    private boolean streamInUse = false;
 
     /**
      * creates a new instance
@@ -82,4 +89,42 @@ public class Compressor {
         }
     }
 
+    /**
+     * Returns a stream of the uncompressed data read from the specified stream. The stream reuses the inflater and
+     * input buffer of this compressor until it is closed. If it is not closed before the next call, e.g. when
+     * uncompressed streams are nested, the next stream gets an inflater of its own.
+     * Like the rest of this class, the method is not thread safe.
+     *
+     * @param in
+     *            stream of compressed data
+     * @return stream of uncompressed data
+     */
+    public InputStream uncompressingStream(InputStream in) {
+        if (streamInUse) {
+            return new InflaterInputStream(in);
+        }
+        streamInUse = true;
+        return new InflaterInputStream(in, streamInflater, 1) {
+            private boolean closed = false;
+
+            {
+                // replaces the buffer allocated by the constructor
+                buf = streamBuffer;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed)
+                    return;
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    streamInflater.reset();
+                    streamInUse = false;
+                }
+            }
+        };
+    }
+
 }
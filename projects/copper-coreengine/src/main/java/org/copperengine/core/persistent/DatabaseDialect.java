@@ -17,8 +17,10 @@ package org.copperengine.core.persistent;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.DuplicateIdException;
@@ -37,6 +39,48 @@ public interface DatabaseDialect {
 
     public abstract int updateQueueState(final int max, final Connection con) throws SQLException;
 
+    /**
+     * Moves waiting workflow instances, whose timeout has expired, into the queue. Unlike
+     * {@link #updateQueueState(int, Connection)} this only reads expired waits, using the index on STATE and
+     * TIMEOUT_TS of COP_WAIT, so its costs do not depend on the total number of waiting workflow instances.
+     *
+     * @param max
+     *        maximum number of waits to read
+     * @param con
+     *        database connection
+     * @return the number of enqueued workflow instances
+     * @throws SQLException
+     *         If anything goes wrong regarding SQL.
+     */
+    public abstract int enqueueTimedOut(final int max, final Connection con) throws SQLException;
+
+    /**
+     * @param con
+     *        database connection
+     * @return the earliest timeout of all waiting workflow instances, or <code>null</code>, if none of them waits
+     *         with a timeout
+     * @throws SQLException
+     *         If anything goes wrong regarding SQL.
+     */
+    public abstract Date queryNextTimeout(final Connection con) throws SQLException;
+
+    /**
+     * @param updateQueueStateIncludesTimeouts
+     *        If true (default), {@link #updateQueueState(int, Connection)} also enqueues workflow instances, whose
+     *        timeout has expired. Set it to false, if they are enqueued by {@link #enqueueTimedOut(int, Connection)}
+     *        instead.
+     */
+    public void setUpdateQueueStateIncludesTimeouts(boolean updateQueueStateIncludesTimeouts);
+
+    /**
+     * @param recordTimelines
+     *        If true, {@link #dequeue(String, int, Connection)} attaches a
+     *        {@link org.copperengine.core.monitoring.WorkflowTimeline} to each dequeued workflow instance. Set by the
+     *        engine, while it has a {@link org.copperengine.core.monitoring.WorkflowTimelineRecorder}. Defaults to
+     *        false.
+     */
+    public void setRecordTimelines(boolean recordTimelines);
+
     public abstract int deleteStaleResponse(Connection con, int maxRows) throws Exception;
 
     public abstract void insert(final List<Workflow<?>> wfs, final Connection con) throws DuplicateIdException, Exception;
@@ -125,11 +169,39 @@ public interface DatabaseDialect {
 
     public int queryQueueSize(String processorPoolId, int max, Connection con) throws SQLException;
 
+    /**
+     * Determines, which of the specified processor pools have workflow instances in the queue, that are ready to be
+     * dequeued. Only checks for the presence of one ready workflow instance per pool, so the costs do not depend on
+     * the length of the queue.
+     * @return the ids of the processor pools with ready workflow instances
+     */
+    public Set<String> queryReadyProcessorPools(Collection<String> processorPoolIds, Connection con) throws SQLException;
+
     public abstract String queryObjectState(String id, Connection con) throws Exception;
 
     public abstract List<Workflow<?>> queryWorkflowInstances(WorkflowInstanceFilter filter, Connection con) throws SQLException;
     public abstract int countWorkflowInstances(WorkflowInstanceFilter filter, Connection con) throws SQLException;
 
+    /**
+     * Reads one chunk of workflow instances matching the filter, ordered by id, using keyset pagination, i.e. the
+     * chunk starts right after the instance with id <code>startAfterId</code>. The filter's offset and max are ignored.
+     *
+     * @param filter
+     *        the filter criteria
+     * @param projection
+     *        defines whether the workflow instances shall be deserialized
+     * @param startAfterId
+     *        id of the last instance of the previous chunk, or <code>null</code> to start with the first instance
+     * @param max
+     *        maximum number of instances in this chunk
+     * @param con
+     *        database connection
+     * @return the instances of this chunk; less than <code>max</code> instances indicate the last chunk
+     * @throws SQLException
+     *         If anything goes wrong regarding SQL.
+     */
+    public abstract List<WorkflowInstanceHeader> queryWorkflowInstanceHeaders(WorkflowInstanceFilter filter, WorkflowInstanceProjection projection, String startAfterId, int max, Connection con) throws SQLException;
+
     public List<AuditTrailInfo> queryAuditTrailInstances(AuditTrailInstanceFilter filter, Connection con) throws SQLException;
 
     public String queryAuditTrailMessage(long id, Connection con) throws SQLException;
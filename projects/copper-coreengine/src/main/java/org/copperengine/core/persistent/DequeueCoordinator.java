@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.copperengine.core.Workflow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dequeues workflow instances for all {@link PersistentPriorityProcessorPool}s of a {@link PersistentScottyEngine}
+ * in a single thread, instead of one dequeue thread per processor pool.
+ * <p>
+ * Each round the coordinator asks the pools for their free capacity, determines within a single transaction, which of
+ * them have workflow instances ready in the database, and dequeues for those pools only, one after the other and never
+ * more than a pool's dequeue bulk size. A pool, whose memory queue reached its upper threshold, is skipped until its
+ * queue size falls below its lower threshold or its upper threshold wait time elapsed. So an engine with many mostly
+ * idle processor pools polls the database with one short transaction and holds at most one connection for dequeueing.
+ * The pools keep their thresholds, dequeue bulk sizes, adaptive dequeue sizing and suspend/resume semantics.
+ * <p>
+ * Use {@link PersistentScottyEngine#setDequeueCoordinator(DequeueCoordinator)} to enable it.
+ */
+public class DequeueCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(DequeueCoordinator.class);
+
+    private final List<PersistentPriorityProcessorPool> pools =
+            new CopyOnWriteArrayList<PersistentPriorityProcessorPool>();
+    private final Object mutex = new Object();
+    private volatile int emptyQueueWaitMSec = 50;
+    private volatile boolean shutdown = false;
+    private ScottyDBStorageInterface dbStorage;
+    private Thread thread;
+
+    public int getEmptyQueueWaitMSec() {
+        return emptyQueueWaitMSec;
+    }
+
+    /**
+     * Sets the time to wait after a round, in which nothing was dequeued or no pool had free capacity. The wait ends
+     * earlier, when a processor pool is notified about new work or its queue size falls below its lower threshold.
+     */
+    public void setEmptyQueueWaitMSec(int emptyQueueWaitMSec) {
+        if (emptyQueueWaitMSec <= 0)
+            throw new IllegalArgumentException();
+        this.emptyQueueWaitMSec = emptyQueueWaitMSec;
+    }
+
+    synchronized void startup(PersistentScottyEngine engine) {
+        if (thread != null)
+            throw new IllegalStateException("already started");
+        dbStorage = engine.getDbStorage();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DequeueCoordinator.this.run();
+            }
+        }, engine.getEngineId() + "#DequeueCoordinator");
+        thread.start();
+    }
+
+    synchronized void shutdown() {
+        shutdown = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    void register(PersistentPriorityProcessorPool pool) {
+        pools.add(pool);
+        doNotify();
+    }
+
+    void unregister(PersistentPriorityProcessorPool pool) {
+        pools.remove(pool);
+    }
+
+    void doNotify() {
+        synchronized (mutex) {
+            mutex.notify();
+        }
+    }
+
+    private void run() {
+        logger.info("started");
+        while (!shutdown) {
+            try {
+                long waitMSec;
+                try {
+                    waitMSec = dequeue();
+                } catch (Exception e) {
+                    logger.error("dequeue failed", e);
+                    waitMSec = emptyQueueWaitMSec;
+                }
+                if (waitMSec > 0 && !shutdown) {
+                    synchronized (mutex) {
+                        mutex.wait(waitMSec);
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.info("interrupted");
+            }
+        }
+        logger.info("stopped");
+    }
+
+    /**
+     * Executes one dequeue round.
+     *
+     * @return the time in milliseconds to wait before the next round, zero if something was dequeued
+     */
+    private long dequeue() throws Exception {
+        final Map<String, Integer> ppoolId2max = new HashMap<String, Integer>();
+        final Map<String, PersistentPriorityProcessorPool> ppoolId2pool =
+                new HashMap<String, PersistentPriorityProcessorPool>();
+        final long now = System.currentTimeMillis();
+        long waitMSec = emptyQueueWaitMSec;
+        for (PersistentPriorityProcessorPool pool : pools) {
+            final int capacity = pool.getDequeueCapacity(now);
+            if (capacity > 0) {
+                ppoolId2max.put(pool.getId(), capacity);
+                ppoolId2pool.put(pool.getId(), pool);
+            } else {
+                waitMSec = Math.min(waitMSec, pool.getUpperThresholdReachedWaitRemaining(now));
+            }
+        }
+        if (ppoolId2max.isEmpty()) {
+            logger.trace("No processor pool with free capacity. Waiting...");
+            return Math.max(1, waitMSec);
+        }
+
+        logger.trace("Dequeueing elements from DB for {}", ppoolId2max);
+        final long startTS = System.currentTimeMillis();
+        final Map<String, List<Workflow<?>>> rv = dbStorage.dequeue(ppoolId2max);
+        final long dequeueLatency = System.currentTimeMillis() - startTS;
+        for (PersistentPriorityProcessorPool pool : ppoolId2pool.values()) {
+            pool.recordDequeueLatency(dequeueLatency);
+            final List<Workflow<?>> wfs = rv.get(pool.getId());
+            if (wfs != null && !wfs.isEmpty()) {
+                logger.trace("Dequeue returned {} elements for pool {}.", wfs.size(), pool.getId());
+                pool.enqueueDequeued(wfs);
+            }
+        }
+        return rv.isEmpty() ? Math.max(1, waitMSec) : 0;
+    }
+}
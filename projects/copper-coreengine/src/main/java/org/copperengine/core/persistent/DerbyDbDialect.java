@@ -68,23 +68,26 @@ public class DerbyDbDialect extends AbstractSqlDialect {
     @Override
     protected PreparedStatement createUpdateStateStmt(final Connection c, final int max) throws SQLException {
         final Timestamp NOW = new Timestamp(System.currentTimeMillis());
-        PreparedStatement pstmt = c.prepareStatement(queryUpdateQueueState + " FETCH FIRST " + max + " ROWS ONLY");
+        PreparedStatement pstmt = prepareStatement(c, queryUpdateQueueState + " FETCH FIRST ? ROWS ONLY");
         pstmt.setTimestamp(1, NOW);
         pstmt.setTimestamp(2, NOW);
+        pstmt.setInt(3, max);
         return pstmt;
     }
 
     @Override
     protected PreparedStatement createDequeueStmt(final Connection c, final String ppoolId, final int maxRows) throws SQLException {
-        PreparedStatement dequeueStmt = c.prepareStatement("select id,priority,data,object_state,creation_ts,last_mod_ts from COP_WORKFLOW_INSTANCE where id in (select WORKFLOW_INSTANCE_ID from COP_QUEUE where ppool_id = ? and engine_id is NULL order by priority, last_mod_ts) FETCH FIRST " + maxRows + " ROWS ONLY");
+        PreparedStatement dequeueStmt = prepareStatement(c, "select id,priority,data,object_state,creation_ts,last_mod_ts from COP_WORKFLOW_INSTANCE where id in (select WORKFLOW_INSTANCE_ID from COP_QUEUE where ppool_id = ? and engine_id is NULL order by priority, last_mod_ts) FETCH FIRST ? ROWS ONLY");
         dequeueStmt.setString(1, ppoolId);
+        dequeueStmt.setInt(2, maxRows);
         return dequeueStmt;
     }
 
     @Override
     protected PreparedStatement createDeleteStaleResponsesStmt(final Connection c, final int maxRows) throws SQLException {
-        PreparedStatement stmt = c.prepareStatement("delete from COP_RESPONSE where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = COP_RESPONSE.correlation_id FETCH FIRST " + maxRows + " ROWS ONLY)");
+        PreparedStatement stmt = prepareStatement(c, "delete from COP_RESPONSE where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = COP_RESPONSE.correlation_id FETCH FIRST ? ROWS ONLY)");
         stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+        stmt.setInt(2, maxRows);
         return stmt;
     }
 
@@ -97,7 +100,7 @@ public class DerbyDbDialect extends AbstractSqlDialect {
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4NotifyNoEarlyResponseHandling(Response<?> response, Acknowledge ack) throws Exception {
-        return new SqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+        return new SqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack, statementCache);
     }
 
     @Override
@@ -75,36 +75,39 @@ public class H2Dialect extends AbstractSqlDialect {
     @Override
     protected PreparedStatement createUpdateStateStmt(final Connection c, final int max) throws SQLException {
         final Timestamp NOW = new Timestamp(System.currentTimeMillis());
-        PreparedStatement pstmt = c.prepareStatement(queryUpdateQueueState + " LIMIT " + max);
+        PreparedStatement pstmt = prepareStatement(c, queryUpdateQueueState + " LIMIT ?");
         pstmt.setTimestamp(1, NOW);
         pstmt.setTimestamp(2, NOW);
+        pstmt.setInt(3, max);
         return pstmt;
     }
 
     @Override
     protected PreparedStatement createDequeueStmt(final Connection c, final String ppoolId, final int maxRows) throws SQLException {
-        PreparedStatement dequeueStmt = c.prepareStatement("select id,priority,data,object_state,creation_ts,last_mod_ts from COP_WORKFLOW_INSTANCE where id in (select WORKFLOW_INSTANCE_ID from COP_QUEUE where ppool_id = ? and engine_id is NULL order by priority, last_mod_ts) LIMIT " + maxRows);
+        PreparedStatement dequeueStmt = prepareStatement(c, "select id,priority,data,object_state,creation_ts,last_mod_ts from COP_WORKFLOW_INSTANCE where id in (select WORKFLOW_INSTANCE_ID from COP_QUEUE where ppool_id = ? and engine_id is NULL order by priority, last_mod_ts) LIMIT ?");
         dequeueStmt.setString(1, ppoolId);
+        dequeueStmt.setInt(2, maxRows);
         return dequeueStmt;
     }
 
     @Override
     protected PreparedStatement createDeleteStaleResponsesStmt(final Connection c, final int maxRows) throws SQLException {
-        PreparedStatement stmt = c.prepareStatement("delete from COP_RESPONSE where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = COP_RESPONSE.correlation_id LIMIT " + maxRows + ")");
+        PreparedStatement stmt = prepareStatement(c, "delete from COP_RESPONSE where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = COP_RESPONSE.correlation_id LIMIT ?)");
         stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+        stmt.setInt(2, maxRows);
         return stmt;
     }
 
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4error(Workflow<?> w, Throwable t, DBProcessingState dbProcessingState, Acknowledge ack) {
-        return new SqlSetToError.Command((PersistentWorkflow<?>) w, t, dbProcessingState, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+        return new SqlSetToError.Command((PersistentWorkflow<?>) w, t, dbProcessingState, System.currentTimeMillis() + dbBatchingLatencyMSec, ack, statementCache);
     }
 
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4NotifyNoEarlyResponseHandling(Response<?> response, Acknowledge ack) throws Exception {
-        return new SqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+        return new SqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack, statementCache);
     }
 
     @Override
@@ -22,8 +22,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.CopperException;
@@ -35,10 +37,12 @@ import org.copperengine.core.Workflow;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.common.WorkflowRepository;
 import org.copperengine.core.db.utility.JdbcUtils;
+import org.copperengine.core.db.utility.StatementCache;
 import org.copperengine.core.internal.WorkflowAccessor;
 import org.copperengine.core.monitoring.NullRuntimeStatisticsCollector;
 import org.copperengine.core.monitoring.RuntimeStatisticsCollector;
 import org.copperengine.core.monitoring.StmtStatistic;
+import org.copperengine.core.monitoring.WorkflowTimeline;
 import org.copperengine.core.util.FunctionWithException;
 import org.copperengine.management.DatabaseDialectMXBean;
 import org.copperengine.management.model.AuditTrailInfo;
@@ -68,6 +72,8 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
     private StmtStatistic deleteStaleResponsesStmtStatistic;
     private StmtStatistic dequeueWait4RespLdrStmtStatistic;
     private StmtStatistic selectQueueSizeStmtStatistic;
+    private StmtStatistic selectReadyProcessorPoolsStmtStatistic;
+    private StmtStatistic enqueueTimedOutStmtStatistic;
     private final Map<String, ResponseLoader> responseLoaders = new HashMap<String, ResponseLoader>();
     private WorkflowPersistencePlugin workflowPersistencePlugin = WorkflowPersistencePlugin.NULL_PLUGIN;
 
@@ -81,9 +87,11 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
     private RuntimeStatisticsCollector runtimeStatisticsCollector = new NullRuntimeStatisticsCollector();
     private Serializer serializer = new StandardJavaSerializer();
     private boolean removeWhenFinished = true;
+    private volatile boolean recordTimelines = false;
     private long defaultStaleResponseRemovalTimeout = 60 * 60 * 1000;
     private int dbBatchingLatencyMSec = 0;
     private boolean concurrentResponseLoading = true;
+    private volatile StatementCache statementCache;
 
     public OracleDialect() {
     }
@@ -105,6 +113,8 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         deleteStaleResponsesStmtStatistic = new StmtStatistic("DBStorage.deleteStaleResponses", runtimeStatisticsCollector);
         dequeueWait4RespLdrStmtStatistic = new StmtStatistic("DBStorage.wait4resLoader", runtimeStatisticsCollector);
         selectQueueSizeStmtStatistic = new StmtStatistic("DBStorage.selectQueueSize", runtimeStatisticsCollector);
+        enqueueTimedOutStmtStatistic = new StmtStatistic("DBStorage.enqueue.timedOut", runtimeStatisticsCollector);
+        selectReadyProcessorPoolsStmtStatistic = new StmtStatistic("DBStorage.selectReadyProcessorPools", runtimeStatisticsCollector);
     }
 
     public void setConcurrentResponseLoading(boolean concurrentResponseLoading) {
@@ -134,6 +144,22 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         this.removeWhenFinished = removeWhenFinished;
     }
 
+    /**
+     * Not supported, the enqueue procedure of the COP_COREENGINE package always includes expired timeouts.
+     * {@link #enqueueTimedOut(int, Connection)} may be used anyway, e.g. to reduce the timeout latency.
+     */
+    @Override
+    public void setUpdateQueueStateIncludesTimeouts(boolean updateQueueStateIncludesTimeouts) {
+        if (!updateQueueStateIncludesTimeouts) {
+            logger.info("setUpdateQueueStateIncludesTimeouts(false) is not supported by {} - ignored", getClass().getSimpleName());
+        }
+    }
+
+    @Override
+    public void setRecordTimelines(boolean recordTimelines) {
+        this.recordTimelines = recordTimelines;
+    }
+
     public void setEngineIdProvider(EngineIdProvider engineIdProvider) {
         this.engineIdProvider = engineIdProvider;
     }
@@ -206,8 +232,9 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         responseLoader.beginTxn();
 
         final List<OracleSetToError.Command> invalidWorkflowInstances = new ArrayList<OracleSetToError.Command>();
-        final PreparedStatement dequeueStmt = con.prepareStatement("select id,priority,data,rowid,long_data,creation_ts,object_state,long_object_state,last_mod_ts from COP_WORKFLOW_INSTANCE where rowid in (select * from (select WFI_ROWID from COP_QUEUE where ppool_id=? and engine_id is null order by ppool_id, priority, last_mod_ts) where rownum <= ?)");
+        final PreparedStatement dequeueStmt = StatementCache.prepareStatement(statementCache, con, "select id,priority,data,rowid,long_data,creation_ts,object_state,long_object_state,last_mod_ts from COP_WORKFLOW_INSTANCE where rowid in (select * from (select WFI_ROWID from COP_QUEUE where ppool_id=? and engine_id is null order by ppool_id, priority, last_mod_ts) where rownum <= ?)");
         final Map<String, Workflow<?>> map = new HashMap<String, Workflow<?>>(max * 3);
+        final boolean stampTimelines = recordTimelines;
         try {
             dequeueStmt.setString(1, ppoolId);
             dequeueStmt.setInt(2, max);
@@ -234,7 +261,9 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
                     SerializedWorkflow sw = new SerializedWorkflow();
                     sw.setData(data);
                     sw.setObjectState(objectState);
+                    final long deserializationStart = System.nanoTime();
                     PersistentWorkflow<?> wf = (PersistentWorkflow<?>) serializer.deserializeWorkflow(sw, wfRepository);
+                    final long deserializationNanos = System.nanoTime() - deserializationStart;
                     wf.setId(id);
                     wf.setProcessorPoolId(ppoolId);
                     wf.setPriority(prio);
@@ -243,6 +272,12 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
                     wf.oldProcessorPoolId = ppoolId;
                     WorkflowAccessor.setCreationTS(wf, new Date(creationTS.getTime()));
                     WorkflowAccessor.setLastActivityTS(wf, new Date(lastModTS.getTime()));
+                    if (stampTimelines) {
+                        final WorkflowTimeline timeline = new WorkflowTimeline();
+                        timeline.setDeserializationNanos(deserializationNanos);
+                        timeline.stampReady(lastModTS.getTime());
+                        WorkflowAccessor.setTimeline(wf, timeline);
+                    }
                     map.put(wf.getId(), wf);
                     responseLoader.enqueue(wf);
                 } catch (Exception e) {
@@ -251,7 +286,7 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
                 }
             }
         } finally {
-            JdbcUtils.closeStatement(dequeueStmt);
+            StatementCache.releaseStatement(statementCache, dequeueStmt);
         }
         logger.trace("Done fetching results. Waiting for response loader to finishe");
         dequeueWait4RespLdrStmtStatistic.start();
@@ -301,6 +336,58 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         }
     }
 
+    @Override
+    public int enqueueTimedOut(final int max, final Connection con) throws SQLException {
+        final long startTS = System.currentTimeMillis();
+        lock(con, "updateQueueState");
+        final PreparedStatement queryStmt = StatementCache.prepareStatement(statementCache, con, "select WORKFLOW_INSTANCE_ID, rowidtochar(wfi_rowid), ppool_id, priority from COP_WAIT where state=0 and timeout_ts < systimestamp and rownum <= ?");
+        final PreparedStatement updStmt = StatementCache.prepareStatement(statementCache, con, "update COP_WAIT set state=1 where WORKFLOW_INSTANCE_ID=?");
+        final PreparedStatement insStmt = StatementCache.prepareStatement(statementCache, con, "INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, wfi_rowid) VALUES (?,?,SYSTIMESTAMP,chartorowid(?))");
+        try {
+            enqueueTimedOutStmtStatistic.start();
+            queryStmt.setInt(1, max);
+            final ResultSet rs = queryStmt.executeQuery();
+            // a workflow instance waiting for several correlation ids has one row per correlation id
+            final Set<String> wfiIds = new HashSet<String>();
+            while (rs.next()) {
+                final String wfiId = rs.getString(1);
+                if (!wfiIds.add(wfiId))
+                    continue;
+                updStmt.setString(1, wfiId);
+                updStmt.addBatch();
+                insStmt.setString(1, rs.getString(3));
+                insStmt.setInt(2, rs.getInt(4));
+                insStmt.setString(3, rs.getString(2));
+                insStmt.addBatch();
+            }
+            rs.close();
+            if (!wfiIds.isEmpty()) {
+                insStmt.executeBatch();
+                updStmt.executeBatch();
+            }
+            enqueueTimedOutStmtStatistic.stop(wfiIds.isEmpty() ? 1 : wfiIds.size());
+            logger.debug("Enqueued {} timed out workflow instances in {} msec", wfiIds.size(), System.currentTimeMillis() - startTS);
+            return wfiIds.size();
+        } finally {
+            StatementCache.releaseStatement(statementCache, insStmt);
+            StatementCache.releaseStatement(statementCache, updStmt);
+            StatementCache.releaseStatement(statementCache, queryStmt);
+        }
+    }
+
+    @Override
+    public Date queryNextTimeout(final Connection con) throws SQLException {
+        final PreparedStatement stmt = StatementCache.prepareStatement(statementCache, con, "select min(timeout_ts) from COP_WAIT where state=0");
+        try {
+            final ResultSet rs = stmt.executeQuery();
+            final Timestamp nextTimeout = rs.next() ? rs.getTimestamp(1) : null;
+            rs.close();
+            return nextTimeout;
+        } finally {
+            StatementCache.releaseStatement(statementCache, stmt);
+        }
+    }
+
     @Override
     public int deleteStaleResponse(Connection con, int maxRows) throws Exception {
         if (logger.isTraceEnabled())
@@ -308,16 +395,17 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
 
         lock(con, "deleteStaleResponse");
 
-        final PreparedStatement stmt = con.prepareStatement("delete from COP_RESPONSE r where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = r.correlation_id) and rownum <= " + maxRows);
+        final PreparedStatement stmt = StatementCache.prepareStatement(statementCache, con, "delete from COP_RESPONSE r where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = r.correlation_id) and rownum <= ?");
         try {
             stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            stmt.setInt(2, maxRows);
             deleteStaleResponsesStmtStatistic.start();
             final int rowCount = stmt.executeUpdate();
             deleteStaleResponsesStmtStatistic.stop(rowCount);
             logger.trace("deleted {} stale response(s).", rowCount);
             return rowCount;
         } finally {
-            JdbcUtils.closeStatement(stmt);
+            StatementCache.releaseStatement(statementCache, stmt);
         }
     }
 
@@ -746,6 +834,51 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         return dbBatchingLatencyMSec;
     }
 
+    /**
+     * Sets the maximum number of prepared statements, that are cached for reuse in dequeue and stale response
+     * removal. A size of 0, which is the default, disables the cache.
+     * Note that the Oracle JDBC driver offers an implicit statement cache on its own, which should be preferred if
+     * available.
+     *
+     * @param statementCacheSize
+     *        maximum number of cached statements
+     */
+    @Override
+    public void setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0)
+            throw new IllegalArgumentException("statementCacheSize must not be negative");
+        logger.info("setStatementCacheSize({})", statementCacheSize);
+        final StatementCache oldCache = statementCache;
+        statementCache = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+        if (oldCache != null) {
+            oldCache.clear();
+        }
+    }
+
+    @Override
+    public int getStatementCacheSize() {
+        final StatementCache cache = statementCache;
+        return cache != null ? cache.getMaxSize() : 0;
+    }
+
+    @Override
+    public long getStatementCacheHitCount() {
+        final StatementCache cache = statementCache;
+        return cache != null ? cache.getHitCount() : 0L;
+    }
+
+    @Override
+    public long getStatementCacheMissCount() {
+        final StatementCache cache = statementCache;
+        return cache != null ? cache.getMissCount() : 0L;
+    }
+
+    @Override
+    public double getStatementCacheHitRate() {
+        final StatementCache cache = statementCache;
+        return cache != null ? cache.getHitRate() : 0.0;
+    }
+
     @Override
     public String getDialectDescription() {
         return "Oracle";
@@ -916,6 +1049,29 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         return queueSize;
     }
 
+    @Override
+    public Set<String> queryReadyProcessorPools(Collection<String> processorPoolIds, Connection con) throws SQLException {
+        final Set<String> readyProcessorPools = new HashSet<String>();
+        selectReadyProcessorPoolsStmtStatistic.start();
+        final PreparedStatement pstmt = StatementCache.prepareStatement(statementCache, con, "SELECT 1 FROM COP_QUEUE WHERE PPOOL_ID=? AND ENGINE_ID IS NULL");
+        try {
+            // one row is enough, so the query stops at the first ready workflow instance of the pool
+            pstmt.setMaxRows(1);
+            for (String ppoolId : processorPoolIds) {
+                pstmt.setString(1, ppoolId);
+                final ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    readyProcessorPools.add(ppoolId);
+                }
+                rs.close();
+            }
+        } finally {
+            StatementCache.releaseStatement(statementCache, pstmt);
+        }
+        selectReadyProcessorPoolsStmtStatistic.stop(readyProcessorPools.size());
+        return readyProcessorPools;
+    }
+
 
     private StringBuilder appendQueryBase(StringBuilder sql, List<Object> params, WorkflowInstanceFilter filter) {
         sql.append(" FROM (SELECT w.timeout, w.classname, (CASE WHEN q.wfi_rowid IS NOT NULL AND w.STATE=2 THEN 0 ELSE w.STATE END) STATE, w.ID, w.PRIORITY, w.PPOOL_ID, w.DATA, w.OBJECT_STATE, w.CREATION_TS, w.LAST_MOD_TS, q.ENGINE_ID FROM COP_WORKFLOW_INSTANCE w LEFT OUTER JOIN COP_QUEUE q on w.rowid = q.wfi_rowid) x WHERE 1=1");
@@ -1007,6 +1163,31 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
                     sqlQueryErrorData.toString(), con, (FunctionWithException<ResultSet,PersistentWorkflow<?>>) this::decode);
     }
 
+    @Override
+    public List<WorkflowInstanceHeader> queryWorkflowInstanceHeaders(WorkflowInstanceFilter filter, WorkflowInstanceProjection projection, String startAfterId, int max, Connection con) throws SQLException {
+        final StringBuilder sql = new StringBuilder();
+        if (projection == WorkflowInstanceProjection.FULL) {
+            sql.append("SELECT x.*");
+        } else {
+            sql.append("SELECT x.ID, x.CLASSNAME, x.STATE, x.PRIORITY, x.PPOOL_ID, x.CREATION_TS, x.LAST_MOD_TS, x.TIMEOUT");
+        }
+        final List<Object> params = new ArrayList<>();
+        appendQueryBase(sql, params, filter);
+        if (startAfterId != null) {
+            sql.append(" AND x.ID > ?");
+            params.add(startAfterId);
+        }
+        sql.append(" ORDER BY x.ID");
+        addLimitation(sql, max);
+
+        logger.debug("queryWorkflowInstanceHeaders: sql={}, params={}", sql, params);
+
+        final StringBuilder sqlQueryErrorData = new StringBuilder("select x.* from (select * from COP_WORKFLOW_INSTANCE_ERROR where WORKFLOW_INSTANCE_ID=? order by ERROR_TS desc) x where 1=1");
+        addLimitation(sqlQueryErrorData, 1);
+        return CommonSQLHelper.processHeaderResult(sql.toString(), params, sqlQueryErrorData.toString(), con, Math.min(max, 1000),
+                projection == WorkflowInstanceProjection.FULL ? (FunctionWithException<ResultSet,PersistentWorkflow<?>>) this::decode : null);
+    }
+
     @Override
     public int countWorkflowInstances(WorkflowInstanceFilter filter, Connection con) throws SQLException {
         final StringBuilder sql = new StringBuilder();
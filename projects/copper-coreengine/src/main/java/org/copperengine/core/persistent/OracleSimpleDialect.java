@@ -43,31 +43,34 @@ public class OracleSimpleDialect extends AbstractSqlDialect {
     @Override
     protected PreparedStatement createUpdateStateStmt(final Connection c, final int max) throws SQLException {
         final Timestamp NOW = new Timestamp(System.currentTimeMillis());
-        PreparedStatement pstmt = c.prepareStatement(queryUpdateQueueState + " AND ROWNUM <= " + max);
+        PreparedStatement pstmt = prepareStatement(c, queryUpdateQueueState + " AND ROWNUM <= ?");
         pstmt.setTimestamp(1, NOW);
         pstmt.setTimestamp(2, NOW);
+        pstmt.setInt(3, max);
         return pstmt;
     }
 
     @Override
     protected PreparedStatement createDequeueStmt(final Connection c, final String ppoolId, final int max) throws SQLException {
-        String sql = "select id,priority,data,object_state,creation_ts,last_mod_ts from COP_WORKFLOW_INSTANCE where id in (select * from (select WORKFLOW_INSTANCE_ID from COP_QUEUE where ppool_id = ? and engine_id is NULL order by priority, last_mod_ts) where rownum <= " + max + ")";
-        PreparedStatement dequeueStmt = c.prepareStatement(sql);
+        String sql = "select id,priority,data,object_state,creation_ts,last_mod_ts from COP_WORKFLOW_INSTANCE where id in (select * from (select WORKFLOW_INSTANCE_ID from COP_QUEUE where ppool_id = ? and engine_id is NULL order by priority, last_mod_ts) where rownum <= ?)";
+        PreparedStatement dequeueStmt = prepareStatement(c, sql);
         dequeueStmt.setString(1, ppoolId);
+        dequeueStmt.setInt(2, max);
         return dequeueStmt;
     }
 
     @Override
     protected PreparedStatement createDeleteStaleResponsesStmt(final Connection c, final int MAX_ROWS) throws SQLException {
-        PreparedStatement stmt = c.prepareStatement("delete from COP_RESPONSE where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = COP_RESPONSE.correlation_id AND ROWNUM <= " + MAX_ROWS + ")");
+        PreparedStatement stmt = prepareStatement(c, "delete from COP_RESPONSE where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = COP_RESPONSE.correlation_id AND ROWNUM <= ?)");
         stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+        stmt.setInt(2, MAX_ROWS);
         return stmt;
     }
 
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4error(Workflow<?> w, Throwable t, DBProcessingState dbProcessingState, Acknowledge ack) {
-        return new SqlSetToError.Command((PersistentWorkflow<?>) w, t, dbProcessingState, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+        return new SqlSetToError.Command((PersistentWorkflow<?>) w, t, dbProcessingState, System.currentTimeMillis() + dbBatchingLatencyMSec, ack, statementCache);
     }
 
     @SuppressWarnings("rawtypes")
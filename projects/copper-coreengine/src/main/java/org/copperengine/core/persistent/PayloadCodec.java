@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.copperengine.core.Response;
+
+/**
+ * Encodes the payload of a {@link Response} in the binary response format of the {@link StandardJavaSerializer}, see
+ * {@link StandardJavaSerializer#setBinaryResponses(boolean)}. Payloads of the common JDK types like String, Integer,
+ * Long, Boolean and byte[] are encoded by COPPER itself; payloads no codec can encode fall back to java serialization.
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return the id of this codec, that is stored in front of each payload encoded by this codec, in order to find
+     *         the codec again when decoding. Must be unique and in the range from 32 to 255, as lower ids are reserved
+     *         for COPPER.
+     */
+    int getId();
+
+    /**
+     * @param payload
+     *        the payload of a response, not null
+     * @return true, if this codec is able to encode the payload
+     */
+    boolean canEncode(Object payload);
+
+    void encode(Object payload, DataOutput out) throws IOException;
+
+    Object decode(DataInput in) throws IOException, ClassNotFoundException;
+
+}
@@ -24,6 +24,7 @@ import org.copperengine.core.Workflow;
 import org.copperengine.core.common.PriorityProcessorPool;
 import org.copperengine.core.common.WfPriorityQueue;
 import org.copperengine.core.internal.WorkflowAccessor;
+import org.copperengine.core.monitoring.WorkflowTimeline;
 import org.copperengine.core.persistent.txn.TransactionController;
 import org.copperengine.management.PersistentPriorityProcessorPoolMXBean;
 import org.slf4j.Logger;
@@ -43,6 +44,7 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
     private TransactionController transactionController;
 
     private Thread thread;
+    private volatile DequeueCoordinator dequeueCoordinator;
     private volatile boolean shutdown = false;
     private final Object mutexEnqueue = new Object();
     private final Object mutexQueueSize = new Object();
@@ -54,6 +56,14 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
     private volatile int _dequeueBulkSize = DEFAULT_DEQUEUE_SIZE;
     private Integer oldDequeueBulkSize = null;
 
+    private volatile int adaptiveDequeueTargetMSec = 0;
+    private volatile int adaptiveDequeueMinBulkSize = 10;
+    private volatile int adaptiveDequeueMaxBulkSize = 5 * DEFAULT_DEQUEUE_SIZE;
+    private volatile int adaptiveDequeueMaxUpperThreshold = 10 * DEFAULT_DEQUEUE_SIZE;
+    private volatile AdaptiveDequeueController adaptiveDequeueController = null;
+    private boolean upperThresholdReached = false;
+    private long upperThresholdReachedTS;
+
     /**
      * Creates a new {@link PersistentPriorityProcessorPool} with as many worker threads as processors available on the
      * corresponding environment. <code>id</code> and <code>transactionControler</code> need to be initialized later
@@ -99,6 +109,10 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
             @Override
             public Workflow<?> poll() {
                 Workflow<?> wf = super.poll();
+                final AdaptiveDequeueController controller = adaptiveDequeueController;
+                if (wf != null && controller != null) {
+                    controller.recordProcessed();
+                }
                 if (!notifiedLowerThreshold && size() < lowerThreshold) {
                     signalQueueSizeBelowLowerThreshold();
                     notifiedLowerThreshold = true;
@@ -117,6 +131,13 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
         super.startup();
         if (transactionController == null)
             throw new NullPointerException("property transactionController is null");
+        final DequeueCoordinator coordinator = getEngine() instanceof PersistentScottyEngine ? ((PersistentScottyEngine) getEngine()).getDequeueCoordinator() : null;
+        if (coordinator != null) {
+            logger.info("dequeueing through the engine's dequeue coordinator");
+            dequeueCoordinator = coordinator;
+            coordinator.register(this);
+            return;
+        }
         thread = new Thread(new Runnable() {
             @Override
             public void run() {
@@ -130,7 +151,12 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
     public synchronized void shutdown() {
         super.shutdown();
         shutdown = true;
-        thread.interrupt();
+        final DequeueCoordinator coordinator = dequeueCoordinator;
+        if (coordinator != null) {
+            coordinator.unregister(this);
+        } else if (thread != null) {
+            thread.interrupt();
+        }
     }
 
     private void run() {
@@ -144,6 +170,7 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
                     synchronized (queue) {
                         queueSize = queue.size();
                     }
+                    adaptDequeueSizing(queueSize);
                     if (queueSize < upperThreshold) {
                         break;
                     }
@@ -154,7 +181,9 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
                 final int dequeueBulkSize = _dequeueBulkSize;
                 if (dequeueBulkSize > 0) {
                     logger.trace("Dequeueing elements from DB...");
+                    final long startTS = System.currentTimeMillis();
                     rv = dbStorage.dequeue(getId(), dequeueBulkSize);
+                    recordDequeueLatency(System.currentTimeMillis() - startTS);
                 } else {
                     logger.trace("dequeueBulkSize is zero - dequeue suspended.");
                     rv = Collections.emptyList();
@@ -167,14 +196,7 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
                     doWait(emptyQueueWaitMSec);
                 } else {
                     logger.trace("Dequeue returned {} elements.", rv.size());
-                    for (Workflow<?> wf : rv) {
-                        WorkflowAccessor.setProcessingState(wf, ProcessingState.DEQUEUED);
-                        engine.register(wf);
-                    }
-                    synchronized (queue) {
-                        queue.addAll(rv);
-                        queue.notifyAll();
-                    }
+                    enqueueDequeued(rv);
                 }
             } catch (InterruptedException e) {
                 logger.info("interrupted");
@@ -185,9 +207,105 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
         logger.info("stopped");
     }
 
+    /**
+     * Registers workflow instances dequeued from the storage with the engine and adds them to the memory queue.
+     */
+    void enqueueDequeued(List<Workflow<?>> rv) {
+        final PersistentScottyEngine engine = (PersistentScottyEngine) getEngine();
+        final boolean stampTimelines = engine.getWorkflowTimelineRecorder() != null;
+        for (Workflow<?> wf : rv) {
+            WorkflowAccessor.setProcessingState(wf, ProcessingState.DEQUEUED);
+            engine.register(wf);
+            final WorkflowTimeline timeline = stampTimelines ? WorkflowAccessor.getTimeline(wf) : null;
+            if (timeline != null) {
+                timeline.stampDequeued();
+                timeline.stampPoolQueued();
+            }
+        }
+        synchronized (queue) {
+            queue.addAll(rv);
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of workflow instances, that the {@link DequeueCoordinator} may dequeue for this pool now:
+     * zero, if dequeue is suspended or the memory queue reached the upper threshold, and otherwise the dequeue bulk
+     * size. Once the upper threshold is reached, the pool waits like its own dequeue thread would: it returns zero
+     * until the queue size fell below the lower threshold or <code>upperThresholdReachedWaitMSec</code> elapsed.
+     * <p>
+     * Only called by the dequeue coordinator thread.
+     */
+    int getDequeueCapacity(long now) {
+        if (shutdown)
+            return 0;
+        int queueSize = 0;
+        synchronized (queue) {
+            queueSize = queue.size();
+        }
+        adaptDequeueSizing(queueSize);
+        if (upperThresholdReached) {
+            if (queueSize >= lowerThreshold && now < upperThresholdReachedTS + upperThresholdReachedWaitMSec) {
+                return 0;
+            }
+            upperThresholdReached = false;
+        }
+        if (queueSize >= upperThreshold) {
+            logger.trace("Queue size {} >= upper threshold {}. Waiting...", queueSize, upperThreshold);
+            upperThresholdReached = true;
+            upperThresholdReachedTS = now;
+            return 0;
+        }
+        return _dequeueBulkSize;
+    }
+
+    /**
+     * Returns the time in milliseconds, until this pool stops waiting for its queue size to fall below the lower
+     * threshold, or {@link Long#MAX_VALUE}, if it is not waiting.
+     * <p>
+     * Only called by the dequeue coordinator thread.
+     */
+    long getUpperThresholdReachedWaitRemaining(long now) {
+        if (!upperThresholdReached)
+            return Long.MAX_VALUE;
+        return Math.max(0, upperThresholdReachedTS + upperThresholdReachedWaitMSec - now);
+    }
+
+    void recordDequeueLatency(long dequeueLatencyMSec) {
+        final AdaptiveDequeueController controller = adaptiveDequeueController;
+        if (controller != null) {
+            controller.recordDequeue(dequeueLatencyMSec);
+        }
+    }
+
+    /**
+     * Applies the values computed by the adaptive dequeue controller, if adaptive dequeue sizing is enabled.
+     */
+    private synchronized void adaptDequeueSizing(int queueSize) {
+        final AdaptiveDequeueController controller = adaptiveDequeueController;
+        if (controller == null || !controller.update(System.currentTimeMillis(), queueSize)) {
+            return;
+        }
+        upperThreshold = controller.getUpperThreshold();
+        lowerThreshold = controller.getLowerThreshold();
+        if (oldDequeueBulkSize == null) {
+            _dequeueBulkSize = controller.getDequeueBulkSize();
+        } else {
+            // dequeue is suspended - apply the new bulk size on resume
+            oldDequeueBulkSize = controller.getDequeueBulkSize();
+        }
+        logger.debug("Adapted dequeue sizing: processingRate={}/s, dequeueLatency={}ms, lowerThreshold={}, upperThreshold={}, dequeueBulkSize={}",
+                (long) controller.getProcessingRatePerSec(), (long) controller.getDequeueLatencyMSec(), lowerThreshold, upperThreshold, controller.getDequeueBulkSize());
+    }
+
     @Override
     public void doNotify() {
         logger.trace("doNotify");
+        final DequeueCoordinator coordinator = dequeueCoordinator;
+        if (coordinator != null) {
+            coordinator.doNotify();
+            return;
+        }
         synchronized (mutexEnqueue) {
             mutexEnqueue.notify();
         }
@@ -250,6 +368,87 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
         this._dequeueBulkSize = dequeueBulkSize;
     }
 
+    /**
+     * Enables adaptive dequeue sizing. If set to a value &gt; 0, the lower and upper threshold and the dequeue bulk size
+     * are continuously recomputed from the measured processing rate and dequeue latency of this pool, aiming at
+     * roughly <code>adaptiveDequeueTargetMSec</code> milliseconds of buffered work in the memory queue. The statically
+     * configured values are used as starting point. A value of 0 (the default) disables adaptive dequeue sizing.
+     * 
+     * @param adaptiveDequeueTargetMSec
+     *        target amount of buffered work in milliseconds, or 0 to disable adaptive sizing
+     */
+    public synchronized void setAdaptiveDequeueTargetMSec(int adaptiveDequeueTargetMSec) {
+        if (adaptiveDequeueTargetMSec < 0)
+            throw new IllegalArgumentException();
+        this.adaptiveDequeueTargetMSec = adaptiveDequeueTargetMSec;
+        if (adaptiveDequeueTargetMSec == 0) {
+            adaptiveDequeueController = null;
+        } else {
+            final AdaptiveDequeueController controller = new AdaptiveDequeueController(adaptiveDequeueTargetMSec, adaptiveDequeueMinBulkSize, adaptiveDequeueMaxBulkSize, adaptiveDequeueMaxUpperThreshold, 1000);
+            controller.init(lowerThreshold, upperThreshold, oldDequeueBulkSize == null ? _dequeueBulkSize : oldDequeueBulkSize, System.currentTimeMillis());
+            adaptiveDequeueController = controller;
+        }
+        logger.info("adaptiveDequeueTargetMSec set to {}", adaptiveDequeueTargetMSec);
+    }
+
+    public int getAdaptiveDequeueTargetMSec() {
+        return adaptiveDequeueTargetMSec;
+    }
+
+    /**
+     * Sets the lower bound for the dequeue bulk size computed by adaptive dequeue sizing.
+     * Takes effect the next time adaptive dequeue sizing is enabled.
+     */
+    public void setAdaptiveDequeueMinBulkSize(int adaptiveDequeueMinBulkSize) {
+        if (adaptiveDequeueMinBulkSize <= 0)
+            throw new IllegalArgumentException();
+        this.adaptiveDequeueMinBulkSize = adaptiveDequeueMinBulkSize;
+    }
+
+    public int getAdaptiveDequeueMinBulkSize() {
+        return adaptiveDequeueMinBulkSize;
+    }
+
+    /**
+     * Sets the upper bound for the dequeue bulk size computed by adaptive dequeue sizing.
+     * Takes effect the next time adaptive dequeue sizing is enabled.
+     */
+    public void setAdaptiveDequeueMaxBulkSize(int adaptiveDequeueMaxBulkSize) {
+        if (adaptiveDequeueMaxBulkSize <= 0)
+            throw new IllegalArgumentException();
+        this.adaptiveDequeueMaxBulkSize = adaptiveDequeueMaxBulkSize;
+    }
+
+    public int getAdaptiveDequeueMaxBulkSize() {
+        return adaptiveDequeueMaxBulkSize;
+    }
+
+    /**
+     * Sets the upper bound for the upper threshold computed by adaptive dequeue sizing.
+     * Takes effect the next time adaptive dequeue sizing is enabled.
+     */
+    public void setAdaptiveDequeueMaxUpperThreshold(int adaptiveDequeueMaxUpperThreshold) {
+        if (adaptiveDequeueMaxUpperThreshold <= 0)
+            throw new IllegalArgumentException();
+        this.adaptiveDequeueMaxUpperThreshold = adaptiveDequeueMaxUpperThreshold;
+    }
+
+    public int getAdaptiveDequeueMaxUpperThreshold() {
+        return adaptiveDequeueMaxUpperThreshold;
+    }
+
+    @Override
+    public double getMeasuredProcessingRate() {
+        final AdaptiveDequeueController controller = adaptiveDequeueController;
+        return controller == null ? -1.0 : controller.getProcessingRatePerSec();
+    }
+
+    @Override
+    public double getMeasuredDequeueLatencyMSec() {
+        final AdaptiveDequeueController controller = adaptiveDequeueController;
+        return controller == null ? -1.0 : controller.getDequeueLatencyMSec();
+    }
+
     protected TransactionController getTransactionController() {
         return transactionController;
     }
@@ -275,6 +474,11 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
     }
 
     private void signalQueueSizeBelowLowerThreshold() {
+        final DequeueCoordinator coordinator = dequeueCoordinator;
+        if (coordinator != null) {
+            coordinator.doNotify();
+            return;
+        }
         synchronized (mutexQueueSize) {
             mutexQueueSize.notify();
         }
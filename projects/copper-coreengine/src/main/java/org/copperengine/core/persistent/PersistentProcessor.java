@@ -25,6 +25,8 @@ import org.copperengine.core.ProcessingState;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.common.Processor;
 import org.copperengine.core.internal.WorkflowAccessor;
+import org.copperengine.core.monitoring.WorkflowTimeline;
+import org.copperengine.core.monitoring.WorkflowTimelineRecorder;
 import org.copperengine.core.persistent.txn.Transaction;
 import org.copperengine.core.persistent.txn.TransactionController;
 
@@ -46,6 +48,9 @@ public class PersistentProcessor extends Processor {
     @Override
     protected void process(final Workflow<?> wf) {
         final PersistentWorkflow<?> pw = (PersistentWorkflow<?>) wf;
+        final WorkflowTimelineRecorder recorder = engine.getWorkflowTimelineRecorder();
+        final WorkflowTimeline timeline = recorder != null ? WorkflowAccessor.getTimeline(pw) : null;
+        final Acknowledge checkpointAck = timeline != null ? new TimelineAcknowledge(recorder, pw, timeline) : new Acknowledge.BestEffortAcknowledge();
         try {
             transactionController.run(new Transaction<Void>() {
                 @Override
@@ -56,18 +61,24 @@ public class PersistentProcessor extends Processor {
                             WorkflowAccessor.setLastActivityTS(wf, new Date());
                             engine.injectDependencies(pw);
                             pw.__beforeProcess();
+                            if (timeline != null)
+                                timeline.stampRunStart();
                             pw.main();
+                            if (timeline != null)
+                                timeline.stampRunEnd();
                             WorkflowAccessor.setProcessingState(pw, ProcessingState.FINISHED);
-                            engine.getDbStorage().finish(pw, new Acknowledge.BestEffortAcknowledge());
+                            engine.getDbStorage().finish(pw, checkpointAck);
                             assert pw.get__stack().isEmpty() : "Stack must be empty";
                         } catch (Interrupt e) {
+                            if (timeline != null)
+                                timeline.stampRunEnd();
                             assert pw.get__stack().size() > 0;
                         } finally {
                             WorkflowAccessor.setLastActivityTS(wf, new Date());
                             engine.unregister(pw);
                         }
                         if (pw.registerCall != null) {
-                            engine.getDbStorage().registerCallback(pw.registerCall, new Acknowledge.BestEffortAcknowledge());
+                            engine.getDbStorage().registerCallback(pw.registerCall, checkpointAck);
                         }
                     }
                     return null;
@@ -79,6 +90,34 @@ public class PersistentProcessor extends Processor {
         }
     }
 
+    /**
+     * Stamps and records the timeline, as soon as the checkpoint is committed.
+     */
+    private static final class TimelineAcknowledge implements Acknowledge {
+        private final WorkflowTimelineRecorder recorder;
+        private final String workflowInstanceId;
+        private final Class<?> workflowClass;
+        private final WorkflowTimeline timeline;
+
+        TimelineAcknowledge(WorkflowTimelineRecorder recorder, PersistentWorkflow<?> wf, WorkflowTimeline timeline) {
+            this.recorder = recorder;
+            this.workflowInstanceId = wf.getId();
+            this.workflowClass = wf.getClass();
+            this.timeline = timeline;
+        }
+
+        @Override
+        public void onSuccess() {
+            timeline.stampCommitted();
+            recorder.record(workflowInstanceId, workflowClass, timeline);
+        }
+
+        @Override
+        public void onException(Throwable t) {
+            // failed resumptions are not recorded
+        }
+    }
+
     protected void handleError(PersistentWorkflow<?> wf, Exception exception) {
         logger.error("Storing error information for workflow instance...");
         try {
@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Date;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -33,6 +34,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.CopperException;
 import org.copperengine.core.CopperRuntimeException;
+import org.copperengine.core.EngineOverloadedException;
 import org.copperengine.core.EngineState;
 import org.copperengine.core.PersistentProcessingEngine;
 import org.copperengine.core.ProcessingState;
@@ -45,6 +47,8 @@ import org.copperengine.core.common.AbstractProcessingEngine;
 import org.copperengine.core.common.ProcessorPool;
 import org.copperengine.core.common.ProcessorPoolManager;
 import org.copperengine.core.internal.WorkflowAccessor;
+import org.copperengine.core.monitoring.WorkflowTimelineRecorder;
+import org.copperengine.management.BatcherMXBean;
 import org.copperengine.management.DBStorageMXBean;
 import org.copperengine.management.PersistentProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
@@ -70,6 +74,8 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
     private String engineClusterId;
     private ScottyDBStorageInterface dbStorage;
     private ProcessorPoolManager<? extends PersistentProcessorPool> processorPoolManager;
+    private DequeueCoordinator dequeueCoordinator;
+    private AdmissionController admissionController;
     private final Map<String, Workflow<?>> workflowMap = new ConcurrentHashMap<String, Workflow<?>>();
     private final Map<String, List<WaitHook>> waitHookMap = new HashMap<String, List<WaitHook>>();
     private final AtomicLong sequenceIdFactory = new AtomicLong(System.currentTimeMillis() * 10000L);
@@ -91,12 +97,66 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         return dbStorage;
     }
 
+    @Override
+    public void setWorkflowTimelineRecorder(WorkflowTimelineRecorder workflowTimelineRecorder) {
+        super.setWorkflowTimelineRecorder(workflowTimelineRecorder);
+        if (engineState != EngineState.RAW) {
+            updateRecordTimelines();
+        }
+    }
+
+    private void updateRecordTimelines() {
+        if (dbStorage instanceof ScottyDBStorage) {
+            ((ScottyDBStorage) dbStorage).setRecordTimelines(workflowTimelineRecorder != null);
+        }
+    }
+
     public void setProcessorPoolManager(ProcessorPoolManager<? extends PersistentProcessorPool> processorPoolManager) {
         this.processorPoolManager = processorPoolManager;
     }
 
+    /**
+     * Sets a {@link DequeueCoordinator}, that dequeues for all {@link PersistentPriorityProcessorPool}s of this engine
+     * in a single thread. Without a coordinator (the default) each pool runs its own dequeue thread.
+     * Must be set before the engine is started.
+     */
+    public void setDequeueCoordinator(DequeueCoordinator dequeueCoordinator) {
+        if (engineState != EngineState.RAW)
+            throw new IllegalStateException("engine is started already");
+        this.dequeueCoordinator = dequeueCoordinator;
+    }
+
+    public DequeueCoordinator getDequeueCoordinator() {
+        return dequeueCoordinator;
+    }
+
+    /**
+     * Sets an {@link AdmissionController}, that blocks or rejects new workflow instances and responses, while the
+     * database falls behind. Without a controller (the default) all requests are accepted.
+     * Must be set before the engine is started.
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        if (engineState != EngineState.RAW)
+            throw new IllegalStateException("engine is started already");
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
     @Override
     public void notify(Response<?> response, Acknowledge ack) {
+        notify(response, ack, true);
+    }
+
+    @Override
+    protected void notifyAsync(Response<?> response, Acknowledge ack) {
+        notify(response, ack, false);
+    }
+
+    private void notify(Response<?> response, Acknowledge ack, boolean mayBlock) {
         if (logger.isTraceEnabled())
             logger.trace("notify(" + response + ")");
         try {
@@ -107,7 +167,13 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
                 response.setSequenceId(sequenceIdFactory.incrementAndGet());
             }
             startupBlocker.pass();
+            if (admissionController != null) {
+                admissionController.admitResponses(mayBlock);
+            }
             dbStorage.notify(response, ack);
+        } catch (EngineOverloadedException e) {
+            ack.onException(e);
+            throw e;
         } catch (Exception e) {
             CopperRuntimeException error = new CopperRuntimeException("notify failed", e);
             ack.onException(error);
@@ -125,6 +191,9 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         logger.info("Engine is shutting down...");
         engineState = EngineState.SHUTTING_DOWN;
         processorPoolManager.shutdown();
+        if (dequeueCoordinator != null) {
+            dequeueCoordinator.shutdown();
+        }
         dbStorage.shutdown();
         super.shutdown();
         logger.info("Engine is stopped");
@@ -142,7 +211,14 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
             processorPoolManager.setEngine(this);
 
             wfRepository.start();
+            updateRecordTimelines();
             dbStorage.startup();
+            if (dequeueCoordinator != null) {
+                dequeueCoordinator.startup(this);
+            }
+            if (admissionController != null) {
+                startupAdmissionController();
+            }
 
             processorPoolManager.startup();
             startupBlocker.unblock();
@@ -156,6 +232,20 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         }
     }
 
+    private void startupAdmissionController() {
+        final BatcherMXBean batcher = dbStorage instanceof ScottyDBStorage ? ((ScottyDBStorage) dbStorage).getBatcherMXBean() : null;
+        admissionController.startup(
+                () -> batcher != null ? batcher.getQueueSize() : 0,
+                () -> batcher != null ? batcher.getAverageBatchLatencyMSec() : -1,
+                () -> {
+                    int size = 0;
+                    for (ProcessorPoolMXBean pp : getProcessorPools()) {
+                        size += pp.getMemoryQueueSize();
+                    }
+                    return size;
+                });
+    }
+
     @Override
     public void registerCallbacks(Workflow<?> w, WaitMode mode, long timeoutMsec, String... correlationIds) {
         if (logger.isTraceEnabled())
@@ -210,24 +300,10 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         try {
             startupBlocker.pass();
 
-            Set<String> ppoolIds = new HashSet<String>();
-            for (Workflow<?> wf : list) {
-                if (!(wf instanceof PersistentWorkflow<?>)) {
-                    throw new IllegalArgumentException(wf.getClass() + " is no instance of PersistentWorkflow");
-                }
-                if (wf.getId() == null) {
-                    wf.setId(createUUID());
-                }
-                if (wf.getProcessorPoolId() == null) {
-                    wf.setProcessorPoolId(PersistentProcessorPool.DEFAULT_POOL_ID);
-                }
-
-                if (processorPoolManager.getProcessorPool(wf.getProcessorPoolId()) == null) {
-                    logger.error("Unkown processor pool '" + wf.getProcessorPoolId() + "' - using default pool instead");
-                    wf.setProcessorPoolId(PersistentProcessorPool.DEFAULT_POOL_ID);
-                }
-
-                ppoolIds.add(wf.getProcessorPoolId());
+            final Set<String> ppoolIds = prepareRun(list);
+            if (admissionController != null) {
+                // never block while the caller's transaction is open
+                admissionController.admitWorkflows(list, con == null);
             }
             dbStorage.insert(list, con);
             for (String ppoolId : ppoolIds) {
@@ -243,6 +319,69 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         }
     }
 
+    @Override
+    protected CompletableFuture<Void> runAsync(List<Workflow<?>> list) {
+        if (logger.isTraceEnabled()) {
+            for (Workflow<?> w : list)
+                logger.trace("runAsync(" + w + ")");
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try {
+            startupBlocker.pass();
+
+            final Set<String> ppoolIds = prepareRun(list);
+            if (admissionController != null) {
+                admissionController.admitWorkflows(list, false);
+            }
+            dbStorage.insertAsync(list, new Acknowledge() {
+                @Override
+                public void onSuccess() {
+                    for (String ppoolId : ppoolIds) {
+                        notifyProcessorPool(ppoolId);
+                    }
+                    trackWfiStarted();
+                    future.complete(null);
+                }
+
+                @Override
+                public void onException(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Assigns ids and processor pools to the workflow instances, that are about to be inserted.
+     *
+     * @return the ids of the processor pools to notify after the insert
+     */
+    private Set<String> prepareRun(List<Workflow<?>> list) {
+        final Set<String> ppoolIds = new HashSet<String>();
+        for (Workflow<?> wf : list) {
+            if (!(wf instanceof PersistentWorkflow<?>)) {
+                throw new IllegalArgumentException(wf.getClass() + " is no instance of PersistentWorkflow");
+            }
+            if (wf.getId() == null) {
+                wf.setId(createUUID());
+            }
+            if (wf.getProcessorPoolId() == null) {
+                wf.setProcessorPoolId(PersistentProcessorPool.DEFAULT_POOL_ID);
+            }
+
+            if (processorPoolManager.getProcessorPool(wf.getProcessorPoolId()) == null) {
+                logger.error("Unkown processor pool '" + wf.getProcessorPoolId() + "' - using default pool instead");
+                wf.setProcessorPoolId(PersistentProcessorPool.DEFAULT_POOL_ID);
+            }
+
+            ppoolIds.add(wf.getProcessorPoolId());
+        }
+        return ppoolIds;
+    }
+
     /**
      * Enqueues the specified workflow instance into the engine for execution.
      *
@@ -274,6 +413,10 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
                 logger.error("Unkown processor pool '" + wf.getProcessorPoolId() + "' - using default pool instead");
                 wf.setProcessorPoolId(PersistentProcessorPool.DEFAULT_POOL_ID);
             }
+            if (admissionController != null) {
+                // never block while the caller's transaction is open
+                admissionController.admitWorkflows(Collections.<Workflow<?>>singletonList(wf), con == null);
+            }
             dbStorage.insert(wf, con);
             notifyProcessorPool(wf.getProcessorPoolId());
             trackWfiStarted();
@@ -399,6 +542,10 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
                     r.setSequenceId(sequenceIdFactory.incrementAndGet());
                 }
             }
+            if (admissionController != null) {
+                // never block while the caller's transaction is open
+                admissionController.admitResponses(c == null);
+            }
             dbStorage.notify(responses, c);
         } catch (RuntimeException e) {
             throw e;
@@ -18,12 +18,15 @@ package org.copperengine.core.persistent;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.Acknowledge.DefaultAcknowledge;
 import org.copperengine.core.CopperRuntimeException;
+import org.copperengine.core.Response;
 import org.copperengine.core.Workflow;
 
 /**
@@ -40,6 +43,29 @@ public abstract class PersistentWorkflow<E extends Serializable> extends Workflo
 
     private static final long serialVersionUID = 3232137844188440549L;
 
+    /**
+     * Serialized data or response, that is decoded on first access.
+     */
+    private static final class LazyValue {
+        final String correlationId;
+        final String serialized;
+        final Callable<?> decoder;
+
+        LazyValue(String correlationId, String serialized, Callable<?> decoder) {
+            this.correlationId = correlationId;
+            this.serialized = serialized;
+            this.decoder = decoder;
+        }
+
+        Object decode(String workflowInstanceId) {
+            try {
+                return decoder.call();
+            } catch (Exception e) {
+                throw new CopperRuntimeException("Decoding of workflow instance " + workflowInstanceId + " failed", e);
+            }
+        }
+    }
+
     transient RegisterCall registerCall;
     transient Set<String> waitCidList;
     transient List<String> responseIdList;
@@ -49,6 +75,8 @@ public abstract class PersistentWorkflow<E extends Serializable> extends Workflo
     transient ArrayList<Acknowledge.DefaultAcknowledge> checkpointAcknowledges = null;
     transient ArrayList<SavepointAware> savepointAwares = null;
     transient ErrorData errorData;
+    private transient volatile LazyValue lazyData;
+    private transient List<LazyValue> lazyResponses;
 
     void addWaitCorrelationId(final String cid) {
         if (waitCidList == null)
@@ -72,6 +100,70 @@ public abstract class PersistentWorkflow<E extends Serializable> extends Workflo
         setData((E) data);
     }
 
+    /**
+     * Used internally - sets the serialized data, that is decoded by the specified decoder on the first call of
+     * {@link #getData()}.
+     */
+    void setLazyData(String serializedData, Callable<?> decoder) {
+        lazyData = new LazyValue(null, serializedData, decoder);
+    }
+
+    /**
+     * Used internally
+     * @return the serialized data as it was read, if it was neither accessed nor replaced since, otherwise
+     *         <code>null</code>
+     */
+    String getUndecodedData() {
+        final LazyValue ld = lazyData;
+        return ld == null ? null : ld.serialized;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E getData() {
+        final LazyValue ld = lazyData;
+        if (ld != null) {
+            synchronized (ld) {
+                if (lazyData == ld) {
+                    super.setData((E) ld.decode(getId()));
+                    lazyData = null;
+                }
+            }
+        }
+        return super.getData();
+    }
+
+    @Override
+    public void setData(E data) {
+        lazyData = null;
+        super.setData(data);
+    }
+
+    /**
+     * Used internally - adds a serialized response, that is decoded by the specified decoder, as soon as the responses
+     * for its correlation id are accessed.
+     */
+    void addLazyResponse(String correlationId, String serializedResponse, Callable<Response<?>> decoder) {
+        if (lazyResponses == null)
+            lazyResponses = new ArrayList<LazyValue>();
+        lazyResponses.add(new LazyValue(correlationId, serializedResponse, decoder));
+    }
+
+    @Override
+    protected void beforeResponseAccess(String correlationId) {
+        if (lazyResponses == null)
+            return;
+        for (Iterator<LazyValue> it = lazyResponses.iterator(); it.hasNext();) {
+            final LazyValue lr = it.next();
+            if (correlationId == null || correlationId.equals(lr.correlationId)) {
+                it.remove();
+                putResponse((Response<?>) lr.decode(getId()));
+            }
+        }
+        if (lazyResponses.isEmpty())
+            lazyResponses = null;
+    }
+
     public void onLoad(PersistenceContext pc) {
     }
 
@@ -19,7 +19,10 @@ import java.sql.Connection;
 import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -54,6 +57,8 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
     private final IdCache cidStore4responses = new IdCache(10000, 10, TimeUnit.SECONDS);
     private final QueueNotifier queueState = new QueueNotifier();
     private final Object enqueueSignal = new Object();
+    private final Object timeoutSignal = new Object();
+    private final Object queueStateMutex = new Object();
     private int waitForEnqueueMSec = 500;
     private volatile int clocksAllowedDeltaMSec = 100;
     private int clocksCheckIntervalSeconds = 60;
@@ -65,11 +70,17 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
     private long deleteStaleResponsesIntervalMsec = 60L * 60L * 1000L;
 
     private Thread enqueueThread;
+    private Thread timeoutThread;
+    private boolean dedicatedTimeoutProcessing = false;
+    private int maxTimeoutCheckIntervalMSec = 1000;
+    private long nextTimeoutCheckTS = Long.MAX_VALUE;
+    private long earliestSignalledTimeoutTS = Long.MAX_VALUE;
     private ScheduledExecutorService scheduledExecutorService;
     private volatile boolean shutdown = false;
     private boolean checkDbConsistencyAtStartup = false;
 
     private CountDownLatch enqueueThreadTerminated = new CountDownLatch(1);
+    private CountDownLatch timeoutThreadTerminated = new CountDownLatch(1);
 
     public ScottyDBStorage() {
 
@@ -99,6 +110,13 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         this.dialect = dialect;
     }
 
+    /**
+     * @see DatabaseDialect#setRecordTimelines(boolean)
+     */
+    public void setRecordTimelines(boolean recordTimelines) {
+        dialect.setRecordTimelines(recordTimelines);
+    }
+
     protected <T> T run(final DatabaseTransaction<T> txn) throws Exception {
         return transactionController.run(txn);
     }
@@ -121,6 +139,36 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         this.waitForEnqueueMSec = waitForEnqueueMSec;
     }
 
+    /**
+     * If set to true, waiting workflow instances, whose timeout has expired, are enqueued by a dedicated thread,
+     * that reads the expired waits only and sleeps until the next timeout is due. The periodic queue state update
+     * then only handles workflow instances with responses. This keeps the timeout latency independent of the
+     * response processing and the costs of the queue state update independent of the number of waiting workflow
+     * instances. It requires the index on STATE and TIMEOUT_TS of COP_WAIT, see the create-schema scripts.
+     * Defaults to false.
+     *
+     * @param dedicatedTimeoutProcessing
+     *        whether to process the timeouts in a dedicated thread
+     */
+    public void setDedicatedTimeoutProcessing(boolean dedicatedTimeoutProcessing) {
+        this.dedicatedTimeoutProcessing = dedicatedTimeoutProcessing;
+    }
+
+    /**
+     * Sets the maximum time, that the dedicated timeout processing sleeps between two checks. It wakes up earlier,
+     * when the next timeout known to it is due. Waits registered by other engines are only noticed on the next check.
+     * Defaults to 1000 msec.
+     *
+     * @param maxTimeoutCheckIntervalMSec
+     *        maximum time period in milliseconds
+     * @see #setDedicatedTimeoutProcessing(boolean)
+     */
+    public void setMaxTimeoutCheckIntervalMSec(int maxTimeoutCheckIntervalMSec) {
+        if (maxTimeoutCheckIntervalMSec <= 0)
+            throw new IllegalArgumentException();
+        this.maxTimeoutCheckIntervalMSec = maxTimeoutCheckIntervalMSec;
+    }
+
     private void resumeBrokenBusinessProcesses() throws Exception {
         logger.info("resumeBrokenBusinessProcesses");
         run(new DatabaseTransaction<Void>() {
@@ -170,6 +218,23 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         }
     }
 
+    @Override
+    public void insertAsync(final List<Workflow<?>> wfs, final Acknowledge ack) throws Exception {
+        logger.trace("insertAsync(wfs.size={})", wfs.size());
+        executeBatchCommand(new SqlInsert.Command(wfs, dialect, new Acknowledge() {
+            @Override
+            public void onSuccess() {
+                signalEnqueue();
+                ack.onSuccess();
+            }
+
+            @Override
+            public void onException(Throwable t) {
+                ack.onException(t);
+            }
+        }));
+    }
+
     @Override
     public List<Workflow<?>> dequeue(final String ppoolId, final int max) throws Exception {
         if (max <= 0)
@@ -189,6 +254,32 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         }
     }
 
+    @Override
+    public Map<String, List<Workflow<?>>> dequeue(final Map<String, Integer> ppoolId2max) throws Exception {
+        final Set<String> readyProcessorPools = run(new DatabaseTransaction<Set<String>>() {
+            @Override
+            public Set<String> run(Connection con) throws Exception {
+                return dialect.queryReadyProcessorPools(ppoolId2max.keySet(), con);
+            }
+        });
+        final Map<String, List<Workflow<?>>> rv = new HashMap<String, List<Workflow<?>>>();
+        for (String ppoolId : readyProcessorPools) {
+            final int max = ppoolId2max.get(ppoolId);
+            if (max <= 0)
+                continue;
+            final List<Workflow<?>> wfs = run(new DatabaseTransaction<List<Workflow<?>>>() {
+                @Override
+                public List<Workflow<?>> run(Connection con) throws Exception {
+                    return dialect.dequeue(ppoolId, max, con);
+                }
+            });
+            if (!wfs.isEmpty()) {
+                rv.put(ppoolId, wfs);
+            }
+        }
+        return rv;
+    }
+
     private void waitForEnqueue() throws InterruptedException {
         logger.trace("waitForEnqueue...");
         synchronized (enqueueSignal) {
@@ -212,6 +303,37 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         queueState.signalQueueState();
     }
 
+    private void waitForTimeout(long waitTime) throws InterruptedException {
+        synchronized (timeoutSignal) {
+            final long now = System.currentTimeMillis();
+            if (earliestSignalledTimeoutTS != Long.MAX_VALUE) {
+                waitTime = Math.max(10, Math.min(waitTime, earliestSignalledTimeoutTS - now));
+                earliestSignalledTimeoutTS = Long.MAX_VALUE;
+            }
+            nextTimeoutCheckTS = now + waitTime;
+            try {
+                timeoutSignal.wait(waitTime);
+            } finally {
+                nextTimeoutCheckTS = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Makes sure, that the dedicated timeout processing checks the timeouts no later than the specified timestamp.
+     */
+    private void signalTimeout(long timeoutTS) {
+        synchronized (timeoutSignal) {
+            if (nextTimeoutCheckTS == Long.MAX_VALUE) {
+                // currently checking, so the timeout is taken into account for the next wait
+                earliestSignalledTimeoutTS = Math.min(earliestSignalledTimeoutTS, timeoutTS);
+            } else if (timeoutTS < nextTimeoutCheckTS) {
+                logger.trace("signalTimeout");
+                timeoutSignal.notify();
+            }
+        }
+    }
+
     @Override
     public void notify(final List<Response<?>> response, Acknowledge ack) throws Exception {
         for (Response<?> r : response)
@@ -224,6 +346,9 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
             if (enqueueThread != null)
                 return;
             
+            if (dedicatedTimeoutProcessing) {
+                dialect.setUpdateQueueStateIncludesTimeouts(false);
+            }
             dialect.startup();
 
             checkDbConsistencyAtStartup();
@@ -238,6 +363,16 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
             };
             enqueueThread.start();
 
+            if (dedicatedTimeoutProcessing) {
+                timeoutThread = new Thread("TIMEOUT") {
+                    @Override
+                    public void run() {
+                        enqueueTimedOut();
+                    }
+                };
+                timeoutThread.start();
+            }
+
             scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
 
             scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
@@ -311,6 +446,7 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         scheduledExecutorService.shutdown();
 
         shutdownEnqueueThread();
+        shutdownTimeoutThread();
 
         dialect.shutdown();
     }
@@ -324,6 +460,17 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         }
     }
 
+    private void shutdownTimeoutThread() {
+        if (timeoutThread == null)
+            return;
+        timeoutThread.interrupt();
+        try {
+            timeoutThreadTerminated.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            logger.warn("await interrupted", e);
+        }
+    }
+
     private void updateQueueState() {
         final int max = 5000;
         final int lowTraffic = 100;
@@ -335,12 +482,14 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
             int x = 0;
             logger.trace("Starting updateQueueState...");
             try {
-                x = run(new DatabaseTransaction<Integer>() {
-                    @Override
-                    public Integer run(Connection con) throws Exception {
-                        return dialect.updateQueueState(max, con);
-                    }
-                });
+                synchronized (queueStateMutex) {
+                    x = run(new DatabaseTransaction<Integer>() {
+                        @Override
+                        public Integer run(Connection con) throws Exception {
+                            return dialect.updateQueueState(max, con);
+                        }
+                    });
+                }
             } catch (Exception e) {
                 logger.error("updateQueueState failed", e);
             }
@@ -366,6 +515,50 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         enqueueThreadTerminated.countDown();
     }
 
+    private void enqueueTimedOut() {
+        final int max = 5000;
+        logger.info("started");
+        while (!shutdown) {
+            int x = 0;
+            long sleepTime = maxTimeoutCheckIntervalMSec;
+            try {
+                // serialized with the queue state update, as both move waiting workflow instances into the queue
+                synchronized (queueStateMutex) {
+                    x = run(new DatabaseTransaction<Integer>() {
+                        @Override
+                        public Integer run(Connection con) throws Exception {
+                            return dialect.enqueueTimedOut(max, con);
+                        }
+                    });
+                }
+                logger.trace("enqueueTimedOut returned x={}", x);
+                if (x > 0) {
+                    signalEnqueue();
+                }
+                if (x == max) {
+                    continue;
+                }
+                final Date nextTimeout = run(new DatabaseTransaction<Date>() {
+                    @Override
+                    public Date run(Connection con) throws Exception {
+                        return dialect.queryNextTimeout(con);
+                    }
+                });
+                if (nextTimeout != null) {
+                    sleepTime = Math.max(10, Math.min(nextTimeout.getTime() - System.currentTimeMillis(), sleepTime));
+                }
+            } catch (Exception e) {
+                logger.error("enqueueTimedOut failed", e);
+            }
+            try {
+                waitForTimeout(sleepTime);
+            } catch (InterruptedException ignore) {
+            }
+        }
+        logger.info("finished");
+        timeoutThreadTerminated.countDown();
+    }
+
     @Override
     public void insert(Workflow<?> wf, Connection con) throws Exception {
         if (con == null) {
@@ -528,6 +721,10 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
                     signalQueueState();
                 }
 
+                if (dedicatedTimeoutProcessing && rc.timeoutTS != null) {
+                    signalTimeout(rc.timeoutTS.getTime());
+                }
+
                 if (callback != null) {
                     callback.onSuccess();
                 }
@@ -677,6 +874,35 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         });
     }
 
+    @Override
+    public String streamWorkflowInstances(final WorkflowInstanceFilter filter, final WorkflowInstanceProjection projection, final String startAfterId, final int chunkSize, final WorkflowInstanceConsumer consumer) throws Exception {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be > 0");
+        int remaining = filter.getMax() > 0 ? filter.getMax() : Integer.MAX_VALUE;
+        String cursor = startAfterId;
+        while (remaining > 0) {
+            final int max = Math.min(chunkSize, remaining);
+            final String chunkStartAfterId = cursor;
+            final List<WorkflowInstanceHeader> chunk = run(new DatabaseTransaction<List<WorkflowInstanceHeader>>() {
+                @Override
+                public List<WorkflowInstanceHeader> run(Connection con) throws Exception {
+                    return dialect.queryWorkflowInstanceHeaders(filter, projection, chunkStartAfterId, max, con);
+                }
+            });
+            for (WorkflowInstanceHeader header : chunk) {
+                cursor = header.getId();
+                remaining--;
+                if (!consumer.accept(header)) {
+                    return cursor;
+                }
+            }
+            if (chunk.size() < max) {
+                return null;
+            }
+        }
+        return cursor;
+    }
+
     @Override
     public int countWorkflowInstances(final WorkflowInstanceFilter filter) throws Exception {
         return run(new DatabaseTransaction<Integer>() {
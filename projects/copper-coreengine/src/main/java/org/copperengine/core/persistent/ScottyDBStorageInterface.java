@@ -17,6 +17,7 @@ package org.copperengine.core.persistent;
 
 import java.sql.Connection;
 import java.util.List;
+import java.util.Map;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.DuplicateIdException;
@@ -62,6 +63,19 @@ public interface ScottyDBStorageInterface {
      */
     public void insert(final List<Workflow<?>> wfs, Acknowledge ack) throws DuplicateIdException, Exception;
 
+    /**
+     * Inserts a list of new workflows to the underlying database without blocking the calling thread, if the
+     * implementation supports it, e.g. by means of a batcher. All errors, including duplicate ids, are signalled
+     * through the Acknowledge object, which is called after the inserts are committed.
+     * @param wfs
+     *        workflows to be inserted
+     * @param ack
+     *         acknowledgment to notify about success or exception.
+     * @throws Exception
+     *         If the inserts can not be submitted at all
+     */
+    public void insertAsync(final List<Workflow<?>> wfs, Acknowledge ack) throws Exception;
+
     /**
      * Inserts a new workflow to the underlying database using the provided connection.
      * It is up to the caller commit or rollback and close the connection.
@@ -120,6 +134,20 @@ public interface ScottyDBStorageInterface {
     public List<Workflow<?>> dequeue(final String ppoolId, final int max)
             throws Exception;
 
+    /**
+     * Dequeues Workflow instances for several processor pools at once. First determines in a single transaction, which
+     * of the processor pools have workflow instances ready for processing, and then dequeues for these pools only.
+     * In contrast to {@link #dequeue(String, int)} this method does not block, if there is nothing to dequeue.
+     * @param ppoolId2max
+     *        maps the processor pool ids to the maximum number of workflows to dequeue for the pool
+     * @return
+     *        the dequeued workflows mapped by processor pool id. Pools without dequeued workflows may be missing.
+     * @throws Exception
+     *        Any exception which could happen in this procedure like losing database connection.
+     */
+    public Map<String, List<Workflow<?>>> dequeue(final Map<String, Integer> ppoolId2max)
+            throws Exception;
+
     /**
      * Asynchronous service to add a {@link Response} to the database.
      * Regarding to our best practices, this method should be called from "outside COPPER" from some user implemented adapter.
@@ -256,6 +284,34 @@ public interface ScottyDBStorageInterface {
 
     public int countWorkflowInstances(WorkflowInstanceFilter filter) throws Exception;
 
+    /**
+     * Streams all workflow instances matching the filter to the consumer, ordered by workflow instance id.
+     * <p>
+     * In contrast to {@link #queryWorkflowInstances(WorkflowInstanceFilter)}, the instances are read in chunks of
+     * <code>chunkSize</code> using keyset pagination (i.e. each chunk continues after the last id of the previous chunk)
+     * instead of an offset, so the cost of a chunk does not depend on its position in the result. At most one chunk is
+     * held in memory at a time and each chunk is read in its own transaction.
+     * The filter's <code>offset</code> is ignored, its <code>max</code> limits the total number of streamed instances
+     * (0 means unlimited).
+     *
+     * @param filter
+     *        the filter criteria
+     * @param projection
+     *        {@link WorkflowInstanceProjection#HEADER} to read only the header columns without deserializing any
+     *        workflow instance, {@link WorkflowInstanceProjection#FULL} to additionally deserialize them
+     * @param startAfterId
+     *        cursor returned by a previous call to continue from, or <code>null</code> to start at the beginning
+     * @param chunkSize
+     *        number of instances read per database round trip
+     * @param consumer
+     *        receives the instances one by one; returning <code>false</code> stops streaming
+     * @return a cursor (the id of the last instance passed to the consumer) to continue streaming later, or
+     *         <code>null</code> if all matching instances were streamed
+     * @throws Exception
+     *         Any Exception like losing database connection or thrown by the consumer.
+     */
+    public String streamWorkflowInstances(WorkflowInstanceFilter filter, WorkflowInstanceProjection projection, String startAfterId, int chunkSize, WorkflowInstanceConsumer consumer) throws Exception;
+
     public List<AuditTrailInfo> queryAuditTrailInstances(final AuditTrailInstanceFilter filter) throws Exception;
 
     public String queryAuditTrailMessage(final long id) throws Exception;
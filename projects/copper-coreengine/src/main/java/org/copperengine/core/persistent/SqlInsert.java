@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.batcher.AbstractBatchCommand;
+import org.copperengine.core.batcher.AcknowledgeCallbackWrapper;
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.BatchExecutor;
+
+/**
+ * Inserts new workflow instances within the batcher, using {@link DatabaseDialect#insert(List, Connection)}. If a
+ * batch fails, e.g. due to a duplicate id, the batcher retries its commands one by one, so only the failing command
+ * is acknowledged with an exception.
+ */
+class SqlInsert {
+
+    static final class Command extends AbstractBatchCommand<Executor, Command> {
+
+        private final List<Workflow<?>> wfs;
+        private final DatabaseDialect dialect;
+
+        public Command(List<Workflow<?>> wfs, DatabaseDialect dialect, Acknowledge ack) {
+            super(new AcknowledgeCallbackWrapper<Command>(ack));
+            this.wfs = wfs;
+            this.dialect = dialect;
+        }
+
+        @Override
+        public Executor executor() {
+            return Executor.INSTANCE;
+        }
+
+    }
+
+    static final class Executor extends BatchExecutor<Executor, Command> {
+
+        private static final Executor INSTANCE = new Executor();
+
+        @Override
+        public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
+            final DatabaseDialect dialect = ((Command) commands.iterator().next()).dialect;
+            final List<Workflow<?>> wfs = new ArrayList<Workflow<?>>();
+            for (BatchCommand<Executor, Command> cmd : commands) {
+                wfs.addAll(((Command) cmd).wfs);
+            }
+            dialect.insert(wfs, con);
+        }
+
+        @Override
+        public int maximumBatchSize() {
+            return 100;
+        }
+
+        @Override
+        public int preferredBatchSize() {
+            return 50;
+        }
+
+    }
+}
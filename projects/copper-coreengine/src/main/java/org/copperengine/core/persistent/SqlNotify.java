@@ -26,6 +26,7 @@ import org.copperengine.core.batcher.AbstractBatchCommand;
 import org.copperengine.core.batcher.AcknowledgeCallbackWrapper;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutor;
+import org.copperengine.core.db.utility.StatementCache;
 
 class SqlNotify {
 
@@ -34,12 +35,14 @@ class SqlNotify {
         final Response<?> response;
         final Serializer serializer;
         final long defaultStaleResponseRemovalTimeout;
+        final StatementCache statementCache;
 
-        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) {
+        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack, StatementCache statementCache) {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.response = response;
             this.serializer = serializer;
             this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
+            this.statementCache = statementCache;
         }
 
         @Override
@@ -66,7 +69,9 @@ class SqlNotify {
         @Override
         public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
             final Timestamp now = new Timestamp(System.currentTimeMillis());
-            try (PreparedStatement stmt = con.prepareStatement("INSERT INTO COP_RESPONSE (CORRELATION_ID, RESPONSE_TS, RESPONSE, RESPONSE_TIMEOUT, RESPONSE_META_DATA, RESPONSE_ID) VALUES (?,?,?,?,?,?)")) {
+            final StatementCache statementCache = ((Command) commands.iterator().next()).statementCache;
+            final PreparedStatement stmt = StatementCache.prepareStatement(statementCache, con, "INSERT INTO COP_RESPONSE (CORRELATION_ID, RESPONSE_TS, RESPONSE, RESPONSE_TIMEOUT, RESPONSE_META_DATA, RESPONSE_ID) VALUES (?,?,?,?,?,?)");
+            try {
                 for (BatchCommand<Executor, Command> _cmd : commands) {
                     Command cmd = (Command) _cmd;
                     stmt.setString(1, cmd.response.getCorrelationId());
@@ -79,6 +84,8 @@ class SqlNotify {
                     stmt.addBatch();
                 }
                 stmt.executeBatch();
+            } finally {
+                StatementCache.releaseStatement(statementCache, stmt);
             }
         }
     }
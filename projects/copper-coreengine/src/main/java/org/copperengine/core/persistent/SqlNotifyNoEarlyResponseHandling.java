@@ -28,7 +28,7 @@ import org.copperengine.core.batcher.AbstractBatchCommand;
 import org.copperengine.core.batcher.AcknowledgeCallbackWrapper;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutor;
-import org.copperengine.core.db.utility.JdbcUtils;
+import org.copperengine.core.db.utility.StatementCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,12 +41,14 @@ class SqlNotifyNoEarlyResponseHandling {
         final Response<?> response;
         final Serializer serializer;
         final long defaultStaleResponseRemovalTimeout;
+        final StatementCache statementCache;
 
-        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) {
+        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack, StatementCache statementCache) {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.response = response;
             this.serializer = serializer;
             this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
+            this.statementCache = statementCache;
         }
 
         @Override
@@ -74,8 +76,9 @@ class SqlNotifyNoEarlyResponseHandling {
             if (commands.isEmpty())
                 return;
 
-            final PreparedStatement selectStmt = con.prepareStatement("select count(*) from COP_WAIT where correlation_id = ?");
-            final PreparedStatement insertStmt = con.prepareStatement("INSERT INTO COP_RESPONSE (CORRELATION_ID, RESPONSE_TS, RESPONSE, RESPONSE_TIMEOUT, RESPONSE_META_DATA, RESPONSE_ID) VALUES (?,?,?,?,?,?)");
+            final StatementCache statementCache = ((Command) commands.iterator().next()).statementCache;
+            final PreparedStatement selectStmt = StatementCache.prepareStatement(statementCache, con, "select count(*) from COP_WAIT where correlation_id = ?");
+            final PreparedStatement insertStmt = StatementCache.prepareStatement(statementCache, con, "INSERT INTO COP_RESPONSE (CORRELATION_ID, RESPONSE_TS, RESPONSE, RESPONSE_TIMEOUT, RESPONSE_META_DATA, RESPONSE_ID) VALUES (?,?,?,?,?,?)");
             try {
                 final Timestamp now = new Timestamp(System.currentTimeMillis());
                 int counter = 0;
@@ -110,8 +113,8 @@ class SqlNotifyNoEarlyResponseHandling {
                 logger.error("doExec failed", e);
                 throw e;
             } finally {
-                JdbcUtils.closeStatement(insertStmt);
-                JdbcUtils.closeStatement(selectStmt);
+                StatementCache.releaseStatement(statementCache, insertStmt);
+                StatementCache.releaseStatement(statementCache, selectStmt);
             }
         }
     }
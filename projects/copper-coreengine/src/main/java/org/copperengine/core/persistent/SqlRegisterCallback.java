@@ -32,6 +32,7 @@ import org.copperengine.core.batcher.AbstractBatchCommand;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutor;
 import org.copperengine.core.batcher.CommandCallback;
+import org.copperengine.core.db.utility.StatementCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,8 +45,9 @@ class SqlRegisterCallback {
         private final RegisterCall registerCall;
         private final Serializer serializer;
         private final WorkflowPersistencePlugin workflowPersistencePlugin;
+        private final StatementCache statementCache;
 
-        public Command(final RegisterCall registerCall, final Serializer serializer, final ScottyDBStorageInterface dbStorage, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, final Acknowledge ack) {
+        public Command(final RegisterCall registerCall, final Serializer serializer, final ScottyDBStorageInterface dbStorage, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, final Acknowledge ack, final StatementCache statementCache) {
             super(new CommandCallback<Command>() {
                 @Override
                 public void commandCompleted() {
@@ -62,6 +64,7 @@ class SqlRegisterCallback {
             this.registerCall = registerCall;
             this.serializer = serializer;
             this.workflowPersistencePlugin = workflowPersistencePlugin;
+            this.statementCache = statementCache;
         }
 
         @Override
@@ -77,12 +80,18 @@ class SqlRegisterCallback {
 
         @Override
         public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
-            try (
-                    PreparedStatement stmtDelQueue = con.prepareStatement("DELETE FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?");
-                    PreparedStatement deleteWait = con.prepareStatement("DELETE FROM COP_WAIT WHERE CORRELATION_ID=?");
-                    PreparedStatement deleteResponse = con.prepareStatement("DELETE FROM COP_RESPONSE WHERE RESPONSE_ID=?");
-                    PreparedStatement insertWaitStmt = con.prepareStatement("INSERT INTO COP_WAIT (CORRELATION_ID,WORKFLOW_INSTANCE_ID,MIN_NUMB_OF_RESP,TIMEOUT_TS,STATE,PRIORITY,PPOOL_ID) VALUES (?,?,?,?,?,?,?)");
-                    PreparedStatement updateWfiStmt = con.prepareStatement("UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, PRIORITY=?, LAST_MOD_TS=?, PPOOL_ID=?, DATA=?, OBJECT_STATE=?, CS_WAITMODE=?, MIN_NUMB_OF_RESP=?, NUMB_OF_WAITS=?, TIMEOUT=? WHERE ID=?")) {
+            final StatementCache statementCache = ((Command) commands.iterator().next()).statementCache;
+            PreparedStatement stmtDelQueue = null;
+            PreparedStatement deleteWait = null;
+            PreparedStatement deleteResponse = null;
+            PreparedStatement insertWaitStmt = null;
+            PreparedStatement updateWfiStmt = null;
+            try {
+                stmtDelQueue = StatementCache.prepareStatement(statementCache, con, "DELETE FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?");
+                deleteWait = StatementCache.prepareStatement(statementCache, con, "DELETE FROM COP_WAIT WHERE CORRELATION_ID=?");
+                deleteResponse = StatementCache.prepareStatement(statementCache, con, "DELETE FROM COP_RESPONSE WHERE RESPONSE_ID=?");
+                insertWaitStmt = StatementCache.prepareStatement(statementCache, con, "INSERT INTO COP_WAIT (CORRELATION_ID,WORKFLOW_INSTANCE_ID,MIN_NUMB_OF_RESP,TIMEOUT_TS,STATE,PRIORITY,PPOOL_ID) VALUES (?,?,?,?,?,?,?)");
+                updateWfiStmt = StatementCache.prepareStatement(statementCache, con, "UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, PRIORITY=?, LAST_MOD_TS=?, PPOOL_ID=?, DATA=?, OBJECT_STATE=?, CS_WAITMODE=?, MIN_NUMB_OF_RESP=?, NUMB_OF_WAITS=?, TIMEOUT=? WHERE ID=?");
 
                 final Timestamp now = new Timestamp(System.currentTimeMillis());
                 boolean doWaitDeletes = false;
@@ -166,6 +175,12 @@ class SqlRegisterCallback {
                 for (Map.Entry<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>> en : wfs.entrySet()) {
                     en.getKey().onWorkflowsSaved(con, en.getValue());
                 }
+            } finally {
+                StatementCache.releaseStatement(statementCache, stmtDelQueue);
+                StatementCache.releaseStatement(statementCache, deleteWait);
+                StatementCache.releaseStatement(statementCache, deleteResponse);
+                StatementCache.releaseStatement(statementCache, insertWaitStmt);
+                StatementCache.releaseStatement(statementCache, updateWfiStmt);
             }
         }
 
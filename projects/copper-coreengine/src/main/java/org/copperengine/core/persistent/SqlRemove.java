@@ -30,7 +30,7 @@ import org.copperengine.core.batcher.AbstractBatchCommand;
 import org.copperengine.core.batcher.AcknowledgeCallbackWrapper;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutor;
-import org.copperengine.core.db.utility.JdbcUtils;
+import org.copperengine.core.db.utility.StatementCache;
 
 class SqlRemove {
 
@@ -39,12 +39,14 @@ class SqlRemove {
         private final PersistentWorkflow<?> wf;
         private final boolean remove;
         private final WorkflowPersistencePlugin workflowPersistencePlugin;
+        private final StatementCache statementCache;
 
-        public Command(PersistentWorkflow<?> wf, boolean remove, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, Acknowledge ack) {
+        public Command(PersistentWorkflow<?> wf, boolean remove, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, Acknowledge ack, StatementCache statementCache) {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.wf = wf;
             this.remove = remove;
             this.workflowPersistencePlugin = workflowPersistencePlugin;
+            this.statementCache = statementCache;
         }
 
         @Override
@@ -62,6 +64,7 @@ class SqlRemove {
         public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
             final Timestamp NOW = new Timestamp(System.currentTimeMillis());
             final boolean remove = ((Command) commands.iterator().next()).remove;
+            final StatementCache statementCache = ((Command) commands.iterator().next()).statementCache;
             PreparedStatement stmtDelQueue = null;
             PreparedStatement stmtDelResponse = null;
             PreparedStatement stmtDelWait = null;
@@ -70,11 +73,11 @@ class SqlRemove {
             try {
                 final List<String> responseIds2delete = new ArrayList<>();
                 HashMap<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>> wfs = new HashMap<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>>();
-                stmtDelQueue = con.prepareStatement("DELETE FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?");
-                stmtDelResponse = con.prepareStatement("DELETE FROM COP_RESPONSE WHERE RESPONSE_ID=?");
-                stmtDelWait = con.prepareStatement("DELETE FROM COP_WAIT WHERE CORRELATION_ID=?");
-                stmtDelBP = remove ? con.prepareStatement("DELETE FROM COP_WORKFLOW_INSTANCE WHERE ID=?") : con.prepareStatement("UPDATE COP_WORKFLOW_INSTANCE SET STATE=" + DBProcessingState.FINISHED.ordinal() + ", LAST_MOD_TS=? WHERE ID=?");
-                stmtDelErrors = con.prepareStatement("DELETE FROM COP_WORKFLOW_INSTANCE_ERROR WHERE WORKFLOW_INSTANCE_ID=?");
+                stmtDelQueue = StatementCache.prepareStatement(statementCache, con, "DELETE FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?");
+                stmtDelResponse = StatementCache.prepareStatement(statementCache, con, "DELETE FROM COP_RESPONSE WHERE RESPONSE_ID=?");
+                stmtDelWait = StatementCache.prepareStatement(statementCache, con, "DELETE FROM COP_WAIT WHERE CORRELATION_ID=?");
+                stmtDelBP = StatementCache.prepareStatement(statementCache, con, remove ? "DELETE FROM COP_WORKFLOW_INSTANCE WHERE ID=?" : "UPDATE COP_WORKFLOW_INSTANCE SET STATE=" + DBProcessingState.FINISHED.ordinal() + ", LAST_MOD_TS=? WHERE ID=?");
+                stmtDelErrors = StatementCache.prepareStatement(statementCache, con, "DELETE FROM COP_WORKFLOW_INSTANCE_ERROR WHERE WORKFLOW_INSTANCE_ID=?");
 
                 boolean cidsFound = false;
                 for (BatchCommand<Executor, Command> _cmd : commands) {
@@ -126,11 +129,11 @@ class SqlRemove {
                 }
 
             } finally {
-                JdbcUtils.closeStatement(stmtDelQueue);
-                JdbcUtils.closeStatement(stmtDelResponse);
-                JdbcUtils.closeStatement(stmtDelWait);
-                JdbcUtils.closeStatement(stmtDelBP);
-                JdbcUtils.closeStatement(stmtDelErrors);
+                StatementCache.releaseStatement(statementCache, stmtDelQueue);
+                StatementCache.releaseStatement(statementCache, stmtDelResponse);
+                StatementCache.releaseStatement(statementCache, stmtDelWait);
+                StatementCache.releaseStatement(statementCache, stmtDelBP);
+                StatementCache.releaseStatement(statementCache, stmtDelErrors);
             }
         }
 
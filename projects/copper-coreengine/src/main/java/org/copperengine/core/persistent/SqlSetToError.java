@@ -27,6 +27,7 @@ import org.copperengine.core.batcher.AbstractBatchCommand;
 import org.copperengine.core.batcher.AcknowledgeCallbackWrapper;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutor;
+import org.copperengine.core.db.utility.StatementCache;
 
 class SqlSetToError {
 
@@ -35,12 +36,14 @@ class SqlSetToError {
         private final PersistentWorkflow<?> wf;
         private final Throwable error;
         private final DBProcessingState dbProcessingState;
+        private final StatementCache statementCache;
 
-        public Command(PersistentWorkflow<?> wf, Throwable error, DBProcessingState dbProcessingState, final long targetTime, Acknowledge ack) {
+        public Command(PersistentWorkflow<?> wf, Throwable error, DBProcessingState dbProcessingState, final long targetTime, Acknowledge ack, StatementCache statementCache) {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.wf = wf;
             this.error = error;
             this.dbProcessingState = dbProcessingState;
+            this.statementCache = statementCache;
         }
 
         @Override
@@ -56,10 +59,14 @@ class SqlSetToError {
 
         @Override
         public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
-            try (
-                    final PreparedStatement stmtDelQueue = con.prepareStatement("DELETE FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?");
-                    final PreparedStatement stmtUpdateState = con.prepareStatement("UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, LAST_MOD_TS=? WHERE ID=?");
-                    final PreparedStatement stmtInsertError = con.prepareStatement("INSERT INTO COP_WORKFLOW_INSTANCE_ERROR (WORKFLOW_INSTANCE_ID, EXCEPTION, ERROR_TS) VALUES (?,?,?)")) {
+            final StatementCache statementCache = ((Command) commands.iterator().next()).statementCache;
+            PreparedStatement stmtDelQueue = null;
+            PreparedStatement stmtUpdateState = null;
+            PreparedStatement stmtInsertError = null;
+            try {
+                stmtDelQueue = StatementCache.prepareStatement(statementCache, con, "DELETE FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?");
+                stmtUpdateState = StatementCache.prepareStatement(statementCache, con, "UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, LAST_MOD_TS=? WHERE ID=?");
+                stmtInsertError = StatementCache.prepareStatement(statementCache, con, "INSERT INTO COP_WORKFLOW_INSTANCE_ERROR (WORKFLOW_INSTANCE_ID, EXCEPTION, ERROR_TS) VALUES (?,?,?)");
 
                 for (BatchCommand<Executor, Command> _cmd : commands) {
                     final Timestamp NOW = new Timestamp(System.currentTimeMillis());
@@ -80,6 +87,10 @@ class SqlSetToError {
                 stmtUpdateState.executeBatch();
                 stmtInsertError.executeBatch();
                 stmtDelQueue.executeBatch();
+            } finally {
+                StatementCache.releaseStatement(statementCache, stmtDelQueue);
+                StatementCache.releaseStatement(statementCache, stmtUpdateState);
+                StatementCache.releaseStatement(statementCache, stmtInsertError);
             }
         }
 
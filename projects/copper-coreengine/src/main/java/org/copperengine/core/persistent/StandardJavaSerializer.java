@@ -17,11 +17,18 @@ package org.copperengine.core.persistent;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
-import java.util.zip.DataFormatException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.Deflater;
 
 import org.copperengine.core.Response;
@@ -33,6 +40,8 @@ import org.copperengine.core.util.Base64;
  * Implementation of the {@link Serializer} interface using java's standard object serialization.
  * If compression is enabled, the serialized objects are compressed if the size of the corresponding
  * byte array is larger than a configured threshold.
+ * Optionally responses are serialized in a compact binary format, see {@link #setBinaryResponses(boolean)}, and the
+ * data of workflow instances is decoded lazily, see {@link #setLazyDecoding(boolean)}.
  *
  * @author austermann
  */
@@ -45,10 +54,22 @@ public class StandardJavaSerializer implements Serializer {
     private static final String COPPER_2X_INTERRUPT_NAME = "InterruptException";
     private static final String COPPER_3_INTERRUPT_NAME = "Interrupt";
 
+    private static final char JAVA_UNCOMPRESSED = 'U';
+    private static final char JAVA_COMPRESSED = 'C';
+    private static final char BINARY_UNCOMPRESSED = 'R';
+    private static final char BINARY_COMPRESSED = 'Z';
+
     private boolean compress = DEFAULT_COMPRESS;
     private int compressThresholdSize = 250;
     private int compressorMaxSize = 128 * 1024;
 
+    private final ConcurrentMap<String, String> classnameReplacements = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, Class<?>> resolvedClasses = new ConcurrentHashMap<String, Class<?>>();
+
+    private boolean binaryResponses = false;
+    private boolean lazyDecoding = false;
+    private BinaryResponseCodec responseCodec = new BinaryResponseCodec(new ArrayList<PayloadCodec>(), new JavaSerializationCodec());
+
     private ThreadLocal<Compressor> compressorTL = new ThreadLocal<Compressor>() {
         @Override
         protected Compressor initialValue() {
@@ -74,15 +95,66 @@ public class StandardJavaSerializer implements Serializer {
         this.compressThresholdSize = compressThresholdSize;
     }
 
+    /**
+     * If true, responses are serialized in a compact binary format instead of using java serialization. Payloads of
+     * the common JDK types and of the types supported by the configured {@link PayloadCodec}s are encoded directly,
+     * other payloads and exceptions are still java serialized.
+     * <p>
+     * Responses are deserialized in either format regardless of this setting. So when upgrading an existing system,
+     * enable binary responses only after all engines sharing the database are able to read them.
+     * Defaults to false.
+     */
+    public void setBinaryResponses(boolean binaryResponses) {
+        this.binaryResponses = binaryResponses;
+    }
+
+    public boolean isBinaryResponses() {
+        return binaryResponses;
+    }
+
+    /**
+     * If true, the data of a deserialized {@link PersistentWorkflow} is kept in its serialized form and decoded on the
+     * first call of {@link Workflow#getData()}. Data, that was never accessed, is written back unchanged, without
+     * decoding and encoding it again. This pays off, if many workflow steps do not touch the data at all.
+     * <p>
+     * If the data cannot be decoded, <code>getData()</code> fails with a
+     * {@link org.copperengine.core.CopperRuntimeException} while the workflow instance is executed, instead of the
+     * workflow instance being marked as invalid, when it is read.
+     * Defaults to false.
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    public boolean isLazyDecoding() {
+        return lazyDecoding;
+    }
+
+    /**
+     * Sets the codecs for response payloads in the binary response format. The first codec able to encode a payload
+     * is used. The codecs are needed to deserialize responses, so all engines sharing the database must be configured
+     * with the same codecs.
+     */
+    public void setPayloadCodecs(List<PayloadCodec> payloadCodecs) {
+        this.responseCodec = new BinaryResponseCodec(payloadCodecs, new JavaSerializationCodec());
+    }
+
     private String serialize(final Object o) throws IOException {
         if (o == null)
             return null;
+        return encode(toBytes(o), JAVA_UNCOMPRESSED, JAVA_COMPRESSED);
+    }
+
+    private byte[] toBytes(final Object o) throws IOException {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
         final ObjectOutputStream oos = new ObjectOutputStream(baos);
         oos.writeObject(o);
         oos.close();
         baos.close();
-        byte[] data = baos.toByteArray();
+        return baos.toByteArray();
+    }
+
+    private String encode(byte[] data, char uncompressedFormat, char compressedFormat) {
         boolean isCompressed = false;
         if (compress && compressThresholdSize <= data.length && data.length <= compressorMaxSize) {
             data = compressorTL.get().compress(data);
@@ -90,39 +162,91 @@ public class StandardJavaSerializer implements Serializer {
         }
         final String encoded = Base64.encode(data);
         final StringBuilder sb = new StringBuilder(encoded.length() + 4);
-        sb.append(isCompressed ? 'C' : 'U').append(encoded);
+        sb.append(isCompressed ? compressedFormat : uncompressedFormat).append(encoded);
         return sb.toString();
     }
 
-    private Serializable deserialize(String _data, final WorkflowRepository wfRepo) throws IOException, ClassNotFoundException, DataFormatException {
+    /**
+     * Encodes payloads and exceptions of binary responses by java serialization.
+     */
+    private final class JavaSerializationCodec implements PayloadCodec {
+
+        @Override
+        public int getId() {
+            return BinaryResponseCodec.JAVA_SERIALIZATION_CODEC_ID;
+        }
+
+        @Override
+        public boolean canEncode(Object payload) {
+            return true;
+        }
+
+        @Override
+        public void encode(Object payload, DataOutput out) throws IOException {
+            BinaryResponseCodec.writeBytes(out, toBytes(payload));
+        }
+
+        @Override
+        public Object decode(DataInput in) throws IOException, ClassNotFoundException {
+            final byte[] data = BinaryResponseCodec.readBytes(in);
+            return new ResolvingObjectInputStream(new ByteArrayInputStream(data), null).readObject();
+        }
+    }
+
+    /**
+     * Resolves the classes of the deserialized objects, caching the class name replacements and, without a workflow
+     * repository, the resolved classes. A workflow repository caches the classes it resolves itself.
+     */
+    private final class ResolvingObjectInputStream extends ObjectInputStream {
+
+        private final WorkflowRepository wfRepo;
+
+        ResolvingObjectInputStream(InputStream in, WorkflowRepository wfRepo) throws IOException {
+            super(in);
+            this.wfRepo = wfRepo;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            final String name = desc.getName();
+            String classname = classnameReplacements.get(name);
+            if (classname == null) {
+                classname = classnameReplacement(name);
+                classnameReplacements.put(name, classname);
+            }
+            if (wfRepo != null) {
+                return wfRepo.resolveClass(classname);
+            }
+            Class<?> c = resolvedClasses.get(classname);
+            if (c == null) {
+                c = Class.forName(classname);
+                resolvedClasses.put(classname, c);
+            }
+            return c;
+        }
+    }
+
+    private Serializable deserialize(String _data, final WorkflowRepository wfRepo) throws IOException, ClassNotFoundException {
         if (_data == null)
             return null;
-        boolean isCompressed = _data.charAt(0) == 'C';
-        byte[] data = Base64.decode(_data.substring(1));
+        boolean isCompressed = _data.charAt(0) == JAVA_COMPRESSED;
+        // decode and uncompress while reading, reusing the inflater and buffers of the current thread
+        InputStream in = Base64.decodingStream(_data, 1);
         if (isCompressed) {
-            data = compressorTL.get().uncompress(data);
+            in = compressorTL.get().uncompressingStream(in);
+        }
+        try {
+            return (Serializable) new ResolvingObjectInputStream(in, wfRepo).readObject();
+        } finally {
+            in.close();
         }
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        ObjectInputStream ois = wfRepo != null ? new ObjectInputStream(bais) {
-            @Override
-            protected java.lang.Class<?> resolveClass(java.io.ObjectStreamClass desc) throws java.io.IOException, ClassNotFoundException {
-                return wfRepo.resolveClass(classnameReplacement(desc.getName()));
-            }
-        } : new ObjectInputStream(bais) {
-            @Override
-            protected java.lang.Class<?> resolveClass(java.io.ObjectStreamClass desc) throws java.io.IOException, ClassNotFoundException {
-                return Class.forName(classnameReplacement(desc.getName()));
-            }
-        };
-        Serializable o = (Serializable) ois.readObject();
-        ois.close();
-        return o;
     }
 
     /**
      * For downward compatibility, there is a package name replacement during
      * deserialization of workflow instances and responses.
      * The default implementation ensures downward compatibility to copper &lt;= 2.x.
+     * The result is cached per class name, so the method is called once per class name only.
      * @param classname the workflow class name
      * @return the adjusted workflow class name
      */
@@ -140,7 +264,8 @@ public class StandardJavaSerializer implements Serializer {
     @Override
     public SerializedWorkflow serializeWorkflow(Workflow<?> o) throws Exception {
         SerializedWorkflow sw = new SerializedWorkflow();
-        sw.setData(serializeData(o));
+        final String undecodedData = o instanceof PersistentWorkflow ? ((PersistentWorkflow<?>) o).getUndecodedData() : null;
+        sw.setData(undecodedData != null ? undecodedData : serializeData(o));
         sw.setObjectState(serialize(o));
         return sw;
     }
@@ -152,7 +277,14 @@ public class StandardJavaSerializer implements Serializer {
     @Override
     public Workflow<?> deserializeWorkflow(SerializedWorkflow sw, WorkflowRepository wfRepo) throws Exception {
         PersistentWorkflow<?> wf = (PersistentWorkflow<?>) deserialize(sw.getObjectState(), wfRepo);
-        wf.setDataAsObject(deserializeData(sw));
+        if (lazyDecoding && sw.getData() != null) {
+            // keep the data only, not the object state
+            final SerializedWorkflow data = new SerializedWorkflow();
+            data.setData(sw.getData());
+            wf.setLazyData(sw.getData(), () -> deserializeData(data));
+        } else {
+            wf.setDataAsObject(deserializeData(sw));
+        }
         return wf;
     }
 
@@ -168,13 +300,23 @@ public class StandardJavaSerializer implements Serializer {
 
     @Override
     public String serializeResponse(Response<?> r) throws Exception {
-        return serialize(r);
+        if (r == null || !binaryResponses)
+            return serialize(r);
+        return encode(responseCodec.encode(r), BINARY_UNCOMPRESSED, BINARY_COMPRESSED);
     }
 
     @Override
     public Response<?> deserializeResponse(String _data) throws Exception {
         if (_data == null)
             return null;
+        final char format = _data.charAt(0);
+        if (format == BINARY_UNCOMPRESSED || format == BINARY_COMPRESSED) {
+            byte[] data = Base64.decode(_data.substring(1));
+            if (format == BINARY_COMPRESSED) {
+                data = compressorTL.get().uncompress(data);
+            }
+            return responseCodec.decode(data);
+        }
         return (Response<?>) deserialize(_data, null);
     }
 
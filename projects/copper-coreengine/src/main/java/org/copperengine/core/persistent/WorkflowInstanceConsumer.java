@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2017 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+/**
+ * Receives the workflow instances streamed by
+ * {@link ScottyDBStorageInterface#streamWorkflowInstances(org.copperengine.management.model.WorkflowInstanceFilter, WorkflowInstanceProjection, String, int, WorkflowInstanceConsumer)}.
+ */
+@FunctionalInterface
+public interface WorkflowInstanceConsumer {
+
+    /**
+     * @param header
+     *        the next workflow instance
+     * @return <code>true</code> to continue streaming, <code>false</code> to stop
+     * @throws Exception
+     *         stops streaming and is passed on to the caller
+     */
+    public boolean accept(WorkflowInstanceHeader header) throws Exception;
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2017 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.util.Date;
+
+import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Workflow;
+
+/**
+ * Header data of a persistent workflow instance as read by
+ * {@link ScottyDBStorageInterface#streamWorkflowInstances(org.copperengine.management.model.WorkflowInstanceFilter, WorkflowInstanceProjection, String, int, WorkflowInstanceConsumer)}.
+ * The deserialized workflow instance and its error data are only available, if the query used
+ * {@link WorkflowInstanceProjection#FULL}.
+ */
+public class WorkflowInstanceHeader {
+
+    private String id;
+    private String classname;
+    private ProcessingState state;
+    private int priority;
+    private String processorPoolId;
+    private Date creationTS;
+    private Date lastModTS;
+    private Date timeoutTS;
+    private Workflow<?> workflow;
+    private ErrorData errorData;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getClassname() {
+        return classname;
+    }
+
+    public void setClassname(String classname) {
+        this.classname = classname;
+    }
+
+    public ProcessingState getState() {
+        return state;
+    }
+
+    public void setState(ProcessingState state) {
+        this.state = state;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public String getProcessorPoolId() {
+        return processorPoolId;
+    }
+
+    public void setProcessorPoolId(String processorPoolId) {
+        this.processorPoolId = processorPoolId;
+    }
+
+    public Date getCreationTS() {
+        return creationTS;
+    }
+
+    public void setCreationTS(Date creationTS) {
+        this.creationTS = creationTS;
+    }
+
+    public Date getLastModTS() {
+        return lastModTS;
+    }
+
+    public void setLastModTS(Date lastModTS) {
+        this.lastModTS = lastModTS;
+    }
+
+    public Date getTimeoutTS() {
+        return timeoutTS;
+    }
+
+    public void setTimeoutTS(Date timeoutTS) {
+        this.timeoutTS = timeoutTS;
+    }
+
+    /**
+     * @return the deserialized workflow instance, or <code>null</code> if it was queried using
+     *         {@link WorkflowInstanceProjection#HEADER}
+     */
+    public Workflow<?> getWorkflow() {
+        return workflow;
+    }
+
+    public void setWorkflow(Workflow<?> workflow) {
+        this.workflow = workflow;
+    }
+
+    /**
+     * @return the latest error data of a workflow instance in state ERROR, or <code>null</code> if it was queried using
+     *         {@link WorkflowInstanceProjection#HEADER}
+     */
+    public ErrorData getErrorData() {
+        return errorData;
+    }
+
+    public void setErrorData(ErrorData errorData) {
+        this.errorData = errorData;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkflowInstanceHeader [id=" + id + ", classname=" + classname + ", state=" + state + ", priority=" + priority + ", processorPoolId=" + processorPoolId + ", creationTS=" + creationTS + ", lastModTS=" + lastModTS + ", timeoutTS=" + timeoutTS + "]";
+    }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2017 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+/**
+ * Defines which parts of a workflow instance are read by
+ * {@link ScottyDBStorageInterface#streamWorkflowInstances(org.copperengine.management.model.WorkflowInstanceFilter, WorkflowInstanceProjection, String, int, WorkflowInstanceConsumer)}.
+ */
+public enum WorkflowInstanceProjection {
+
+    /**
+     * Only the header columns (id, class name, state, priority, processor pool, timestamps) are read. Neither the
+     * workflow's data nor its object state are loaded or deserialized.
+     */
+    HEADER,
+
+    /**
+     * The header columns plus the fully deserialized workflow instance and, for instances in state ERROR, the latest
+     * error data.
+     */
+    FULL
+}
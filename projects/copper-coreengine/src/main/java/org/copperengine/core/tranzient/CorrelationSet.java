@@ -34,6 +34,7 @@ class CorrelationSet {
     private List<String> missingCorrelationIds;
     private WaitMode mode;
     private Long timeoutTS;
+    private long waitingSinceTS;
 
     public CorrelationSet(Workflow<?> workflow, List<String> missingCorrelationIds, WaitMode mode, Long timeoutTS) {
         this.workflowId = workflow.getId();
@@ -54,6 +55,14 @@ class CorrelationSet {
         this.timeoutTS = timeoutTS;
     }
 
+    CorrelationSet(String workflowId, List<String> correlationIds, List<String> missingCorrelationIds, WaitMode mode, Long timeoutTS) {
+        this.workflowId = workflowId;
+        this.missingCorrelationIds = new LinkedList<String>(missingCorrelationIds);
+        this.correlationIds = new ArrayList<String>(correlationIds);
+        this.mode = mode;
+        this.timeoutTS = timeoutTS;
+    }
+
     public String getWorkflowId() {
         return workflowId;
     }
@@ -74,4 +83,15 @@ class CorrelationSet {
         return correlationIds;
     }
 
+    /**
+     * @return the time, when the workflow instance started or resumed waiting, as used by {@link WorkflowParking}
+     */
+    long getWaitingSinceTS() {
+        return waitingSinceTS;
+    }
+
+    void setWaitingSinceTS(long waitingSinceTS) {
+        this.waitingSinceTS = waitingSinceTS;
+    }
+
 }
@@ -47,6 +47,11 @@ public class DefaultEarlyResponseContainer implements EarlyResponseContainer {
             }
             this.ts = ts;
         }
+
+        EarlyResponse(final long ts, final Response<?> response) {
+            this.response = response;
+            this.ts = ts;
+        }
     }
 
     private int lowerBorderResponseMapSize = 25000;
@@ -108,6 +113,35 @@ public class DefaultEarlyResponseContainer implements EarlyResponseContainer {
         }
     }
 
+    /**
+     * Internal use only - used by the transient engine's snapshot facility
+     *
+     * @return a copy of all early responses currently held by this container
+     */
+    List<EarlyResponse> getEarlyResponses() {
+        synchronized (responseMap) {
+            List<EarlyResponse> rv = new ArrayList<EarlyResponse>(responseMap.size());
+            for (List<EarlyResponse> erList : responseMap.values()) {
+                rv.addAll(erList);
+            }
+            return rv;
+        }
+    }
+
+    /**
+     * Internal use only - puts an early response restored from a snapshot, keeping its original expiry timestamp
+     */
+    void restore(final Response<?> response, final long ts) {
+        synchronized (responseMap) {
+            List<EarlyResponse> list = responseMap.get(response.getCorrelationId());
+            if (list == null) {
+                list = new ArrayList<DefaultEarlyResponseContainer.EarlyResponse>(3);
+                responseMap.put(response.getCorrelationId(), list);
+            }
+            list.add(new EarlyResponse(ts, response));
+        }
+    }
+
     @Override
     public synchronized void startup() {
         if (thread != null)
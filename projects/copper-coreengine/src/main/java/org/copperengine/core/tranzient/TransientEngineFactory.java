@@ -69,6 +69,23 @@ public abstract class TransientEngineFactory {
 
     protected abstract File getWorkflowSourceDirectory();
 
+    /**
+     * @return the snapshot file of the engine, or <code>null</code> (the default) to disable snapshots
+     * @see TransientScottyEngine#setSnapshotFile(File)
+     */
+    protected File getSnapshotFile() {
+        return null;
+    }
+
+    /**
+     * @return the workflow parking of the engine, or <code>null</code> (the default) to keep all workflow instances on
+     *         the heap
+     * @see TransientScottyEngine#setWorkflowParking(WorkflowParking)
+     */
+    protected WorkflowParking createWorkflowParking() {
+        return null;
+    }
+
     protected WorkflowRepository createWorkflowRepository() {
         FileBasedWorkflowRepository repo = new FileBasedWorkflowRepository();
         List<String> sourceDirs = new ArrayList<String>();
@@ -100,6 +117,14 @@ public abstract class TransientEngineFactory {
         engine.setTicketPoolManager(createTicketPoolManager());
         engine.setTimeoutManager(createTimeoutManager());
         engine.setWfRepository(createWorkflowRepository());
+        final File snapshotFile = getSnapshotFile();
+        if (snapshotFile != null) {
+            engine.setSnapshotFile(snapshotFile);
+        }
+        final WorkflowParking workflowParking = createWorkflowParking();
+        if (workflowParking != null) {
+            engine.setWorkflowParking(workflowParking);
+        }
         engine.startup();
         return engine;
     }
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.copperengine.core.CopperRuntimeException;
+import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Response;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.common.WorkflowRepository;
+import org.copperengine.core.internal.WorkflowAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Internally used class.
+ * <p>
+ * Writes the in-flight state of a {@link TransientScottyEngine} - workflow instances including their pending responses
+ * and correlation sets as well as early responses - to a local file and restores it on startup. Timeouts are not written
+ * separately, they are registered again from the restored correlation sets.
+ * <p>
+ * Each workflow instance is captured while holding its monitor and the engine's correlation map lock, so every single
+ * instance is written in a consistent state while the engine keeps on running. The snapshot written on shutdown, after
+ * the processor pools are stopped, is consistent as a whole. Workflow instances parked by {@link WorkflowParking} are
+ * loaded from the parking storage while holding the correlation map lock.
+ * <p>
+ * The file consists of independently deflated chunks of records, that are decoded in parallel on restore. A snapshot is
+ * written to a temporary file first and then moved to its final location, so a crash while writing never destroys the
+ * previous snapshot.
+ */
+class TransientEngineSnapshotter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransientEngineSnapshotter.class);
+
+    private static final int MAGIC = 0x43505353;
+    private static final int VERSION = 1;
+    private static final byte CHUNK_WORKFLOWS = 1;
+    private static final byte CHUNK_EARLY_RESPONSES = 2;
+    private static final byte END_OF_SNAPSHOT = 0;
+
+    private final TransientScottyEngine engine;
+    private final File file;
+    private final int chunkSize;
+    private final int restoreThreads;
+
+    public TransientEngineSnapshotter(TransientScottyEngine engine, File file, int chunkSize, int restoreThreads) {
+        if (engine == null || file == null)
+            throw new NullPointerException();
+        if (chunkSize <= 0 || restoreThreads <= 0)
+            throw new IllegalArgumentException();
+        this.engine = engine;
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.restoreThreads = restoreThreads;
+    }
+
+    /**
+     * Writes a new snapshot, replacing the previous one.
+     *
+     * @return the number of workflow instances written
+     */
+    public synchronized int write() throws IOException {
+        final long startTS = System.currentTimeMillis();
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        int workflowCount = 0;
+        int skippedCount = 0;
+        int earlyResponseCount = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(startTS);
+
+            final ChunkWriter workflowChunks = new ChunkWriter(out, CHUNK_WORKFLOWS);
+            for (String id : engine.getWorkflowRegistry().ids()) {
+                final byte[] record;
+                try {
+                    record = encodeWorkflow(id);
+                } catch (IOException e) {
+                    logger.warn("Unable to write workflow instance " + id + " to snapshot - skipping it", e);
+                    skippedCount++;
+                    continue;
+                }
+                if (record != null) {
+                    workflowChunks.add(record);
+                    workflowCount++;
+                }
+            }
+            workflowChunks.close();
+
+            final EarlyResponseContainer earlyResponseContainer = engine.getEarlyResponseContainer();
+            if (earlyResponseContainer instanceof DefaultEarlyResponseContainer) {
+                final ChunkWriter earlyResponseChunks = new ChunkWriter(out, CHUNK_EARLY_RESPONSES);
+                for (DefaultEarlyResponseContainer.EarlyResponse er : ((DefaultEarlyResponseContainer) earlyResponseContainer).getEarlyResponses()) {
+                    try {
+                        earlyResponseChunks.add(encodeEarlyResponse(er));
+                        earlyResponseCount++;
+                    } catch (IOException e) {
+                        logger.warn("Unable to write early response for correlationId " + er.response.getCorrelationId() + " to snapshot - skipping it", e);
+                    }
+                }
+                earlyResponseChunks.close();
+            } else {
+                logger.warn("Early responses are not part of the snapshot - {} is not supported", earlyResponseContainer.getClass().getName());
+            }
+            out.writeByte(END_OF_SNAPSHOT);
+        }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info("Wrote snapshot of {} workflow instances and {} early responses to {} in {} msec ({} skipped)", workflowCount, earlyResponseCount, file, System.currentTimeMillis() - startTS, skippedCount);
+        return workflowCount;
+    }
+
+    private byte[] encodeWorkflow(String id) throws IOException {
+        final Workflow<?> wf = engine.getWorkflowRegistry().get(id);
+        if (wf != null) {
+            synchronized (wf) {
+                synchronized (engine.getCorrelationMap()) {
+                    if (engine.getWorkflowRegistry().get(id) == wf) {
+                        return encodeWorkflow(wf, engine.getWaitingCorrelationSet(id));
+                    }
+                }
+            }
+        }
+        synchronized (engine.getCorrelationMap()) {
+            final Workflow<?> parked = engine.loadParkedWorkflow(id);
+            if (parked == null) {
+                // finished meanwhile
+                return null;
+            }
+            return encodeWorkflow(parked, engine.getWaitingCorrelationSet(id));
+        }
+    }
+
+    private static byte[] encodeWorkflow(Workflow<?> wf, CorrelationSet cs) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeUTF(wf.getId());
+        oos.writeObject(wf.getProcessorPoolId());
+        oos.writeInt(wf.getPriority());
+        oos.writeObject(wf.getProcessingState());
+        oos.writeObject(wf.getCreationTS());
+        oos.writeObject(wf.getLastActivityTS());
+        oos.writeObject(wf.getTimeoutTS());
+        oos.writeObject(wf);
+        oos.writeObject(wf.getData());
+        oos.writeObject(WorkflowAccessor.getPendingResponses(wf));
+        oos.writeBoolean(cs != null);
+        if (cs != null) {
+            oos.writeObject(new ArrayList<String>(cs.getCorrelationIds()));
+            oos.writeObject(new ArrayList<String>(cs.getMissingCorrelationIds()));
+            oos.writeObject(cs.getMode());
+            oos.writeObject(cs.getTimeoutTS());
+        }
+        oos.close();
+        return baos.toByteArray();
+    }
+
+    private static byte[] encodeEarlyResponse(DefaultEarlyResponseContainer.EarlyResponse er) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeLong(er.ts);
+        oos.writeObject(er.response);
+        oos.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Restores the snapshot, if there is one. Afterwards the snapshot file is renamed, so that it is not restored a
+     * second time, if the engine is restarted without writing a new snapshot.
+     *
+     * @return the number of restored workflow instances
+     */
+    public synchronized int restore() throws IOException {
+        if (!file.exists()) {
+            logger.info("No snapshot found at {}", file);
+            return 0;
+        }
+        final long startTS = System.currentTimeMillis();
+        final AtomicInteger workflowCount = new AtomicInteger();
+        final AtomicInteger earlyResponseCount = new AtomicInteger();
+        final AtomicInteger failedCount = new AtomicInteger();
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        final ExecutorService executor = Executors.newFixedThreadPool(restoreThreads);
+        try {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new CopperRuntimeException(file + " is not a valid snapshot file");
+                }
+                final long snapshotTS = in.readLong();
+                logger.info("Restoring snapshot {} taken at {}", file, new Date(snapshotTS));
+                try {
+                    for (;;) {
+                        final byte type = in.readByte();
+                        if (type == END_OF_SNAPSHOT)
+                            break;
+                        final int recordCount = in.readInt();
+                        final byte[] chunk = new byte[in.readInt()];
+                        in.readFully(chunk);
+                        futures.add(executor.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                restoreChunk(type, recordCount, chunk, workflowCount, earlyResponseCount, failedCount);
+                            }
+                        }));
+                    }
+                } catch (EOFException e) {
+                    logger.error("Snapshot {} is truncated - restoring the complete chunks only", file);
+                }
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CopperRuntimeException("Interrupted while restoring snapshot", e);
+                } catch (ExecutionException e) {
+                    throw new CopperRuntimeException("Restoring snapshot failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Files.move(file.toPath(), new File(file.getPath() + ".restored").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Restored {} workflow instances and {} early responses from {} in {} msec ({} failed)", workflowCount.get(), earlyResponseCount.get(), file, System.currentTimeMillis() - startTS, failedCount.get());
+        return workflowCount.get();
+    }
+
+    private void restoreChunk(byte type, int recordCount, byte[] chunk, AtomicInteger workflowCount, AtomicInteger earlyResponseCount, AtomicInteger failedCount) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(chunk)))) {
+            for (int i = 0; i < recordCount; i++) {
+                final byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                try {
+                    if (type == CHUNK_WORKFLOWS) {
+                        restoreWorkflow(record);
+                        workflowCount.incrementAndGet();
+                    } else if (type == CHUNK_EARLY_RESPONSES) {
+                        restoreEarlyResponse(record);
+                        earlyResponseCount.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    logger.error("Unable to restore snapshot record", e);
+                    failedCount.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to read snapshot chunk", e);
+            failedCount.addAndGet(recordCount);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void restoreWorkflow(byte[] record) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = createObjectInputStream(record)) {
+            final String id = ois.readUTF();
+            final String processorPoolId = (String) ois.readObject();
+            final int priority = ois.readInt();
+            final ProcessingState state = (ProcessingState) ois.readObject();
+            final Date creationTS = (Date) ois.readObject();
+            final Date lastActivityTS = (Date) ois.readObject();
+            final Date timeoutTS = (Date) ois.readObject();
+            final Workflow<Object> wf = (Workflow<Object>) ois.readObject();
+            wf.setData(ois.readObject());
+            final List<Response<?>> responses = (List<Response<?>>) ois.readObject();
+            CorrelationSet cs = null;
+            if (ois.readBoolean()) {
+                final List<String> correlationIds = (List<String>) ois.readObject();
+                final List<String> missingCorrelationIds = (List<String>) ois.readObject();
+                final WaitMode mode = (WaitMode) ois.readObject();
+                final Long csTimeoutTS = (Long) ois.readObject();
+                cs = new CorrelationSet(id, correlationIds, missingCorrelationIds, mode, csTimeoutTS);
+            }
+
+            wf.setId(id);
+            wf.setProcessorPoolId(processorPoolId);
+            wf.setPriority(priority);
+            WorkflowAccessor.setProcessingState(wf, state);
+            WorkflowAccessor.setCreationTS(wf, creationTS);
+            WorkflowAccessor.setLastActivityTS(wf, lastActivityTS);
+            WorkflowAccessor.setTimeoutTS(wf, timeoutTS);
+            for (Response<?> r : responses) {
+                wf.putResponse(r);
+            }
+            engine.restoreWorkflow(wf, cs);
+        }
+    }
+
+    private void restoreEarlyResponse(byte[] record) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = createObjectInputStream(record)) {
+            final long ts = ois.readLong();
+            final Response<?> response = (Response<?>) ois.readObject();
+            final EarlyResponseContainer earlyResponseContainer = engine.getEarlyResponseContainer();
+            if (earlyResponseContainer instanceof DefaultEarlyResponseContainer) {
+                ((DefaultEarlyResponseContainer) earlyResponseContainer).restore(response, ts);
+            } else {
+                earlyResponseContainer.put(response);
+            }
+        }
+    }
+
+    private ObjectInputStream createObjectInputStream(byte[] record) throws IOException {
+        final WorkflowRepository wfRepository = engine.getWfRepository();
+        return new ObjectInputStream(new ByteArrayInputStream(record)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                try {
+                    return wfRepository.resolveClass(desc.getName());
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(desc);
+                }
+            }
+        };
+    }
+
+    /**
+     * Collects records and writes them as deflated chunks of at most <code>chunkSize</code> records.
+     */
+    private final class ChunkWriter {
+        private final DataOutputStream out;
+        private final byte type;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private DataOutputStream chunk;
+        private int recordCount;
+
+        ChunkWriter(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        void add(byte[] record) throws IOException {
+            if (chunk == null) {
+                buffer.reset();
+                deflater.reset();
+                chunk = new DataOutputStream(new DeflaterOutputStream(buffer, deflater, 8 * 1024));
+                recordCount = 0;
+            }
+            chunk.writeInt(record.length);
+            chunk.write(record);
+            if (++recordCount >= chunkSize) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (chunk != null) {
+                chunk.close();
+                chunk = null;
+                out.writeByte(type);
+                out.writeInt(recordCount);
+                out.writeInt(buffer.size());
+                buffer.writeTo(out);
+            }
+        }
+
+        void close() throws IOException {
+            flush();
+            deflater.end();
+        }
+    }
+}
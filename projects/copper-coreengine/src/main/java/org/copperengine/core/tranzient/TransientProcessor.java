@@ -24,6 +24,8 @@ import org.copperengine.core.ProcessingState;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.common.Processor;
 import org.copperengine.core.internal.WorkflowAccessor;
+import org.copperengine.core.monitoring.WorkflowTimeline;
+import org.copperengine.core.monitoring.WorkflowTimelineRecorder;
 
 /**
  * Internally used class.
@@ -43,17 +45,29 @@ class TransientProcessor extends Processor {
     protected void process(Workflow<?> wf) {
         logger.trace("before - stack.size()={}", wf.get__stack().size());
         logger.trace("before - stack={}", wf.get__stack());
+        final WorkflowTimelineRecorder recorder = engine.getWorkflowTimelineRecorder();
+        final WorkflowTimeline timeline = recorder != null ? WorkflowAccessor.getTimeline(wf) : null;
         synchronized (wf) {
             try {
-                WorkflowAccessor.setProcessingState(wf, ProcessingState.RUNNING);
+                engine.setProcessingState(wf, ProcessingState.RUNNING);
                 WorkflowAccessor.setLastActivityTS(wf, new Date());
                 wf.__beforeProcess();
+                if (timeline != null)
+                    timeline.stampRunStart();
                 wf.main();
                 logger.trace("after 'main' - stack={}", wf.get__stack());
+                if (timeline != null) {
+                    timeline.stampRunEnd();
+                    recorder.record(wf.getId(), wf.getClass(), timeline);
+                }
                 engine.removeWorkflow(wf.getId());
                 assert wf.get__stack().isEmpty() : "Stack must be empty \n" + wf.get__stack();
             } catch (Interrupt e) {
                 logger.trace("interrupt - stack={}", wf.get__stack());
+                if (timeline != null) {
+                    timeline.stampRunEnd();
+                    recorder.record(wf.getId(), wf.getClass(), timeline);
+                }
                 WorkflowAccessor.setLastActivityTS(wf, new Date());
                 assert wf.get__stack().size() > 0;
             } catch (Exception e) {
@@ -15,13 +15,19 @@
  */
 package org.copperengine.core.tranzient;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -41,6 +47,7 @@ import org.copperengine.core.common.ProcessorPool;
 import org.copperengine.core.common.ProcessorPoolManager;
 import org.copperengine.core.common.TicketPoolManager;
 import org.copperengine.core.internal.WorkflowAccessor;
+import org.copperengine.core.monitoring.WorkflowTimeline;
 import org.copperengine.core.persistent.PersistentWorkflow;
 import org.copperengine.management.ProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
@@ -60,15 +67,27 @@ import org.slf4j.LoggerFactory;
 public class TransientScottyEngine extends AbstractProcessingEngine implements ProcessingEngine, ProcessingEngineMXBean {
 
     private static final Logger logger = LoggerFactory.getLogger(TransientScottyEngine.class);
+    private static final int PARKING_BATCH_SIZE = 1000;
 
     private final Map<String, CorrelationSet> correlationMap = new HashMap<String, CorrelationSet>(50000);
-    private final Map<String, Workflow<?>> workflowMap = new ConcurrentHashMap<String, Workflow<?>>(50000);
+    private final Map<String, CorrelationSet> waitingCorrelationSets = new HashMap<String, CorrelationSet>(50000);
+    private final TransientWorkflowRegistry workflowRegistry = new TransientWorkflowRegistry();
     private ProcessorPoolManager<TransientProcessorPool> poolManager;
     private TimeoutManager timeoutManager;
     private EarlyResponseContainer earlyResponseContainer;
     private TicketPoolManager ticketPoolManager;
     private final AtomicLong sequenceIdFactory = new AtomicLong(System.currentTimeMillis() * 10000L);
     private final AtomicLong errorWFCounter = new AtomicLong(0);
+    private File snapshotFile;
+    private long snapshotIntervalMSec = 0;
+    private boolean snapshotOnShutdown = true;
+    private int snapshotChunkSize = 1000;
+    private int restoreThreads = Runtime.getRuntime().availableProcessors();
+    private TransientEngineSnapshotter snapshotter;
+    private ScheduledExecutorService snapshotScheduler;
+    private WorkflowParking workflowParking;
+    // correlation sets in the order they started waiting, guarded by correlationMap
+    private final ArrayDeque<CorrelationSet> parkingCandidates = new ArrayDeque<CorrelationSet>();
 
     public void setTicketPoolManager(TicketPoolManager ticketPoolManager) {
         if (ticketPoolManager == null)
@@ -94,6 +113,93 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         this.earlyResponseContainer = earlyResponseContainer;
     }
 
+    /**
+     * Enables the snapshot facility. The engine restores the snapshot file on startup, if it exists, and writes it on
+     * shutdown and optionally in regular intervals, so that in-flight workflow instances, correlation sets, timeouts and
+     * early responses survive a restart.
+     * Workflow instances, their data and their responses have to be serializable to become part of a snapshot.
+     * Restored workflow instances obtain their tickets even beyond the capacity of their ticket pool.
+     *
+     * @param snapshotFile
+     *        the local file to write the snapshot to
+     */
+    public void setSnapshotFile(File snapshotFile) {
+        if (snapshotFile == null)
+            throw new NullPointerException();
+        this.snapshotFile = snapshotFile;
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * @param snapshotIntervalMSec
+     *        interval for writing periodic snapshots while the engine is running. Zero (the default) disables periodic
+     *        snapshots.
+     */
+    public void setSnapshotIntervalMSec(long snapshotIntervalMSec) {
+        if (snapshotIntervalMSec < 0)
+            throw new IllegalArgumentException();
+        this.snapshotIntervalMSec = snapshotIntervalMSec;
+    }
+
+    public long getSnapshotIntervalMSec() {
+        return snapshotIntervalMSec;
+    }
+
+    public void setSnapshotOnShutdown(boolean snapshotOnShutdown) {
+        this.snapshotOnShutdown = snapshotOnShutdown;
+    }
+
+    public boolean isSnapshotOnShutdown() {
+        return snapshotOnShutdown;
+    }
+
+    /**
+     * @param snapshotChunkSize
+     *        maximum number of records per independently compressed chunk of the snapshot file
+     */
+    public void setSnapshotChunkSize(int snapshotChunkSize) {
+        if (snapshotChunkSize <= 0)
+            throw new IllegalArgumentException();
+        this.snapshotChunkSize = snapshotChunkSize;
+    }
+
+    public int getSnapshotChunkSize() {
+        return snapshotChunkSize;
+    }
+
+    /**
+     * @param restoreThreads
+     *        number of threads decoding the chunks of the snapshot file on startup
+     */
+    public void setRestoreThreads(int restoreThreads) {
+        if (restoreThreads <= 0)
+            throw new IllegalArgumentException();
+        this.restoreThreads = restoreThreads;
+    }
+
+    public int getRestoreThreads() {
+        return restoreThreads;
+    }
+
+    /**
+     * Sets a {@link WorkflowParking}, that moves idle waiting workflow instances to compact off-heap storage. Without
+     * parking (the default) all workflow instances stay on the heap.
+     * Workflow instances, their data and their responses have to be serializable to be parked.
+     * Must be set before the engine is started.
+     */
+    public void setWorkflowParking(WorkflowParking workflowParking) {
+        if (engineState != EngineState.RAW)
+            throw new IllegalStateException("engine is started already");
+        this.workflowParking = workflowParking;
+    }
+
+    public WorkflowParking getWorkflowParking() {
+        return workflowParking;
+    }
+
     @Override
     public void notify(Response<?> response, Acknowledge ack) {
         logger.debug("notify({})", response);
@@ -120,7 +226,11 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
                     ack.onSuccess();
                     return;
                 }
-                final Workflow<?> wf = workflowMap.get(cs.getWorkflowId());
+                Workflow<?> wf = workflowRegistry.get(cs.getWorkflowId());
+                final boolean unparked = wf == null && workflowParking != null;
+                if (unparked) {
+                    wf = unpark(cs.getWorkflowId());
+                }
                 if (wf == null) {
                     logger.error("Workflow with id " + cs.getWorkflowId() + " not found");
                     ack.onException(new CopperException("Workflow with id " + cs.getWorkflowId() + " not found"));
@@ -147,7 +257,12 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
                     for (String correlationId : cs.getCorrelationIds()) {
                         correlationMap.remove(correlationId);
                     }
+                    waitingCorrelationSets.remove(cs.getWorkflowId());
                     enqueue(wf);
+                } else if (unparked) {
+                    // still waiting - may be parked again
+                    cs.setWaitingSinceTS(System.currentTimeMillis());
+                    parkingCandidates.addLast(cs);
                 }
             }
             ack.onSuccess();
@@ -166,21 +281,24 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         }
 
         ticketPoolManager.obtain(w);
+        return runWithTicket(w);
+    }
+
+    /**
+     * Registers and enqueues a workflow instance, for which a ticket has been obtained already. The ticket is released,
+     * if this fails.
+     */
+    private String runWithTicket(Workflow<?> w) throws DuplicateIdException {
         try {
-            boolean newId = false;
             if (w.getId() == null) {
                 w.setId(createUUID());
-                newId = true;
             }
 
             if (w.getProcessorPoolId() == null) {
                 w.setProcessorPoolId(TransientProcessorPool.DEFAULT_POOL_ID);
             }
-            synchronized (workflowMap) {
-                if (!newId && workflowMap.containsKey(w.getId()))
-                    throw new DuplicateIdException("engine already contains a workflow with id '" + w.getId() + "'");
-                workflowMap.put(w.getId(), w);
-            }
+            if (!workflowRegistry.add(w))
+                throw new DuplicateIdException("engine already contains a workflow with id '" + w.getId() + "'");
             injectDependencies(w);
             enqueue(w);
             trackWfiStarted();
@@ -191,7 +309,7 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         } catch (Exception e) {
             String message = "run/enqeue of workflow with id '" + w.getId() + "' failed.";
             logger.warn(message);
-            workflowMap.remove(w.getId());
+            workflowRegistry.remove(w.getId());
             ticketPoolManager.release(w);
             throw new CopperRuntimeException(message, e);
         }
@@ -203,9 +321,23 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
             logger.error("Unable to find processor pool " + w.getProcessorPoolId() + " - using default processor pool");
             pool = poolManager.getProcessorPool(TransientProcessorPool.DEFAULT_POOL_ID);
         }
+        workflowRegistry.setProcessingState(w, ProcessingState.ENQUEUED);
+        if (workflowTimelineRecorder != null) {
+            final WorkflowTimeline timeline = new WorkflowTimeline();
+            timeline.stampReady();
+            timeline.stampPoolQueued();
+            WorkflowAccessor.setTimeline(w, timeline);
+        }
         pool.enqueue(w);
     }
 
+    /**
+     * Sets the processing state of a workflow instance and keeps the engine's workflow instance index up to date.
+     */
+    void setProcessingState(Workflow<?> w, ProcessingState state) {
+        workflowRegistry.setProcessingState(w, state);
+    }
+
     @Override
     public synchronized void shutdown() {
         if (engineState != EngineState.STARTED)
@@ -213,10 +345,26 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
 
         logger.info("Engine is shutting down...");
         engineState = EngineState.SHUTTING_DOWN;
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+        }
+        if (workflowParking != null) {
+            workflowParking.shutdown();
+        }
         wfRepository.shutdown();
         timeoutManager.shutdown();
         earlyResponseContainer.shutdown();
         poolManager.shutdown();
+        if (snapshotter != null && snapshotOnShutdown) {
+            try {
+                snapshotter.write();
+            } catch (Exception e) {
+                logger.error("Writing snapshot on shutdown failed", e);
+            }
+        }
+        if (workflowParking != null) {
+            workflowParking.release();
+        }
         super.shutdown();
         logger.info("Engine is stopped");
         engineState = EngineState.STOPPED;
@@ -235,11 +383,54 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         timeoutManager.startup();
         earlyResponseContainer.startup();
         poolManager.startup();
+        if (workflowParking != null) {
+            workflowRegistry.setParkedWorkflowLoader(this::loadParkedWorkflow);
+        }
+        if (snapshotFile != null) {
+            startupSnapshotter();
+        }
+        if (workflowParking != null) {
+            workflowParking.startup(this);
+        }
         engineState = EngineState.STARTED;
         logger.info("Engine is running");
         startupBlocker.unblock();
     }
 
+    private void startupSnapshotter() {
+        snapshotter = new TransientEngineSnapshotter(this, snapshotFile, snapshotChunkSize, restoreThreads);
+        try {
+            snapshotter.restore();
+        } catch (IOException e) {
+            throw new CopperRuntimeException("Restoring snapshot " + snapshotFile + " failed", e);
+        }
+        if (snapshotIntervalMSec > 0) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor();
+            snapshotScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        snapshotter.write();
+                    } catch (Exception e) {
+                        logger.error("Writing snapshot failed", e);
+                    }
+                }
+            }, snapshotIntervalMSec, snapshotIntervalMSec, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a snapshot of all in-flight workflow instances to the configured snapshot file.
+     *
+     * @throws IOException
+     *         if writing the snapshot failed
+     */
+    public void writeSnapshot() throws IOException {
+        if (snapshotter == null)
+            throw new IllegalStateException("snapshots are not enabled or engine is not started");
+        snapshotter.write();
+    }
+
     @Override
     public void registerCallbacks(Workflow<?> w, WaitMode mode, long timeoutMsec, String... correlationIds) {
         if (logger.isDebugEnabled())
@@ -262,25 +453,185 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
             if (cs.getMissingCorrelationIds().isEmpty() || (cs.getMissingCorrelationIds().size() < correlationIds.length && mode == WaitMode.FIRST)) {
                 doEnqueue = true;
             } else {
-                for (String cid : cs.getCorrelationIds()) {
-                    correlationMap.put(cid, cs);
-                }
-                if (cs.getTimeoutTS() != null) {
-                    if (mode == WaitMode.FIRST)
-                        timeoutManager.registerTimeout(cs.getTimeoutTS().longValue(), cs.getMissingCorrelationIds().get(0));
-                    else
-                        timeoutManager.registerTimeout(cs.getTimeoutTS().longValue(), cs.getMissingCorrelationIds());
-                }
+                registerCorrelationSet(cs);
             }
         }
         if (doEnqueue) {
             enqueue(w);
         } else {
-            WorkflowAccessor.setProcessingState(w, ProcessingState.WAITING);
+            workflowRegistry.setProcessingState(w, ProcessingState.WAITING);
             WorkflowAccessor.setTimeoutTS(w, cs.getTimeoutTS() != null ? new Date(cs.getTimeoutTS()) : null);
         }
     }
 
+    private void registerCorrelationSet(CorrelationSet cs) {
+        for (String cid : cs.getCorrelationIds()) {
+            correlationMap.put(cid, cs);
+        }
+        waitingCorrelationSets.put(cs.getWorkflowId(), cs);
+        if (workflowParking != null) {
+            cs.setWaitingSinceTS(System.currentTimeMillis());
+            parkingCandidates.addLast(cs);
+        }
+        if (cs.getTimeoutTS() != null) {
+            if (cs.getMode() == WaitMode.FIRST)
+                timeoutManager.registerTimeout(cs.getTimeoutTS().longValue(), cs.getMissingCorrelationIds().get(0));
+            else
+                timeoutManager.registerTimeout(cs.getTimeoutTS().longValue(), cs.getMissingCorrelationIds());
+        }
+    }
+
+    /**
+     * For internal use only - adds a workflow instance restored from a snapshot.
+     *
+     * @param wf
+     *        the restored workflow instance
+     * @param cs
+     *        the correlation set the instance is waiting for or <code>null</code>, if it is ready to run
+     */
+    void restoreWorkflow(Workflow<?> wf, CorrelationSet cs) {
+        // must not block: the startup blocker is still closed, so no ticket would be released until restore is done,
+        // e.g. if the ticket pool is smaller than the number of restored instances
+        ticketPoolManager.obtainForced(wf);
+        if (!workflowRegistry.add(wf)) {
+            ticketPoolManager.release(wf);
+            logger.warn("Skipping restore of workflow instance {} - engine already contains a workflow with this id", wf.getId());
+            return;
+        }
+        injectDependencies(wf);
+        if (cs == null) {
+            enqueue(wf);
+            return;
+        }
+        synchronized (correlationMap) {
+            registerCorrelationSet(cs);
+        }
+        workflowRegistry.setProcessingState(wf, ProcessingState.WAITING);
+    }
+
+    /**
+     * For internal use only - parks the workflow instances, that are waiting since the specified time or longer.
+     *
+     * @return the number of parked instances
+     */
+    int parkIdleWorkflows(long idleSinceTS) {
+        int parked = 0;
+        for (;;) {
+            final List<CorrelationSet> candidates = new ArrayList<CorrelationSet>();
+            synchronized (correlationMap) {
+                CorrelationSet cs;
+                while (candidates.size() < PARKING_BATCH_SIZE && (cs = parkingCandidates.peekFirst()) != null && cs.getWaitingSinceTS() <= idleSinceTS) {
+                    parkingCandidates.pollFirst();
+                    if (waitingCorrelationSets.get(cs.getWorkflowId()) == cs) {
+                        candidates.add(cs);
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                return parked;
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                final CorrelationSet cs = candidates.get(i);
+                final Workflow<?> wf = workflowRegistry.get(cs.getWorkflowId());
+                if (wf == null) {
+                    continue;
+                }
+                synchronized (wf) {
+                    synchronized (correlationMap) {
+                        if (waitingCorrelationSets.get(wf.getId()) != cs || workflowRegistry.get(wf.getId()) != wf) {
+                            // resumed or finished meanwhile
+                            continue;
+                        }
+                        final WorkflowParking.Handle handle;
+                        try {
+                            handle = workflowParking.park(wf);
+                        } catch (IOException | RuntimeException e) {
+                            logger.warn("Unable to park workflow instance " + wf.getId() + " - keeping it on heap", e);
+                            continue;
+                        }
+                        if (handle == null) {
+                            // storage exhausted - retry with the next check
+                            for (int j = candidates.size() - 1; j >= i; j--) {
+                                parkingCandidates.addFirst(candidates.get(j));
+                            }
+                            return parked;
+                        }
+                        workflowRegistry.park(wf, handle);
+                        parked++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Inflates a parked workflow instance and puts it back into the workflow registry. Must be called while holding
+     * the correlation map lock.
+     *
+     * @return the inflated instance or <code>null</code>, if it is not parked
+     */
+    private Workflow<?> unpark(String id) {
+        final WorkflowParking.Handle handle = workflowRegistry.getParked(id);
+        if (handle == null) {
+            return null;
+        }
+        final Workflow<?> wf;
+        try {
+            wf = workflowParking.load(handle, wfRepository);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            logger.error("Unable to inflate parked workflow instance " + id, e);
+            return null;
+        }
+        injectDependencies(wf);
+        workflowRegistry.unpark(wf);
+        workflowParking.free(handle);
+        return wf;
+    }
+
+    /**
+     * For internal use only - loads a detached copy of a parked workflow instance, e.g. for monitoring or snapshots.
+     *
+     * @return the copy or <code>null</code>, if the instance is not parked
+     */
+    Workflow<?> loadParkedWorkflow(String id) {
+        synchronized (correlationMap) {
+            final WorkflowParking.Handle handle = workflowRegistry.getParked(id);
+            if (handle == null) {
+                return null;
+            }
+            try {
+                final Workflow<?> wf = workflowParking.load(handle, wfRepository);
+                wf.setEngine(this);
+                return wf;
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                logger.warn("Unable to load parked workflow instance " + id, e);
+                return null;
+            }
+        }
+    }
+
+    TransientWorkflowRegistry getWorkflowRegistry() {
+        return workflowRegistry;
+    }
+
+    /**
+     * The returned map is also the lock object for all correlation related data
+     */
+    Map<String, CorrelationSet> getCorrelationMap() {
+        return correlationMap;
+    }
+
+    /**
+     * Must be called while holding the lock on the correlation map
+     */
+    CorrelationSet getWaitingCorrelationSet(String workflowId) {
+        return waitingCorrelationSets.get(workflowId);
+    }
+
+    EarlyResponseContainer getEarlyResponseContainer() {
+        return earlyResponseContainer;
+    }
+
     /**
      * For internal use only!!
      * 
@@ -288,7 +639,7 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
      *        workflow instance id
      */
     public void removeWorkflow(String id) {
-        final Workflow<?> wf = workflowMap.remove(id);
+        final Workflow<?> wf = workflowRegistry.remove(id);
         if (wf != null) {
             WorkflowAccessor.setProcessingState(wf, ProcessingState.FINISHED);
             ticketPoolManager.release(wf);
@@ -303,6 +654,28 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         }
     }
 
+    @Override
+    protected CompletableFuture<Void> runAsync(List<Workflow<?>> list) {
+        try {
+            startupBlocker.pass();
+        } catch (InterruptedException e) {
+            // ignore
+        }
+
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[list.size()];
+        for (int i = 0; i < futures.length; i++) {
+            final Workflow<?> w = list.get(i);
+            futures[i] = ticketPoolManager.obtainAsync(w).thenRun(() -> {
+                try {
+                    runWithTicket(w);
+                } catch (DuplicateIdException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
     @Override
     public String getState() {
         return getEngineState().name();
@@ -316,7 +689,7 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
     @Override
     public List<WorkflowInfo> queryWorkflowInstances() {
         List<WorkflowInfo> rv = new ArrayList<WorkflowInfo>();
-        for (Workflow<?> wf : workflowMap.values()) {
+        for (Workflow<?> wf : workflowRegistry.values()) {
             WorkflowInfo wfi = convert2Wfi(wf);
             rv.add(wfi);
         }
@@ -325,12 +698,16 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
 
     @Override
     public WorkflowInfo queryWorkflowInstance(String id) {
-        return convert2Wfi(workflowMap.get(id));
+        final Workflow<?> wf = workflowRegistry.get(id);
+        if (wf == null && workflowParking != null) {
+            return convert2Wfi(loadParkedWorkflow(id));
+        }
+        return convert2Wfi(wf);
     }
 
     @Override
     public int getNumberOfWorkflowInstances() {
-        return workflowMap.size();
+        return workflowRegistry.size();
     }
 
     @Override
@@ -357,13 +734,11 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
     @Override
     public List<WorkflowInfo> queryActiveWorkflowInstances(final String className, final int max) {
         final List<WorkflowInfo> rv = new ArrayList<WorkflowInfo>();
-        for (Workflow<?> wf : workflowMap.values()) {
+        for (Workflow<?> wf : workflowRegistry.query(null, className, null)) {
             if (rv.size() >= max) {
                 break;
             }
-            if (wf.getClass().getName().equals(className)) {
-                rv.add(convert2Wfi(wf));
-            }
+            rv.add(convert2Wfi(wf));
         }
         return rv;
     }
@@ -381,18 +756,38 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
 
     @Override
     public List<WorkflowInfo> queryWorkflowInstances(final WorkflowInstanceFilter filter) {
-        return filter(filter, workflowMap.values());
+        final List<Workflow<?>> candidates = workflowRegistry.query(toProcessingStates(filter.getStates()), filter.getWorkflowClassname(), filter.getProcessorPoolId());
+        return filter(filter, candidates);
     }
 
     @Override
     public long countWorkflowInstances(final WorkflowInstanceFilter filter) {
         long count = 0;
-        if (filter.getStates().contains(ProcessingState.ERROR.name())) {
+        if (filter.getStates() == null || filter.getStates().contains(ProcessingState.ERROR.name())) {
             count += errorWFCounter.get();
         }
 
-        WorkflowInstanceFilter noLimitfilter = new WorkflowInstanceFilter(filter.getStates(), filter.getLastModTS(), filter.getCreationTS(), filter.getProcessorPoolId(), filter.getWorkflowClassname(), Integer.MAX_VALUE, 0);
-        return count + filter(noLimitfilter, workflowMap.values()).size();
+        final List<ProcessingState> states = toProcessingStates(filter.getStates());
+        if (filter.getCreationTS() == null && filter.getLastModTS() == null) {
+            // answered by the index, no need to touch the workflow instances
+            return count + workflowRegistry.count(states, filter.getWorkflowClassname(), filter.getProcessorPoolId());
+        }
+        return count + count(filter, workflowRegistry.query(states, filter.getWorkflowClassname(), filter.getProcessorPoolId()));
+    }
+
+    private static List<ProcessingState> toProcessingStates(List<String> states) {
+        if (states == null) {
+            return null;
+        }
+        final List<ProcessingState> rv = new ArrayList<ProcessingState>(states.size());
+        for (String state : states) {
+            try {
+                rv.add(ProcessingState.valueOf(state));
+            } catch (IllegalArgumentException e) {
+                // unknown state - matches no workflow instance
+            }
+        }
+        return rv;
     }
 
     public void incErrorWFCounter() {
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.internal.WorkflowAccessor;
+
+/**
+ * Internally used class.
+ * <p>
+ * Holds the workflow instances of a {@link TransientScottyEngine} together with a secondary index, that groups the
+ * instances by processing state, workflow class and processor pool. The index is maintained incrementally on every
+ * state change, so counting instances for a combination of these criteria does not depend on the number of instances,
+ * and filtered queries only touch matching instances.
+ * <p>
+ * The processor pool id of an instance is taken into account on its next state change, i.e. when a workflow changes its
+ * processor pool while running, the index reflects this when it is enqueued again.
+ * <p>
+ * A waiting instance may be parked by {@link WorkflowParking}. Its entry then holds the storage handle instead of the
+ * instance, so it is still counted and indexed, but {@link #get(String)} does not return it. Queries return detached
+ * copies of parked instances, if a loader is set.
+ */
+class TransientWorkflowRegistry {
+
+    static final class Key {
+        final ProcessingState state;
+        final String classname;
+        final String processorPoolId;
+        private final int hashCode;
+
+        Key(ProcessingState state, String classname, String processorPoolId) {
+            this.state = state;
+            this.classname = classname;
+            this.processorPoolId = processorPoolId;
+            int h = state == null ? 0 : state.hashCode();
+            h = 31 * h + classname.hashCode();
+            h = 31 * h + (processorPoolId == null ? 0 : processorPoolId.hashCode());
+            this.hashCode = h;
+        }
+
+        boolean matches(Collection<ProcessingState> states, String classname, String processorPoolId) {
+            return (states == null || states.contains(state))
+                    && (classname == null || classname.equals(this.classname))
+                    && (processorPoolId == null || processorPoolId.equals(this.processorPoolId));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return state == other.state && classname.equals(other.classname) && (processorPoolId == null ? other.processorPoolId == null : processorPoolId.equals(other.processorPoolId));
+        }
+    }
+
+    private static final class Entry {
+        final String id;
+        volatile Workflow<?> workflow;
+        volatile WorkflowParking.Handle handle;
+        Key key;
+
+        Entry(Workflow<?> workflow) {
+            this.id = workflow.getId();
+            this.workflow = workflow;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>(50000);
+    private final Map<Key, Set<Entry>> index = new ConcurrentHashMap<Key, Set<Entry>>();
+    private volatile Function<String, Workflow<?>> parkedWorkflowLoader;
+
+    /**
+     * Adds the workflow instance, if there is no other instance with the same id.
+     *
+     * @return <code>true</code> if the instance was added
+     */
+    public boolean add(Workflow<?> wf) {
+        final Entry entry = new Entry(wf);
+        synchronized (entry) {
+            if (entries.putIfAbsent(wf.getId(), entry) != null) {
+                return false;
+            }
+            reindex(entry, wf.getProcessingState());
+        }
+        return true;
+    }
+
+    /**
+     * Removes the workflow instance with the specified id.
+     *
+     * @return the removed instance or <code>null</code>, if there is none or it is parked
+     */
+    public Workflow<?> remove(String id) {
+        final Entry entry = entries.remove(id);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            if (entry.key != null) {
+                bucket(entry.key).remove(entry);
+                entry.key = null;
+            }
+        }
+        return entry.workflow;
+    }
+
+    /**
+     * @return the workflow instance with the specified id or <code>null</code>, if there is none or it is parked
+     */
+    public Workflow<?> get(String id) {
+        final Entry entry = entries.get(id);
+        return entry == null ? null : entry.workflow;
+    }
+
+    /**
+     * @return the storage handle of the parked workflow instance with the specified id or <code>null</code>, if there
+     *         is none or it is not parked
+     */
+    public WorkflowParking.Handle getParked(String id) {
+        final Entry entry = entries.get(id);
+        return entry == null ? null : entry.handle;
+    }
+
+    /**
+     * Replaces the workflow instance by the storage handle of its parked copy.
+     *
+     * @return <code>false</code>, if the instance is not registered
+     */
+    public boolean park(Workflow<?> wf, WorkflowParking.Handle handle) {
+        final Entry entry = entries.get(wf.getId());
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.workflow != wf) {
+                return false;
+            }
+            entry.handle = handle;
+            entry.workflow = null;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the storage handle of a parked workflow instance by the inflated instance.
+     *
+     * @return <code>false</code>, if the instance is not parked
+     */
+    public boolean unpark(Workflow<?> wf) {
+        final Entry entry = entries.get(wf.getId());
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.handle == null) {
+                return false;
+            }
+            entry.workflow = wf;
+            entry.handle = null;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the function, that loads a detached copy of a parked workflow instance by its id, for use in queries.
+     */
+    public void setParkedWorkflowLoader(Function<String, Workflow<?>> parkedWorkflowLoader) {
+        this.parkedWorkflowLoader = parkedWorkflowLoader;
+    }
+
+    public boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the ids of all workflow instances, including the parked ones
+     */
+    public List<String> ids() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    /**
+     * Sets the processing state of the workflow instance and updates the index accordingly.
+     */
+    public void setProcessingState(Workflow<?> wf, ProcessingState state) {
+        final Entry entry = wf.getId() == null ? null : entries.get(wf.getId());
+        if (entry == null || entry.workflow != wf) {
+            WorkflowAccessor.setProcessingState(wf, state);
+            return;
+        }
+        synchronized (entry) {
+            WorkflowAccessor.setProcessingState(wf, state);
+            if (entry.key != null && entry.workflow == wf) {
+                reindex(entry, state);
+            }
+        }
+    }
+
+    private void reindex(Entry entry, ProcessingState state) {
+        final Workflow<?> wf = entry.workflow;
+        final Key oldKey = entry.key;
+        final Key newKey = new Key(state, wf.getClass().getName(), wf.getProcessorPoolId());
+        if (newKey.equals(oldKey)) {
+            return;
+        }
+        if (oldKey != null) {
+            bucket(oldKey).remove(entry);
+        }
+        bucket(newKey).add(entry);
+        entry.key = newKey;
+    }
+
+    private Set<Entry> bucket(Key key) {
+        Set<Entry> set = index.get(key);
+        if (set == null) {
+            final Set<Entry> newSet = ConcurrentHashMap.newKeySet();
+            set = index.putIfAbsent(key, newSet);
+            if (set == null) {
+                set = newSet;
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @return all workflow instances, including detached copies of the parked ones
+     */
+    public Collection<Workflow<?>> values() {
+        final List<Workflow<?>> rv = new ArrayList<Workflow<?>>(entries.size());
+        for (Entry entry : entries.values()) {
+            addTo(rv, entry);
+        }
+        return rv;
+    }
+
+    private void addTo(List<Workflow<?>> list, Entry entry) {
+        final Workflow<?> wf = entry.workflow;
+        if (wf != null) {
+            list.add(wf);
+            return;
+        }
+        final Function<String, Workflow<?>> loader = parkedWorkflowLoader;
+        final Workflow<?> copy = loader == null ? null : loader.apply(entry.id);
+        if (copy != null) {
+            list.add(copy);
+        }
+    }
+
+    /**
+     * Returns the workflow instances that are indexed with one of the specified states, the specified class name and the
+     * specified processor pool id. A <code>null</code> argument matches any value. Parked instances are returned as
+     * detached copies.
+     */
+    public List<Workflow<?>> query(Collection<ProcessingState> states, String classname, String processorPoolId) {
+        final List<Workflow<?>> rv = new ArrayList<Workflow<?>>();
+        for (Map.Entry<Key, Set<Entry>> e : index.entrySet()) {
+            if (e.getKey().matches(states, classname, processorPoolId)) {
+                for (Entry entry : e.getValue()) {
+                    addTo(rv, entry);
+                }
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Counts the workflow instances that are indexed with one of the specified states, the specified class name and the
+     * specified processor pool id. A <code>null</code> argument matches any value.
+     * The costs depend on the number of distinct state/class/processor pool combinations, not on the number of
+     * workflow instances.
+     */
+    public long count(Collection<ProcessingState> states, String classname, String processorPoolId) {
+        long count = 0;
+        for (Map.Entry<Key, Set<Entry>> e : index.entrySet()) {
+            if (e.getKey().matches(states, classname, processorPoolId)) {
+                count += e.getValue().size();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Response;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.common.WorkflowRepository;
+import org.copperengine.core.internal.WorkflowAccessor;
+import org.copperengine.management.WorkflowParkingMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parks idle waiting workflow instances of a {@link TransientScottyEngine} in compact off-heap storage. A transient
+ * engine keeps all of its workflow instances on the heap, so with millions of long waiting instances the heap and the
+ * garbage collection times grow accordingly, although the instances are not touched for most of the time.
+ * <p>
+ * A background thread checks every {@link #setCheckIntervalMSec(long) check interval} for workflow instances, that are
+ * waiting for longer than the {@link #setIdleThresholdMSec(long) idle threshold}. These instances are serialized,
+ * deflated and written to storage slabs outside of the heap. Only a small handle as well as the correlation set stay on
+ * the heap, so the engine still routes responses and timeouts and counts the instances without touching the storage.
+ * When a response or timeout arrives for a parked instance, it is inflated again transparently. Monitoring queries and
+ * snapshots use temporary copies of parked instances.
+ * <p>
+ * Slabs are allocated with {@link ByteBuffer#allocateDirect(int)}, or as memory mapped files, if a
+ * {@link #setDirectory(File) directory} is set. Direct slabs count against the JVM's maximum direct memory size.
+ * Records are appended to the current slab, a slab is reused as soon as all of its instances were inflated again. The
+ * storage never exceeds {@link #setMaxBytes(long) maxBytes}, instances are kept on the heap, while the storage is
+ * exhausted. Instances that cannot be serialized are kept on the heap as well.
+ * <p>
+ * Use {@link TransientScottyEngine#setWorkflowParking(WorkflowParking)} to enable it.
+ */
+public class WorkflowParking implements WorkflowParkingMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowParking.class);
+
+    /**
+     * Storage location of a parked workflow instance.
+     */
+    static final class Handle {
+        final Slab slab;
+        final int offset;
+        final int length;
+        final int uncompressedLength;
+
+        Handle(Slab slab, int offset, int length, int uncompressedLength) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.uncompressedLength = uncompressedLength;
+        }
+    }
+
+    private static final class Slab {
+        final ByteBuffer buffer;
+        int writePos;
+        int liveCount;
+
+        Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        void writeTo(ByteBuffer target) {
+            target.put(buf, 0, count);
+        }
+    }
+
+    private volatile long idleThresholdMSec = 60000;
+    private long checkIntervalMSec = 1000;
+    private int slabSize = 4 * 1024 * 1024;
+    private long maxBytes = 256L * 1024 * 1024;
+    private File directory;
+
+    // storage, guarded by this
+    private final ArrayDeque<Slab> freeSlabs = new ArrayDeque<Slab>();
+    private Slab current;
+    private int slabCount;
+    private int parkedCount;
+    private long usedBytes;
+    private long uncompressedBytes;
+    private final Buffer buffer = new Buffer(8 * 1024);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    private final AtomicLong parkCount = new AtomicLong();
+    private final AtomicLong unparkCount = new AtomicLong();
+    private final AtomicLong budgetExceededCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private volatile boolean shutdown = false;
+    private TransientScottyEngine engine;
+    private Thread thread;
+
+    @Override
+    public long getIdleThresholdMSec() {
+        return idleThresholdMSec;
+    }
+
+    /**
+     * Sets the time a workflow instance has to wait, before it is parked. Defaults to one minute.
+     */
+    @Override
+    public void setIdleThresholdMSec(long idleThresholdMSec) {
+        if (idleThresholdMSec < 0)
+            throw new IllegalArgumentException("idleThresholdMSec must not be negative");
+        this.idleThresholdMSec = idleThresholdMSec;
+    }
+
+    public long getCheckIntervalMSec() {
+        return checkIntervalMSec;
+    }
+
+    /**
+     * Sets the interval, in which the background thread checks for idle workflow instances. Defaults to one second.
+     */
+    public void setCheckIntervalMSec(long checkIntervalMSec) {
+        if (checkIntervalMSec <= 0)
+            throw new IllegalArgumentException("checkIntervalMSec must be positive");
+        this.checkIntervalMSec = checkIntervalMSec;
+    }
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Sets the size of a storage slab in bytes, which is also the maximum size of a deflated workflow instance.
+     * Defaults to 4 MB.
+     */
+    public synchronized void setSlabSize(int slabSize) {
+        if (slabSize <= 0)
+            throw new IllegalArgumentException("slabSize must be positive");
+        if (slabCount > 0)
+            throw new IllegalStateException("storage is in use");
+        this.slabSize = slabSize;
+    }
+
+    @Override
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes of storage slabs, that may be allocated. Defaults to 256 MB.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("maxBytes must not be negative");
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Sets the directory for memory mapped storage slabs. Defaults to <code>null</code>, i.e. the slabs are allocated
+     * as direct byte buffers. The slab files are deleted as soon as they are mapped, or on exit, if the platform does
+     * not allow deleting mapped files.
+     */
+    public synchronized void setDirectory(File directory) {
+        if (slabCount > 0)
+            throw new IllegalStateException("storage is in use");
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized int getParkedCount() {
+        return parkedCount;
+    }
+
+    @Override
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    @Override
+    public synchronized long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    @Override
+    public synchronized long getAllocatedBytes() {
+        return (long) slabCount * slabSize;
+    }
+
+    @Override
+    public long getParkCount() {
+        return parkCount.get();
+    }
+
+    @Override
+    public long getUnparkCount() {
+        return unparkCount.get();
+    }
+
+    @Override
+    public long getBudgetExceededCount() {
+        return budgetExceededCount.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    synchronized void startup(TransientScottyEngine engine) {
+        if (thread != null)
+            throw new IllegalStateException("already started");
+        this.engine = engine;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WorkflowParking.this.run();
+            }
+        }, engine.getEngineId() + "#WorkflowParking");
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread. Parked workflow instances stay available until {@link #release()} is called.
+     */
+    void shutdown() {
+        final Thread t;
+        synchronized (this) {
+            shutdown = true;
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Releases the storage, including all parked workflow instances.
+     */
+    synchronized void release() {
+        freeSlabs.clear();
+        current = null;
+        slabCount = 0;
+        parkedCount = 0;
+        usedBytes = 0;
+        uncompressedBytes = 0;
+        deflater.end();
+    }
+
+    private void run() {
+        logger.info("started");
+        while (!shutdown) {
+            try {
+                try {
+                    final int count = engine.parkIdleWorkflows(System.currentTimeMillis() - idleThresholdMSec);
+                    if (count > 0) {
+                        logger.debug("Parked {} workflow instances", count);
+                    }
+                } catch (Exception e) {
+                    logger.error("parking failed", e);
+                }
+                if (!shutdown) {
+                    Thread.sleep(checkIntervalMSec);
+                }
+            } catch (InterruptedException e) {
+                logger.info("interrupted");
+            }
+        }
+        logger.info("stopped");
+    }
+
+    /**
+     * Serializes the workflow instance and writes it to the storage.
+     *
+     * @return the handle of the stored instance or <code>null</code>, if the storage is exhausted
+     * @throws IOException
+     *         if the instance cannot be stored
+     */
+    synchronized Handle park(Workflow<?> wf) throws IOException {
+        final Handle handle;
+        try {
+            buffer.reset();
+            deflater.reset();
+            final ObjectOutputStream oos = new ObjectOutputStream(new DeflaterOutputStream(buffer, deflater, 8 * 1024));
+            oos.writeUTF(wf.getId());
+            oos.writeObject(wf.getProcessorPoolId());
+            oos.writeInt(wf.getPriority());
+            oos.writeObject(wf.getProcessingState());
+            oos.writeObject(wf.getCreationTS());
+            oos.writeObject(wf.getLastActivityTS());
+            oos.writeObject(wf.getTimeoutTS());
+            oos.writeObject(wf);
+            oos.writeObject(wf.getData());
+            oos.writeObject(WorkflowAccessor.getPendingResponses(wf));
+            oos.close();
+            if (buffer.size() > slabSize)
+                throw new IOException("Workflow instance " + wf.getId() + " exceeds the slab size");
+            handle = allocate(buffer.size(), (int) deflater.getBytesRead());
+        } catch (IOException | RuntimeException e) {
+            failedCount.incrementAndGet();
+            throw e;
+        }
+        if (handle == null) {
+            budgetExceededCount.incrementAndGet();
+            return null;
+        }
+        final ByteBuffer target = handle.slab.buffer.duplicate();
+        target.position(handle.offset);
+        buffer.writeTo(target);
+        parkCount.incrementAndGet();
+        return handle;
+    }
+
+    private Handle allocate(int length, int uncompressedLength) throws IOException {
+        if (current == null || current.writePos + length > slabSize) {
+            Slab next = freeSlabs.poll();
+            if (next == null) {
+                if ((long) (slabCount + 1) * slabSize > maxBytes)
+                    return null;
+                next = new Slab(createBuffer());
+                slabCount++;
+            }
+            current = next;
+        }
+        final Handle handle = new Handle(current, current.writePos, length, uncompressedLength);
+        current.writePos += length;
+        current.liveCount++;
+        parkedCount++;
+        usedBytes += length;
+        uncompressedBytes += uncompressedLength;
+        return handle;
+    }
+
+    private ByteBuffer createBuffer() throws IOException {
+        if (directory == null)
+            return ByteBuffer.allocateDirect(slabSize);
+        directory.mkdirs();
+        final File file = File.createTempFile("copper-parking-", ".slab", directory);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, slabSize);
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Frees the storage of a workflow instance, that was inflated again.
+     */
+    synchronized void free(Handle handle) {
+        final Slab slab = handle.slab;
+        parkedCount--;
+        usedBytes -= handle.length;
+        uncompressedBytes -= handle.uncompressedLength;
+        unparkCount.incrementAndGet();
+        if (--slab.liveCount == 0) {
+            slab.writePos = 0;
+            if (slab != current) {
+                if (freeSlabs.isEmpty()) {
+                    freeSlabs.add(slab);
+                } else {
+                    // keep a single spare slab, the others are left to the garbage collector
+                    slabCount--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a parked workflow instance from the storage. The returned instance is detached, i.e. it has neither an
+     * engine nor injected dependencies.
+     */
+    @SuppressWarnings("unchecked")
+    Workflow<?> load(Handle handle, WorkflowRepository wfRepository) throws IOException, ClassNotFoundException {
+        final byte[] record = new byte[handle.length];
+        synchronized (this) {
+            final ByteBuffer source = handle.slab.buffer.duplicate();
+            source.position(handle.offset);
+            source.get(record);
+        }
+        try (ObjectInputStream ois = createObjectInputStream(record, wfRepository)) {
+            final String id = ois.readUTF();
+            final String processorPoolId = (String) ois.readObject();
+            final int priority = ois.readInt();
+            final ProcessingState state = (ProcessingState) ois.readObject();
+            final Date creationTS = (Date) ois.readObject();
+            final Date lastActivityTS = (Date) ois.readObject();
+            final Date timeoutTS = (Date) ois.readObject();
+            final Workflow<Object> wf = (Workflow<Object>) ois.readObject();
+            wf.setData(ois.readObject());
+            final List<Response<?>> responses = (List<Response<?>>) ois.readObject();
+
+            wf.setId(id);
+            wf.setProcessorPoolId(processorPoolId);
+            wf.setPriority(priority);
+            WorkflowAccessor.setProcessingState(wf, state);
+            WorkflowAccessor.setCreationTS(wf, creationTS);
+            WorkflowAccessor.setLastActivityTS(wf, lastActivityTS);
+            WorkflowAccessor.setTimeoutTS(wf, timeoutTS);
+            for (Response<?> r : responses) {
+                wf.putResponse(r);
+            }
+            return wf;
+        }
+    }
+
+    private static ObjectInputStream createObjectInputStream(byte[] record, final WorkflowRepository wfRepository) throws IOException {
+        return new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(record))) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                try {
+                    return wfRepository.resolveClass(desc.getName());
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(desc);
+                }
+            }
+        };
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.copperengine.core.util;
 
+import java.io.InputStream;
+
 import javax.xml.bind.DatatypeConverter;
 
 /**
@@ -47,4 +49,43 @@ public class Base64 {
         return DatatypeConverter.parseBase64Binary(data);
     }
 
+    /**
+     * Returns a stream of the binary data encoded in a String containing characters in the Base64 alphabet. The data is
+     * decoded while it is read, so neither the String nor the binary data is copied.
+     *
+     * @param data
+     *         a String containing Base64 character data
+     * @param offset
+     *         index of the first Base64 character in <code>data</code>
+     * @return a stream of the binary data
+     */
+    public static InputStream decodingStream(final String data, final int offset) {
+        return java.util.Base64.getMimeDecoder().wrap(new InputStream() {
+            private int pos = offset;
+
+            @Override
+            public int read() {
+                return pos < data.length() ? data.charAt(pos++) & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0)
+                    return 0;
+                if (pos >= data.length())
+                    return -1;
+                final int n = Math.min(len, data.length() - pos);
+                for (int i = 0; i < n; i++) {
+                    b[off + i] = (byte) data.charAt(pos++);
+                }
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return data.length() - pos;
+            }
+        });
+    }
+
 }
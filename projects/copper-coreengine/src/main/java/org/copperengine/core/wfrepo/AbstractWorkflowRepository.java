@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -26,9 +27,17 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
 
 import org.copperengine.core.CopperRuntimeException;
 import org.copperengine.core.Workflow;
@@ -38,8 +47,10 @@ import org.copperengine.core.WorkflowVersion;
 import org.copperengine.core.common.WorkflowRepository;
 import org.copperengine.core.instrument.ClassInfo;
 import org.copperengine.core.instrument.ScottyClassAdapter;
+import org.copperengine.core.instrument.ScottyFindInterruptableMethodsVisitor;
 import org.copperengine.core.instrument.Transformed;
 import org.copperengine.core.instrument.TryCatchBlockHandler;
+import org.copperengine.core.util.FunctionWithException;
 import org.copperengine.management.FileBasedWorkflowRepositoryMXBean;
 import org.copperengine.management.model.WorkflowClassInfo;
 import org.objectweb.asm.ClassReader;
@@ -56,6 +67,8 @@ public abstract class AbstractWorkflowRepository implements WorkflowRepository,
 
     private static final int flags = ClassReader.EXPAND_FRAMES;
 
+    private int instrumentationParallelism = Runtime.getRuntime().availableProcessors();
+
     protected static final class VolatileState {
         public final Map<String, Class<?>> wfClassMap;
         public final Map<String, Class<?>> wfMapLatest;
@@ -66,6 +79,8 @@ public abstract class AbstractWorkflowRepository implements WorkflowRepository,
         public final Map<String, WorkflowClassInfo> workflowClassInfoMap;
         public final ClassLoader classLoader;
         public final long checksum;
+        // classes resolved by resolveClass, which is called for each class descriptor during deserialization
+        private final ConcurrentMap<String, Class<?>> resolvedClasses = new ConcurrentHashMap<String, Class<?>>();
 
         public VolatileState(Map<String, Class<?>> wfMap, Map<String, Class<?>> wfMapVersioned, Map<String, List<WorkflowVersion>> wfVersions, ClassLoader classLoader, long checksum, Map<String, Class<?>> wfClassMap, Map<String, String> javaSources, Map<String, ClassInfo> classInfoMap, Map<String, WorkflowClassInfo> workflowClassInfoMap) {
             this.wfMapLatest = wfMap;
@@ -80,6 +95,37 @@ public abstract class AbstractWorkflowRepository implements WorkflowRepository,
         }
     }
 
+    private static final class Instrumented {
+        final Clazz clazz;
+        final byte[] bytes;
+        final ClassInfo classInfo;
+        final String verifyResult;
+
+        Instrumented(Clazz clazz, byte[] bytes, ClassInfo classInfo, String verifyResult) {
+            this.clazz = clazz;
+            this.bytes = bytes;
+            this.classInfo = classInfo;
+            this.verifyResult = verifyResult;
+        }
+    }
+
+    /**
+     * Sets the number of threads used to analyse and instrument the workflow classes. Defaults to the number of
+     * available processors. The instrumented classes do not depend on the number of threads.
+     *
+     * @param instrumentationParallelism
+     *        number of threads, 1 to analyse and instrument in the calling thread
+     */
+    public void setInstrumentationParallelism(int instrumentationParallelism) {
+        if (instrumentationParallelism < 1)
+            throw new IllegalArgumentException("instrumentationParallelism must be positive");
+        this.instrumentationParallelism = instrumentationParallelism;
+    }
+
+    public int getInstrumentationParallelism() {
+        return instrumentationParallelism;
+    }
+
     @Override
     public <E> WorkflowFactory<E> createWorkflowFactory(final String wfName) throws ClassNotFoundException {
         return createWorkflowFactory(wfName, null);
@@ -120,7 +166,12 @@ public abstract class AbstractWorkflowRepository implements WorkflowRepository,
     @Override
     public java.lang.Class<?> resolveClass(String classname) throws java.io.IOException, ClassNotFoundException {
         final VolatileState volatileState = getVolatileState();
-        return Class.forName(classname, false, volatileState.classLoader);
+        Class<?> c = volatileState.resolvedClasses.get(classname);
+        if (c == null) {
+            c = Class.forName(classname, false, volatileState.classLoader);
+            volatileState.resolvedClasses.put(classname, c);
+        }
+        return c;
     }
 
     @Override
@@ -208,52 +259,84 @@ public abstract class AbstractWorkflowRepository implements WorkflowRepository,
         return map;
     }
 
-    protected void instrumentWorkflows(File adaptedTargetDir, Map<String, Clazz> clazzMap, Map<String, ClassInfo> classInfos, ClassLoader tmpClassLoader) throws IOException {
-        logger.info("Instrumenting classfiles");
-        for (Clazz clazz : clazzMap.values()) {
-            byte[] bytes;
-            InputStream is = clazz.classfile.openStream();
-            try {
-                ClassReader cr2 = new ClassReader(is);
-                ClassNode cn = new ClassNode();
-                cr2.accept(cn, flags);
-                traceClassNode(clazz.classname + " - original", cn);
-
-                // Now content of ClassNode can be modified and then serialized back into bytecode:
-                new TryCatchBlockHandler().instrument(cn);
-
-                ClassWriter cw2 = new ClassWriter(0);
-                cn.accept(cw2);
-                bytes = cw2.toByteArray();
-                traceBytes(clazz.classname + " - after TryCatchBlockHandler", bytes);
-
-                ClassReader cr = new ClassReader(bytes);
-                ClassWriter cw = new ClassWriter(0);
-
-                ScottyClassAdapter cv = new ScottyClassAdapter(cw, clazz.aggregatedInterruptableMethods);
-                cr.accept(cv, flags);
-                classInfos.put(clazz.classname, cv.getClassInfo());
-                bytes = cw.toByteArray();
-                traceBytes(clazz.classname + " - after ScottyClassAdapter", bytes);
-
-                // Recompute frames, etc.
-                ClassReader cr3 = new ClassReader(bytes);
-                ClassWriter cw3 = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-                cr3.accept(cw3, ClassReader.SKIP_FRAMES);
-                bytes = cw3.toByteArray();
-                traceBytes(clazz.classname + " - after COMPUTE_FRAMES", bytes);
-
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw);
-                CheckClassAdapter.verify(new ClassReader(cw.toByteArray()), tmpClassLoader, false, pw);
-                if (sw.toString().length() != 0) {
-                    logger.error("CheckClassAdapter.verify failed for class " + cn.name + ":\n" + sw.toString());
-                } else {
-                    logger.info("CheckClassAdapter.verify succeeded for class " + cn.name);
+    /**
+     * Visits the specified class files with a {@link ScottyFindInterruptableMethodsVisitor}, using
+     * <code>instrumentationParallelism</code> threads.
+     *
+     * @return the visited classes, mapped by their internal name
+     */
+    protected Map<String, Clazz> analyseClassfiles(Collection<URL> classfiles) throws IOException {
+        final Map<String, Clazz> clazzMap = new HashMap<String, Clazz>();
+        for (Clazz clazz : parallelMap(new ArrayList<URL>(classfiles), AbstractWorkflowRepository::analyseClassfile)) {
+            clazzMap.put(clazz.classname, clazz);
+        }
+        return clazzMap;
+    }
+
+    /**
+     * Aggregates the interruptable methods of each class and its superclasses up to {@link Workflow} or
+     * PersistentWorkflow. Classes, that turn out to be no workflows, are removed from the map.
+     *
+     * @return the internal names of the removed classes
+     */
+    protected static List<String> aggregateInterruptableMethods(Map<String, Clazz> clazzMap) {
+        final List<String> removed = new ArrayList<String>();
+        List<String> allClassNames = new ArrayList<String>(clazzMap.keySet());
+        for (String classname : allClassNames) {
+            Clazz clazz = clazzMap.get(classname);
+            Clazz startClazz = clazz;
+            while (true) {
+                startClazz.aggregatedInterruptableMethods.addAll(clazz.interruptableMethods);
+                if ("org/copperengine/core/Workflow".equals(clazz.superClassname) || "org/copperengine/core/persistent/PersistentWorkflow".equals(clazz.superClassname)) {
+                    break;
                 }
+                clazz = clazzMap.get(clazz.superClassname);
+                if (clazz == null) {
+                    break;
+                }
+            }
+            if (clazz == null) {
+                // this is no workflow
+                clazzMap.remove(classname);
+                removed.add(classname);
+            }
+        }
+        return removed;
+    }
 
-            } finally {
-                is.close();
+    private static Clazz analyseClassfile(URL classfile) throws IOException {
+        ScottyFindInterruptableMethodsVisitor visitor = new ScottyFindInterruptableMethodsVisitor();
+        InputStream is = classfile.openStream();
+        try {
+            ClassReader cr = new ClassReader(is);
+            cr.accept(visitor, 0);
+        } finally {
+            is.close();
+        }
+        Clazz clazz = new Clazz();
+        clazz.interruptableMethods = visitor.getInterruptableMethods();
+        clazz.classfile = classfile;
+        clazz.classname = visitor.getClassname();
+        clazz.superClassname = visitor.getSuperClassname();
+        return clazz;
+    }
+
+    /**
+     * Instruments the specified workflow classes, using <code>instrumentationParallelism</code> threads. The classes
+     * are written and logged in the order of their names, independent of the number of threads.
+     */
+    protected void instrumentWorkflows(File adaptedTargetDir, Map<String, Clazz> clazzMap, Map<String, ClassInfo> classInfos, final ClassLoader tmpClassLoader) throws IOException {
+        logger.info("Instrumenting classfiles");
+        final List<Clazz> clazzes = new ArrayList<Clazz>(clazzMap.values());
+        clazzes.sort((c1, c2) -> c1.classname.compareTo(c2.classname));
+        for (Instrumented instrumented : parallelMap(clazzes, clazz -> instrument(clazz, tmpClassLoader))) {
+            final Clazz clazz = instrumented.clazz;
+            final byte[] bytes = instrumented.bytes;
+            classInfos.put(clazz.classname, instrumented.classInfo);
+            if (instrumented.verifyResult.length() != 0) {
+                logger.error("CheckClassAdapter.verify failed for class " + clazz.classname + ":\n" + instrumented.verifyResult);
+            } else {
+                logger.info("CheckClassAdapter.verify succeeded for class " + clazz.classname);
             }
 
             File adaptedClassfileName = new File(adaptedTargetDir, clazz.classname + ".class");
@@ -267,6 +350,99 @@ public abstract class AbstractWorkflowRepository implements WorkflowRepository,
         }
     }
 
+    private static Instrumented instrument(Clazz clazz, ClassLoader tmpClassLoader) throws IOException {
+        byte[] bytes;
+        InputStream is = clazz.classfile.openStream();
+        try {
+            ClassReader cr2 = new ClassReader(is);
+            ClassNode cn = new ClassNode();
+            cr2.accept(cn, flags);
+            traceClassNode(clazz.classname + " - original", cn);
+
+            // Now content of ClassNode can be modified and then serialized back into bytecode:
+            new TryCatchBlockHandler().instrument(cn);
+
+            ClassWriter cw2 = new ClassWriter(0);
+            cn.accept(cw2);
+            bytes = cw2.toByteArray();
+            traceBytes(clazz.classname + " - after TryCatchBlockHandler", bytes);
+
+            ClassReader cr = new ClassReader(bytes);
+            ClassWriter cw = new ClassWriter(0);
+
+            ScottyClassAdapter cv = new ScottyClassAdapter(cw, clazz.aggregatedInterruptableMethods);
+            cr.accept(cv, flags);
+            bytes = cw.toByteArray();
+            traceBytes(clazz.classname + " - after ScottyClassAdapter", bytes);
+
+            // Recompute frames, etc.
+            ClassReader cr3 = new ClassReader(bytes);
+            ClassWriter cw3 = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+            cr3.accept(cw3, ClassReader.SKIP_FRAMES);
+            final byte[] adapted = cw3.toByteArray();
+            traceBytes(clazz.classname + " - after COMPUTE_FRAMES", adapted);
+
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            CheckClassAdapter.verify(new ClassReader(bytes), tmpClassLoader, false, pw);
+            return new Instrumented(clazz, adapted, cv.getClassInfo(), sw.toString());
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Applies the function to each of the items on a fork join pool with <code>instrumentationParallelism</code>
+     * threads and returns the results in the order of the items.
+     */
+    private <T, R> List<R> parallelMap(List<T> items, FunctionWithException<T, R> function) throws IOException {
+        final List<R> results = new ArrayList<R>(items.size());
+        final int parallelism = Math.min(instrumentationParallelism, items.size());
+        try {
+            if (parallelism <= 1) {
+                for (T item : items) {
+                    results.add(function.apply(item));
+                }
+                return results;
+            }
+            final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            final ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setContextClassLoader(contextClassLoader);
+                return thread;
+            }, null, false);
+            try {
+                final List<Callable<R>> tasks = new ArrayList<Callable<R>>(items.size());
+                for (T item : items) {
+                    tasks.add(() -> function.apply(item));
+                }
+                for (Future<R> future : pool.invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+                return results;
+            } finally {
+                pool.shutdown();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while instrumenting workflows");
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static IOException rethrow(Throwable t) {
+        if (t instanceof IOException)
+            return (IOException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        return new IOException(t);
+    }
+
     private static void traceClassNode(String message, ClassNode cn) {
         if (logger.isTraceEnabled()) {
             ClassWriter cw = new ClassWriter(0);
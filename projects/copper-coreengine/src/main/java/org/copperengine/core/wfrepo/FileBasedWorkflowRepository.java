@@ -24,14 +24,12 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.StringWriter;
 import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -52,10 +50,8 @@ import org.copperengine.core.WorkflowDescription;
 import org.copperengine.core.WorkflowVersion;
 import org.copperengine.core.common.WorkflowRepository;
 import org.copperengine.core.instrument.ClassInfo;
-import org.copperengine.core.instrument.ScottyFindInterruptableMethodsVisitor;
 import org.copperengine.core.util.FileUtil;
 import org.copperengine.management.FileBasedWorkflowRepositoryMXBean;
-import org.objectweb.asm.ClassReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,6 +80,9 @@ public class FileBasedWorkflowRepository extends AbstractWorkflowRepository impl
     private List<String> sourceDirs = new ArrayList<String>();
     private List<String> sourceArchiveUrls = new ArrayList<String>();
     private String lastBuildResults;
+    private String cacheDir;
+    private int maxCachedBuilds = 4;
+    private WorkflowBuildCache buildCache;
 
     /**
      * Sets the list of source archive URLs. The source archives must be ZIP compressed archives, containing COPPER
@@ -209,6 +208,41 @@ public class FileBasedWorkflowRepository extends AbstractWorkflowRepository impl
         return targetDir;
     }
 
+    /**
+     * Sets a directory, where compiled and instrumented workflow classes are cached across builds and restarts
+     * (optional, disabled by default). If the workflow sources, the compiler options, the class path and the COPPER
+     * version are unchanged, the cached classes are used without compiling and instrumenting the workflows again.
+     * After a change, all sources are compiled again, but only the classes whose bytecode changed are instrumented
+     * again.
+     * <p>
+     * The cache directory must not reside within the target directory. It may be shared by several repositories.
+     * Changes within class directories on the class path are not detected, so clear the cache directory, if workflows
+     * depend on such classes and these change.
+     *
+     * @param cacheDir
+     *        the cache directory
+     */
+    public void setCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Sets the number of most recently used builds kept in the cache directory. Defaults to 4.
+     *
+     * @param maxCachedBuilds
+     *        number of builds to keep
+     * @see #setCacheDir(String)
+     */
+    public void setMaxCachedBuilds(int maxCachedBuilds) {
+        if (maxCachedBuilds < 1)
+            throw new IllegalArgumentException("maxCachedBuilds must be positive");
+        this.maxCachedBuilds = maxCachedBuilds;
+    }
+
     public void setPreprocessors(List<Runnable> preprocessors) {
         if (preprocessors == null)
             throw new NullPointerException();
@@ -262,6 +296,12 @@ public class FileBasedWorkflowRepository extends AbstractWorkflowRepository impl
         try {
             if (volatileState == null) {
                 File dir = new File(targetDir);
+                if (cacheDir != null) {
+                    final File cache = new File(cacheDir);
+                    if (cache.getCanonicalPath().startsWith(dir.getCanonicalPath() + File.separator) || cache.getCanonicalFile().equals(dir.getCanonicalFile()))
+                        throw new IllegalArgumentException("cacheDir must not reside within targetDir");
+                    buildCache = new WorkflowBuildCache(cache, maxCachedBuilds);
+                }
                 deleteDirectory(dir);
                 dir.mkdirs();
 
@@ -326,10 +366,18 @@ public class FileBasedWorkflowRepository extends AbstractWorkflowRepository impl
             additionalSourcesDir.mkdirs();
         extractAdditionalSources(additionalSourcesDir, this.sourceArchiveUrls);
 
-        Map<String, File> sourceFiles = compile(compileTargetDir, additionalSourcesDir);
+        final List<String> compilerOptions = compilerOptions();
+        final String environment = buildCache != null ? WorkflowBuildCache.environment(compilerOptions) : null;
+        Map<String, File> sourceFiles = compile(compileTargetDir, additionalSourcesDir, compilerOptions, environment);
         final Map<String, Clazz> clazzMap = findInterruptableMethods(compileTargetDir);
         final Map<String, ClassInfo> clazzInfoMap = new HashMap<String, ClassInfo>();
-        instrumentWorkflows(adaptedTargetDir, clazzMap, clazzInfoMap, new URLClassLoader(new URL[] { compileTargetDir.toURI().toURL() }, Thread.currentThread().getContextClassLoader()));
+        final ClassLoader tmpClassLoader = new URLClassLoader(new URL[] { compileTargetDir.toURI().toURL() }, Thread.currentThread().getContextClassLoader());
+        if (buildCache != null) {
+            instrumentWorkflowsCached(adaptedTargetDir, clazzMap, clazzInfoMap, tmpClassLoader, environment);
+            buildCache.prune();
+        } else {
+            instrumentWorkflows(adaptedTargetDir, clazzMap, clazzInfoMap, tmpClassLoader);
+        }
         for (Clazz clazz : clazzMap.values()) {
             // Workaround for https://github.com/spotbugs/spotbugs/issues/500:
             File f = sourceFiles.get(new StringBuilder(clazz.classname).append(".java").toString());
@@ -392,6 +440,28 @@ public class FileBasedWorkflowRepository extends AbstractWorkflowRepository impl
         return new VolatileState(wfMapLatest, wfMapVersioned, versions, cl, checksum, wfClassMap, sources, clazzInfoMap, createWorkflowClassInfoMap(wfMapLatest, sources));
     }
 
+    private void instrumentWorkflowsCached(File adaptedTargetDir, Map<String, Clazz> clazzMap, Map<String, ClassInfo> clazzInfoMap, ClassLoader tmpClassLoader, String environment) throws IOException {
+        final Map<String, Clazz> uncached = new HashMap<String, Clazz>();
+        final Map<String, String> keys = new HashMap<String, String>();
+        for (Clazz clazz : clazzMap.values()) {
+            final String key = WorkflowBuildCache.instrumentationKey(environment, WorkflowBuildCache.readFully(clazz.classfile.openStream()), clazz.aggregatedInterruptableMethods);
+            final WorkflowBuildCache.Instrumented instrumented = buildCache.loadInstrumented(key);
+            if (instrumented != null) {
+                WorkflowBuildCache.write(new File(adaptedTargetDir, clazz.classname + ".class"), instrumented.bytecode);
+                clazzInfoMap.put(clazz.classname, instrumented.classInfo);
+            } else {
+                uncached.put(clazz.classname, clazz);
+                keys.put(clazz.classname, key);
+            }
+        }
+        logger.info("Taking {} of {} instrumented workflow classes from the cache", clazzMap.size() - uncached.size(), clazzMap.size());
+        instrumentWorkflows(adaptedTargetDir, uncached, clazzInfoMap, tmpClassLoader);
+        for (Clazz clazz : uncached.values()) {
+            final byte[] bytecode = WorkflowBuildCache.readFully(new File(adaptedTargetDir, clazz.classname + ".class"));
+            buildCache.storeInstrumented(keys.get(clazz.classname), bytecode, clazzInfoMap.get(clazz.classname));
+        }
+    }
+
     private byte[] readFully(File f) throws IOException {
         byte[] data = new byte[(int) f.length()];
         int c = 0;
@@ -437,54 +507,20 @@ public class FileBasedWorkflowRepository extends AbstractWorkflowRepository impl
     private Map<String, Clazz> findInterruptableMethods(File compileTargetDir) throws IOException {
         logger.info("Analysing classfiles");
         // Find and visit all classes
-        Map<String, Clazz> clazzMap = new HashMap<String, Clazz>();
-        Collection<File> classfiles = findFiles(compileTargetDir, ".class").values();
-        for (File f : classfiles) {
-            ScottyFindInterruptableMethodsVisitor visitor = new ScottyFindInterruptableMethodsVisitor();
-            InputStream is = new FileInputStream(f);
-            try {
-                ClassReader cr = new ClassReader(is);
-                cr.accept(visitor, 0);
-            } finally {
-                is.close();
-            }
-            Clazz clazz = new Clazz();
-            clazz.interruptableMethods = visitor.getInterruptableMethods();
-            clazz.classfile = f.toURI().toURL();
-            clazz.classname = visitor.getClassname();
-            clazz.superClassname = visitor.getSuperClassname();
-            clazzMap.put(clazz.classname, clazz);
+        List<URL> classfiles = new ArrayList<URL>();
+        for (File f : findFiles(compileTargetDir, ".class").values()) {
+            classfiles.add(f.toURI().toURL());
         }
+        Map<String, Clazz> clazzMap = analyseClassfiles(classfiles);
 
         // Remove all classes that are no workflow
-        List<String> allClassNames = new ArrayList<String>(clazzMap.keySet());
-        for (String classname : allClassNames) {
-            Clazz clazz = clazzMap.get(classname);
-            Clazz startClazz = clazz;
-            while (true) {
-                startClazz.aggregatedInterruptableMethods.addAll(clazz.interruptableMethods);
-                if ("org/copperengine/core/Workflow".equals(clazz.superClassname) || "org/copperengine/core/persistent/PersistentWorkflow".equals(clazz.superClassname)) {
-                    break;
-                }
-                clazz = clazzMap.get(clazz.superClassname);
-                if (clazz == null) {
-                    break;
-                }
-            }
-            if (clazz == null) {
-                // this is no workflow
-                clazzMap.remove(classname);
-            }
-        }
+        aggregateInterruptableMethods(clazzMap);
         return clazzMap;
     }
 
-    private Map<String, File> compile(File compileTargetDir, File additionalSourcesDir) throws IOException {
-        logger.info("Compiling workflows");
+    private List<String> compilerOptions() {
         List<String> options = new ArrayList<String>();
         options.add("-g");
-        options.add("-d");
-        options.add(compileTargetDir.getAbsolutePath());
         for (CompilerOptionsProvider cop : compilerOptionsProviders) {
             options.addAll(cop.getOptions());
         }
@@ -495,17 +531,31 @@ public class FileBasedWorkflowRepository extends AbstractWorkflowRepository impl
                 options.add(modulePath);
             }
         }
+        return options;
+    }
+
+    private Map<String, File> compile(File compileTargetDir, File additionalSourcesDir, List<String> compilerOptions, String environment) throws IOException {
+        final Map<String, File> files = new HashMap<String, File>();
+        for (String dir : sourceDirs) {
+            files.putAll(findFiles(new File(dir), ".java"));
+        }
+        files.putAll(findFiles(additionalSourcesDir, ".java"));
+        final String cacheKey = buildCache != null ? WorkflowBuildCache.compileKey(environment, compilerOptions, files) : null;
+        if (cacheKey != null && buildCache.restoreClasses(cacheKey, compileTargetDir)) {
+            logger.info("Sources unchanged - taking compiled workflows from the cache");
+            lastBuildResults = null;
+            return files;
+        }
+        logger.info("Compiling workflows");
+        List<String> options = new ArrayList<String>(compilerOptions);
+        options.add(1, "-d");
+        options.add(2, compileTargetDir.getAbsolutePath());
         logger.info("Compiler options: " + options.toString());
         JavaCompiler compiler = getJavaCompiler();
         if (compiler == null)
             throw new IllegalStateException("No Java compiler available! Please make sure that either tools.jar is provided, or that you start with a full JDK (not an JRE!), or that any other JSR-199 compatible Java compiler is available on the classpath, e.g. the Eclipse compiler ecj");
         StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-        final Map<String, File> files = new HashMap<String, File>();
         try {
-            for (String dir : sourceDirs) {
-                files.putAll(findFiles(new File(dir), ".java"));
-            }
-            files.putAll(findFiles(additionalSourcesDir, ".java"));
             if (files.size() > 0) {
                 final Iterable<? extends JavaFileObject> compilationUnits1 = fileManager.getJavaFileObjectsFromFiles(files.values());
                 final StringWriter sw = new StringWriter();
@@ -520,6 +570,9 @@ public class FileBasedWorkflowRepository extends AbstractWorkflowRepository impl
         } finally {
             fileManager.close();
         }
+        if (cacheKey != null) {
+            buildCache.storeClasses(cacheKey, compileTargetDir);
+        }
         return files;
     }
 
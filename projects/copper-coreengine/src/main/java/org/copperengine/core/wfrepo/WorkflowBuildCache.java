@@ -0,0 +1,307 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.wfrepo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.copperengine.core.Workflow;
+import org.copperengine.core.instrument.ClassInfo;
+import org.copperengine.core.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Internally used class.
+ * <p>
+ * Content addressed on-disk cache for the {@link FileBasedWorkflowRepository}. It keeps
+ * <ul>
+ * <li>the compiled classes of complete builds, keyed by the content of all workflow sources, the compiler options and
+ * the environment, so that an unchanged set of sources is not compiled again, and</li>
+ * <li>the instrumented bytecode and {@link ClassInfo} of single workflow classes, keyed by their compiled bytecode,
+ * their interruptable methods and the environment, so that after a change only the classes whose bytecode changed
+ * are instrumented again.</li>
+ * </ul>
+ * The environment consists of the COPPER version, including a digest of the instrumentation classes, the Java version
+ * and the files on the class and module path. Changes within class directories on the class path are not detected.
+ * <p>
+ * Entries are written to temporary files first and renamed afterwards, so that several repositories or JVMs may share
+ * a cache directory.
+ */
+final class WorkflowBuildCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowBuildCache.class);
+
+    private static final String[] INSTRUMENTATION_CLASSES = { "ScottyClassAdapter", "ScottyMethodAdapter", "BuildStackInfoAdapter", "TryCatchBlockHandler", "ScottyFindInterruptableMethodsVisitor", "ClassInfo", "MethodInfo" };
+    private static final List<String> CLASSPATH_OPTIONS = Arrays.asList("--class-path", "-classpath", "-cp", "--module-path", "-p");
+
+    static final class Instrumented {
+        final byte[] bytecode;
+        final ClassInfo classInfo;
+
+        Instrumented(byte[] bytecode, ClassInfo classInfo) {
+            this.bytecode = bytecode;
+            this.classInfo = classInfo;
+        }
+    }
+
+    private final File classesDir;
+    private final File instrumentedDir;
+    private final int maxCachedBuilds;
+
+    WorkflowBuildCache(File dir, int maxCachedBuilds) {
+        this.classesDir = new File(dir, "classes");
+        this.instrumentedDir = new File(dir, "instrumented");
+        this.maxCachedBuilds = maxCachedBuilds;
+        classesDir.mkdirs();
+        instrumentedDir.mkdirs();
+    }
+
+    /**
+     * Returns a digest of everything besides the workflow sources, that the compiled and instrumented bytecode depends
+     * on.
+     */
+    static String environment(List<String> compilerOptions) throws IOException {
+        final MessageDigest md = newDigest();
+        update(md, Workflow.class.getPackage().getImplementationVersion());
+        for (String name : INSTRUMENTATION_CLASSES) {
+            final InputStream is = ClassInfo.class.getResourceAsStream(name + ".class");
+            if (is != null) {
+                md.update(readFully(is));
+            }
+        }
+        update(md, System.getProperty("java.version"));
+        final List<String> paths = new ArrayList<String>();
+        paths.add(System.getProperty("java.class.path", ""));
+        paths.add(System.getProperty("jdk.module.path", ""));
+        for (int i = 0; i < compilerOptions.size() - 1; i++) {
+            if (CLASSPATH_OPTIONS.contains(compilerOptions.get(i))) {
+                paths.add(compilerOptions.get(i + 1));
+            }
+        }
+        for (String path : paths) {
+            for (String entry : path.split(File.pathSeparator)) {
+                if (entry.isEmpty())
+                    continue;
+                final File f = new File(entry);
+                update(md, f.getAbsolutePath());
+                if (f.isFile()) {
+                    update(md, Long.toString(f.length()));
+                    update(md, Long.toString(f.lastModified()));
+                }
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * @param sourceFiles
+     *        the source files to compile, mapped by their path relative to the source directory
+     */
+    static String compileKey(String environment, List<String> compilerOptions, Map<String, File> sourceFiles) throws IOException {
+        final MessageDigest md = newDigest();
+        update(md, environment);
+        for (String option : compilerOptions) {
+            update(md, option);
+        }
+        for (Map.Entry<String, File> e : new TreeMap<String, File>(sourceFiles).entrySet()) {
+            update(md, e.getKey());
+            md.update(readFully(e.getValue()));
+        }
+        return toHex(md.digest());
+    }
+
+    static String instrumentationKey(String environment, byte[] bytecode, Collection<String> interruptableMethods) {
+        final MessageDigest md = newDigest();
+        update(md, environment);
+        md.update(bytecode);
+        for (String method : new TreeSet<String>(interruptableMethods)) {
+            update(md, method);
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Copies the cached classes of a build into the specified directory.
+     *
+     * @return false, if the build is not cached
+     */
+    boolean restoreClasses(String key, File targetDir) throws IOException {
+        final File entry = new File(classesDir, key);
+        if (!entry.isDirectory())
+            return false;
+        copyDirectory(entry, targetDir);
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    void storeClasses(String key, File compiledDir) throws IOException {
+        final File entry = new File(classesDir, key);
+        if (entry.isDirectory())
+            return;
+        final File tmp = new File(classesDir, key + ".tmp" + System.nanoTime());
+        copyDirectory(compiledDir, tmp);
+        if (!tmp.renameTo(entry)) {
+            FileUtil.deleteDirectory(tmp);
+        }
+    }
+
+    Instrumented loadInstrumented(String key) throws IOException {
+        final File entry = new File(instrumentedDir, key);
+        if (!entry.isFile())
+            return null;
+        try {
+            final ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entry)));
+            try {
+                final byte[] bytecode = (byte[]) ois.readObject();
+                final ClassInfo classInfo = (ClassInfo) ois.readObject();
+                entry.setLastModified(System.currentTimeMillis());
+                return new Instrumented(bytecode, classInfo);
+            } finally {
+                ois.close();
+            }
+        } catch (ClassNotFoundException | ClassCastException | IOException e) {
+            logger.warn("Ignoring unreadable cache entry " + entry, e);
+            entry.delete();
+            return null;
+        }
+    }
+
+    void storeInstrumented(String key, byte[] bytecode, ClassInfo classInfo) throws IOException {
+        final File entry = new File(instrumentedDir, key);
+        final File tmp = new File(instrumentedDir, key + ".tmp" + System.nanoTime());
+        final ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            oos.writeObject(bytecode);
+            oos.writeObject(classInfo);
+        } finally {
+            oos.close();
+        }
+        if (!tmp.renameTo(entry)) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Keeps the <code>maxCachedBuilds</code> most recently used builds and the instrumented classes used since the
+     * oldest of them. Everything else, e.g. left over temporary files, is removed.
+     */
+    void prune() {
+        final File[] builds = classesDir.listFiles();
+        if (builds == null)
+            return;
+        Arrays.sort(builds, (f1, f2) -> Long.compare(f2.lastModified(), f1.lastModified()));
+        long oldestKept = Long.MAX_VALUE;
+        for (int i = 0; i < builds.length; i++) {
+            if (i < maxCachedBuilds) {
+                oldestKept = builds[i].lastModified();
+            } else {
+                FileUtil.deleteDirectory(builds[i]);
+            }
+        }
+        final File[] entries = instrumentedDir.listFiles();
+        if (entries == null)
+            return;
+        for (File entry : entries) {
+            if (entry.lastModified() < oldestKept) {
+                entry.delete();
+            }
+        }
+    }
+
+    static byte[] readFully(File f) throws IOException {
+        return readFully(new FileInputStream(f));
+    }
+
+    static byte[] readFully(InputStream is) throws IOException {
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream(8192);
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    static void write(File f, byte[] data) throws IOException {
+        f.getParentFile().mkdirs();
+        final OutputStream os = new FileOutputStream(f);
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void copyDirectory(File from, File to) throws IOException {
+        to.mkdirs();
+        final File[] files = from.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            final File target = new File(to, f.getName());
+            if (f.isDirectory()) {
+                copyDirectory(f, target);
+            } else {
+                write(target, readFully(f));
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest md, String s) {
+        md.update(String.valueOf(s).getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+
+    private static String toHex(byte[] digest) {
+        final StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
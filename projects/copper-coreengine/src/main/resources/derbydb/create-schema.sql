@@ -77,6 +77,11 @@ create index IDX_COP_WAIT_WFI_ID on COP_WAIT (
    WORKFLOW_INSTANCE_ID
 );
 
+create index IDX_COP_WAIT_TIMEOUT on COP_WAIT (
+   STATE,
+   TIMEOUT_TS
+);
+
 --
 -- QUEUE
 --
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AbstractAuditTrailTest {
+
+    private static Object database(final Class<?> type, final String productName) {
+        return Proxy.newProxyInstance(AbstractAuditTrailTest.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                final String name = method.getName();
+                if (name.equals("getConnection")) {
+                    return database(Connection.class, productName);
+                }
+                if (name.equals("getMetaData")) {
+                    return database(DatabaseMetaData.class, productName);
+                }
+                if (name.equals("getDatabaseProductName")) {
+                    return productName;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static String sqlStmt(String productName, int sequenceBlockSize) throws Exception {
+        final BatchingAuditTrail auditTrail = new BatchingAuditTrail();
+        auditTrail.setDataSource((DataSource) database(DataSource.class, productName));
+        auditTrail.setSequenceBlockSize(sequenceBlockSize);
+        auditTrail.startup();
+        return auditTrail.getSqlStmt();
+    }
+
+    @Test
+    public void testOracleSequenceIdFromSequence() throws Exception {
+        final String sql = sqlStmt("Oracle", 0);
+        Assert.assertTrue(sql, sql.contains("(SEQ_ID,"));
+        Assert.assertTrue(sql, sql.contains("VALUES (NVL(?,COP_SEQ_AUDIT_TRAIL.NEXTVAL),?"));
+    }
+
+    @Test
+    public void testOracleSequenceIdFromBlocks() throws Exception {
+        final String sql = sqlStmt("Oracle", 100);
+        Assert.assertTrue(sql, sql.contains("(SEQ_ID,"));
+        Assert.assertTrue(sql, sql.contains("VALUES (?,?"));
+        Assert.assertFalse(sql, sql.contains("COP_SEQ_AUDIT_TRAIL"));
+    }
+
+    @Test
+    public void testNoSequenceIdForOtherDatabases() throws Exception {
+        final String sql = sqlStmt("H2", 100);
+        Assert.assertFalse(sql, sql.contains("SEQ_ID"));
+        Assert.assertFalse(sql, sql.contains("COP_SEQ_AUDIT_TRAIL"));
+    }
+
+}
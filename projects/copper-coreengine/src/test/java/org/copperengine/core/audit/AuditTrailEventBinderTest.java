@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AuditTrailEventBinderTest {
+
+    public static class CustomAuditTrailEvent extends AuditTrailEvent {
+        private static final long serialVersionUID = 1L;
+
+        private long duration;
+        private Double amount;
+
+        public CustomAuditTrailEvent(long duration, Double amount) {
+            super(3, new Date(1000L), "conv", "ctx", "inst", null, "txn", "msg", "type");
+            this.duration = duration;
+            this.amount = amount;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public Double getAmount() {
+            return amount;
+        }
+    }
+
+    static class PackagePrivateAuditTrailEvent extends AuditTrailEvent {
+        private static final long serialVersionUID = 1L;
+
+        PackagePrivateAuditTrailEvent() {
+            super(4, new Date(2000L), "conv", "ctx", "inst", "corr", "txn", "msg", "type");
+        }
+
+        public int getPriority() {
+            return 7;
+        }
+    }
+
+    private static List<String> bind(AuditTrailEventBinder binder, AuditTrailEvent event) throws Exception {
+        final List<String> calls = new ArrayList<String>();
+        final PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(AuditTrailEventBinderTest.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                calls.add(method.getName() + Arrays.toString(args));
+                return null;
+            }
+        });
+        Assert.assertEquals(2 + binder.getPropertyGetters().size(), binder.bind(stmt, event, 2));
+        return calls;
+    }
+
+    @Test
+    public void testCompiledBinder() throws Exception {
+        final List<Method> getters = Arrays.asList(
+                AuditTrailEvent.class.getMethod("getLogLevel"),
+                AuditTrailEvent.class.getMethod("getOccurrence"),
+                AuditTrailEvent.class.getMethod("getCorrelationId"),
+                AuditTrailEvent.class.getMethod("getMessage"),
+                CustomAuditTrailEvent.class.getMethod("getDuration"),
+                CustomAuditTrailEvent.class.getMethod("getAmount"));
+        final AuditTrailEventBinder binder = AuditTrailEventBinder.compile(getters);
+
+        Assert.assertEquals(Arrays.asList(
+                "setInt[2, 3]",
+                "setTimestamp[3, " + new Timestamp(1000L) + "]",
+                "setNull[4, " + Types.VARCHAR + "]",
+                "setString[5, msg]",
+                "setLong[6, 42]",
+                "setDouble[7, 1.5]"), bind(binder, new CustomAuditTrailEvent(42L, 1.5)));
+
+        // properties of the subclass are bound as NULL for other events
+        final List<String> calls = bind(binder, new AuditTrailEvent(1, new Date(1000L), "conv", "ctx", "inst", "corr", "txn", "msg", "type"));
+        Assert.assertEquals("setNull[6, " + Types.NUMERIC + "]", calls.get(4));
+        Assert.assertEquals("setNull[7, " + Types.NUMERIC + "]", calls.get(5));
+    }
+
+    @Test
+    public void testNonPublicEventClass() throws Exception {
+        final List<Method> getters = Arrays.asList(
+                AuditTrailEvent.class.getMethod("getCorrelationId"),
+                PackagePrivateAuditTrailEvent.class.getMethod("getPriority"));
+        Assert.assertEquals(Arrays.asList("setString[2, corr]", "setInt[3, 7]"), bind(AuditTrailEventBinder.compile(getters), new PackagePrivateAuditTrailEvent()));
+    }
+
+    @Test
+    public void testReflectiveBinder() throws Exception {
+        final List<Method> getters = Arrays.asList(
+                AuditTrailEvent.class.getMethod("getLogLevel"),
+                AuditTrailEvent.class.getMethod("getCorrelationId"));
+        Assert.assertEquals(Arrays.asList(
+                "setObject[2, 3, " + Types.INTEGER + "]",
+                "setNull[3, " + Types.VARCHAR + "]"), bind(AuditTrailEventBinder.reflective(getters), new CustomAuditTrailEvent(1L, null)));
+    }
+}
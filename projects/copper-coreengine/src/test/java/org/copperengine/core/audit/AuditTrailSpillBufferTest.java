@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AuditTrailSpillBufferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static AuditTrailEvent event(int i) {
+        return new AuditTrailEvent(1, new Date(i), "conv", "ctx", "inst", "corr" + i, "txn", "msg" + i, "type", null);
+    }
+
+    private static List<String> correlationIds(List<AuditTrailEvent> events) {
+        final List<String> ids = new ArrayList<String>();
+        for (AuditTrailEvent e : events) {
+            ids.add(e.getCorrelationId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @Test
+    public void testSegmentStore() throws Exception {
+        final File dir = folder.newFolder();
+        AuditTrailSegmentStore store = new AuditTrailSegmentStore(dir, 1024 * 1024);
+        store.append(Arrays.asList(event(1), event(2)));
+        store.append(Arrays.asList(event(3)));
+        Assert.assertEquals(3, store.getEventCount());
+
+        final File segment = store.nextSegment();
+        Assert.assertTrue(segment.getName().endsWith(".seg"));
+        Assert.assertEquals(Arrays.asList("corr1", "corr2", "corr3"), correlationIds(store.read(segment)));
+        store.delete(segment, 3);
+        Assert.assertEquals(0, store.getEventCount());
+        Assert.assertNull(store.nextSegment());
+
+        // a segment left open by a crash is sealed on startup, a partially written record at its end is ignored
+        store.append(Arrays.asList(event(4), event(5)));
+        final File[] open = dir.listFiles();
+        Assert.assertEquals(1, open.length);
+        try (RandomAccessFile raf = new RandomAccessFile(open[0], "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        store = new AuditTrailSegmentStore(dir, 1024 * 1024);
+        Assert.assertEquals(1, store.getEventCount());
+        Assert.assertEquals(Arrays.asList("corr4"), correlationIds(store.read(store.nextSegment())));
+    }
+
+    @Test
+    public void testSegmentRollover() throws Exception {
+        final AuditTrailSegmentStore store = new AuditTrailSegmentStore(folder.newFolder(), 100);
+        for (int i = 0; i < 5; i++) {
+            store.append(Collections.singletonList(event(i)));
+        }
+        store.close();
+        Assert.assertEquals(5, store.getEventCount());
+        final File first = store.nextSegment();
+        Assert.assertEquals(Arrays.asList("corr0"), correlationIds(store.read(first)));
+        store.delete(first, 1);
+        Assert.assertEquals(Arrays.asList("corr1"), correlationIds(store.read(store.nextSegment())));
+    }
+
+    @Test
+    public void testSpillAndDrain() throws Exception {
+        final AtomicBoolean available = new AtomicBoolean(false);
+        final List<AuditTrailEvent> inserted = Collections.synchronizedList(new ArrayList<AuditTrailEvent>());
+        final AuditTrailSpillBuffer buffer = new AuditTrailSpillBuffer(new AuditTrailSpillBuffer.Sink() {
+            @Override
+            public void insert(List<AuditTrailEvent> events) throws Exception {
+                if (!available.get())
+                    throw new Exception("database down");
+                inserted.addAll(events);
+            }
+        }, folder.newFolder(), 10, 5, 7, 1024, 1000, 10);
+        buffer.startup();
+        try {
+            for (int i = 0; i < 100; i++) {
+                Assert.assertTrue(buffer.offer(event(i)));
+            }
+            // the drainer fails and spills the queued events as well
+            waitFor(buffer, 100);
+            Assert.assertTrue(buffer.isSpilling());
+
+            available.set(true);
+            waitFor(buffer, 0);
+            Assert.assertFalse(buffer.isSpilling());
+            final List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < 100; i++) {
+                expected.add("corr" + i);
+            }
+            Collections.sort(expected);
+            Assert.assertEquals(expected, correlationIds(inserted));
+        } finally {
+            buffer.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownSpillsQueuedEvents() throws Exception {
+        final File dir = folder.newFolder();
+        final AuditTrailSpillBuffer buffer = new AuditTrailSpillBuffer(new AuditTrailSpillBuffer.Sink() {
+            @Override
+            public void insert(List<AuditTrailEvent> events) throws Exception {
+                throw new Exception("database down");
+            }
+        }, dir, 10, 5, 5, 1024, 1000, 10000);
+        buffer.offer(event(1));
+        buffer.offer(event(2));
+        buffer.startup();
+        buffer.shutdown();
+        Assert.assertEquals(0, buffer.getQueueSize());
+        Assert.assertEquals(2, new AuditTrailSegmentStore(dir, 1024).getEventCount());
+    }
+
+    private static void waitFor(AuditTrailSpillBuffer buffer, long spilled) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (buffer.getQueueSize() == 0 && buffer.getSpilledEventCount() == spilled)
+                return;
+            Thread.sleep(10);
+        }
+        Assert.fail("timeout: queued=" + buffer.getQueueSize() + ", spilled=" + buffer.getSpilledEventCount());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.NullCallback;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchInsertIntoAutoTrailTest {
+
+    private static final String SQL = "INSERT INTO T (A,B) VALUES (?,?)";
+    private static final String ORACLE_SQL = "INSERT INTO T (SEQ_ID,A,B) VALUES (NVL(?,COP_SEQ_AUDIT_TRAIL.NEXTVAL),?,?)";
+
+    private final List<String> calls = new ArrayList<String>();
+    private long nextSequenceValue = 100;
+
+    private Object record(Class<?> type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            private int rows;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                final String name = method.getName();
+                if (name.equals("prepareStatement")) {
+                    calls.add("prepare " + args[0]);
+                    return record(PreparedStatement.class);
+                }
+                if (name.equals("executeQuery")) {
+                    return record(ResultSet.class);
+                }
+                if (name.equals("next")) {
+                    return rows++ < 3;
+                }
+                if (name.equals("getLong")) {
+                    return nextSequenceValue++;
+                }
+                if (name.startsWith("set") && !name.equals("setFetchSize") || name.startsWith("execute") || name.equals("addBatch")) {
+                    calls.add(name + (args != null ? Arrays.toString(args) : ""));
+                }
+                if (name.equals("executeBatch")) {
+                    return new int[0];
+                }
+                if (name.equals("executeUpdate")) {
+                    return 0;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Collection<BatchCommand<BatchInsertIntoAutoTrail.Executor, BatchInsertIntoAutoTrail.Command>> commands(int count, boolean isOracle, String sql, BatchInsertIntoAutoTrail.Executor executor) throws Exception {
+        final AuditTrailEventBinder binder = AuditTrailEventBinder.compile(Arrays.asList(AuditTrailEvent.class.getMethod("getLogLevel"), AuditTrailEvent.class.getMethod("getContext")));
+        final List<BatchCommand<BatchInsertIntoAutoTrail.Executor, BatchInsertIntoAutoTrail.Command>> cmds = new ArrayList<BatchCommand<BatchInsertIntoAutoTrail.Executor, BatchInsertIntoAutoTrail.Command>>();
+        for (int i = 0; i < count; i++) {
+            final AuditTrailEvent e = new AuditTrailEvent(i, new Date(), "conv", "c" + i, "inst", "corr", "txn", "msg", "type", null);
+            cmds.add(new BatchInsertIntoAutoTrail.Command(e, isOracle, sql, binder, NullCallback.<BatchInsertIntoAutoTrail.Command>get(), 0, null, executor));
+        }
+        return cmds;
+    }
+
+    @Test
+    public void testMultiRow() throws Exception {
+        final BatchInsertIntoAutoTrail.Executor executor = new BatchInsertIntoAutoTrail.Executor(4, 4, AuditTrailInsertMode.MULTI_ROW, null);
+        executor.doExec(commands(7, false, SQL, executor), (Connection) record(Connection.class));
+        Assert.assertEquals(Arrays.asList(
+                "prepare INSERT INTO T (A,B) VALUES (?,?),(?,?),(?,?),(?,?)",
+                "setInt[1, 0]", "setString[2, c0]", "setInt[3, 1]", "setString[4, c1]", "setInt[5, 2]", "setString[6, c2]", "setInt[7, 3]", "setString[8, c3]",
+                "executeUpdate",
+                "prepare INSERT INTO T (A,B) VALUES (?,?),(?,?)",
+                "setInt[1, 4]", "setString[2, c4]", "setInt[3, 5]", "setString[4, c5]",
+                "executeUpdate",
+                "prepare INSERT INTO T (A,B) VALUES (?,?)",
+                "setInt[1, 6]", "setString[2, c6]",
+                "executeUpdate"), calls);
+    }
+
+    @Test
+    public void testMultiRowFallsBackToBatchOnOracle() throws Exception {
+        final BatchInsertIntoAutoTrail.Executor executor = new BatchInsertIntoAutoTrail.Executor(4, 4, AuditTrailInsertMode.MULTI_ROW, null);
+        executor.doExec(commands(2, true, ORACLE_SQL, executor), (Connection) record(Connection.class));
+        Assert.assertEquals(Arrays.asList(
+                "prepare " + ORACLE_SQL,
+                "setNull[1, 2]", "setInt[2, 0]", "setString[3, c0]", "addBatch",
+                "setNull[1, 2]", "setInt[2, 1]", "setString[3, c1]", "addBatch",
+                "executeBatch"), calls);
+    }
+
+    @Test
+    public void testSequenceBlocks() throws Exception {
+        // the fake sequence query returns blocks of 3 values
+        final BatchInsertIntoAutoTrail.Executor executor = new BatchInsertIntoAutoTrail.Executor(4, 4, AuditTrailInsertMode.BATCH, new SequenceBlockAllocator("COP_SEQ_AUDIT_TRAIL", 3));
+        final Connection con = (Connection) record(Connection.class);
+        executor.doExec(commands(2, true, ORACLE_SQL, executor), con);
+        executor.doExec(commands(2, true, ORACLE_SQL, executor), con);
+        final List<String> ids = new ArrayList<String>();
+        int prepareCount = 0;
+        for (String call : calls) {
+            if (call.startsWith("setLong[1, "))
+                ids.add(call);
+            if (call.startsWith("prepare SELECT COP_SEQ_AUDIT_TRAIL.NEXTVAL FROM DUAL CONNECT BY LEVEL <= ?"))
+                prepareCount++;
+        }
+        Assert.assertEquals(Arrays.asList("setLong[1, 100]", "setLong[1, 101]", "setLong[1, 102]", "setLong[1, 103]"), ids);
+        Assert.assertEquals(2, prepareCount);
+    }
+}
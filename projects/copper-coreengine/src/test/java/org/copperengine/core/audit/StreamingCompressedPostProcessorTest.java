@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+import org.junit.Test;
+
+public class StreamingCompressedPostProcessorTest {
+
+    private static String createXml(int numberOfItems) {
+        final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><order xmlns=\"urn:copper:test\">");
+        for (int i = 0; i < numberOfItems; i++) {
+            sb.append("<item id=\"").append(i).append("\"><name>Grüße € ").append(i).append("</name></item>");
+        }
+        return sb.append("</order>").toString();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final StreamingCompressedPostProcessor processor = new StreamingCompressedPostProcessor();
+        for (String msg : new String[] { "", "1", "short message", createXml(1), createXml(10000) }) {
+            final String serialized = processor.serialize(msg);
+            assertEquals(msg, processor.deserialize(serialized));
+        }
+        assertTrue(processor.serialize("short message").startsWith("P"));
+
+        final String large = createXml(10000);
+        final String serialized = processor.serialize(large);
+        assertTrue(serialized.startsWith("D"));
+        assertTrue("compressed size is " + serialized.length(), serialized.length() < large.length() / 4);
+    }
+
+    @Test
+    public void testNull() {
+        final StreamingCompressedPostProcessor processor = new StreamingCompressedPostProcessor();
+        assertNull(processor.serialize(null));
+        assertNull(processor.deserialize(null));
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        final StreamingCompressedPostProcessor processor = new StreamingCompressedPostProcessor();
+        final String msg = createXml(5000);
+        final StringWriter encoded = new StringWriter();
+        processor.serialize(msg, encoded);
+        final StringWriter decoded = new StringWriter();
+        processor.deserialize(new StringReader(encoded.toString()), decoded);
+        assertEquals(msg, decoded.toString());
+    }
+
+    @Test
+    public void testDictionary() throws Exception {
+        final String dictionary = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><order xmlns=\"urn:copper:test\"><item id=\"\"><name></name></item></order>";
+        final StreamingCompressedPostProcessor withDictionary = new StreamingCompressedPostProcessor();
+        withDictionary.setCompressThresholdSize(0);
+        withDictionary.setDictionary(dictionary);
+        final StreamingCompressedPostProcessor withoutDictionary = new StreamingCompressedPostProcessor();
+        withoutDictionary.setCompressThresholdSize(0);
+
+        final String msg = createXml(2);
+        final String serialized = withDictionary.serialize(msg);
+        assertTrue(serialized.length() < withoutDictionary.serialize(msg).length());
+        // the same thread's deflater and inflater are reused for subsequent messages
+        for (int i = 0; i < 3; i++) {
+            assertEquals(msg, withDictionary.deserialize(withDictionary.serialize(msg)));
+            assertEquals(msg, withoutDictionary.deserialize(withoutDictionary.serialize(msg)));
+        }
+
+        try {
+            withoutDictionary.deserialize(serialized);
+            fail("decompressing without the dictionary must fail");
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+    }
+}
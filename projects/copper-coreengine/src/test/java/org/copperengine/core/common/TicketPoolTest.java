@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.management.model.WaitTimeHistogram;
+import org.junit.Test;
+
+public class TicketPoolTest {
+
+    @Test
+    public void testTryObtain() {
+        final TicketPool pool = new TicketPool("test", 2);
+        assertTrue(pool.tryObtain());
+        assertTrue(pool.tryObtain());
+        assertFalse(pool.tryObtain());
+        assertEquals(2, pool.getUsedTickets());
+        pool.release();
+        assertTrue(pool.tryObtain());
+        pool.obtain(1, true);
+        assertEquals(3, pool.getUsedTickets());
+        assertEquals(0, pool.getWaitTimeHistogram().getCount());
+    }
+
+    @Test
+    public void testFifo() throws Exception {
+        final TicketPool pool = new TicketPool("test", 2);
+        pool.obtain(2);
+        final CompletableFuture<Void> first = pool.obtainAsync(2);
+        final CompletableFuture<Void> second = pool.obtainAsync(1);
+        assertEquals(2, pool.getWaitingCount());
+        // a waiting request is not overtaken, even if the tickets for the later one are available
+        pool.release();
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertFalse(pool.tryObtain());
+        pool.release();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        pool.release(2);
+        assertTrue(second.isDone());
+        assertEquals(1, pool.getUsedTickets());
+        assertEquals(0, pool.getWaitingCount());
+        assertEquals(2, pool.getWaitTimeHistogram().getCount());
+    }
+
+    @Test
+    public void testCancelAsync() {
+        final TicketPool pool = new TicketPool("test", 1);
+        pool.obtain();
+        final CompletableFuture<Void> cancelled = pool.obtainAsync();
+        final CompletableFuture<Void> waiting = pool.obtainAsync();
+        cancelled.cancel(false);
+        assertEquals(1, pool.getWaitingCount());
+        pool.release();
+        assertTrue(waiting.isDone());
+        assertEquals(1, pool.getUsedTickets());
+    }
+
+    @Test
+    public void testBlockingObtain() throws Exception {
+        final int numberOfThreads = 8;
+        final int iterations = 10000;
+        final TicketPool pool = new TicketPool("test", 3);
+        final AtomicInteger concurrent = new AtomicInteger();
+        final List<Integer> maxConcurrent = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(numberOfThreads);
+        for (int t = 0; t < numberOfThreads; t++) {
+            new Thread(() -> {
+                int max = 0;
+                for (int i = 0; i < iterations; i++) {
+                    pool.obtain();
+                    max = Math.max(max, concurrent.incrementAndGet());
+                    concurrent.decrementAndGet();
+                    pool.release();
+                }
+                maxConcurrent.add(max);
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(Collections.max(maxConcurrent) <= 3);
+        assertEquals(0, pool.getUsedTickets());
+        assertEquals(0, pool.getWaitingCount());
+
+        final WaitTimeHistogram histogram = pool.getWaitTimeHistogram();
+        long sum = 0;
+        for (long c : histogram.getCounts())
+            sum += c;
+        assertEquals(histogram.getCount(), sum);
+        pool.resetWaitTimeHistogram();
+        assertEquals(0, pool.getWaitTimeHistogram().getCount());
+    }
+
+    @Test
+    public void testIncreaseCapacity() {
+        final TicketPool pool = new TicketPool("test", 1);
+        pool.obtain();
+        final CompletableFuture<Void> waiting = pool.obtainAsync();
+        pool.setCapacity(2);
+        assertTrue(waiting.isDone());
+    }
+}
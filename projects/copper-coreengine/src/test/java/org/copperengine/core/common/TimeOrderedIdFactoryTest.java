@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class TimeOrderedIdFactoryTest {
+
+    @Test
+    public void testOrder() {
+        final TimeOrderedIdFactory factory = new TimeOrderedIdFactory("engine1");
+        final long startTS = System.currentTimeMillis();
+        String previous = factory.createId();
+        for (int i = 0; i < 200000; i++) {
+            final String id = factory.createId();
+            assertEquals(TimeOrderedIdFactory.ID_LENGTH, id.length());
+            assertTrue(previous + " < " + id, previous.compareTo(id) < 0);
+            previous = id;
+        }
+        final long timestamp = TimeOrderedIdFactory.getTimestamp(previous);
+        assertTrue(timestamp >= startTS && timestamp <= System.currentTimeMillis() + 10);
+    }
+
+    @Test
+    public void testEngines() throws Exception {
+        final String id1 = new TimeOrderedIdFactory("engine1").createId();
+        final String id2 = new TimeOrderedIdFactory("engine2").createId();
+        final String id3 = new TimeOrderedIdFactory("engine1").createId();
+        // the engine hash differs
+        assertNotEquals(id1.substring(13, 17), id2.substring(13, 17));
+        // same engine, but different random part
+        assertNotEquals(id1.substring(13), id3.substring(13));
+
+        final String id4 = new TimeOrderedIdFactory().createId();
+        Thread.sleep(2);
+        assertTrue(id4.compareTo(new TimeOrderedIdFactory().createId()) < 0);
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        final TimeOrderedIdFactory factory = new TimeOrderedIdFactory("engine1");
+        final Set<String> ids = ConcurrentHashMap.newKeySet();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                String previous = "";
+                for (int i = 0; i < 50000; i++) {
+                    final String id = factory.createId();
+                    if (previous.compareTo(id) >= 0 || !ids.add(id))
+                        throw new AssertionError(id);
+                    previous = id;
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200000, ids.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetTimestampOfRandomUUID() {
+        TimeOrderedIdFactory.getTimestamp(new JdkRandomUUIDFactory().createId());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.db.utility;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+    private final AtomicInteger prepareCount = new AtomicInteger();
+
+    private PreparedStatement createStatement() {
+        final boolean[] closed = new boolean[1];
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("close")) {
+                    closed[0] = true;
+                } else if (method.getName().equals("isClosed")) {
+                    return closed[0];
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    private Connection createConnection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("prepareStatement")) {
+                    prepareCount.incrementAndGet();
+                    return createStatement();
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        final StatementCache cache = new StatementCache(10);
+        final Connection con1 = createConnection();
+        final Connection con2 = createConnection();
+
+        final PreparedStatement s1 = cache.prepare(con1, "SELECT 1");
+        cache.release(s1);
+        Assert.assertSame(s1, cache.prepare(con1, "SELECT 1"));
+        cache.release(s1);
+
+        // other connection or other SQL results in a different statement
+        final PreparedStatement s2 = cache.prepare(con2, "SELECT 1");
+        Assert.assertNotSame(s1, s2);
+        final PreparedStatement s3 = cache.prepare(con1, "SELECT 2");
+        Assert.assertNotSame(s1, s3);
+        cache.release(s2);
+        cache.release(s3);
+
+        Assert.assertEquals(3, prepareCount.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+        Assert.assertEquals(0.25, cache.getHitRate(), 0.0001);
+        Assert.assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testInUse() throws Exception {
+        final StatementCache cache = new StatementCache(10);
+        final Connection con = createConnection();
+
+        final PreparedStatement s1 = cache.prepare(con, "SELECT 1");
+        final PreparedStatement s2 = cache.prepare(con, "SELECT 1");
+        Assert.assertNotSame(s1, s2);
+        cache.release(s2);
+        Assert.assertTrue("uncached statement must be closed on release", s2.isClosed());
+        cache.release(s1);
+        Assert.assertFalse(s1.isClosed());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testClosedStatementIsReplaced() throws Exception {
+        final StatementCache cache = new StatementCache(10);
+        final Connection con = createConnection();
+
+        final PreparedStatement s1 = cache.prepare(con, "SELECT 1");
+        cache.release(s1);
+        s1.close();
+        final PreparedStatement s2 = cache.prepare(con, "SELECT 1");
+        Assert.assertNotSame(s1, s2);
+        cache.release(s2);
+        Assert.assertSame(s2, cache.prepare(con, "SELECT 1"));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final StatementCache cache = new StatementCache(2);
+        final Connection con = createConnection();
+
+        final PreparedStatement s1 = cache.prepare(con, "SELECT 1");
+        cache.release(s1);
+        final PreparedStatement s2 = cache.prepare(con, "SELECT 2");
+        cache.release(s2);
+        // touch s1, so that s2 is the eldest entry
+        cache.release(cache.prepare(con, "SELECT 1"));
+        final PreparedStatement s3 = cache.prepare(con, "SELECT 3");
+        cache.release(s3);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(s2.isClosed());
+        Assert.assertFalse(s1.isClosed());
+        Assert.assertFalse(s3.isClosed());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertTrue(s1.isClosed());
+        Assert.assertTrue(s3.isClosed());
+    }
+}
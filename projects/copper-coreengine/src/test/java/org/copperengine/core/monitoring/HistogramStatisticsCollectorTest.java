@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.management.model.MeasurePointData;
+import org.junit.Test;
+
+public class HistogramStatisticsCollectorTest {
+
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (long value = 0; value < 1L << 38; value = value < 1000 ? value + 1 : value + value / 7) {
+            final int index = LatencyHistogram.index(value);
+            assertTrue(index >= 0 && index < LatencyHistogram.BUCKETS);
+            final long highest = LatencyHistogram.highestValue(index);
+            if (value < 1L << 37) {
+                assertTrue(value + " in bucket up to " + highest, value <= highest && highest - value <= value / 32);
+                assertTrue(LatencyHistogram.index(highest) == index);
+            }
+            assertTrue(index >= previous);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        final HistogramStatisticsCollector collector = new HistogramStatisticsCollector();
+        for (int i = 1; i <= 10000; i++) {
+            collector.submit("dequeue", 2, i, TimeUnit.MICROSECONDS);
+        }
+        collector.submit("dequeue", 2, 5, TimeUnit.SECONDS);
+
+        final MeasurePointData mp = collector.query("dequeue");
+        assertEquals(10001, mp.getCount());
+        assertEquals(20002, mp.getElementCount());
+        assertEquals(10000L * 10001 / 2 + 5000000, mp.getElapsedTimeMicros());
+        assertWithin(5000, mp.getP50Micros());
+        assertWithin(9900, mp.getP99Micros());
+        assertWithin(9990, mp.getP999Micros());
+        assertEquals(5000000, mp.getMaxMicros());
+        assertTrue(mp.getRatePerSecond() > 0);
+        assertNull(collector.query("unknown"));
+
+        collector.reset();
+        assertEquals(0, collector.query("dequeue").getCount());
+        assertEquals(0, collector.query("dequeue").getP99Micros());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual, actual >= expected && actual <= expected + expected / 32);
+    }
+
+    @Test
+    public void testScrape() {
+        final HistogramStatisticsCollector collector = new HistogramStatisticsCollector();
+        collector.submit("insertInto\"A\"", 100, 20, TimeUnit.MILLISECONDS);
+        collector.submit("b", 1, 3, TimeUnit.MICROSECONDS);
+        final String scrape = collector.scrape();
+        assertTrue(scrape, scrape.contains("copper_statistics_executions{mp=\"b\"} 1\n"));
+        assertTrue(scrape, scrape.contains("copper_statistics_elements{mp=\"insertInto\\\"A\\\"\"} 100\n"));
+        assertTrue(scrape, scrape.contains("copper_statistics_elapsed_micros{mp=\"b\",quantile=\"0.99\"} 3\n"));
+        assertTrue(scrape, scrape.contains("copper_statistics_elapsed_micros{mp=\"insertInto\\\"A\\\"\",quantile=\"1.0\"} 20000\n"));
+        assertTrue(scrape, scrape.contains("copper_statistics_elapsed_micros_sum{mp=\"insertInto\\\"A\\\"\"} 20000\n"));
+
+        final List<MeasurePointData> all = collector.queryAll();
+        assertEquals(2, all.size());
+        assertEquals("b", all.get(0).getMpId());
+        assertTrue(collector.print("b").contains("#exec=     1"));
+    }
+
+    @Test
+    public void testConcurrentSubmit() throws Exception {
+        final HistogramStatisticsCollector collector = new HistogramStatisticsCollector();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    collector.submit("mp" + (i % 4), 1, i % 1000, TimeUnit.MICROSECONDS);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long count = 0;
+        final List<MeasurePointData> all = collector.queryAll();
+        for (int i = 0; i < all.size(); i++) {
+            count += all.get(i).getCount();
+            assertEquals(996 + i, all.get(i).getMaxMicros());
+        }
+        assertEquals(800000, count);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.copperengine.core.monitoring.WorkflowTimeline.Phase;
+import org.junit.Test;
+
+public class WorkflowTimelineRecorderTest {
+
+    private static WorkflowTimeline transientTimeline() {
+        final WorkflowTimeline timeline = new WorkflowTimeline();
+        timeline.stampReady();
+        timeline.stampPoolQueued();
+        timeline.stampRunStart();
+        timeline.stampRunEnd();
+        return timeline;
+    }
+
+    @Test
+    public void testPhases() {
+        final WorkflowTimeline timeline = new WorkflowTimeline();
+        for (Phase phase : Phase.values()) {
+            assertEquals(-1, timeline.getDurationNanos(phase));
+        }
+        final long now = System.currentTimeMillis();
+        timeline.stampNotify(now - 50);
+        timeline.stampNotify(now - 100);
+        timeline.stampNotify(now - 20);
+        timeline.stampReady(now - 40);
+        timeline.stampDequeued();
+        timeline.setDeserializationNanos(1000);
+        timeline.stampPoolQueued();
+        timeline.stampRunStart();
+        timeline.stampRunEnd();
+        timeline.stampCommitted();
+
+        final long notify = timeline.getDurationNanos(Phase.NOTIFY);
+        assertTrue(notify >= 55000000L && notify <= 65000000L);
+        assertTrue(timeline.getDurationNanos(Phase.QUEUE) >= 35000000L);
+        assertEquals(1000, timeline.getDurationNanos(Phase.DESERIALIZATION));
+        assertTrue(timeline.getDurationNanos(Phase.POOL_QUEUE) >= 0);
+        assertTrue(timeline.getDurationNanos(Phase.EXECUTION) >= 0);
+        assertTrue(timeline.getDurationNanos(Phase.CHECKPOINT) >= 0);
+        assertTrue(timeline.getDurationNanos(Phase.TOTAL) >= timeline.getDurationNanos(Phase.QUEUE));
+    }
+
+    @Test
+    public void testRecord() {
+        final WorkflowTimelineRecorder recorder = new WorkflowTimelineRecorder();
+        for (int i = 0; i < 10; i++) {
+            recorder.record("wf" + i, String.class, transientTimeline());
+        }
+        final String prefix = String.class.getName() + ".";
+        assertEquals(10, recorder.query(prefix + "POOL_QUEUE").getCount());
+        assertEquals(10, recorder.query(prefix + "EXECUTION").getCount());
+        assertEquals(10, recorder.query(prefix + "TOTAL").getCount());
+        assertNull(recorder.query(prefix + "QUEUE"));
+        assertNull(recorder.query(prefix + "CHECKPOINT"));
+        assertEquals(3, recorder.queryAll().size());
+        assertTrue(recorder.scrape().contains("copper_statistics_executions{mp=\"" + prefix + "TOTAL\"} 10"));
+
+        recorder.reset();
+        assertEquals(0, recorder.query(prefix + "TOTAL").getCount());
+    }
+
+    @Test
+    public void testTraceSampling() {
+        final List<String> traced = new ArrayList<String>();
+        final WorkflowTimelineRecorder recorder = new WorkflowTimelineRecorder();
+        recorder.setTraceSink((id, className, timeline) -> {
+            assertEquals(String.class.getName(), className);
+            assertNotNull(timeline);
+            traced.add(id);
+        });
+        for (int i = 1; i <= 10; i++) {
+            recorder.record("wf" + i, String.class, transientTimeline());
+        }
+        assertTrue(traced.isEmpty());
+
+        recorder.setTraceSampleInterval(4);
+        for (int i = 1; i <= 10; i++) {
+            recorder.record("wf" + i, String.class, transientTimeline());
+        }
+        assertEquals(2, traced.size());
+        assertEquals("wf4", traced.get(0));
+        assertEquals("wf8", traced.get(1));
+    }
+
+    @Test
+    public void testTraceThreshold() {
+        final List<String> traced = new ArrayList<String>();
+        final WorkflowTimelineRecorder recorder = new WorkflowTimelineRecorder();
+        recorder.setTraceSink((id, className, timeline) -> traced.add(id));
+        recorder.setTraceThresholdMSec(1000);
+
+        recorder.record("fast", String.class, transientTimeline());
+        final WorkflowTimeline slow = new WorkflowTimeline();
+        slow.stampReady(System.currentTimeMillis() - 5000);
+        slow.stampRunStart();
+        slow.stampRunEnd();
+        recorder.record("slow", String.class, slow);
+
+        assertEquals(1, traced.size());
+        assertEquals("slow", traced.get(0));
+    }
+
+    @Test
+    public void testFailingSink() {
+        final WorkflowTimelineRecorder recorder = new WorkflowTimelineRecorder();
+        recorder.setTraceSink((id, className, timeline) -> {
+            throw new IllegalStateException("test");
+        });
+        recorder.setTraceSampleInterval(1);
+        recorder.record("wf", String.class, transientTimeline());
+        assertEquals(1, recorder.query(String.class.getName() + ".TOTAL").getCount());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveDequeueControllerTest {
+
+    private static void process(AdaptiveDequeueController controller, int n) {
+        for (int i = 0; i < n; i++) {
+            controller.recordProcessed();
+        }
+    }
+
+    @Test
+    public void testInitialValuesUntilFirstSample() {
+        AdaptiveDequeueController controller = new AdaptiveDequeueController(1000, 10, 10000, 20000, 1000);
+        controller.init(3000, 6000, 2000, 0L);
+        process(controller, 50);
+        Assert.assertFalse(controller.update(500L, 100));
+        Assert.assertEquals(3000, controller.getLowerThreshold());
+        Assert.assertEquals(6000, controller.getUpperThreshold());
+        Assert.assertEquals(2000, controller.getDequeueBulkSize());
+    }
+
+    @Test
+    public void testSlowPoolShrinksBuffer() {
+        AdaptiveDequeueController controller = new AdaptiveDequeueController(2000, 10, 10000, 20000, 1000);
+        controller.init(3000, 6000, 2000, 0L);
+        controller.recordDequeue(20);
+        process(controller, 50); // 50 per second
+        Assert.assertTrue(controller.update(1000L, 100));
+        Assert.assertEquals(50.0, controller.getProcessingRatePerSec(), 0.001);
+        Assert.assertEquals(100, controller.getUpperThreshold());
+        Assert.assertEquals(50, controller.getLowerThreshold());
+        Assert.assertEquals(50, controller.getDequeueBulkSize());
+    }
+
+    @Test
+    public void testFastPoolCoversDequeueLatency() {
+        AdaptiveDequeueController controller = new AdaptiveDequeueController(1000, 10, 10000, 20000, 1000);
+        controller.init(3000, 6000, 2000, 0L);
+        controller.recordDequeue(400);
+        process(controller, 10000); // 10000 per second
+        Assert.assertTrue(controller.update(1000L, 100));
+        Assert.assertEquals(10000, controller.getUpperThreshold());
+        // 400 msec dequeue latency * 10/msec * 2
+        Assert.assertEquals(8000, controller.getLowerThreshold());
+        Assert.assertEquals(2000, controller.getDequeueBulkSize());
+    }
+
+    @Test
+    public void testLimits() {
+        AdaptiveDequeueController controller = new AdaptiveDequeueController(1000, 10, 500, 1000, 1000);
+        controller.init(3000, 6000, 2000, 0L);
+        process(controller, 100000);
+        Assert.assertTrue(controller.update(1000L, 100));
+        Assert.assertEquals(1000, controller.getUpperThreshold());
+        Assert.assertEquals(500, controller.getDequeueBulkSize());
+
+        process(controller, 0);
+        controller.update(2000L, 100);
+        controller.update(3000L, 100);
+        Assert.assertTrue(controller.getUpperThreshold() >= 20);
+        Assert.assertTrue(controller.getDequeueBulkSize() >= 10);
+        Assert.assertTrue(controller.getLowerThreshold() <= controller.getUpperThreshold());
+    }
+
+    @Test
+    public void testStarvingPoolDoesNotShrink() {
+        AdaptiveDequeueController controller = new AdaptiveDequeueController(1000, 10, 10000, 20000, 1000);
+        controller.init(3000, 6000, 2000, 0L);
+        process(controller, 1000);
+        Assert.assertTrue(controller.update(1000L, 100));
+        final int upperThreshold = controller.getUpperThreshold();
+        process(controller, 200);
+        Assert.assertTrue(controller.update(2000L, 0));
+        Assert.assertEquals(1000.0, controller.getProcessingRatePerSec(), 0.001);
+        Assert.assertEquals(upperThreshold, controller.getUpperThreshold());
+        process(controller, 200);
+        Assert.assertTrue(controller.update(3000L, 100));
+        Assert.assertTrue(controller.getProcessingRatePerSec() < 1000.0);
+    }
+}
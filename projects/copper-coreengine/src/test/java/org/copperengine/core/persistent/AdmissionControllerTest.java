@@ -0,0 +1,185 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.EngineOverloadedException;
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.instrument.Transformed;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    @Transformed
+    static class TestWorkflow extends PersistentWorkflow<Serializable> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() throws Interrupt {
+        }
+    }
+
+    private final AtomicInteger batcherQueueSize = new AtomicInteger();
+    private final AtomicInteger commitLatency = new AtomicInteger(-1);
+    private final AtomicInteger processorPoolQueueSize = new AtomicInteger();
+    private AdmissionController controller;
+
+    @Before
+    public void setUp() {
+        controller = new AdmissionController();
+        controller.setSampleIntervalMSec(1);
+        controller.setMaxBatcherQueueSize(100);
+        controller.setMaxCommitLatencyMSec(500);
+        controller.setMaxProcessorPoolQueueSize(1000);
+        controller.startup(batcherQueueSize::get, commitLatency::get, processorPoolQueueSize::get);
+    }
+
+    private static List<Workflow<?>> workflows(int priority) {
+        final TestWorkflow wf = new TestWorkflow();
+        wf.setPriority(priority);
+        return Collections.<Workflow<?>>singletonList(wf);
+    }
+
+    private static void nextSample() throws InterruptedException {
+        Thread.sleep(5);
+    }
+
+    private void overload() throws InterruptedException {
+        batcherQueueSize.set(200);
+        nextSample();
+        Assert.assertTrue(controller.isOverloaded());
+    }
+
+    @Test
+    public void testPressure() throws Exception {
+        Assert.assertEquals(0.0, controller.getPressure(), 0.0);
+        batcherQueueSize.set(50);
+        processorPoolQueueSize.set(100);
+        nextSample();
+        Assert.assertEquals(0.5, controller.getPressure(), 0.001);
+        Assert.assertEquals(50, controller.getBatcherQueueSize());
+        Assert.assertEquals(100, controller.getProcessorPoolQueueSize());
+
+        commitLatency.set(1000);
+        nextSample();
+        Assert.assertEquals(2.0, controller.getPressure(), 0.001);
+        Assert.assertTrue(controller.isOverloaded());
+
+        // the latency of an idle batcher does not count
+        batcherQueueSize.set(0);
+        nextSample();
+        Assert.assertEquals(0.1, controller.getPressure(), 0.001);
+        Assert.assertFalse(controller.isOverloaded());
+
+        controller.setMaxProcessorPoolQueueSize(0);
+        nextSample();
+        Assert.assertEquals(0.0, controller.getPressure(), 0.0);
+    }
+
+    @Test
+    public void testReject() throws Exception {
+        controller.admitWorkflows(workflows(5), true);
+        controller.admitResponses(true);
+        overload();
+        try {
+            controller.admitWorkflows(workflows(1), true);
+            Assert.fail("expected EngineOverloadedException");
+        } catch (EngineOverloadedException e) {
+            // ok
+        }
+        try {
+            controller.admitResponses(true);
+            Assert.fail("expected EngineOverloadedException");
+        } catch (EngineOverloadedException e) {
+            // ok
+        }
+        Assert.assertEquals(2, controller.getRejectedCount());
+        Assert.assertEquals(0, controller.getShedCount());
+    }
+
+    @Test
+    public void testShedLowPriority() throws Exception {
+        controller.setPolicy(AdmissionController.Policy.SHED_LOW_PRIORITY);
+        overload();
+        controller.admitWorkflows(workflows(5), true);
+        controller.admitResponses(true);
+        try {
+            controller.admitWorkflows(workflows(6), true);
+            Assert.fail("expected EngineOverloadedException");
+        } catch (EngineOverloadedException e) {
+            // ok
+        }
+        Assert.assertEquals(1, controller.getRejectedCount());
+        Assert.assertEquals(1, controller.getShedCount());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        controller.setPolicy(AdmissionController.Policy.BLOCK);
+        controller.setMaxBlockMSec(5000);
+        overload();
+        final Thread relief = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            batcherQueueSize.set(0);
+        });
+        relief.start();
+        final long startTS = System.currentTimeMillis();
+        controller.admitWorkflows(workflows(5), true);
+        Assert.assertTrue(System.currentTimeMillis() - startTS >= 90);
+        relief.join();
+        Assert.assertEquals(0, controller.getRejectedCount());
+    }
+
+    @Test
+    public void testBlockTimeout() throws Exception {
+        controller.setPolicy(AdmissionController.Policy.BLOCK);
+        controller.setMaxBlockMSec(50);
+        overload();
+        final long startTS = System.currentTimeMillis();
+        try {
+            controller.admitResponses(true);
+            Assert.fail("expected EngineOverloadedException");
+        } catch (EngineOverloadedException e) {
+            Assert.assertTrue(System.currentTimeMillis() - startTS >= 50);
+        }
+        // callers, that must not block, are rejected immediately
+        try {
+            controller.admitWorkflows(workflows(5), false);
+            Assert.fail("expected EngineOverloadedException");
+        } catch (EngineOverloadedException e) {
+            // ok
+        }
+        final long nonBlockingStartTS = System.currentTimeMillis();
+        try {
+            controller.admitResponses(false);
+            Assert.fail("expected EngineOverloadedException");
+        } catch (EngineOverloadedException e) {
+            Assert.assertTrue(System.currentTimeMillis() - nonBlockingStartTS < 50);
+        }
+        Assert.assertEquals(3, controller.getRejectedCount());
+    }
+}
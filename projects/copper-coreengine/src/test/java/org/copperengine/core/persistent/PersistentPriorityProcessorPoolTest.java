@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.io.Serializable;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.instrument.Transformed;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersistentPriorityProcessorPoolTest {
+
+    @Transformed
+    static class TestWorkflow extends PersistentWorkflow<Serializable> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() throws Interrupt {
+        }
+    }
+
+    static class TestPool extends PersistentPriorityProcessorPool {
+        void fill(int n) {
+            for (int i = 0; i < n; i++) {
+                queue.add(new TestWorkflow());
+            }
+        }
+
+        void drain(int n) {
+            for (int i = 0; i < n; i++) {
+                queue.poll();
+            }
+        }
+    }
+
+    private TestPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new TestPool();
+        pool.setLowerThreshold(50);
+        pool.setUpperThreshold(100);
+        pool.setDequeueBulkSize(40);
+        pool.setUpperThresholdReachedWaitMSec(1000);
+    }
+
+    @Test
+    public void testFullBulkSizeBelowUpperThreshold() {
+        pool.fill(90);
+        Assert.assertEquals(40, pool.getDequeueCapacity(0L));
+        Assert.assertEquals(Long.MAX_VALUE, pool.getUpperThresholdReachedWaitRemaining(0L));
+    }
+
+    @Test
+    public void testNoCapacityUntilBelowLowerThreshold() {
+        pool.fill(100);
+        Assert.assertEquals(0, pool.getDequeueCapacity(0L));
+        Assert.assertEquals(1000, pool.getUpperThresholdReachedWaitRemaining(0L));
+
+        pool.drain(40);
+        Assert.assertEquals(0, pool.getDequeueCapacity(10L));
+        Assert.assertEquals(990, pool.getUpperThresholdReachedWaitRemaining(10L));
+
+        pool.drain(11);
+        Assert.assertEquals(40, pool.getDequeueCapacity(20L));
+        Assert.assertEquals(Long.MAX_VALUE, pool.getUpperThresholdReachedWaitRemaining(20L));
+    }
+
+    @Test
+    public void testCapacityAfterUpperThresholdReachedWait() {
+        pool.fill(100);
+        Assert.assertEquals(0, pool.getDequeueCapacity(0L));
+        pool.drain(10);
+        Assert.assertEquals(0, pool.getDequeueCapacity(999L));
+        Assert.assertEquals(40, pool.getDequeueCapacity(1000L));
+    }
+
+    @Test
+    public void testWaitsAgainIfStillAboveUpperThreshold() {
+        pool.fill(100);
+        Assert.assertEquals(0, pool.getDequeueCapacity(0L));
+        Assert.assertEquals(0, pool.getDequeueCapacity(1000L));
+        Assert.assertEquals(1000, pool.getUpperThresholdReachedWaitRemaining(1000L));
+    }
+
+    @Test
+    public void testNoCapacityWhileSuspended() {
+        pool.suspendDequeue();
+        Assert.assertEquals(0, pool.getDequeueCapacity(0L));
+        pool.resumeDequeue();
+        Assert.assertEquals(40, pool.getDequeueCapacity(0L));
+    }
+
+}
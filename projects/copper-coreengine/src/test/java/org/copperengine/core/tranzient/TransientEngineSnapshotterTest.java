@@ -0,0 +1,154 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.io.File;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Response;
+import org.copperengine.core.common.DefaultTicketPoolManager;
+import org.copperengine.core.common.TicketPool;
+import org.copperengine.core.common.TicketPoolManager;
+import org.copperengine.management.model.WorkflowInstanceFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransientEngineSnapshotterTest {
+
+    private static TransientScottyEngine createEngine(final File snapshotFile) {
+        return createEngine(snapshotFile, 2000);
+    }
+
+    private static TransientScottyEngine createEngine(final File snapshotFile, final int tickets) {
+        TransientEngineFactory factory = new TransientEngineFactory() {
+            @Override
+            protected File getWorkflowSourceDirectory() {
+                return new File("./src/test/workflow");
+            }
+
+            @Override
+            protected TicketPoolManager createTicketPoolManager() {
+                final DefaultTicketPoolManager ticketPoolManager = new DefaultTicketPoolManager();
+                ticketPoolManager.add(new TicketPool(DefaultTicketPoolManager.DEFAULT_POOL_ID, tickets));
+                return ticketPoolManager;
+            }
+
+            @Override
+            protected File getSnapshotFile() {
+                return snapshotFile;
+            }
+        };
+        return factory.create();
+    }
+
+    private static long countWaiting(TransientScottyEngine engine) {
+        WorkflowInstanceFilter filter = new WorkflowInstanceFilter();
+        filter.addState(ProcessingState.WAITING.name());
+        return engine.countWorkflowInstances(filter);
+    }
+
+    private static void waitFor(TransientScottyEngine engine, int numberOfWorkflowInstances, long numberOfWaitingInstances) throws InterruptedException {
+        final long endTS = System.currentTimeMillis() + 10000;
+        while (engine.getNumberOfWorkflowInstances() != numberOfWorkflowInstances || countWaiting(engine) != numberOfWaitingInstances) {
+            if (System.currentTimeMillis() > endTS)
+                Assert.fail("timeout - instances=" + engine.getNumberOfWorkflowInstances() + ", waiting=" + countWaiting(engine));
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSnapshotAndRestore() throws Exception {
+        final File snapshotFile = File.createTempFile("copper-snapshot", ".bin");
+        final File restoredFile = new File(snapshotFile.getPath() + ".restored");
+        Assert.assertTrue(snapshotFile.delete());
+        try {
+            TransientScottyEngine engine = createEngine(snapshotFile);
+            try {
+                engine.run("test.WaitingWorkflow", "cid-1");
+                engine.run("test.WaitingWorkflow", "cid-2");
+                engine.notify(new Response<String>("cid-early", "early", null), new Acknowledge.BestEffortAcknowledge());
+                waitFor(engine, 2, 2);
+            } finally {
+                engine.shutdown();
+            }
+            Assert.assertTrue(snapshotFile.exists());
+
+            engine = createEngine(snapshotFile);
+            try {
+                Assert.assertFalse(snapshotFile.exists());
+                Assert.assertTrue(restoredFile.exists());
+                Assert.assertEquals(2, engine.getNumberOfWorkflowInstances());
+                Assert.assertEquals(2, countWaiting(engine));
+
+                engine.notify(new Response<String>("cid-1", "one", null), new Acknowledge.BestEffortAcknowledge());
+                waitFor(engine, 1, 1);
+
+                // the restored early response is consumed by a new workflow instance
+                engine.run("test.WaitingWorkflow", "cid-early");
+                waitFor(engine, 1, 1);
+            } finally {
+                engine.shutdown();
+            }
+
+            // the remaining workflow instance survives a second restart
+            engine = createEngine(snapshotFile);
+            try {
+                Assert.assertEquals(1, engine.getNumberOfWorkflowInstances());
+                engine.notify(new Response<String>("cid-2", "two", null), new Acknowledge.BestEffortAcknowledge());
+                waitFor(engine, 0, 0);
+            } finally {
+                engine.shutdown();
+            }
+        } finally {
+            snapshotFile.delete();
+            restoredFile.delete();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testRestoreBeyondTicketPoolCapacity() throws Exception {
+        final File snapshotFile = File.createTempFile("copper-snapshot", ".bin");
+        final File restoredFile = new File(snapshotFile.getPath() + ".restored");
+        Assert.assertTrue(snapshotFile.delete());
+        try {
+            TransientScottyEngine engine = createEngine(snapshotFile);
+            try {
+                for (int i = 0; i < 3; i++) {
+                    engine.run("test.WaitingWorkflow", "cid-" + i);
+                }
+                waitFor(engine, 3, 3);
+            } finally {
+                engine.shutdown();
+            }
+
+            // the ticket pool shrank between the restarts - startup must not block
+            engine = createEngine(snapshotFile, 1);
+            try {
+                Assert.assertEquals(3, engine.getNumberOfWorkflowInstances());
+                for (int i = 0; i < 3; i++) {
+                    engine.notify(new Response<String>("cid-" + i, "response", null), new Acknowledge.BestEffortAcknowledge());
+                }
+                waitFor(engine, 0, 0);
+            } finally {
+                engine.shutdown();
+            }
+        } finally {
+            snapshotFile.delete();
+            restoredFile.delete();
+        }
+    }
+}
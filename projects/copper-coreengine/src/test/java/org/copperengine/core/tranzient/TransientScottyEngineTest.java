@@ -16,7 +16,18 @@
 package org.copperengine.core.tranzient;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import org.copperengine.core.DuplicateIdException;
+import org.copperengine.core.Response;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.copperengine.core.common.DefaultTicketPoolManager;
+import org.copperengine.core.common.TicketPool;
+import org.copperengine.core.common.TicketPoolManager;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class TransientScottyEngineTest {
@@ -38,4 +49,61 @@ public class TransientScottyEngineTest {
         }
     }
 
+    @Test
+    public void testAsync() throws Exception {
+        final TicketPool ticketPool = new TicketPool(DefaultTicketPoolManager.DEFAULT_POOL_ID, 1);
+        TransientEngineFactory factory = new TransientEngineFactory() {
+            @Override
+            protected File getWorkflowSourceDirectory() {
+                return new File("./src/test/workflow");
+            }
+
+            @Override
+            protected TicketPoolManager createTicketPoolManager() {
+                final DefaultTicketPoolManager ticketPoolManager = new DefaultTicketPoolManager();
+                ticketPoolManager.add(ticketPool);
+                return ticketPoolManager;
+            }
+        };
+        TransientScottyEngine engine = factory.create();
+        try {
+            engine.setMaxAsyncRequestsInFlight(1);
+            final String id = engine.runAsync(new WorkflowInstanceDescr<String>("test.WaitingWorkflow", "cid-1", "wf-1", null, null)).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals("wf-1", id);
+            Assert.assertEquals(0, engine.getNumberOfAsyncRequestsInFlight());
+
+            // the only ticket is held by the waiting workflow, so the next request stays in flight
+            final CompletableFuture<String> pending = engine.runAsync(new WorkflowInstanceDescr<String>("test.WaitingWorkflow", "cid-2", "wf-2", null, null));
+            Assert.assertFalse(pending.isDone());
+            Assert.assertEquals(1, engine.getNumberOfAsyncRequestsInFlight());
+            try {
+                engine.runAsync(new WorkflowInstanceDescr<String>("test.HelloWorldWorkflow")).get(10, TimeUnit.SECONDS);
+                Assert.fail("expected rejection");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+
+            engine.setMaxAsyncRequestsInFlight(10);
+            engine.notifyAsync(new Response<String>("cid-1", "one", null)).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals("wf-2", pending.get(10, TimeUnit.SECONDS));
+
+            ticketPool.setCapacity(10);
+            try {
+                engine.runAsync(new WorkflowInstanceDescr<String>("test.WaitingWorkflow", "cid-3", "wf-2", null, null)).get(10, TimeUnit.SECONDS);
+                Assert.fail("expected DuplicateIdException");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof DuplicateIdException);
+            }
+            engine.notifyAsync(new Response<String>("cid-2", "two", null)).get(10, TimeUnit.SECONDS);
+            final long endTS = System.currentTimeMillis() + 10000;
+            while (engine.getNumberOfWorkflowInstances() != 0 && System.currentTimeMillis() < endTS) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(0, engine.getNumberOfWorkflowInstances());
+            Assert.assertEquals(0, engine.getNumberOfAsyncRequestsInFlight());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.instrument.Transformed;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransientWorkflowRegistryTest {
+
+    @Transformed
+    public static class WorkflowA extends Workflow<Void> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() throws Interrupt {
+        }
+    }
+
+    @Transformed
+    public static class WorkflowB extends Workflow<Void> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() throws Interrupt {
+        }
+    }
+
+    private static Workflow<?> create(Workflow<?> wf, String id, String ppoolId) {
+        wf.setId(id);
+        wf.setProcessorPoolId(ppoolId);
+        return wf;
+    }
+
+    @Test
+    public void testPark() {
+        final TransientWorkflowRegistry registry = new TransientWorkflowRegistry();
+        final Workflow<?> a1 = create(new WorkflowA(), "a1", "P1");
+        final Workflow<?> copy = create(new WorkflowA(), "a1", "P1");
+        registry.setParkedWorkflowLoader(id -> copy);
+        Assert.assertTrue(registry.add(a1));
+        registry.setProcessingState(a1, ProcessingState.WAITING);
+
+        final WorkflowParking.Handle handle = new WorkflowParking.Handle(null, 0, 0, 0);
+        Assert.assertTrue(registry.park(a1, handle));
+        Assert.assertNull(registry.get("a1"));
+        Assert.assertSame(handle, registry.getParked("a1"));
+        Assert.assertTrue(registry.contains("a1"));
+        Assert.assertEquals(1, registry.count(Arrays.asList(ProcessingState.WAITING), null, null));
+        Assert.assertSame(copy, registry.query(null, null, null).get(0));
+        Assert.assertSame(copy, registry.values().iterator().next());
+
+        final Workflow<?> inflated = create(new WorkflowA(), "a1", "P1");
+        Assert.assertTrue(registry.unpark(inflated));
+        Assert.assertFalse(registry.unpark(inflated));
+        Assert.assertSame(inflated, registry.get("a1"));
+        Assert.assertNull(registry.getParked("a1"));
+        Assert.assertEquals(1, registry.count(Arrays.asList(ProcessingState.WAITING), null, null));
+        Assert.assertSame(inflated, registry.remove("a1"));
+        Assert.assertEquals(0, registry.count(null, null, null));
+    }
+
+    @Test
+    public void testIndex() {
+        final TransientWorkflowRegistry registry = new TransientWorkflowRegistry();
+        final Workflow<?> a1 = create(new WorkflowA(), "a1", "P1");
+        final Workflow<?> a2 = create(new WorkflowA(), "a2", "P2");
+        final Workflow<?> b1 = create(new WorkflowB(), "b1", "P1");
+        Assert.assertTrue(registry.add(a1));
+        Assert.assertTrue(registry.add(a2));
+        Assert.assertTrue(registry.add(b1));
+        Assert.assertFalse(registry.add(create(new WorkflowB(), "a1", "P1")));
+        Assert.assertEquals(3, registry.size());
+        Assert.assertSame(a1, registry.get("a1"));
+
+        registry.setProcessingState(a1, ProcessingState.ENQUEUED);
+        registry.setProcessingState(a2, ProcessingState.ENQUEUED);
+        registry.setProcessingState(b1, ProcessingState.ENQUEUED);
+        registry.setProcessingState(a1, ProcessingState.RUNNING);
+        registry.setProcessingState(a1, ProcessingState.WAITING);
+        Assert.assertEquals(ProcessingState.WAITING, a1.getProcessingState());
+
+        Assert.assertEquals(3, registry.count(null, null, null));
+        Assert.assertEquals(0, registry.count(Collections.<ProcessingState> emptyList(), null, null));
+        Assert.assertEquals(1, registry.count(Arrays.asList(ProcessingState.WAITING), null, null));
+        Assert.assertEquals(2, registry.count(Arrays.asList(ProcessingState.ENQUEUED), null, null));
+        Assert.assertEquals(1, registry.count(Arrays.asList(ProcessingState.ENQUEUED), WorkflowA.class.getName(), null));
+        Assert.assertEquals(2, registry.count(null, WorkflowA.class.getName(), null));
+        Assert.assertEquals(2, registry.count(null, null, "P1"));
+        Assert.assertEquals(Arrays.asList(b1), registry.query(Arrays.asList(ProcessingState.ENQUEUED), null, "P1"));
+
+        Assert.assertSame(a1, registry.remove("a1"));
+        Assert.assertNull(registry.remove("a1"));
+        Assert.assertEquals(0, registry.count(Arrays.asList(ProcessingState.WAITING), null, null));
+        Assert.assertEquals(2, registry.count(null, null, null));
+
+        // state changes of removed instances must not show up in the index
+        registry.setProcessingState(a1, ProcessingState.FINISHED);
+        Assert.assertEquals(ProcessingState.FINISHED, a1.getProcessingState());
+        Assert.assertEquals(2, registry.count(null, null, null));
+    }
+
+    @Test
+    public void testProcessorPoolChange() {
+        final TransientWorkflowRegistry registry = new TransientWorkflowRegistry();
+        final Workflow<?> a1 = create(new WorkflowA(), "a1", "P1");
+        registry.add(a1);
+        registry.setProcessingState(a1, ProcessingState.RUNNING);
+        a1.setProcessorPoolId("P2");
+        registry.setProcessingState(a1, ProcessingState.ENQUEUED);
+        Assert.assertEquals(0, registry.count(null, null, "P1"));
+        Assert.assertEquals(1, registry.count(null, null, "P2"));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Response;
+import org.copperengine.core.util.FileUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WorkflowParkingTest {
+
+    private static TransientScottyEngine createEngine(final WorkflowParking workflowParking, final File snapshotFile) {
+        TransientEngineFactory factory = new TransientEngineFactory() {
+            @Override
+            protected File getWorkflowSourceDirectory() {
+                return new File("./src/test/workflow");
+            }
+
+            @Override
+            protected File getSnapshotFile() {
+                return snapshotFile;
+            }
+
+            @Override
+            protected WorkflowParking createWorkflowParking() {
+                return workflowParking;
+            }
+        };
+        return factory.create();
+    }
+
+    private static WorkflowParking createParking() {
+        final WorkflowParking workflowParking = new WorkflowParking();
+        workflowParking.setIdleThresholdMSec(0);
+        workflowParking.setCheckIntervalMSec(10);
+        workflowParking.setSlabSize(16 * 1024);
+        return workflowParking;
+    }
+
+    private interface Condition {
+        boolean isTrue();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        final long endTS = System.currentTimeMillis() + 10000;
+        while (!condition.isTrue()) {
+            if (System.currentTimeMillis() > endTS)
+                Assert.fail("timeout");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testParkAndResume() throws Exception {
+        final WorkflowParking workflowParking = createParking();
+        final TransientScottyEngine engine = createEngine(workflowParking, null);
+        try {
+            for (int i = 0; i < 50; i++) {
+                engine.run("test.WaitingWorkflow", "cid-" + i);
+            }
+            waitFor(() -> workflowParking.getParkedCount() == 50);
+            Assert.assertEquals(50, engine.getNumberOfWorkflowInstances());
+            Assert.assertEquals(50, engine.queryWorkflowInstances().size());
+            Assert.assertTrue(workflowParking.getUsedBytes() > 0);
+            Assert.assertTrue(workflowParking.getUsedBytes() < workflowParking.getUncompressedBytes());
+            // several slabs are in use
+            Assert.assertTrue(workflowParking.getAllocatedBytes() > workflowParking.getSlabSize());
+
+            for (int i = 0; i < 50; i++) {
+                engine.notify(new Response<String>("cid-" + i, "response-" + i, null), new Acknowledge.BestEffortAcknowledge());
+            }
+            waitFor(() -> engine.getNumberOfWorkflowInstances() == 0);
+            Assert.assertEquals(0, workflowParking.getParkedCount());
+            Assert.assertEquals(0, workflowParking.getUsedBytes());
+            Assert.assertEquals(50, workflowParking.getParkCount());
+            Assert.assertEquals(50, workflowParking.getUnparkCount());
+            Assert.assertEquals(0, workflowParking.getFailedCount());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final WorkflowParking workflowParking = createParking();
+        final TransientScottyEngine engine = createEngine(workflowParking, null);
+        try {
+            engine.run("test.TimeoutWorkflow", "cid-timeout");
+            waitFor(() -> workflowParking.getParkCount() == 1);
+            waitFor(() -> engine.getNumberOfWorkflowInstances() == 0);
+            Assert.assertEquals(1, workflowParking.getUnparkCount());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testStorageExhausted() throws Exception {
+        final WorkflowParking workflowParking = createParking();
+        workflowParking.setMaxBytes(0);
+        final TransientScottyEngine engine = createEngine(workflowParking, null);
+        try {
+            engine.run("test.WaitingWorkflow", "cid-1");
+            waitFor(() -> workflowParking.getBudgetExceededCount() > 0);
+            Assert.assertEquals(0, workflowParking.getParkedCount());
+            Assert.assertEquals(0, workflowParking.getAllocatedBytes());
+
+            engine.notify(new Response<String>("cid-1", "one", null), new Acknowledge.BestEffortAcknowledge());
+            waitFor(() -> engine.getNumberOfWorkflowInstances() == 0);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testMappedStorageAndSnapshot() throws Exception {
+        final File dir = Files.createTempDirectory("copper-parking").toFile();
+        final File snapshotFile = new File(dir, "snapshot.bin");
+        try {
+            final WorkflowParking workflowParking = createParking();
+            workflowParking.setDirectory(new File(dir, "slabs"));
+            final TransientScottyEngine engine = createEngine(workflowParking, snapshotFile);
+            try {
+                engine.run("test.WaitingWorkflow", "cid-1");
+                engine.run("test.WaitingWorkflow", "cid-2");
+                waitFor(() -> workflowParking.getParkedCount() == 2);
+            } finally {
+                engine.shutdown();
+            }
+
+            // the parked workflow instances are part of the snapshot
+            final TransientScottyEngine restored = createEngine(createParking(), snapshotFile);
+            try {
+                Assert.assertEquals(2, restored.getNumberOfWorkflowInstances());
+                restored.notify(new Response<String>("cid-1", "one", null), new Acknowledge.BestEffortAcknowledge());
+                restored.notify(new Response<String>("cid-2", "two", null), new Acknowledge.BestEffortAcknowledge());
+                waitFor(() -> restored.getNumberOfWorkflowInstances() == 0);
+            } finally {
+                restored.shutdown();
+            }
+        } finally {
+            FileUtil.deleteDirectory(dir);
+        }
+    }
+}
@@ -18,6 +18,9 @@ package org.copperengine.core.util;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertArrayEquals;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Random;
 
@@ -44,6 +47,19 @@ public class Base64Test {
         assertArrayEquals(data, result);
     }
 
+    @Test
+    public void testEncodeThenDecodingStream() throws IOException {
+        byte[] data = createRandomData(length);
+        InputStream in = Base64.decodingStream("X" + Base64.encode(data), 1);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            result.write(buffer, 0, n);
+        }
+        assertArrayEquals(data, result.toByteArray());
+    }
+
     private byte[] createRandomData(int length) {
         byte[] data = new byte[length];
         Random random = new Random();
@@ -29,6 +29,8 @@ import org.copperengine.core.common.JdkRandomUUIDFactory;
 import org.copperengine.core.common.ProcessorPoolManager;
 import org.copperengine.core.common.WorkflowRepository;
 import org.copperengine.core.monitoring.LoggingStatisticCollector;
+import org.copperengine.core.persistent.AdmissionController;
+import org.copperengine.core.persistent.DequeueCoordinator;
 import org.copperengine.core.persistent.PersistentPriorityProcessorPool;
 import org.copperengine.core.persistent.PersistentProcessorPool;
 import org.copperengine.core.persistent.PersistentScottyEngine;
@@ -177,6 +179,22 @@ public abstract class AbstractPersistentEngineFactory<T extends DependencyInject
         return new JdkRandomUUIDFactory();
     }
 
+    /**
+     * Returns the engine's {@link DequeueCoordinator}, or null (the default) to let each processor pool dequeue in its
+     * own thread.
+     */
+    protected DequeueCoordinator createDequeueCoordinator() {
+        return null;
+    }
+
+    /**
+     * Returns the engine's {@link AdmissionController}, or null (the default) to accept all requests regardless of the
+     * database load.
+     */
+    protected AdmissionController createAdmissionController() {
+        return null;
+    }
+
     protected EngineIdProvider createEngineIdProvider() {
         return new EngineIdProviderBean(engineId);
     }
@@ -188,6 +206,8 @@ public abstract class AbstractPersistentEngineFactory<T extends DependencyInject
         engine.setEngineIdProvider(engineIdProvider.get());
         engine.setIdFactory(idFactory.get());
         engine.setProcessorPoolManager(processorPoolManager.get());
+        engine.setDequeueCoordinator(createDequeueCoordinator());
+        engine.setAdmissionController(createAdmissionController());
         engine.setDependencyInjector(dependencyInjector.get());
         return engine;
     }
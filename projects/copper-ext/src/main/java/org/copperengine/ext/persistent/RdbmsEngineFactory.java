@@ -79,6 +79,7 @@ public abstract class RdbmsEngineFactory<T extends DependencyInjector> extends A
     protected final Supplier<BatcherImpl> batcher;
 
     private int numberOfBatcherThreads = 4;
+    private boolean dedicatedTimeoutProcessing = false;
 
     public RdbmsEngineFactory(List<String> wfPackges) {
         super(wfPackges);
@@ -102,6 +103,13 @@ public abstract class RdbmsEngineFactory<T extends DependencyInjector> extends A
         this.numberOfBatcherThreads = numberOfBatcherThreads;
     }
 
+    /**
+     * @see ScottyDBStorage#setDedicatedTimeoutProcessing(boolean)
+     */
+    public void setDedicatedTimeoutProcessing(boolean dedicatedTimeoutProcessing) {
+        this.dedicatedTimeoutProcessing = dedicatedTimeoutProcessing;
+    }
+
     protected abstract DataSource createDataSource();
 
     protected BatcherImpl createBatcher() {
@@ -129,6 +137,7 @@ public abstract class RdbmsEngineFactory<T extends DependencyInjector> extends A
         dbStorage.setDialect(dialect);
         dbStorage.setTransactionController(transactionController.get());
         dbStorage.setBatcher(batcher.get());
+        dbStorage.setDedicatedTimeoutProcessing(dedicatedTimeoutProcessing);
 
         return dbStorage;
     }
@@ -19,6 +19,7 @@ package org.copperengine.ext.wfrepo.classpath;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,16 +31,16 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
+import org.copperengine.core.Workflow;
 import org.copperengine.core.WorkflowDescription;
 import org.copperengine.core.WorkflowVersion;
 import org.copperengine.core.common.WorkflowRepository;
 import org.copperengine.core.instrument.ClassInfo;
-import org.copperengine.core.instrument.ScottyFindInterruptableMethodsVisitor;
+import org.copperengine.core.instrument.Transformed;
 import org.copperengine.core.wfrepo.AbstractWorkflowRepository;
 import org.copperengine.core.wfrepo.Clazz;
 import org.copperengine.core.wfrepo.FileBasedWorkflowRepository;
 import org.copperengine.management.FileBasedWorkflowRepositoryMXBean;
-import org.objectweb.asm.ClassReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +59,9 @@ import com.google.common.reflect.ClassPath;
  * On the other hand there is no hot deployment feature and the JMX interface does not show the java source code of the
  * deployed workflows. Anyhow, this workflow repo is probably suitable for most simple COPPER applications.
  * <p>
+ * If the workflow classes are instrumented at build time using the {@link WorkflowInstrumenter}, they are loaded
+ * directly from the class path, without instrumenting them again and without a dedicated class loader.
+ * <p>
  * See ClasspathWorkflowRepositoryTest.java testExec() for sample usage.
  * 
  * <pre>
@@ -89,6 +93,7 @@ public class ClasspathWorkflowRepository extends AbstractWorkflowRepository impl
 
     private File adaptedTargetDir;
     private VolatileState volatileState;
+    private boolean started;
 
     public ClasspathWorkflowRepository(final String wfPackage) {
         this(Collections.singletonList(wfPackage));
@@ -101,31 +106,38 @@ public class ClasspathWorkflowRepository extends AbstractWorkflowRepository impl
     @Override
     public synchronized void start() {
         try {
-            if (adaptedTargetDir != null) {
+            if (started) {
                 return;
             }
             logger.info("Starting up with wfPackages={}", wfPackages);
             final ClassLoader tcl = Thread.currentThread().getContextClassLoader();
-            adaptedTargetDir = new File(System.getProperty("java.io.tmpdir") + "/cpwfrepo" + System.currentTimeMillis());
-            logger.info("adaptedTargetDir={}", adaptedTargetDir);
-            adaptedTargetDir.mkdirs();
             final Set<Class<?>> wfSet = findWorkflowClasses(wfPackages, tcl);
             wfSet.addAll(findWorkflowClasses(wfPackages, ClassLoader.getSystemClassLoader()));
 
             logger.info("wfSet.size={}", wfSet.size());
-            final Map<String, Clazz> clazzMap = findInterruptableMethods(wfSet, tcl);
             final Map<String, ClassInfo> classInfos = new HashMap<String, ClassInfo>();
-            instrumentWorkflows(adaptedTargetDir, clazzMap, classInfos, tcl);
-
-            for (Clazz clazz : clazzMap.values()) {
-                ClassInfo info = classInfos.get(clazz.classname);
-                if (info != null) {
-                    ClassInfo superClassInfo = classInfos.get(clazz.superClassname);
-                    info.setSuperClassInfo(superClassInfo);
+            final Map<String, Class<?>> map = new HashMap<String, Class<?>>();
+            final ClassLoader cl;
+            if (isInstrumentedAtBuildTime(wfSet)) {
+                logger.info("Workflow classes are instrumented at build time - loading them from the class path");
+                loadInstrumentedWorkflows(wfSet, tcl, map, classInfos);
+                cl = tcl;
+            } else {
+                adaptedTargetDir = new File(System.getProperty("java.io.tmpdir") + "/cpwfrepo" + System.currentTimeMillis());
+                logger.info("adaptedTargetDir={}", adaptedTargetDir);
+                adaptedTargetDir.mkdirs();
+                final Map<String, Clazz> clazzMap = findInterruptableMethods(wfSet, tcl);
+                instrumentWorkflows(adaptedTargetDir, clazzMap, classInfos, tcl);
+
+                for (Clazz clazz : clazzMap.values()) {
+                    ClassInfo info = classInfos.get(clazz.classname);
+                    if (info != null) {
+                        ClassInfo superClassInfo = classInfos.get(clazz.superClassname);
+                        info.setSuperClassInfo(superClassInfo);
+                    }
                 }
+                cl = super.createClassLoader(map, adaptedTargetDir, adaptedTargetDir, clazzMap);
             }
-            final Map<String, Class<?>> map = new HashMap<String, Class<?>>();
-            final ClassLoader cl = super.createClassLoader(map, adaptedTargetDir, adaptedTargetDir, clazzMap);
 
             checkConstraints(map);
 
@@ -170,6 +182,7 @@ public class ClasspathWorkflowRepository extends AbstractWorkflowRepository impl
             }
 
             volatileState = new VolatileState(wfMapLatest, wfMapVersioned, versions, cl, 0L, wfClassMap, Collections.<String, String>emptyMap(), classInfos, createWorkflowClassInfoMap(wfMapLatest, Collections.<String, String>emptyMap()));
+            started = true;
 
             logger.info("Startup finished");
         } catch (Exception e) {
@@ -180,6 +193,7 @@ public class ClasspathWorkflowRepository extends AbstractWorkflowRepository impl
 
     @Override
     public synchronized void shutdown() {
+        started = false;
         try {
             if (adaptedTargetDir != null) {
                 FileUtils.deleteDirectory(adaptedTargetDir);
@@ -218,53 +232,69 @@ public class ClasspathWorkflowRepository extends AbstractWorkflowRepository impl
         }
     }
 
+    private static boolean isInstrumentedAtBuildTime(final Set<Class<?>> wfSet) {
+        for (Class<?> c : wfSet) {
+            if (c.getAnnotation(Transformed.class) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads the workflow classes instrumented by the {@link WorkflowInstrumenter} via the context class loader, which
+     * takes precedence over the system class loader, and reads their class infos.
+     */
+    private static void loadInstrumentedWorkflows(final Set<Class<?>> wfSet, final ClassLoader tcl, final Map<String, Class<?>> map, final Map<String, ClassInfo> classInfos) throws IOException, ClassNotFoundException {
+        for (Class<?> c : wfSet) {
+            Class<?> wfClass;
+            try {
+                wfClass = Class.forName(c.getName(), false, tcl);
+            } catch (ClassNotFoundException e) {
+                wfClass = c;
+            }
+            if (!Workflow.class.isAssignableFrom(wfClass) || map.containsKey(wfClass.getName()))
+                continue;
+            if (wfClass.getAnnotation(Transformed.class) == null)
+                throw new IllegalStateException("Workflow class " + wfClass.getName() + " is not instrumented - either instrument all workflow classes at build time or none");
+            map.put(wfClass.getName(), wfClass);
+
+            final String classname = wfClass.getName().replace('.', '/');
+            final InputStream is = wfClass.getClassLoader().getResourceAsStream(classname + WorkflowInstrumenter.CLASS_INFO_SUFFIX);
+            if (is != null) {
+                final ObjectInputStream ois = new ObjectInputStream(is);
+                try {
+                    classInfos.put(classname, (ClassInfo) ois.readObject());
+                } finally {
+                    ois.close();
+                }
+            }
+        }
+        for (Class<?> wfClass : map.values()) {
+            final ClassInfo info = classInfos.get(wfClass.getName().replace('.', '/'));
+            if (info != null) {
+                info.setSuperClassInfo(classInfos.get(wfClass.getSuperclass().getName().replace('.', '/')));
+            }
+        }
+    }
+
     private Map<String, Clazz> findInterruptableMethods(final Set<Class<?>> wfSet, ClassLoader cl) throws IOException {
         logger.info("Analysing classfiles");
         // Find and visit all classes
-        Map<String, Clazz> clazzMap = new HashMap<String, Clazz>();
+        List<URL> classfiles = new ArrayList<URL>();
         for (Class<?> c : wfSet) {
             logger.info("analysing class {}", c.getName());
-            ScottyFindInterruptableMethodsVisitor visitor = new ScottyFindInterruptableMethodsVisitor();
-            URL url = cl.getResource(c.getName().replace(".", "/") + ".class");
-            InputStream is = url.openStream();
-            try {
-                ClassReader cr = new ClassReader(is);
-                cr.accept(visitor, 0);
-            } finally {
-                is.close();
-            }
-            Clazz clazz = new Clazz();
-            clazz.interruptableMethods = visitor.getInterruptableMethods();
-            clazz.classfile = url;
-            clazz.classname = visitor.getClassname();
-            clazz.superClassname = visitor.getSuperClassname();
-            clazzMap.put(clazz.classname, clazz);
+            classfiles.add(cl.getResource(c.getName().replace(".", "/") + ".class"));
         }
+        Map<String, Clazz> clazzMap = analyseClassfiles(classfiles);
 
         // Remove all classes that are no workflow
-        List<String> allClassNames = new ArrayList<String>(clazzMap.keySet());
-        for (String classname : allClassNames) {
-            Clazz clazz = clazzMap.get(classname);
-            Clazz startClazz = clazz;
-            while (true) {
-                startClazz.aggregatedInterruptableMethods.addAll(clazz.interruptableMethods);
-                if ("org/copperengine/core/Workflow".equals(clazz.superClassname) || "org/copperengine/core/persistent/PersistentWorkflow".equals(clazz.superClassname)) {
-                    break;
-                }
-                clazz = clazzMap.get(clazz.superClassname);
-                if (clazz == null) {
-                    break;
-                }
-            }
-            if (clazz == null) {
-                // this is no workflow
-                clazzMap.remove(classname);
-                final URL url = cl.getResource(classname.replace(".", "/") + ".class");
-                final File target = new File(adaptedTargetDir, classname.replace(".", "/") + ".class");
-                target.getParentFile().mkdirs();
-
-                FileUtils.copyURLToFile(url, target);
-            }
+        for (String classname : aggregateInterruptableMethods(clazzMap)) {
+            final URL url = cl.getResource(classname.replace(".", "/") + ".class");
+            final File target = new File(adaptedTargetDir, classname.replace(".", "/") + ".class");
+            target.getParentFile().mkdirs();
+
+            FileUtils.copyURLToFile(url, target);
         }
 
         return clazzMap;
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.ext.wfrepo.classpath;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.copperengine.core.instrument.ASMConstants;
+import org.copperengine.core.instrument.ClassInfo;
+import org.copperengine.core.wfrepo.Clazz;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instruments COPPER workflow classes at build time, so that the {@link ClasspathWorkflowRepository} loads them
+ * directly from the application's class path, without instrumenting them at startup and without a dedicated class
+ * loader. This shortens the startup and allows the workflow classes to take part in class data sharing.
+ * <p>
+ * All workflow classes found in the classes directory are instrumented and written to the target directory, together
+ * with a <code>.classinfo</code> file per workflow class. All other files are copied unchanged. Target and classes
+ * directory may be the same. Classes, that are instrumented already, are left unchanged, so running the instrumenter
+ * twice does no harm. The classes directory and its dependencies, including COPPER, must be on the class path of the
+ * instrumenter.
+ * <p>
+ * Standalone usage:
+ *
+ * <pre>
+ * java -cp &lt;class path&gt; org.copperengine.ext.wfrepo.classpath.WorkflowInstrumenter &lt;classes dir&gt; [&lt;target dir&gt;]
+ * </pre>
+ *
+ * Usage in a Gradle build, instrumenting the compiled classes in place:
+ *
+ * <pre>
+ * task instrumentWorkflows(type: JavaExec) {
+ *     classpath = sourceSets.main.runtimeClasspath
+ *     main = 'org.copperengine.ext.wfrepo.classpath.WorkflowInstrumenter'
+ *     args sourceSets.main.java.outputDir
+ * }
+ * compileJava.finalizedBy instrumentWorkflows
+ * </pre>
+ */
+public class WorkflowInstrumenter {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowInstrumenter.class);
+
+    static final String CLASS_INFO_SUFFIX = ".classinfo";
+    private static final String TRANSFORMED_DESC = "Lorg/copperengine/core/instrument/Transformed;";
+
+    /**
+     * Uses the analysis and instrumentation of the workflow repositories.
+     */
+    private static final class Instrumentation extends ClasspathWorkflowRepository {
+
+        Instrumentation(int parallelism) {
+            super(Collections.<String>emptyList());
+            setInstrumentationParallelism(parallelism);
+        }
+
+        Map<String, Clazz> analyse(List<URL> classfiles) throws IOException {
+            final Map<String, Clazz> clazzMap = analyseClassfiles(classfiles);
+            aggregateInterruptableMethods(clazzMap);
+            return clazzMap;
+        }
+
+        void instrument(File targetDir, Map<String, Clazz> clazzMap, Map<String, ClassInfo> classInfos, ClassLoader tmpClassLoader) throws IOException {
+            instrumentWorkflows(targetDir, clazzMap, classInfos, tmpClassLoader);
+        }
+    }
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Sets the number of threads used to analyse and instrument the classes. Defaults to the number of available
+     * processors.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Instruments the workflow classes in the classes directory and writes them to the target directory.
+     *
+     * @return the number of instrumented workflow classes
+     */
+    public int instrument(File classesDir, File targetDir) throws IOException {
+        if (!classesDir.isDirectory())
+            throw new IllegalArgumentException(classesDir + " is no directory");
+        final boolean inPlace = classesDir.getCanonicalFile().equals(targetDir.getCanonicalFile());
+        final List<URL> classfiles = new ArrayList<URL>();
+        for (File f : FileUtils.listFiles(classesDir, new String[] { "class" }, true)) {
+            classfiles.add(f.toURI().toURL());
+        }
+
+        final Instrumentation instrumentation = new Instrumentation(parallelism);
+        final Map<String, Clazz> clazzMap = instrumentation.analyse(classfiles);
+        for (Iterator<Clazz> it = clazzMap.values().iterator(); it.hasNext();) {
+            final Clazz clazz = it.next();
+            if (isTransformed(clazz.classfile)) {
+                logger.info("{} is instrumented already", clazz.classname);
+                it.remove();
+            }
+        }
+
+        final Set<String> written = new HashSet<String>();
+        final Map<String, ClassInfo> classInfos = new HashMap<String, ClassInfo>();
+        final URLClassLoader tmpClassLoader = new URLClassLoader(new URL[] { classesDir.toURI().toURL() }, WorkflowInstrumenter.class.getClassLoader());
+        try {
+            instrumentation.instrument(targetDir, clazzMap, classInfos, tmpClassLoader);
+        } finally {
+            tmpClassLoader.close();
+        }
+        for (Map.Entry<String, ClassInfo> e : classInfos.entrySet()) {
+            final File classInfoFile = new File(targetDir, e.getKey() + CLASS_INFO_SUFFIX);
+            final ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(classInfoFile)));
+            try {
+                oos.writeObject(e.getValue());
+            } finally {
+                oos.close();
+            }
+            written.add(e.getKey() + ".class");
+            written.add(e.getKey() + CLASS_INFO_SUFFIX);
+        }
+
+        if (!inPlace) {
+            for (File f : FileUtils.listFiles(classesDir, null, true)) {
+                final String path = classesDir.toURI().relativize(f.toURI()).getPath();
+                if (!written.contains(path)) {
+                    FileUtils.copyFile(f, new File(targetDir, path));
+                }
+            }
+        }
+        logger.info("Instrumented {} workflow classes", clazzMap.size());
+        return clazzMap.size();
+    }
+
+    private static boolean isTransformed(URL classfile) throws IOException {
+        final boolean[] transformed = { false };
+        final InputStream is = classfile.openStream();
+        try {
+            new ClassReader(is).accept(new ClassVisitor(ASMConstants.API_VERSION) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                    if (TRANSFORMED_DESC.equals(descriptor)) {
+                        transformed[0] = true;
+                    }
+                    return null;
+                }
+            }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        } finally {
+            is.close();
+        }
+        return transformed[0];
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java -cp <class path> " + WorkflowInstrumenter.class.getName() + " <classes dir> [<target dir>]");
+            System.out.println("  Instruments the COPPER workflow classes in <classes dir> and writes them to <target dir>, which defaults to <classes dir>.");
+            System.exit(1);
+        }
+        final File classesDir = new File(args[0]);
+        final File targetDir = new File(args.length > 1 ? args[1] : args[0]);
+        try {
+            new WorkflowInstrumenter().instrument(classesDir, targetDir);
+        } catch (Exception e) {
+            logger.error("Instrumentation failed", e);
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.ext.wfrepo.classpath;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.instrument.Transformed;
+import org.copperengine.ext.wfrepo.classpath.testworkflows.TestWorkflowThree;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkflowInstrumenterTest {
+
+    private static final String TESTWORKFLOWS_PACKAGE = "org.copperengine.ext.wfrepo.classpath.testworkflows";
+
+    /**
+     * Loads classes from its own URLs first, so that the instrumented classes hide the original ones.
+     */
+    private static final class ChildFirstClassLoader extends URLClassLoader {
+
+        ChildFirstClassLoader(URL url, ClassLoader parent) {
+            super(new URL[] { url }, parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                try {
+                    c = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    c = super.loadClass(name, false);
+                }
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    private File baseDir;
+    private File classesDir;
+    private File targetDir;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("copper-instrumenter-test").toFile();
+        classesDir = new File(baseDir, "classes");
+        targetDir = new File(baseDir, "instrumented");
+        final File testClasses = new File(TestWorkflowThree.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        final String packagePath = TESTWORKFLOWS_PACKAGE.replace('.', '/');
+        FileUtils.copyDirectory(new File(testClasses, packagePath), new File(classesDir, packagePath));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void testInstrument() throws Exception {
+        final WorkflowInstrumenter instrumenter = new WorkflowInstrumenter();
+        Assert.assertEquals(3, instrumenter.instrument(classesDir, targetDir));
+        Assert.assertEquals(FileUtils.listFiles(classesDir, new String[] { "class" }, true).size(), FileUtils.listFiles(targetDir, new String[] { "class" }, true).size());
+        Assert.assertEquals(3, FileUtils.listFiles(targetDir, new String[] { "classinfo" }, true).size());
+
+        // instrumented classes are left unchanged
+        final File classfile = new File(targetDir, TestWorkflowThree.class.getName().replace('.', '/') + ".class");
+        final byte[] instrumented = Files.readAllBytes(classfile.toPath());
+        Assert.assertEquals(0, instrumenter.instrument(targetDir, targetDir));
+        Assert.assertArrayEquals(instrumented, Files.readAllBytes(classfile.toPath()));
+    }
+
+    @Test
+    public void testLoadInstrumentedWorkflows() throws Exception {
+        new WorkflowInstrumenter().instrument(classesDir, targetDir);
+
+        final ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+        final ChildFirstClassLoader cl = new ChildFirstClassLoader(targetDir.toURI().toURL(), tcl);
+        Thread.currentThread().setContextClassLoader(cl);
+        final ClasspathWorkflowRepository wfRepo = new ClasspathWorkflowRepository(TESTWORKFLOWS_PACKAGE);
+        try {
+            wfRepo.start();
+            final Workflow<Object> wf = wfRepo.createWorkflowFactory(TestWorkflowThree.class.getName()).newInstance();
+            Assert.assertSame(cl, wf.getClass().getClassLoader());
+            Assert.assertNotNull(wf.getClass().getAnnotation(Transformed.class));
+            Assert.assertNotNull(wfRepo.getClassInfo(wf.getClass()));
+            Assert.assertEquals(3, wfRepo.getWorkflows().size());
+        } finally {
+            wfRepo.shutdown();
+            Thread.currentThread().setContextClassLoader(tcl);
+            cl.close();
+        }
+    }
+}
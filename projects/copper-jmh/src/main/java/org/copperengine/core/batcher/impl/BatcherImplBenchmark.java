@@ -0,0 +1,172 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher.impl;
+
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.BatchExecutor;
+import org.copperengine.core.batcher.CommandCallback;
+import org.copperengine.core.batcher.RetryingTxnBatchRunner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Submits commands to a {@link BatcherImpl} and waits, until they have been flushed, i.e. executed in batches by the
+ * batcher threads. The executor does no I/O, so the benchmark measures the overhead of the batcher itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatcherImplBenchmark {
+
+    private static final int COMMANDS_PER_INVOCATION = 200;
+
+    static final class BenchmarkCommand implements BatchCommand<BenchmarkExecutor, BenchmarkCommand> {
+
+        private final BenchmarkExecutor executor;
+        private final Submitter submitter;
+        private final long targetTime;
+
+        BenchmarkCommand(BenchmarkExecutor executor, Submitter submitter, long targetTime) {
+            this.executor = executor;
+            this.submitter = submitter;
+            this.targetTime = targetTime;
+        }
+
+        @Override
+        public BenchmarkExecutor executor() {
+            return executor;
+        }
+
+        @Override
+        public CommandCallback<BenchmarkCommand> callback() {
+            return submitter;
+        }
+
+        @Override
+        public long targetTime() {
+            return targetTime;
+        }
+    }
+
+    static final class BenchmarkExecutor extends BatchExecutor<BenchmarkExecutor, BenchmarkCommand> {
+
+        private final int preferredBatchSize;
+
+        BenchmarkExecutor(int preferredBatchSize) {
+            this.preferredBatchSize = preferredBatchSize;
+        }
+
+        @Override
+        public void doExec(Collection<BatchCommand<BenchmarkExecutor, BenchmarkCommand>> commands, Connection connection) throws Exception {
+        }
+
+        @Override
+        public int preferredBatchSize() {
+            return preferredBatchSize;
+        }
+
+        @Override
+        public int maximumBatchSize() {
+            return preferredBatchSize * 2;
+        }
+    }
+
+    /**
+     * Submits the commands of one benchmark thread and counts them down, when they have been executed.
+     */
+    @State(Scope.Thread)
+    public static class Submitter implements CommandCallback<BenchmarkCommand> {
+
+        final AtomicInteger pending = new AtomicInteger();
+
+        @Override
+        public void commandCompleted() {
+            pending.decrementAndGet();
+        }
+
+        @Override
+        public void unhandledException(Exception e) {
+            pending.decrementAndGet();
+        }
+    }
+
+    @Param({ "1", "4" })
+    public int numThreads;
+
+    @Param({ "50" })
+    public int preferredBatchSize;
+
+    private BatcherImpl batcher;
+    private BenchmarkExecutor executor;
+
+    @Setup
+    public void setup() {
+        executor = new BenchmarkExecutor(preferredBatchSize);
+        batcher = new BatcherImpl(numThreads);
+        batcher.setBatchRunner(new RetryingTxnBatchRunner<BenchmarkExecutor, BenchmarkCommand>());
+        batcher.startup();
+    }
+
+    @TearDown
+    public void tearDown() {
+        batcher.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS_PER_INVOCATION)
+    public void submitAndFlush(Submitter submitter) {
+        submit(submitter);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(COMMANDS_PER_INVOCATION)
+    public void submitAndFlushConcurrently(Submitter submitter) {
+        submit(submitter);
+    }
+
+    private void submit(Submitter submitter) {
+        final long targetTime = System.currentTimeMillis();
+        submitter.pending.addAndGet(COMMANDS_PER_INVOCATION);
+        for (int i = 0; i < COMMANDS_PER_INVOCATION; i++) {
+            batcher.submitBatchCommand(new BenchmarkCommand(executor, submitter, targetTime));
+        }
+        while (submitter.pending.get() > 0) {
+            Thread.yield();
+        }
+    }
+
+}
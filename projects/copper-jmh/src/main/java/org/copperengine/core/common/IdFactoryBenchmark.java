@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creates ids with the {@link IdFactory} implementations, in a single thread and concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdFactoryBenchmark {
+
+    @Param({ "atomicLong", "jdkRandomUUID", "timeOrdered" })
+    public String factory;
+
+    private IdFactory idFactory;
+
+    @Setup
+    public void setup() {
+        if ("atomicLong".equals(factory)) {
+            idFactory = new AtomicLongIdFactory();
+        } else if ("jdkRandomUUID".equals(factory)) {
+            idFactory = new JdkRandomUUIDFactory();
+        } else {
+            idFactory = new TimeOrderedIdFactory("benchmark");
+        }
+        idFactory.startup();
+    }
+
+    @Benchmark
+    public String createId() {
+        return idFactory.createId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String createIdConcurrently() {
+        return idFactory.createId();
+    }
+
+}
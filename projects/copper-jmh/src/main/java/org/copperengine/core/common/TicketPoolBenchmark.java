@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Obtains and releases tickets of a {@link TicketPool}, uncontended and with more threads than tickets, so that
+ * threads have to wait for each other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketPoolBenchmark {
+
+    @Param({ "2", "1000" })
+    public int capacity;
+
+    private TicketPool ticketPool;
+
+    @Setup
+    public void setup() {
+        ticketPool = new TicketPool("benchmark", capacity);
+    }
+
+    @Benchmark
+    public void obtainRelease() {
+        ticketPool.obtain();
+        ticketPool.release();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void obtainReleaseConcurrently() {
+        ticketPool.obtain();
+        ticketPool.release();
+    }
+
+    @Benchmark
+    public boolean tryObtainRelease() {
+        final boolean obtained = ticketPool.tryObtain();
+        if (obtained) {
+            ticketPool.release();
+        }
+        return obtained;
+    }
+
+}
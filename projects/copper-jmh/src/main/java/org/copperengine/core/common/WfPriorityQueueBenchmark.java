@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.core.Workflow;
+import org.copperengine.core.internal.SuspendableQueue;
+import org.copperengine.jmh.BenchmarkWorkflow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Enqueues and dequeues workflow instances the way a {@link PriorityProcessorPool} and its processors do, i.e. through
+ * a {@link SuspendableQueue} wrapping a {@link WfPriorityQueue}, synchronized on the queue. The queue is filled with
+ * <code>queueSize</code> workflows of random priority beforehand, so every operation works on a queue of that size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WfPriorityQueueBenchmark {
+
+    private static final int NUMBER_OF_PRIORITIES = 10;
+
+    @Param({ "100", "10000" })
+    public int queueSize;
+
+    private Queue<Workflow<?>> queue;
+
+    @Setup
+    public void setup() {
+        queue = new SuspendableQueue<Workflow<?>>(new WfPriorityQueue());
+        for (int i = 0; i < queueSize; i++) {
+            queue.offer(newWorkflow(i));
+        }
+    }
+
+    private static Workflow<?> newWorkflow(int i) {
+        return new BenchmarkWorkflow(Integer.toString(i), ThreadLocalRandom.current().nextInt(NUMBER_OF_PRIORITIES), null);
+    }
+
+    @Benchmark
+    public Workflow<?> offerPoll() {
+        return requeue();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Workflow<?> offerPollConcurrently() {
+        return requeue();
+    }
+
+    private Workflow<?> requeue() {
+        final Workflow<?> wf;
+        synchronized (queue) {
+            wf = queue.poll();
+        }
+        wf.setPriority(ThreadLocalRandom.current().nextInt(NUMBER_OF_PRIORITIES));
+        synchronized (queue) {
+            queue.offer(wf);
+            queue.notify();
+        }
+        return wf;
+    }
+
+}
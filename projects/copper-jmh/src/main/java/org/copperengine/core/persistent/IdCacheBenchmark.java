@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Puts, looks up and removes response ids in a full {@link IdCache}, so that every put also evicts the oldest entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdCacheBenchmark {
+
+    @Param({ "10000" })
+    public int maxSize;
+
+    private IdCache idCache;
+
+    @Setup
+    public void setup() {
+        idCache = new IdCache(maxSize, 1, TimeUnit.HOURS);
+        for (int i = 0; i < maxSize; i++) {
+            idCache.put("rid-" + i, "cid-" + i);
+        }
+    }
+
+    @Benchmark
+    public boolean putContainsRemove() {
+        return putAndRemove();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean putContainsRemoveConcurrently() {
+        return putAndRemove();
+    }
+
+    private boolean putAndRemove() {
+        final long n = ThreadLocalRandom.current().nextLong();
+        final String responseId = "rid" + n;
+        final String correlationId = "cid" + n;
+        idCache.put(responseId, correlationId);
+        final boolean contained = idCache.contains(correlationId);
+        idCache.remove(responseId);
+        return contained;
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return idCache.contains("unknown" + ThreadLocalRandom.current().nextInt());
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.core.Response;
+import org.copperengine.jmh.BenchmarkWorkflow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization and deserialization of workflow instances and responses with the {@link StandardJavaSerializer}, with
+ * and without compression, and for responses with java serialization and in the binary format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StandardJavaSerializerBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean compress;
+
+    @Param({ "false", "true" })
+    public boolean binaryResponses;
+
+    /**
+     * Length of the workflow data and of the response payload in characters.
+     */
+    @Param({ "100", "4000" })
+    public int payloadSize;
+
+    private StandardJavaSerializer serializer;
+    private BenchmarkWorkflow workflow;
+    private SerializedWorkflow serializedWorkflow;
+    private Response<String> response;
+    private String serializedResponse;
+
+    @Setup
+    public void setup() throws Exception {
+        serializer = new StandardJavaSerializer();
+        serializer.setCompress(compress);
+        serializer.setBinaryResponses(binaryResponses);
+        final StringBuilder payload = new StringBuilder(payloadSize);
+        for (int i = 0; i < payloadSize; i++) {
+            payload.append((char) ('a' + i % 26));
+        }
+        workflow = new BenchmarkWorkflow("4711", 5, payload.toString());
+        serializedWorkflow = serializer.serializeWorkflow(workflow);
+        response = new Response<String>("cid-4711", payload.toString(), null);
+        serializedResponse = serializer.serializeResponse(response);
+    }
+
+    @Benchmark
+    public SerializedWorkflow serializeWorkflow() throws Exception {
+        return serializer.serializeWorkflow(workflow);
+    }
+
+    @Benchmark
+    public Object deserializeWorkflow() throws Exception {
+        return serializer.deserializeWorkflow(serializedWorkflow, null);
+    }
+
+    @Benchmark
+    public String serializeResponse() throws Exception {
+        return serializer.serializeResponse(response);
+    }
+
+    @Benchmark
+    public Object deserializeResponse() throws Exception {
+        return serializer.deserializeResponse(serializedResponse);
+    }
+
+}
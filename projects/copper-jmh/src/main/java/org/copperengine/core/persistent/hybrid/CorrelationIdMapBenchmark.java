@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent.hybrid;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds the correlation ids of a waiting workflow to a {@link CorrelationIdMap}, resolves one of them, as a notify does,
+ * and removes them again, as happens when the workflow is resumed. The map holds the correlation ids of
+ * <code>numberOfWorkflows</code> other workflows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorrelationIdMapBenchmark {
+
+    private static final int CORRELATION_IDS_PER_WORKFLOW = 3;
+
+    @Param({ "1000", "100000" })
+    public int numberOfWorkflows;
+
+    private CorrelationIdMap correlationIdMap;
+
+    @Setup
+    public void setup() {
+        correlationIdMap = new CorrelationIdMap();
+        for (int i = 0; i < numberOfWorkflows; i++) {
+            correlationIdMap.addCorrelationIds("wf-" + i, correlationIds("wf-" + i));
+        }
+    }
+
+    private static String[] correlationIds(String workflowId) {
+        final String[] correlationIds = new String[CORRELATION_IDS_PER_WORKFLOW];
+        for (int i = 0; i < correlationIds.length; i++) {
+            correlationIds[i] = workflowId + "-cid-" + i;
+        }
+        return correlationIds;
+    }
+
+    @Benchmark
+    public String addResolveRemove() {
+        return waitAndResume();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String addResolveRemoveConcurrently() {
+        return waitAndResume();
+    }
+
+    private String waitAndResume() {
+        final String workflowId = Long.toString(ThreadLocalRandom.current().nextLong());
+        final String[] correlationIds = correlationIds(workflowId);
+        correlationIdMap.addCorrelationIds(workflowId, correlationIds);
+        final String resolved = correlationIdMap.getWorkflowId(correlationIds[1]);
+        correlationIdMap.removeAll4Workflow(workflowId);
+        return resolved;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.copperengine.core.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Puts early responses into a {@link DefaultEarlyResponseContainer} and takes them out again, as happens when a
+ * workflow waits for a response that arrived before the wait. The container is filled up to its lower border
+ * beforehand. <code>putOnly</code> puts responses nobody waits for, which makes the container evict the oldest ones
+ * every time it exceeds its upper border.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultEarlyResponseContainerBenchmark {
+
+    @Param({ "25000" })
+    public int lowerBorderResponseMapSize;
+
+    private DefaultEarlyResponseContainer container;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        container = new DefaultEarlyResponseContainer();
+        container.setLowerBorderResponseMapSize(lowerBorderResponseMapSize);
+        container.setUpperBorderResponseMapSize(lowerBorderResponseMapSize + lowerBorderResponseMapSize / 25);
+        for (int i = 0; i < lowerBorderResponseMapSize; i++) {
+            container.put(new Response<String>("prefill-" + i));
+        }
+    }
+
+    @Benchmark
+    public List<Response<?>> putGet() {
+        return putAndGet();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Response<?>> putGetConcurrently() {
+        return putAndGet();
+    }
+
+    private List<Response<?>> putAndGet() {
+        final String correlationId = Long.toString(ThreadLocalRandom.current().nextLong());
+        container.put(new Response<String>(correlationId, "response", null));
+        return container.get(correlationId);
+    }
+
+    @Benchmark
+    public void putOnly() {
+        container.put(new Response<String>("cid-" + sequence.incrementAndGet()));
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Registers and unregisters timeouts at a {@link DefaultTimeoutManager}, that already holds
+ * <code>numberOfTimeouts</code> timeouts spread over the next hour. The timeout manager is not started, so no
+ * timeout fires during the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultTimeoutManagerBenchmark {
+
+    private static final long HORIZON_MSEC = 60L * 60L * 1000L;
+
+    @Param({ "1000", "100000" })
+    public int numberOfTimeouts;
+
+    private DefaultTimeoutManager timeoutManager;
+    private long baseTS;
+
+    @Setup
+    public void setup() {
+        timeoutManager = new DefaultTimeoutManager();
+        baseTS = System.currentTimeMillis() + HORIZON_MSEC;
+        for (int i = 0; i < numberOfTimeouts; i++) {
+            timeoutManager.registerTimeout(randomTimeout(), "cid-" + i);
+        }
+    }
+
+    private long randomTimeout() {
+        return baseTS + ThreadLocalRandom.current().nextLong(HORIZON_MSEC);
+    }
+
+    @Benchmark
+    public void registerUnregister() {
+        registerAndUnregister();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void registerUnregisterConcurrently() {
+        registerAndUnregister();
+    }
+
+    private void registerAndUnregister() {
+        final long timeoutTS = randomTimeout();
+        final String correlationId = Long.toString(ThreadLocalRandom.current().nextLong());
+        timeoutManager.registerTimeout(timeoutTS, correlationId);
+        timeoutManager.unregisterTimeout(timeoutTS, correlationId);
+    }
+
+}
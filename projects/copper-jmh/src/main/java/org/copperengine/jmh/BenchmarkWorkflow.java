@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.instrument.Transformed;
+import org.copperengine.core.persistent.PersistentWorkflow;
+
+/**
+ * Workflow used by the benchmarks. It is never run and its <code>main</code> method does not wait, so it is marked as
+ * transformed without being instrumented. Its state resembles that of a typical workflow instance in the middle of its
+ * execution.
+ */
+@Transformed
+public class BenchmarkWorkflow extends PersistentWorkflow<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> correlationIds = new ArrayList<String>();
+    private String customerId;
+    private long orderNumber;
+
+    public BenchmarkWorkflow(String id, int priority, String data) {
+        setId(id);
+        setPriority(priority);
+        setProcessorPoolId("P#DEFAULT");
+        setData(data);
+        customerId = "customer-" + id;
+        orderNumber = id.hashCode();
+        for (int i = 0; i < 3; i++) {
+            correlationIds.add(id + "-" + i);
+        }
+    }
+
+    @Override
+    public void main() throws Interrupt {
+    }
+
+}
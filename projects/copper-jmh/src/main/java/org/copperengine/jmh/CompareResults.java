@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH result files in JSON format, e.g. of two commits, and prints the relative change of every benchmark
+ * contained in both files. Changes for the worse, that exceed the threshold, are marked as regression and make the
+ * program exit with status 1.
+ *
+ * <pre>
+ * java -cp &lt;class path&gt; org.copperengine.jmh.CompareResults &lt;baseline.json&gt; &lt;current.json&gt; [&lt;threshold percent&gt;]
+ * </pre>
+ */
+public class CompareResults {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    static final class Score {
+        final double score;
+        final String unit;
+        final boolean higherIsBetter;
+
+        Score(JsonNode result) {
+            final JsonNode metric = result.get("primaryMetric");
+            this.score = metric.get("score").asDouble();
+            this.unit = metric.get("scoreUnit").asText();
+            this.higherIsBetter = "thrpt".equals(result.get("mode").asText());
+        }
+    }
+
+    /**
+     * Reads a JMH result file and maps each result by benchmark, mode and parameters.
+     */
+    static Map<String, Score> read(File file) throws IOException {
+        final Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            final StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+            key.append(" (").append(result.get("mode").asText());
+            final JsonNode params = result.get("params");
+            if (params != null) {
+                final Map<String, String> sorted = new TreeMap<String, String>();
+                for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext();) {
+                    final Map.Entry<String, JsonNode> param = it.next();
+                    sorted.put(param.getKey(), param.getValue().asText());
+                }
+                for (Map.Entry<String, String> param : sorted.entrySet()) {
+                    key.append(", ").append(param.getKey()).append('=').append(param.getValue());
+                }
+            }
+            key.append(')');
+            scores.put(key.toString(), new Score(result));
+        }
+        return scores;
+    }
+
+    /**
+     * @return the change in percent, positive if the current score is better than the baseline
+     */
+    static double improvement(Score baseline, Score current) {
+        final double change = 100.0 * (current.score - baseline.score) / baseline.score;
+        return current.higherIsBetter ? change : -change;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("Usage: java -cp <class path> " + CompareResults.class.getName() + " <baseline.json> <current.json> [<threshold percent>]");
+            System.exit(2);
+        }
+        final Map<String, Score> baseline = read(new File(args[0]));
+        final Map<String, Score> current = read(new File(args[1]));
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> e : current.entrySet()) {
+            final Score base = baseline.get(e.getKey());
+            if (base == null) {
+                System.out.println(String.format("%-100s %14s %14.3f %s  new", e.getKey(), "-", e.getValue().score, e.getValue().unit));
+                continue;
+            }
+            final double improvement = improvement(base, e.getValue());
+            final boolean regression = improvement < -threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.println(String.format("%-100s %14.3f %14.3f %s %+8.1f%%%s", e.getKey(), base.score, e.getValue().score, e.getValue().unit, improvement, regression ? "  REGRESSION" : ""));
+        }
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+}
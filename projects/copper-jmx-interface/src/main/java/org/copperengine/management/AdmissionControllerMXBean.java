@@ -0,0 +1,69 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.management;
+
+/**
+ * Admission control of a persistent processing engine. The pressure and the signals it is computed of are meant to
+ * let upstream adapters throttle, before the engine starts to block, reject or shed requests.
+ */
+public interface AdmissionControllerMXBean {
+
+    /**
+     * @return the current pressure, i.e. the highest ratio of a monitored signal to its limit. A pressure of 1 or more
+     *         means, that the engine is overloaded.
+     */
+    public double getPressure();
+
+    public boolean isOverloaded();
+
+    /**
+     * @return the number of commands waiting in the engine's batcher
+     */
+    public int getBatcherQueueSize();
+
+    /**
+     * @return the smoothed time in milliseconds to execute and commit a batch, or -1 if not yet measured
+     */
+    public double getCommitLatencyMSec();
+
+    /**
+     * @return the number of workflow instances waiting in the memory queues of the engine's processor pools
+     */
+    public int getProcessorPoolQueueSize();
+
+    public int getMaxBatcherQueueSize();
+
+    public void setMaxBatcherQueueSize(int maxBatcherQueueSize);
+
+    public int getMaxCommitLatencyMSec();
+
+    public void setMaxCommitLatencyMSec(int maxCommitLatencyMSec);
+
+    public int getMaxProcessorPoolQueueSize();
+
+    public void setMaxProcessorPoolQueueSize(int maxProcessorPoolQueueSize);
+
+    /**
+     * @return the number of requests rejected due to overload, including shed requests
+     */
+    public long getRejectedCount();
+
+    /**
+     * @return the number of low priority workflow instances shed due to overload
+     */
+    public long getShedCount();
+
+}
@@ -23,4 +23,15 @@ public interface BatcherMXBean {
 
     public void setNumThreads(int numThreads);
 
+    /**
+     * @return the number of commands waiting to be executed
+     */
+    public int getQueueSize();
+
+    /**
+     * @return the exponentially smoothed time in milliseconds to execute and commit a batch, or -1 if no batch has been
+     *         executed yet
+     */
+    public double getAverageBatchLatencyMSec();
+
 }
@@ -38,4 +38,28 @@ public interface DatabaseDialectMXBean {
 
     public String getDialectDescription();
 
+    /**
+     * Sets the maximum number of cached prepared statements. 0 disables the statement cache.
+     *
+     * @param statementCacheSize maximum number of cached statements
+     */
+    public void setStatementCacheSize(int statementCacheSize);
+
+    public int getStatementCacheSize();
+
+    /**
+     * @return number of statements that were taken from the statement cache
+     */
+    public long getStatementCacheHitCount();
+
+    /**
+     * @return number of statements that had to be prepared, because they were not in the statement cache
+     */
+    public long getStatementCacheMissCount();
+
+    /**
+     * @return ratio of cache hits to statement cache lookups, between 0.0 and 1.0
+     */
+    public double getStatementCacheHitRate();
+
 }
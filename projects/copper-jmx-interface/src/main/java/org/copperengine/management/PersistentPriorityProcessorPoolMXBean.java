@@ -37,6 +37,29 @@ public interface PersistentPriorityProcessorPoolMXBean extends ProcessorPoolMXBe
 
     public void setDequeueBulkSize(int dequeueBulkSize);
 
+    /**
+     * Target amount of buffered work (in milliseconds) in the memory queue, used by adaptive dequeue sizing.
+     * If adaptive dequeue sizing is enabled, the current values chosen are reported by {@link #getLowerThreshold()},
+     * {@link #getUpperThreshold()} and {@link #getDequeueBulkSize()}.
+     * 
+     * @return the target in milliseconds, or 0 if adaptive dequeue sizing is disabled
+     */
+    public int getAdaptiveDequeueTargetMSec();
+
+    public void setAdaptiveDequeueTargetMSec(int adaptiveDequeueTargetMSec);
+
+    /**
+     * @return the measured processing rate in workflow instances per second, or -1 if adaptive dequeue sizing is
+     *         disabled or no measurement is available yet
+     */
+    public double getMeasuredProcessingRate();
+
+    /**
+     * @return the measured average dequeue latency in milliseconds, or -1 if adaptive dequeue sizing is disabled or no
+     *         measurement is available yet
+     */
+    public double getMeasuredDequeueLatencyMSec();
+
     /**
      * Suspends dequeuing of workflow instances from the storage.
      * Workflow instances that already reside in the transient queue are still processed, i.e.
@@ -51,6 +51,11 @@ public interface PersistentProcessingEngineMXBean extends ProcessingEngineMXBean
 
     public DBStorageMXBean getDBStorage();
 
+    /**
+     * @return the engine's admission control, or null if all requests are accepted
+     */
+    public AdmissionControllerMXBean getAdmissionController();
+
     /**
      *  Gets EngineClusterId to make it possible grouping engines into engine cluster.
      *  Engines in one engine cluster should use same Database, in other case grouping will show incorrect data in copper monitoring
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.management;
+
+import org.copperengine.management.model.WaitTimeHistogram;
+
+public interface TicketPoolMXBean {
+
+    public String getId();
+
+    public int getCapacity();
+
+    public void setCapacity(int capacity);
+
+    public int getUsedTickets();
+
+    /**
+     * @return the number of callers currently waiting for tickets
+     */
+    public int getWaitingCount();
+
+    /**
+     * @return the wait times of all obtain calls that had to wait, since startup or the last reset
+     */
+    public WaitTimeHistogram getWaitTimeHistogram();
+
+    public void resetWaitTimeHistogram();
+
+}
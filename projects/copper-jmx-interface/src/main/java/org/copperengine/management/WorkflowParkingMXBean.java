@@ -0,0 +1,75 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.management;
+
+/**
+ * Parking of idle waiting workflow instances of a transient processing engine in compact off-heap storage.
+ */
+public interface WorkflowParkingMXBean {
+
+    /**
+     * @return the time in milliseconds, that a workflow instance has to wait, before it is parked
+     */
+    public long getIdleThresholdMSec();
+
+    public void setIdleThresholdMSec(long idleThresholdMSec);
+
+    /**
+     * @return the number of currently parked workflow instances
+     */
+    public int getParkedCount();
+
+    /**
+     * @return the number of compressed bytes occupied by the currently parked workflow instances
+     */
+    public long getUsedBytes();
+
+    /**
+     * @return the number of uncompressed bytes of the currently parked workflow instances
+     */
+    public long getUncompressedBytes();
+
+    /**
+     * @return the number of bytes of the allocated storage slabs
+     */
+    public long getAllocatedBytes();
+
+    /**
+     * @return the maximum number of bytes of storage slabs, that may be allocated
+     */
+    public long getMaxBytes();
+
+    /**
+     * @return the total number of parked workflow instances
+     */
+    public long getParkCount();
+
+    /**
+     * @return the total number of workflow instances, that were inflated again
+     */
+    public long getUnparkCount();
+
+    /**
+     * @return the number of times a workflow instance stayed on the heap, because the storage was exhausted
+     */
+    public long getBudgetExceededCount();
+
+    /**
+     * @return the number of workflow instances, that could not be parked, e.g. because they are not serializable
+     */
+    public long getFailedCount();
+
+}
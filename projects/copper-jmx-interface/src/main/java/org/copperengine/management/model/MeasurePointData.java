@@ -26,6 +26,11 @@ public class MeasurePointData implements Serializable {
     private long elementCount = 0L;
     private long elapsedTimeMicros = 0L;
     private long count = 0L;
+    private long p50Micros = 0L;
+    private long p99Micros = 0L;
+    private long p999Micros = 0L;
+    private long maxMicros = 0L;
+    private double ratePerSecond = 0.0;
 
     public MeasurePointData() {
     }
@@ -39,6 +44,16 @@ public class MeasurePointData implements Serializable {
         this.count = count;
     }
 
+    @ConstructorProperties({ "mpId", "elementCount", "elapsedTimeMicros", "count", "p50Micros", "p99Micros", "p999Micros", "maxMicros", "ratePerSecond" })
+    public MeasurePointData(String mpId, long elementCount, long elapsedTimeMicros, long count, long p50Micros, long p99Micros, long p999Micros, long maxMicros, double ratePerSecond) {
+        this(mpId, elementCount, elapsedTimeMicros, count);
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+        this.ratePerSecond = ratePerSecond;
+    }
+
     public String getMpId() {
         return mpId;
     }
@@ -71,4 +86,50 @@ public class MeasurePointData implements Serializable {
         this.count = count;
     }
 
+    /**
+     * @return the median of the elapsed times per execution, or 0 if the collector does not record percentiles
+     */
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public void setP50Micros(long p50Micros) {
+        this.p50Micros = p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public void setP99Micros(long p99Micros) {
+        this.p99Micros = p99Micros;
+    }
+
+    public long getP999Micros() {
+        return p999Micros;
+    }
+
+    public void setP999Micros(long p999Micros) {
+        this.p999Micros = p999Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public void setMaxMicros(long maxMicros) {
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * @return the number of executions per second since the statistics were reset
+     */
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public void setRatePerSecond(double ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+    }
+
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.management.model;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * Histogram of wait times. <code>counts[i]</code> is the number of waits shorter than <code>upperBoundsMsec[i]</code>
+ * and not shorter than <code>upperBoundsMsec[i-1]</code>. The last upper bound is {@link Long#MAX_VALUE}.
+ */
+public class WaitTimeHistogram implements Serializable {
+
+    private static final long serialVersionUID = 4410931537325125740L;
+
+    private long[] upperBoundsMsec;
+    private long[] counts;
+    private long count;
+    private long totalWaitMicros;
+    private long maxWaitMicros;
+
+    public WaitTimeHistogram() {
+    }
+
+    @ConstructorProperties({ "upperBoundsMsec", "counts", "count", "totalWaitMicros", "maxWaitMicros" })
+    public WaitTimeHistogram(long[] upperBoundsMsec, long[] counts, long count, long totalWaitMicros, long maxWaitMicros) {
+        super();
+        this.upperBoundsMsec = upperBoundsMsec;
+        this.counts = counts;
+        this.count = count;
+        this.totalWaitMicros = totalWaitMicros;
+        this.maxWaitMicros = maxWaitMicros;
+    }
+
+    public long[] getUpperBoundsMsec() {
+        return upperBoundsMsec;
+    }
+
+    public void setUpperBoundsMsec(long[] upperBoundsMsec) {
+        this.upperBoundsMsec = upperBoundsMsec;
+    }
+
+    public long[] getCounts() {
+        return counts;
+    }
+
+    public void setCounts(long[] counts) {
+        this.counts = counts;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getTotalWaitMicros() {
+        return totalWaitMicros;
+    }
+
+    public void setTotalWaitMicros(long totalWaitMicros) {
+        this.totalWaitMicros = totalWaitMicros;
+    }
+
+    public long getMaxWaitMicros() {
+        return maxWaitMicros;
+    }
+
+    public void setMaxWaitMicros(long maxWaitMicros) {
+        this.maxWaitMicros = maxWaitMicros;
+    }
+
+}
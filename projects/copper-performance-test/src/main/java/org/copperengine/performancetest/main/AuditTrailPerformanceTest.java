@@ -0,0 +1,139 @@
+/**
+ * Copyright 2002-2017 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.performancetest.main;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.copperengine.core.audit.AuditTrailCallback;
+import org.copperengine.core.audit.AuditTrailEvent;
+import org.copperengine.core.audit.AuditTrailInsertMode;
+import org.copperengine.core.audit.BatchingAuditTrail;
+import org.copperengine.core.batcher.RetryingTxnBatchRunner;
+import org.copperengine.core.batcher.impl.BatcherImpl;
+import org.copperengine.core.persistent.DerbyDbDialect;
+import org.copperengine.core.persistent.H2Dialect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+/**
+ * Measures the number of audit trail events per second, that {@link BatchingAuditTrail} writes to the database with
+ * each {@link AuditTrailInsertMode}.
+ */
+public class AuditTrailPerformanceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditTrailPerformanceTest.class);
+
+    public void run() {
+        // the context is only used for its configuration, no engine is started
+        final PerformanceTestContext context = new PerformanceTestContext();
+        final ConfigurationManager configManager = context.getConfigManager();
+        final int numberOfEvents = configManager.getConfigInt(ConfigParameter.AUDIT_NUMBER_OF_EVENTS);
+        final int messageSize = configManager.getConfigInt(ConfigParameter.AUDIT_MESSAGE_SIZE);
+        final int batchSize = configManager.getConfigInt(ConfigParameter.AUDIT_BATCH_SIZE);
+        final int sequenceBlockSize = configManager.getConfigInt(ConfigParameter.AUDIT_SEQUENCE_BLOCK_SIZE);
+        final int batcherNumbOfThreads = configManager.getConfigInt(ConfigParameter.BATCHER_NUMB_OF_THREADS);
+        configManager.log(logger, ConfigParameterGroup.audit, ConfigParameterGroup.rdbms);
+
+        final ComboPooledDataSource dataSource = DataSourceFactory.createDataSource(context.getProperties());
+        try {
+            checkAndCreateSchema(dataSource);
+            final String message = new ThroughputPerformanceTest().createTestData(messageSize);
+            for (AuditTrailInsertMode insertMode : AuditTrailInsertMode.values()) {
+                // first run to warm up the JIT and the database
+                run(dataSource, insertMode, batchSize, sequenceBlockSize, batcherNumbOfThreads, Math.max(1, numberOfEvents / 10), message);
+                final long eventsPerSecond = run(dataSource, insertMode, batchSize, sequenceBlockSize, batcherNumbOfThreads, numberOfEvents, message);
+                logger.info("Insert mode {}: {} audit trail events per second", insertMode, eventsPerSecond);
+            }
+        } catch (Exception e) {
+            logger.error("performance test failed", e);
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    private long run(DataSource dataSource, AuditTrailInsertMode insertMode, int batchSize, int sequenceBlockSize, int batcherNumbOfThreads, int numberOfEvents, String message) throws Exception {
+        try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement()) {
+            stmt.execute("DELETE FROM COP_AUDIT_TRAIL_EVENT");
+            if (!con.getAutoCommit()) {
+                con.commit();
+            }
+        }
+
+        final BatcherImpl batcher = new BatcherImpl(batcherNumbOfThreads);
+        batcher.setBatchRunner(new RetryingTxnBatchRunner<>(dataSource));
+        batcher.startup();
+        try {
+            final BatchingAuditTrail auditTrail = new BatchingAuditTrail();
+            auditTrail.setDataSource(dataSource);
+            auditTrail.setBatcher(batcher);
+            auditTrail.setInsertMode(insertMode);
+            auditTrail.setPreferredBatchSize(batchSize);
+            auditTrail.setMaximumBatchSize(batchSize);
+            auditTrail.setSequenceBlockSize(sequenceBlockSize);
+            auditTrail.startup();
+
+            final CountDownLatch latch = new CountDownLatch(numberOfEvents);
+            final AtomicInteger errors = new AtomicInteger();
+            final AuditTrailCallback callback = new AuditTrailCallback() {
+                @Override
+                public void done() {
+                    latch.countDown();
+                }
+
+                @Override
+                public void error(Exception e) {
+                    errors.incrementAndGet();
+                    latch.countDown();
+                }
+            };
+            final long startTS = System.currentTimeMillis();
+            for (int i = 0; i < numberOfEvents; i++) {
+                auditTrail.asynchLog(new AuditTrailEvent(1, new Date(), "conversationId", "context", "instanceId", "correlationId" + i, "transactionId", message, "TEXT", null), callback);
+            }
+            if (!latch.await(30, TimeUnit.MINUTES))
+                throw new IllegalStateException("Timeout while waiting for the audit trail");
+            final long et = Math.max(1, System.currentTimeMillis() - startTS);
+            if (errors.get() > 0)
+                throw new IllegalStateException(errors.get() + " audit trail events failed");
+            return numberOfEvents * 1000L / et;
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    private void checkAndCreateSchema(DataSource dataSource) throws Exception {
+        final String name;
+        try (Connection c = dataSource.getConnection()) {
+            name = c.getMetaData().getDatabaseProductName();
+        }
+        logger.info("Test database type is {}", name);
+        if ("Apache Derby".equalsIgnoreCase(name)) {
+            DerbyDbDialect.checkAndCreateSchema(dataSource);
+        }
+        if ("H2".equalsIgnoreCase(name)) {
+            H2Dialect.checkAndCreateSchema(dataSource);
+        }
+    }
+}
@@ -52,7 +52,21 @@ public enum ConfigParameter {
 
     // configuration parameters used only in the latency performance test
     LATENCY_NUMBER_OF_WORKFLOW_INSTANCES("latency.numberOfWfI", "Number of workflow instances to process in the test", 50, ConfigParameterGroup.latency),
-    LATENCY_DATA_SIZE("latency.dataSize", "Size of the data argument passed to the workflow instances", 1000, ConfigParameterGroup.latency);
+    LATENCY_DATA_SIZE("latency.dataSize", "Size of the data argument passed to the workflow instances", 1000, ConfigParameterGroup.latency),
+
+    // configuration parameters used only in the audit trail performance test
+    AUDIT_NUMBER_OF_EVENTS("audit.numberOfEvents", "Number of audit trail events to write per insert mode", 100000, ConfigParameterGroup.audit),
+    AUDIT_MESSAGE_SIZE("audit.messageSize", "Size of the message of the audit trail events", 200, ConfigParameterGroup.audit),
+    AUDIT_BATCH_SIZE("audit.batchSize", "Number of audit trail events written in one database batch", 50, ConfigParameterGroup.audit),
+    AUDIT_SEQUENCE_BLOCK_SIZE("audit.sequenceBlockSize", "Oracle only: number of sequence ids fetched at once, 0 to call the sequence per row", 0, ConfigParameterGroup.audit),
+
+    // configuration parameters used only in the workflow repository startup test
+    REPOSITORY_NUMBER_OF_WORKFLOW_CLASSES("repository.numberOfWorkflowClasses", "Number of generated workflow classes", 1000, ConfigParameterGroup.repository),
+    REPOSITORY_PARALLELISM("repository.parallelism", "Number of threads used to analyse and instrument the workflow classes", Integer.valueOf(Runtime.getRuntime().availableProcessors()), ConfigParameterGroup.repository),
+
+    // configuration parameters used only in the id factory test
+    IDS_NUMBER_OF_ROWS("ids.numberOfRows", "Number of rows to insert per id factory", 200000, ConfigParameterGroup.ids),
+    IDS_BATCH_SIZE("ids.batchSize", "Number of rows inserted in one database batch", 100, ConfigParameterGroup.ids);
 
     private ConfigParameter(String key, String description, Object defaultValue, ConfigParameterGroup grp) {
         this.key = key;
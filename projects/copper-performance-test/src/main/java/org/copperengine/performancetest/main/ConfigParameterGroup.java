@@ -20,7 +20,10 @@ public enum ConfigParameterGroup {
     rdbms("configuration parameters used only for RDBMS, e.g. Oracle, MySQL"),
     cassandra("configuration parameters used only for Apache Cassandra DB"),
     latency("configuration parameters used only in the latency performance test"),
-    throughput("configuration parameters used only in the throughput performance test");
+    throughput("configuration parameters used only in the throughput performance test"),
+    audit("configuration parameters used only in the audit trail performance test"),
+    repository("configuration parameters used only in the workflow repository startup test"),
+    ids("configuration parameters used only in the id factory test");
 
     private final String description;
 
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2002-2017 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.performancetest.main;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.copperengine.core.common.AtomicLongIdFactory;
+import org.copperengine.core.common.IdFactory;
+import org.copperengine.core.common.JdkRandomUUIDFactory;
+import org.copperengine.core.common.TimeOrderedIdFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+/**
+ * Measures the number of rows per second, that can be inserted into a table shaped like COP_WAIT, with ids created by
+ * each {@link IdFactory} implementation, and the disk space used by the indexes afterwards. The disk space is
+ * determined for Apache Derby and for H2 only, where it includes the table itself. H2 1.4 reports it for databases
+ * opened with <code>MV_STORE=FALSE</code> only.
+ */
+public class IdFactoryPerformanceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdFactoryPerformanceTest.class);
+    private static final String TABLE = "COP_ID_TEST";
+
+    public void run() {
+        // the context is only used for its configuration, no engine is started
+        final PerformanceTestContext context = new PerformanceTestContext();
+        final ConfigurationManager configManager = context.getConfigManager();
+        final int numberOfRows = configManager.getConfigInt(ConfigParameter.IDS_NUMBER_OF_ROWS);
+        final int batchSize = configManager.getConfigInt(ConfigParameter.IDS_BATCH_SIZE);
+        configManager.log(logger, ConfigParameterGroup.ids, ConfigParameterGroup.rdbms);
+
+        final ComboPooledDataSource dataSource = DataSourceFactory.createDataSource(context.getProperties());
+        try {
+            final String databaseName;
+            try (Connection c = dataSource.getConnection()) {
+                databaseName = c.getMetaData().getDatabaseProductName();
+            }
+            logger.info("Test database type is {}", databaseName);
+            final IdFactory[] idFactories = { new JdkRandomUUIDFactory(), new AtomicLongIdFactory(), new TimeOrderedIdFactory("perftest") };
+            for (IdFactory idFactory : idFactories) {
+                // first run to warm up the JIT and the database
+                run(dataSource, idFactory, Math.max(1, numberOfRows / 10), batchSize);
+                final long startTS = System.currentTimeMillis();
+                run(dataSource, idFactory, numberOfRows, batchSize);
+                final long et = Math.max(1, System.currentTimeMillis() - startTS);
+                final long diskSpace = diskSpace(dataSource, databaseName);
+                logger.info("{}: {} rows per second, disk space {}", idFactory.getClass().getSimpleName(), numberOfRows * 1000L / et, diskSpace < 0 ? "unknown" : (diskSpace / 1024) + " KB");
+                dropTable(dataSource);
+            }
+        } catch (Exception e) {
+            logger.error("performance test failed", e);
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    private void run(DataSource dataSource, IdFactory idFactory, int numberOfRows, int batchSize) throws SQLException {
+        dropTable(dataSource);
+        try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE " + TABLE + " (CORRELATION_ID VARCHAR(128) NOT NULL, WORKFLOW_INSTANCE_ID VARCHAR(128) NOT NULL, MIN_NUMB_OF_RESP SMALLINT NOT NULL, PRIMARY KEY (CORRELATION_ID))");
+            stmt.execute("CREATE INDEX IDX_COP_ID_TEST_WFI_ID ON " + TABLE + " (WORKFLOW_INSTANCE_ID)");
+            con.setAutoCommit(false);
+            try (PreparedStatement insert = con.prepareStatement("INSERT INTO " + TABLE + " (CORRELATION_ID, WORKFLOW_INSTANCE_ID, MIN_NUMB_OF_RESP) VALUES (?,?,1)")) {
+                for (int i = 1; i <= numberOfRows; i++) {
+                    insert.setString(1, idFactory.createId());
+                    insert.setString(2, idFactory.createId());
+                    insert.addBatch();
+                    if (i % batchSize == 0 || i == numberOfRows) {
+                        insert.executeBatch();
+                        con.commit();
+                    }
+                }
+            }
+        }
+    }
+
+    private void dropTable(DataSource dataSource) throws SQLException {
+        try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement()) {
+            stmt.execute("DROP TABLE " + TABLE);
+            if (!con.getAutoCommit()) {
+                con.commit();
+            }
+        } catch (SQLException e) {
+            // table does not exist
+        }
+    }
+
+    /**
+     * @return the disk space used by the indexes in bytes, or -1, if unknown for the database
+     */
+    private long diskSpace(DataSource dataSource, String databaseName) throws SQLException {
+        final String sql;
+        if ("Apache Derby".equalsIgnoreCase(databaseName)) {
+            sql = "SELECT SUM(NUMALLOCATEDPAGES * PAGESIZE) FROM TABLE (SYSCS_DIAG.SPACE_TABLE('" + TABLE + "')) T WHERE ISINDEX = 1";
+        } else if ("H2".equalsIgnoreCase(databaseName)) {
+            sql = "SELECT DISK_SPACE_USED('" + TABLE + "')";
+        } else {
+            return -1;
+        }
+        try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+}
@@ -56,7 +56,7 @@ public class LatencyPerformanceTest {
             final long et = System.currentTimeMillis() - startTS;
             final MeasurePointData mp = context.getStatisticsCollector().query("savepoint.latency");
             final double avgLatency = (mp.getElapsedTimeMicros() / mp.getCount()) / 1000.0;
-            logger.info("Finished performance test with {} workflow instances in {} msec, avg latency is {} msec", numbOfWfI, et, avgLatency);
+            logger.info("Finished performance test with {} workflow instances in {} msec, avg latency is {} msec, p99 latency is {} msec, max latency is {} msec", numbOfWfI, et, avgLatency, mp.getP99Micros() / 1000.0, mp.getMaxMicros() / 1000.0);
 
             Thread.sleep(5000); // drain the batcher, etc.
             logger.info("statistics:\n{}", context.getStatisticsCollector().print());
@@ -32,6 +32,15 @@ public class Main {
             else if ("throughput".equalsIgnoreCase(args[0])) {
                 new ThroughputPerformanceTest().run();
             }
+            else if ("audit".equalsIgnoreCase(args[0])) {
+                new AuditTrailPerformanceTest().run();
+            }
+            else if ("repository".equalsIgnoreCase(args[0])) {
+                new WorkflowRepositoryPerformanceTest().run();
+            }
+            else if ("ids".equalsIgnoreCase(args[0])) {
+                new IdFactoryPerformanceTest().run();
+            }
             else {
                 usage();
             }
@@ -43,9 +52,12 @@ public class Main {
     }
 
     private static void usage() {
-        System.out.println("Usage: java <parameters> -jar copper-performance-test.jar (latency|throughput)");
+        System.out.println("Usage: java <parameters> -jar copper-performance-test.jar (latency|throughput|audit|repository|ids)");
         System.out.println("  latency    - measures the latency for executing resubmit/savepoints in an otherwise idle system");
         System.out.println("  throughput - executes a large amount of workflow instances, each with 10 wait/notifies, to measure the avg. number of wait/notify cycles per second");
+        System.out.println("  audit      - writes a large amount of audit trail events with each insert mode, to measure the avg. number of events written per second");
+        System.out.println("  repository - starts a workflow repository with a large amount of generated workflow classes, to measure the startup time with sequential and parallel instrumentation");
+        System.out.println("  ids        - inserts a large amount of rows with random UUIDs and with time ordered ids, to measure the insert throughput and the index size");
         System.out.println();
         System.out.println("  with <parameters> as follows");
         for (ConfigParameterGroup grp : ConfigParameterGroup.values()) {
@@ -42,7 +42,7 @@ import org.copperengine.core.common.DefaultProcessorPoolManager;
 import org.copperengine.core.common.JdkRandomUUIDFactory;
 import org.copperengine.core.common.ProcessorPoolManager;
 import org.copperengine.core.common.WorkflowRepository;
-import org.copperengine.core.monitoring.LoggingStatisticCollector;
+import org.copperengine.core.monitoring.HistogramStatisticsCollector;
 import org.copperengine.core.monitoring.RuntimeStatisticsCollector;
 import org.copperengine.core.persistent.DatabaseDialect;
 import org.copperengine.core.persistent.DerbyDbDialect;
@@ -88,7 +88,7 @@ public class PerformanceTestContext implements AutoCloseable {
     protected final Supplier<Backchannel> backchannel;
     protected final Supplier<PersistentProcessingEngine> engine;
     protected final Supplier<WorkflowRepository> repo;
-    protected final Supplier<LoggingStatisticCollector> statisticsCollector;
+    protected final Supplier<HistogramStatisticsCollector> statisticsCollector;
     protected final Supplier<EngineIdProvider> engineIdProvider;
     protected final Supplier<Serializer> serializer;
     protected final Supplier<ProcessorPoolManager<PersistentProcessorPool>> processorPoolManager;
@@ -129,9 +129,9 @@ public class PerformanceTestContext implements AutoCloseable {
         });
         suppliers.put("engineIdProvider", engineIdProvider);
 
-        statisticsCollector = Suppliers.memoize(new Supplier<LoggingStatisticCollector>() {
+        statisticsCollector = Suppliers.memoize(new Supplier<HistogramStatisticsCollector>() {
             @Override
-            public LoggingStatisticCollector get() {
+            public HistogramStatisticsCollector get() {
                 return createStatisticsCollector();
             }
         });
@@ -208,8 +208,8 @@ public class PerformanceTestContext implements AutoCloseable {
         return new EngineIdProviderBean("perftest");
     }
 
-    protected LoggingStatisticCollector createStatisticsCollector() {
-        LoggingStatisticCollector statCollector = new LoggingStatisticCollector();
+    protected HistogramStatisticsCollector createStatisticsCollector() {
+        HistogramStatisticsCollector statCollector = new HistogramStatisticsCollector();
         statCollector.setLoggingIntervalSec(10);
         statCollector.setResetAfterLogging(false);
         return statCollector;
@@ -470,7 +470,7 @@ public class PerformanceTestContext implements AutoCloseable {
         });
     }
 
-    public LoggingStatisticCollector getStatisticsCollector() {
+    public HistogramStatisticsCollector getStatisticsCollector() {
         return statisticsCollector.get();
     }
 
@@ -490,6 +490,10 @@ public class PerformanceTestContext implements AutoCloseable {
         return configManager.get();
     }
 
+    public Properties getProperties() {
+        return props.get();
+    }
+
     public boolean isCassandraTest() {
         final String cassandraHosts = props.get().getProperty(ConfigParameter.CASSANDRA_HOSTS.getKey());
         return cassandraHosts != null && !cassandraHosts.isEmpty();
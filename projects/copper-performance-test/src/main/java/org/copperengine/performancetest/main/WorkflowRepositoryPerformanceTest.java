@@ -0,0 +1,188 @@
+/**
+ * Copyright 2002-2017 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.performancetest.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.copperengine.core.instrument.ClassInfo;
+import org.copperengine.core.util.FileUtil;
+import org.copperengine.core.wfrepo.Clazz;
+import org.copperengine.core.wfrepo.FileBasedWorkflowRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the startup time of a {@link FileBasedWorkflowRepository} with a synthetic set of workflow classes, once
+ * analysing and instrumenting the classes in a single thread and once in parallel. Additionally measures the analysis
+ * and instrumentation alone and checks, that both produce the same bytecode.
+ */
+public class WorkflowRepositoryPerformanceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowRepositoryPerformanceTest.class);
+    private static final String PACKAGE = "org.copperengine.performancetest.generated";
+
+    /**
+     * Exposes the analysis and instrumentation steps of the repository.
+     */
+    private static final class InstrumentingRepository extends FileBasedWorkflowRepository {
+
+        void analyseAndInstrument(File classesDir, File adaptedDir) throws IOException {
+            final List<URL> classfiles = new ArrayList<URL>();
+            for (File f : FileUtil.findFiles(classesDir, ".class")) {
+                classfiles.add(f.toURI().toURL());
+            }
+            final Map<String, Clazz> clazzMap = analyseClassfiles(classfiles);
+            aggregateInterruptableMethods(clazzMap);
+            instrumentWorkflows(adaptedDir, clazzMap, new HashMap<String, ClassInfo>(), new URLClassLoader(new URL[] { classesDir.toURI().toURL() }, getClass().getClassLoader()));
+        }
+    }
+
+    public void run() {
+        // neither an engine nor a database is needed, so the configuration is taken from the system properties only
+        final ConfigurationManager configManager = new ConfigurationManager(System.getProperties());
+        final int numberOfWorkflowClasses = configManager.getConfigInt(ConfigParameter.REPOSITORY_NUMBER_OF_WORKFLOW_CLASSES);
+        final int parallelism = configManager.getConfigInt(ConfigParameter.REPOSITORY_PARALLELISM);
+        configManager.log(logger, ConfigParameterGroup.repository);
+
+        File baseDir = null;
+        try {
+            baseDir = Files.createTempDirectory("copper-wfrepo-perftest").toFile();
+            final File sourceDir = new File(baseDir, "src");
+            generateWorkflows(sourceDir, numberOfWorkflowClasses);
+
+            // first start to warm up the JIT and the compiler
+            startRepository(sourceDir, new File(baseDir, "warmup"), parallelism);
+            final long sequentialStart = startRepository(sourceDir, new File(baseDir, "sequential"), 1);
+            final long parallelStart = startRepository(sourceDir, new File(baseDir, "parallel"), parallelism);
+            logger.info("Repository startup with {} workflow classes: {} msec sequential, {} msec with parallelism {}", numberOfWorkflowClasses, sequentialStart, parallelStart, parallelism);
+
+            final File classesDir = new File(new File(baseDir, "sequential").listFiles()[0], "classes");
+            long sequential = Long.MAX_VALUE;
+            long parallel = Long.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                sequential = Math.min(sequential, analyseAndInstrument(classesDir, new File(baseDir, "adapted1"), 1));
+                parallel = Math.min(parallel, analyseAndInstrument(classesDir, new File(baseDir, "adapted" + parallelism), parallelism));
+            }
+            logger.info("Analysis and instrumentation of {} workflow classes: {} msec sequential, {} msec with parallelism {}", numberOfWorkflowClasses, sequential, parallel, parallelism);
+
+            final boolean identical = identical(new File(baseDir, "adapted1"), new File(baseDir, "adapted" + parallelism));
+            logger.info("Sequential and parallel instrumentation produce {} bytecode", identical ? "identical" : "DIFFERENT");
+        } catch (Exception e) {
+            logger.error("performance test failed", e);
+        } finally {
+            if (baseDir != null) {
+                FileUtil.deleteDirectory(baseDir);
+            }
+        }
+    }
+
+    private long startRepository(File sourceDir, File targetDir, int parallelism) {
+        final FileBasedWorkflowRepository repo = new FileBasedWorkflowRepository();
+        repo.setSourceDirs(sourceDir.getAbsolutePath());
+        repo.setTargetDir(targetDir.getAbsolutePath());
+        repo.setInstrumentationParallelism(parallelism);
+        final long startTS = System.currentTimeMillis();
+        repo.start();
+        final long et = System.currentTimeMillis() - startTS;
+        repo.shutdown();
+        return et;
+    }
+
+    private long analyseAndInstrument(File classesDir, File adaptedDir, int parallelism) throws IOException {
+        FileUtil.deleteDirectory(adaptedDir);
+        final InstrumentingRepository repo = new InstrumentingRepository();
+        repo.setInstrumentationParallelism(parallelism);
+        final long startTS = System.currentTimeMillis();
+        repo.analyseAndInstrument(classesDir, adaptedDir);
+        return System.currentTimeMillis() - startTS;
+    }
+
+    private static boolean identical(File dir1, File dir2) throws IOException {
+        final File[] files = FileUtil.findFiles(dir1, ".class");
+        if (files.length != FileUtil.findFiles(dir2, ".class").length)
+            return false;
+        for (File f1 : files) {
+            final File f2 = new File(dir2, dir1.toURI().relativize(f1.toURI()).getPath());
+            if (!f2.isFile() || !Arrays.equals(Files.readAllBytes(f1.toPath()), Files.readAllBytes(f2.toPath())))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Generates workflow classes, that each wait in a loop and call an interruptable method of a common abstract
+     * superclass, so that both the analysis of the class hierarchy and the instrumentation have something to do.
+     */
+    private static void generateWorkflows(File sourceDir, int numberOfWorkflowClasses) throws IOException {
+        final File packageDir = new File(sourceDir, PACKAGE.replace('.', '/'));
+        packageDir.mkdirs();
+        write(new File(packageDir, "AbstractGeneratedWorkflow.java"), "package " + PACKAGE + ";\n\n" +
+                "import org.copperengine.core.Interrupt;\n" +
+                "import org.copperengine.core.persistent.PersistentWorkflow;\n\n" +
+                "public abstract class AbstractGeneratedWorkflow extends PersistentWorkflow<String> {\n" +
+                "    private static final long serialVersionUID = 1L;\n" +
+                "    protected int counter;\n\n" +
+                "    protected void checkpoint(int step) throws Interrupt {\n" +
+                "        counter += step;\n" +
+                "        savepoint();\n" +
+                "    }\n" +
+                "}\n");
+        for (int i = 0; i < numberOfWorkflowClasses; i++) {
+            write(new File(packageDir, "GeneratedWorkflow" + i + ".java"), "package " + PACKAGE + ";\n\n" +
+                    "import org.copperengine.core.Interrupt;\n" +
+                    "import org.copperengine.core.Response;\n" +
+                    "import org.copperengine.core.WaitMode;\n\n" +
+                    "public class GeneratedWorkflow" + i + " extends AbstractGeneratedWorkflow {\n" +
+                    "    private static final long serialVersionUID = 1L;\n\n" +
+                    "    @Override\n" +
+                    "    public void main() throws Interrupt {\n" +
+                    "        for (int i = 0; i < " + (i % 5 + 2) + "; i++) {\n" +
+                    "            try {\n" +
+                    "                step(i);\n" +
+                    "            } catch (RuntimeException e) {\n" +
+                    "                counter = -1;\n" +
+                    "            }\n" +
+                    "            checkpoint(i);\n" +
+                    "        }\n" +
+                    "    }\n\n" +
+                    "    private void step(int i) throws Interrupt {\n" +
+                    "        final String cid = getEngine().createUUID();\n" +
+                    "        final long startTS = System.currentTimeMillis();\n" +
+                    "        wait(WaitMode.ALL, " + (1000 + i) + ", cid);\n" +
+                    "        final Response<String> response = getAndRemoveResponse(cid);\n" +
+                    "        if (response != null && response.getResponse() != null) {\n" +
+                    "            counter += response.getResponse().length() + (int) (System.currentTimeMillis() - startTS);\n" +
+                    "        }\n" +
+                    "        resubmit();\n" +
+                    "    }\n" +
+                    "}\n");
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -21,8 +21,10 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -37,6 +39,7 @@ import javax.sql.DataSource;
 
 import org.copperengine.core.audit.AbstractAuditTrail;
 import org.copperengine.core.audit.AuditTrailEvent;
+import org.copperengine.core.audit.AuditTrailInsertMode;
 import org.copperengine.core.audit.BatchInsertIntoAutoTrail.Command;
 import org.copperengine.core.audit.BatchInsertIntoAutoTrail.Executor;
 import org.copperengine.core.audit.BatchingAuditTrail;
@@ -59,4 +62,64 @@ public class BatchingAuditTrailTest extends AuditTrailTestBase{
         return new BatchingAuditTrail();
     }
 
+    @Test
+    public void testMultiRowInsert() throws Exception {
+        final AbstractAuditTrail auditTrail = getAuditTrail();
+        auditTrail.setInsertMode(AuditTrailInsertMode.MULTI_ROW);
+        auditTrail.startup();
+
+        try (Connection con = ds.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("DELETE FROM COP_AUDIT_TRAIL_EVENT");
+            }
+            final Collection<BatchCommand<Executor, Command>> cmds = new ArrayList<>();
+            for (int i = 0; i < 37; i++) {
+                AuditTrailEvent e = new AuditTrailEvent(1, new Date(), "conversationId", "context", "instanceId", "correlationId" + i, "transactionId", "message", "messageType", null);
+                cmds.add(auditTrail.createBatchCommand(e, true, NullCallback.<Command>get()));
+            }
+            cmds.iterator().next().executor().doExec(cmds, con);
+            con.commit();
+
+            try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COUNT(DISTINCT CORRELATION_ID) FROM COP_AUDIT_TRAIL_EVENT")) {
+                assertTrue(rs.next());
+                assertEquals(37, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testSpillDirectory() throws Exception {
+        final File spillDirectory = Files.createTempDirectory("audit").toFile();
+        final BatchingAuditTrail auditTrail = (BatchingAuditTrail) getAuditTrail();
+        auditTrail.setSpillDirectory(spillDirectory);
+        auditTrail.setBufferCapacity(10);
+
+        try (Connection con = ds.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("DELETE FROM COP_AUDIT_TRAIL_EVENT");
+            }
+            con.commit();
+        }
+
+        auditTrail.startup();
+        try {
+            for (int i = 0; i < 100; i++) {
+                auditTrail.asynchLog(new AuditTrailEvent(1, new Date(), "conversationId", "context", "instanceId", "correlationId" + i, "transactionId", "message", "messageType", null));
+            }
+            int count = 0;
+            for (int i = 0; i < 100 && count < 100; i++) {
+                Thread.sleep(100);
+                try (Connection con = ds.getConnection(); Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM COP_AUDIT_TRAIL_EVENT")) {
+                    rs.next();
+                    count = rs.getInt(1);
+                }
+            }
+            assertEquals(100, count);
+            assertEquals(0, auditTrail.getBufferedEventCount());
+            assertEquals(0, auditTrail.getSpilledEventCount());
+        } finally {
+            auditTrail.shutdown();
+            spillDirectory.delete();
+        }
+    }
 }
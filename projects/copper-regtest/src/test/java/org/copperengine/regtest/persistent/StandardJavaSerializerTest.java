@@ -15,12 +15,26 @@
  */
 package org.copperengine.regtest.persistent;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import org.copperengine.core.CopperRuntimeException;
+import org.copperengine.core.Response;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.WorkflowFactory;
 import org.copperengine.core.common.JdkRandomUUIDFactory;
+import org.copperengine.core.persistent.PayloadCodec;
 import org.copperengine.core.persistent.SerializedWorkflow;
 import org.copperengine.core.persistent.Serializer;
 import org.copperengine.core.persistent.StandardJavaSerializer;
@@ -29,6 +43,29 @@ import org.junit.Test;
 
 public class StandardJavaSerializerTest {
 
+    private static final class BigDecimalCodec implements PayloadCodec {
+
+        @Override
+        public int getId() {
+            return 42;
+        }
+
+        @Override
+        public boolean canEncode(Object payload) {
+            return payload instanceof BigDecimal;
+        }
+
+        @Override
+        public void encode(Object payload, DataOutput out) throws IOException {
+            out.writeUTF(payload.toString());
+        }
+
+        @Override
+        public Object decode(DataInput in) throws IOException {
+            return new BigDecimal(in.readUTF());
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testX() throws Exception {
@@ -57,6 +94,122 @@ public class StandardJavaSerializerTest {
         Workflow<String> wf2 = (Workflow<String>) serializer.deserializeWorkflow(sw, repo);
         assertNull(wf2.getId());
         assertEquals(wf.getData(), wf2.getData());
+
+        assertSame(repo.resolveClass(wf.getClass().getName()), repo.resolveClass(wf.getClass().getName()));
+        assertSame(wf.getClass(), serializer.deserializeWorkflow(serializer.serializeWorkflow(wf), repo).getClass());
+        repo.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testLazyDecoding() throws Exception {
+        FileBasedWorkflowRepository repo = new FileBasedWorkflowRepository();
+        repo.addSourceDir("src/workflow/java");
+        repo.setTargetDir("build/compiled_workflow");
+        repo.start();
+        try {
+            Workflow<String> wf = repo.<String> createWorkflowFactory("org.copperengine.regtest.test.PersistentSpock2GTestWF").newInstance();
+            wf.setId(new JdkRandomUUIDFactory().createId());
+            wf.setData("data");
+
+            StandardJavaSerializer serializer = new StandardJavaSerializer();
+            serializer.setLazyDecoding(true);
+            SerializedWorkflow sw = serializer.serializeWorkflow(wf);
+
+            // data, that was not accessed, is written back unchanged
+            Workflow<String> wf2 = (Workflow<String>) serializer.deserializeWorkflow(sw, repo);
+            assertSame(sw.getData(), serializer.serializeWorkflow(wf2).getData());
+            assertEquals("data", wf2.getData());
+            assertEquals("data", serializer.deserializeWorkflow(serializer.serializeWorkflow(wf2), repo).getData());
+
+            // replaced data is serialized again
+            Workflow<String> wf3 = (Workflow<String>) serializer.deserializeWorkflow(sw, repo);
+            wf3.setData("other");
+            assertEquals("other", serializer.deserializeWorkflow(serializer.serializeWorkflow(wf3), repo).getData());
+
+            // undecodable data fails on access only
+            SerializedWorkflow corrupt = new SerializedWorkflow();
+            corrupt.setObjectState(sw.getObjectState());
+            corrupt.setData("Ucorrupt");
+            Workflow<?> wf4 = serializer.deserializeWorkflow(corrupt, repo);
+            try {
+                wf4.getData();
+                fail("CopperRuntimeException expected");
+            } catch (CopperRuntimeException e) {
+                // expected
+            }
+        } finally {
+            repo.shutdown();
+        }
+    }
+
+    @Test
+    public void testResponses() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i);
+        }
+        for (boolean compress : new boolean[] { true, false }) {
+            StandardJavaSerializer serializer = new StandardJavaSerializer();
+            serializer.setCompress(compress);
+            for (String payload : new String[] { "short", sb.toString() }) {
+                Response<String> response = new Response<String>("cid", payload, null);
+                String data = serializer.serializeResponse(response);
+                assertEquals(compress ? 'C' : 'U', data.charAt(0));
+                for (int i = 0; i < 3; i++) {
+                    Response<?> response2 = serializer.deserializeResponse(data);
+                    assertEquals(response.getCorrelationId(), response2.getCorrelationId());
+                    assertEquals(payload, response2.getResponse());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryResponses() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i);
+        }
+        final String large = sb.toString();
+        final StandardJavaSerializer serializer = new StandardJavaSerializer();
+        serializer.setBinaryResponses(true);
+        serializer.setPayloadCodecs(Collections.<PayloadCodec> singletonList(new BigDecimalCodec()));
+        final Object[] payloads = { null, "", "\u00e4\u00f6\u00fc", large, 4711, 4711L, Boolean.TRUE, new BigDecimal("47.11"), new java.util.Date(4711) };
+        for (Object payload : payloads) {
+            Response<Object> response = new Response<Object>("cid", payload, null, false, "meta", 1000L, "rid");
+            response.setSequenceId(42L);
+            String data = serializer.serializeResponse(response);
+            assertEquals(payload == large ? 'Z' : 'R', data.charAt(0));
+            Response<?> response2 = serializer.deserializeResponse(data);
+            assertEquals(payload, response2.getResponse());
+            assertEquals("cid", response2.getCorrelationId());
+            assertEquals("rid", response2.getResponseId());
+            assertEquals("meta", response2.getMetaData());
+            assertEquals(Long.valueOf(1000L), response2.getInternalProcessingTimeout());
+            assertEquals(Long.valueOf(42L), response2.getSequenceId());
+            assertFalse(response2.isTimeout());
+            assertTrue(response2.isEarlyResponseHandling());
+            assertNull(response2.getException());
+        }
+
+        Response<byte[]> bytes = new Response<byte[]>("cid", new byte[] { 1, 2, 3 }, new IllegalStateException("test"));
+        bytes.setEarlyResponseHandling(false);
+        Response<?> bytes2 = serializer.deserializeResponse(serializer.serializeResponse(bytes));
+        assertArrayEquals(bytes.getResponse(), (byte[]) bytes2.getResponse());
+        assertEquals("test", bytes2.getException().getMessage());
+        assertFalse(bytes2.isEarlyResponseHandling());
+        assertNull(bytes2.getResponseId());
+        assertNull(bytes2.getSequenceId());
+
+        Response<?> timeout = serializer.deserializeResponse(serializer.serializeResponse(new Response<String>("cid")));
+        assertTrue(timeout.isTimeout());
+        assertNull(timeout.getResponse());
+        assertNull(timeout.getInternalProcessingTimeout());
+
+        // responses serialized by java serialization are still readable
+        Response<?> java = serializer.deserializeResponse(new StandardJavaSerializer().serializeResponse(new Response<String>("cid", "java", null)));
+        assertEquals("java", java.getResponse());
     }
 
 }
@@ -26,6 +26,11 @@ public class DerbyDbPersistentWorkflowTest extends SpringlessBasePersistentWorkf
         super.testAsynchResponse(DS_CONTEXT);
     }
 
+    @Test
+    public void testDequeueCoordinator() throws Exception {
+        super.testDequeueCoordinator(DS_CONTEXT);
+    }
+
     @Test
     public void testAsynchResponseLargeData() throws Exception {
         super.testAsynchResponseLargeData(DS_CONTEXT, 10000);
@@ -46,6 +51,31 @@ public class DerbyDbPersistentWorkflowTest extends SpringlessBasePersistentWorkf
         super.testTimeouts(DS_CONTEXT);
     }
 
+    @Test
+    public void testAdmissionControl() throws Exception {
+        super.testAdmissionControl(DS_CONTEXT);
+    }
+
+    @Test
+    public void testLazyDecoding() throws Exception {
+        super.testLazyDecoding(DS_CONTEXT);
+    }
+
+    @Test
+    public void testWorkflowTimelines() throws Exception {
+        super.testWorkflowTimelines(DS_CONTEXT);
+    }
+
+    @Test
+    public void testAsyncRun() throws Exception {
+        super.testAsyncRun(DS_CONTEXT);
+    }
+
+    @Test
+    public void testDedicatedTimeoutProcessing() throws Exception {
+        super.testDedicatedTimeoutProcessing(DS_CONTEXT);
+    }
+
     @Test
     public void testErrorHandlingInCoreEngine() throws Exception {
         super.testErrorHandlingInCoreEngine(DS_CONTEXT);
@@ -71,6 +101,11 @@ public class DerbyDbPersistentWorkflowTest extends SpringlessBasePersistentWorkf
         super.testAuditTrailUncompressed(DS_CONTEXT);
     }
 
+    @Test
+    public void testAuditTrailStreamingCompressed() throws Exception {
+        super.testAuditTrailStreamingCompressed(DS_CONTEXT);
+    }
+
     @Test
     public void testErrorHandlingWithWaitHook() throws Exception {
         super.testErrorHandlingWithWaitHook(DS_CONTEXT);
@@ -156,6 +191,11 @@ public class DerbyDbPersistentWorkflowTest extends SpringlessBasePersistentWorkf
         super.testJmxQueryWithOffsetWorkflowInstances(DS_CONTEXT);
     }
 
+    @Test
+    public void testStreamWorkflowInstances() throws Exception {
+        super.testStreamWorkflowInstances(DS_CONTEXT);
+    }
+
     @Test
     public void testJmxCountWorkflowInstances() throws Exception {
         super.testJmxCountWorkflowInstances(DS_CONTEXT);
@@ -40,6 +40,11 @@ public class H2PersistentWorkflowTest extends SpringlessBasePersistentWorkflowTe
         super.testAsynchResponse(DS_CONTEXT);
     }
 
+    @Test
+    public void testDequeueCoordinator() throws Exception {
+        super.testDequeueCoordinator(DS_CONTEXT);
+    }
+
     @Test
     public void testAsynchResponseLargeData() throws Exception {
         super.testAsynchResponseLargeData(DS_CONTEXT, 10000);
@@ -60,6 +65,31 @@ public class H2PersistentWorkflowTest extends SpringlessBasePersistentWorkflowTe
         super.testTimeouts(DS_CONTEXT);
     }
 
+    @Test
+    public void testAdmissionControl() throws Exception {
+        super.testAdmissionControl(DS_CONTEXT);
+    }
+
+    @Test
+    public void testLazyDecoding() throws Exception {
+        super.testLazyDecoding(DS_CONTEXT);
+    }
+
+    @Test
+    public void testWorkflowTimelines() throws Exception {
+        super.testWorkflowTimelines(DS_CONTEXT);
+    }
+
+    @Test
+    public void testAsyncRun() throws Exception {
+        super.testAsyncRun(DS_CONTEXT);
+    }
+
+    @Test
+    public void testDedicatedTimeoutProcessing() throws Exception {
+        super.testDedicatedTimeoutProcessing(DS_CONTEXT);
+    }
+
     @Test
     public void testErrorHandlingInCoreEngine() throws Exception {
         super.testErrorHandlingInCoreEngine(DS_CONTEXT);
@@ -85,6 +115,11 @@ public class H2PersistentWorkflowTest extends SpringlessBasePersistentWorkflowTe
         super.testAuditTrailUncompressed(DS_CONTEXT);
     }
 
+    @Test
+    public void testAuditTrailStreamingCompressed() throws Exception {
+        super.testAuditTrailStreamingCompressed(DS_CONTEXT);
+    }
+
     @Test
     public void testErrorHandlingWithWaitHook() throws Exception {
         super.testErrorHandlingWithWaitHook(DS_CONTEXT);
@@ -165,6 +200,11 @@ public class H2PersistentWorkflowTest extends SpringlessBasePersistentWorkflowTe
         super.testJmxQueryWithOffsetWorkflowInstancesERROR(DS_CONTEXT);
     }
 
+    @Test
+    public void testStreamWorkflowInstances() throws Exception {
+        super.testStreamWorkflowInstances(DS_CONTEXT);
+    }
+
     @Test
     public void testJmxCountWorkflowInstances() throws Exception {
         super.testJmxCountWorkflowInstances(DS_CONTEXT);
@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collections;
+import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -26,11 +27,15 @@ import org.copperengine.core.DependencyInjector;
 import org.copperengine.core.ProcessingEngine;
 import org.copperengine.core.audit.BatchingAuditTrail;
 import org.copperengine.core.batcher.impl.BatcherImpl;
+import org.copperengine.core.common.ProcessorPoolManager;
 import org.copperengine.core.common.WorkflowRepository;
 import org.copperengine.core.db.utility.RetryingTransaction;
 import org.copperengine.core.persistent.AbstractSqlDialect;
+import org.copperengine.core.persistent.AdmissionController;
 import org.copperengine.core.persistent.DatabaseDialect;
+import org.copperengine.core.persistent.DequeueCoordinator;
 import org.copperengine.core.persistent.OracleDialect;
+import org.copperengine.core.persistent.PersistentProcessorPool;
 import org.copperengine.core.persistent.PersistentScottyEngine;
 import org.copperengine.core.persistent.lock.PersistentLockManager;
 import org.copperengine.core.persistent.lock.PersistentLockManagerDialectPostgres;
@@ -237,6 +242,33 @@ public class PersistentEngineTestContext extends TestContext {
         return new DataHolder();
     }
 
+    /**
+     * Returns the dequeue coordinator of the engine, or null to let each processor pool dequeue on its own.
+     */
+    protected DequeueCoordinator createDequeueCoordinator() {
+        return null;
+    }
+
+    /**
+     * Returns the admission controller of the engine, or null to accept all requests.
+     */
+    protected AdmissionController createAdmissionController() {
+        return null;
+    }
+
+    /**
+     * Allows to adjust the configuration of the engine's database dialect.
+     */
+    protected void configureDatabaseDialect(DatabaseDialect dialect) {
+    }
+
+    /**
+     * Returns the processor pools of the engine besides the default pool.
+     */
+    protected List<PersistentProcessorPool> createAdditionalProcessorPools(TransactionController transactionController) {
+        return Collections.emptyList();
+    }
+
     protected RdbmsEngineFactory<DependencyInjector> createRdbmsEngineFactory(final String engineId, final boolean multiEngineMode) {
         RdbmsEngineFactory<DependencyInjector> x = new RdbmsEngineFactory<DependencyInjector>(Collections.<String>emptyList()) {
 
@@ -273,6 +305,7 @@ public class PersistentEngineTestContext extends TestContext {
                         throw new RuntimeException("Unexpected DatabaseDialect: " + x.getClass().getName());
                     }
                 }
+                configureDatabaseDialect(x);
                 return x;
             }
 
@@ -284,6 +317,25 @@ public class PersistentEngineTestContext extends TestContext {
                 return txnController;
             }
 
+            @Override
+            protected ProcessorPoolManager<PersistentProcessorPool> createProcessorPoolManager() {
+                final ProcessorPoolManager<PersistentProcessorPool> processorPoolManager = super.createProcessorPoolManager();
+                for (PersistentProcessorPool pool : createAdditionalProcessorPools(transactionController.get())) {
+                    processorPoolManager.addProcessorPool(pool);
+                }
+                return processorPoolManager;
+            }
+
+            @Override
+            protected DequeueCoordinator createDequeueCoordinator() {
+                return PersistentEngineTestContext.this.createDequeueCoordinator();
+            }
+
+            @Override
+            protected AdmissionController createAdmissionController() {
+                return PersistentEngineTestContext.this.createAdmissionController();
+            }
+
         };
         x.setEngineId(engineId);
         return x;
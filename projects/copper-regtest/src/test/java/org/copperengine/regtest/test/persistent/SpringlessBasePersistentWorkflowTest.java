@@ -24,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeFalse;
 
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -34,12 +35,15 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.CopperException;
+import org.copperengine.core.DependencyInjector;
 import org.copperengine.core.DuplicateIdException;
 import org.copperengine.core.EngineState;
 import org.copperengine.core.PersistentProcessingEngine;
@@ -53,8 +57,23 @@ import org.copperengine.core.audit.AuditTrailEvent;
 import org.copperengine.core.audit.BatchingAuditTrail;
 import org.copperengine.core.audit.CompressedBase64PostProcessor;
 import org.copperengine.core.audit.DummyPostProcessor;
+import org.copperengine.core.audit.ScottyAuditTrailQueryEngine;
+import org.copperengine.core.audit.StreamingCompressedPostProcessor;
 import org.copperengine.core.db.utility.RetryingTransaction;
+import org.copperengine.core.monitoring.WorkflowTimelineRecorder;
+import org.copperengine.core.persistent.AbstractSqlDialect;
+import org.copperengine.core.persistent.AdmissionController;
+import org.copperengine.core.persistent.DatabaseDialect;
+import org.copperengine.core.persistent.DequeueCoordinator;
+import org.copperengine.core.persistent.PersistentPriorityProcessorPool;
+import org.copperengine.core.persistent.PersistentProcessorPool;
 import org.copperengine.core.persistent.PersistentScottyEngine;
+import org.copperengine.core.persistent.StandardJavaSerializer;
+import org.copperengine.core.persistent.WorkflowInstanceHeader;
+import org.copperengine.core.persistent.WorkflowInstanceProjection;
+import org.copperengine.core.persistent.txn.TransactionController;
+import org.copperengine.ext.persistent.RdbmsEngineFactory;
+import org.copperengine.management.ProcessorPoolMXBean;
 import org.copperengine.management.model.HalfOpenTimeInterval;
 import org.copperengine.management.model.WorkflowInfo;
 import org.copperengine.management.model.WorkflowInstanceFilter;
@@ -227,6 +246,169 @@ public class SpringlessBasePersistentWorkflowTest {
 
     }
 
+    public void testAsyncRun(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testAsyncRun");
+        final int NUMB = 20;
+        final String DATA = createTestData(50);
+        final PersistentEngineTestContext context = createContext(dsType);
+        final PersistentScottyEngine engine = context.getEngine();
+        final BackChannelQueue backChannelQueue = context.getBackChannelQueue();
+        try {
+            assertEquals(EngineState.STARTED, engine.getEngineState());
+
+            final List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+            final List<WorkflowInstanceDescr<?>> batch = new ArrayList<WorkflowInstanceDescr<?>>();
+            for (int i = 0; i < NUMB; i++) {
+                futures.add(engine.runAsync(new WorkflowInstanceDescr<String>(PersistentUnitTestWorkflow_NAME, DATA, "ASYNC#" + i, null, null)));
+                batch.add(new WorkflowInstanceDescr<String>(PersistentUnitTestWorkflow_NAME, DATA));
+            }
+            engine.runBatchAsync(batch).get(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+            for (int i = 0; i < NUMB; i++) {
+                assertEquals("ASYNC#" + i, futures.get(i).get(DEQUEUE_TIMEOUT, TimeUnit.SECONDS));
+            }
+            assertEquals(0, engine.getNumberOfAsyncRequestsInFlight());
+
+            try {
+                engine.runAsync(new WorkflowInstanceDescr<String>(PersistentUnitTestWorkflow_NAME, DATA, "ASYNC#0", null, null)).get(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                org.junit.Assert.fail("expected an DuplicateIdException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof DuplicateIdException);
+            }
+
+            for (int i = 0; i < 2 * NUMB; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertNotNull(x.getResult());
+                assertNull(x.getException());
+            }
+            checkNumbOfResponsesInDB(context, 0);
+
+        } finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+        assertEquals(0, engine.getNumberOfWorkflowInstances());
+    }
+
+    public void testAdmissionControl(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testAdmissionControl");
+        final int NUMB = 20;
+        final String DATA = createTestData(50);
+        final PersistentEngineTestContext context = new PersistentEngineTestContext(dsType, true) {
+            @Override
+            protected AdmissionController createAdmissionController() {
+                final AdmissionController admissionController = new AdmissionController();
+                admissionController.setPolicy(AdmissionController.Policy.BLOCK);
+                admissionController.setMaxBatcherQueueSize(10000);
+                admissionController.setMaxCommitLatencyMSec(10000);
+                admissionController.setMaxProcessorPoolQueueSize(10000);
+                return admissionController;
+            }
+        };
+        context.startup();
+        final PersistentScottyEngine engine = context.getEngine();
+        final BackChannelQueue backChannelQueue = context.getBackChannelQueue();
+        try {
+            assertEquals(EngineState.STARTED, engine.getEngineState());
+            final AdmissionController admissionController = engine.getAdmissionController();
+            assertNotNull(admissionController);
+
+            for (int i = 0; i < NUMB; i++) {
+                engine.run(PersistentUnitTestWorkflow_NAME, DATA);
+            }
+            for (int i = 0; i < NUMB; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertNotNull(x.getResult());
+                assertNull(x.getException());
+            }
+            Thread.sleep(admissionController.getSampleIntervalMSec() + 1);
+            // the engine's batches have been measured
+            assertTrue(admissionController.getCommitLatencyMSec() >= 0);
+            assertFalse(admissionController.isOverloaded());
+            assertEquals(0, admissionController.getRejectedCount());
+
+        } finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+        assertEquals(0, engine.getNumberOfWorkflowInstances());
+    }
+
+    public void testWorkflowTimelines(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testWorkflowTimelines");
+        final int NUMB = 10;
+        final String DATA = createTestData(50);
+        final PersistentEngineTestContext context = createContext(dsType);
+        final PersistentScottyEngine engine = context.getEngine();
+        final BackChannelQueue backChannelQueue = context.getBackChannelQueue();
+        try {
+            assertEquals(EngineState.STARTED, engine.getEngineState());
+            // set at runtime, so the dialect has to be switched on by the engine
+            final WorkflowTimelineRecorder recorder = new WorkflowTimelineRecorder();
+            engine.setWorkflowTimelineRecorder(recorder);
+
+            for (int i = 0; i < NUMB; i++) {
+                engine.run(PersistentUnitTestWorkflow_NAME, DATA);
+            }
+            for (int i = 0; i < NUMB; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertNull(x.getException());
+            }
+            assertTrue(recorder.query(PersistentUnitTestWorkflow_NAME + ".DESERIALIZATION").getCount() > 0);
+            assertTrue(recorder.query(PersistentUnitTestWorkflow_NAME + ".QUEUE").getCount() > 0);
+
+            engine.setWorkflowTimelineRecorder(null);
+        } finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+    }
+
+    public void testLazyDecoding(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testLazyDecoding");
+        final int NUMB = 20;
+        final String DATA = createTestData(50);
+        final PersistentEngineTestContext context = new PersistentEngineTestContext(dsType, true) {
+            @Override
+            protected void configureDatabaseDialect(DatabaseDialect dialect) {
+                final StandardJavaSerializer serializer = new StandardJavaSerializer();
+                serializer.setLazyDecoding(true);
+                ((AbstractSqlDialect) dialect).setSerializer(serializer);
+                ((AbstractSqlDialect) dialect).setLazyResponseDecoding(true);
+            }
+        };
+        context.startup();
+        final PersistentScottyEngine engine = context.getEngine();
+        final BackChannelQueue backChannelQueue = context.getBackChannelQueue();
+        try {
+            assertEquals(EngineState.STARTED, engine.getEngineState());
+
+            for (int i = 0; i < NUMB; i++) {
+                engine.run(PersistentUnitTestWorkflow_NAME, DATA);
+            }
+
+            for (int i = 0; i < NUMB; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertEquals(DATA, x.getResult());
+                assertNull(x.getException());
+            }
+
+            checkNumbOfResponsesInDB(context, 0);
+
+        } finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+        assertEquals(0, engine.getNumberOfWorkflowInstances());
+    }
+
     public void testAsynchResponseLargeData(DataSourceType dsType, int dataSize) throws Exception {
         assumeFalse(skipTests());
         logger.info("running testAsynchResponse");
@@ -260,6 +442,74 @@ public class SpringlessBasePersistentWorkflowTest {
 
     }
 
+    public void testDequeueCoordinator(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testDequeueCoordinator");
+        final int NUMB = 30;
+        final String DATA = createTestData(50);
+        final String[] ppoolIds = { PersistentProcessorPool.DEFAULT_POOL_ID, "P#1", "P#2" };
+        final PersistentEngineTestContext context = new PersistentEngineTestContext(dsType, true) {
+            @Override
+            protected DequeueCoordinator createDequeueCoordinator() {
+                final DequeueCoordinator dequeueCoordinator = new DequeueCoordinator();
+                dequeueCoordinator.setEmptyQueueWaitMSec(5);
+                return dequeueCoordinator;
+            }
+
+            @Override
+            protected List<PersistentProcessorPool> createAdditionalProcessorPools(TransactionController transactionController) {
+                final List<PersistentProcessorPool> pools = new ArrayList<PersistentProcessorPool>();
+                for (int i = 1; i < ppoolIds.length; i++) {
+                    final PersistentPriorityProcessorPool pool = new PersistentPriorityProcessorPool(ppoolIds[i], transactionController, 2);
+                    pool.setDequeueBulkSize(3);
+                    pools.add(pool);
+                }
+                return pools;
+            }
+        };
+        context.startup();
+        final PersistentScottyEngine engine = context.getEngine();
+        final BackChannelQueue backChannelQueue = context.getBackChannelQueue();
+        try {
+            assertEquals(EngineState.STARTED, engine.getEngineState());
+            assertNotNull(engine.getDequeueCoordinator());
+            PersistentPriorityProcessorPool suspendedPool = null;
+            for (ProcessorPoolMXBean pool : engine.getProcessorPools()) {
+                if (pool.getId().equals(ppoolIds[2])) {
+                    suspendedPool = (PersistentPriorityProcessorPool) pool;
+                }
+            }
+            assertNotNull(suspendedPool);
+            suspendedPool.suspendDequeue();
+
+            for (int i = 0; i < NUMB; i++) {
+                engine.run(new WorkflowInstanceDescr<String>(PersistentUnitTestWorkflow_NAME, DATA, engine.createUUID(), 1, ppoolIds[i % ppoolIds.length]));
+            }
+
+            // the workflow instances of the other pools are processed
+            for (int i = 0; i < NUMB - NUMB / ppoolIds.length; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertNull(x.getException());
+            }
+            assertNull(backChannelQueue.dequeue(1, TimeUnit.SECONDS));
+
+            // the workflow instances of the suspended pool are processed after resume only
+            suspendedPool.resumeDequeue();
+            for (int i = 0; i < NUMB / ppoolIds.length; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertNull(x.getException());
+            }
+            checkNumbOfResponsesInDB(context, 0);
+
+        } finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+        assertEquals(0, engine.getNumberOfWorkflowInstances());
+    }
+
     protected PersistentEngineTestContext createContext(DataSourceType dsType) {
         PersistentEngineTestContext ctx = new PersistentEngineTestContext(dsType, true);
         ctx.startup();
@@ -376,6 +626,50 @@ public class SpringlessBasePersistentWorkflowTest {
 
     }
 
+    public void testDedicatedTimeoutProcessing(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testDedicatedTimeoutProcessing");
+        final int NUMB = 10;
+        final String DATA = createTestData(50);
+        final PersistentEngineTestContext context = new PersistentEngineTestContext(dsType, true) {
+            @Override
+            protected RdbmsEngineFactory<DependencyInjector> createRdbmsEngineFactory(String engineId, boolean multiEngineMode) {
+                final RdbmsEngineFactory<DependencyInjector> factory = super.createRdbmsEngineFactory(engineId, multiEngineMode);
+                factory.setDedicatedTimeoutProcessing(true);
+                return factory;
+            }
+        };
+        context.startup();
+        final PersistentScottyEngine engine = context.getEngine();
+        final BackChannelQueue backChannelQueue = context.getBackChannelQueue();
+        try {
+            assertEquals(EngineState.STARTED, engine.getEngineState());
+
+            // timeouts are enqueued by the timeout thread, responses by the queue state update
+            for (int i = 0; i < NUMB; i++) {
+                engine.run("org.copperengine.regtest.test.persistent.TimingOutPersistentUnitTestWorkflow", null);
+                engine.run(PersistentUnitTestWorkflow_NAME, DATA);
+            }
+
+            int timedOut = 0;
+            for (int i = 0; i < 2 * NUMB; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertNull(x.getException());
+                if (x.getResult() == null) {
+                    timedOut++;
+                }
+            }
+            assertEquals(NUMB, timedOut);
+            checkNumbOfResponsesInDB(context, 0);
+
+        } finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+        assertEquals(0, engine.getNumberOfWorkflowInstances());
+    }
+
     public void testErrorHandlingInCoreEngine(DataSourceType dsType) throws Exception {
         assumeFalse(skipTests());
         final PersistentEngineTestContext context = createContext(dsType);
@@ -678,6 +972,33 @@ public class SpringlessBasePersistentWorkflowTest {
         assertEquals(0, engine.getNumberOfWorkflowInstances());
     }
 
+    public void testAuditTrailStreamingCompressed(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testAuditTrailStreamingCompressed");
+        final PersistentEngineTestContext context = createContext(dsType);
+        try {
+            final StreamingCompressedPostProcessor messagePostProcessor = new StreamingCompressedPostProcessor();
+            final BatchingAuditTrail auditTrail = context.getAuditTrail();
+            auditTrail.setMessagePostProcessor(messagePostProcessor);
+            final String message = createTestMessage(500000);
+            auditTrail.synchLog(1, new Date(), "4711", dsType.name(), "4711", "4711", "4711", message, "TEXT");
+
+            final long seqId;
+            try (Connection con = context.getDataSource().getConnection(); Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery("SELECT MAX(SEQ_ID) FROM COP_AUDIT_TRAIL_EVENT")) {
+                assertTrue(rs.next());
+                seqId = rs.getLong(1);
+            }
+            final ScottyAuditTrailQueryEngine queryEngine = new ScottyAuditTrailQueryEngine();
+            queryEngine.setDbStorage(context.getEngine().getDbStorage());
+            queryEngine.setMessagePostProcessor(messagePostProcessor);
+            final StringWriter out = new StringWriter();
+            queryEngine.writeMessage(seqId, out);
+            assertEquals(message, out.toString());
+        } finally {
+            closeContext(context);
+        }
+    }
+
     public void testAuditTrailCustomSeqNr(DataSourceType dsType) throws Exception {
         assumeFalse(skipTests());
         logger.info("running testAuditTrailCustomSeqNr");
@@ -1199,6 +1520,71 @@ public class SpringlessBasePersistentWorkflowTest {
         assertEquals(0, engine.getNumberOfWorkflowInstances());
     }
 
+    public void testStreamWorkflowInstances(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        final PersistentEngineTestContext context = createContext(dsType);
+        final PersistentScottyEngine engine = context.getEngine();
+        try {
+            final int NUMB_OF_WFI = 7;
+            final WorkflowInstanceFilter filter = new WorkflowInstanceFilter();
+            assertEquals(0, engine.queryWorkflowInstances(filter).size());
+
+            for (int i=0; i<NUMB_OF_WFI; i++) {
+                engine.run(JmxTestWF_NAME, "ERROR");
+            }
+            Thread.sleep(200); // wait for it to start up / bring workflows to error state
+
+            filter.setStates(Arrays.asList(ProcessingState.ERROR.name()));
+            filter.setMax(0);
+            assertEqualsX(engine, NUMB_OF_WFI, filter);
+
+            // header only, in chunks of 3
+            final List<WorkflowInstanceHeader> headers = new ArrayList<>();
+            String cursor = engine.getDbStorage().streamWorkflowInstances(filter, WorkflowInstanceProjection.HEADER, null, 3, h -> headers.add(h));
+            assertNull(cursor);
+            assertEquals(NUMB_OF_WFI, headers.size());
+            for (int i=0; i<headers.size(); i++) {
+                final WorkflowInstanceHeader h = headers.get(i);
+                assertEquals(JmxTestWF_NAME, h.getClassname());
+                assertEquals(ProcessingState.ERROR, h.getState());
+                assertNotNull(h.getCreationTS());
+                assertNotNull(h.getProcessorPoolId());
+                assertNull(h.getWorkflow());
+                assertNull(h.getErrorData());
+                if (i > 0) {
+                    assertTrue(headers.get(i-1).getId().compareTo(h.getId()) < 0);
+                }
+            }
+
+            // stop after 2 and resume from the returned cursor with full projection
+            final List<WorkflowInstanceHeader> firstPart = new ArrayList<>();
+            cursor = engine.getDbStorage().streamWorkflowInstances(filter, WorkflowInstanceProjection.FULL, null, 3, h -> firstPart.add(h) && firstPart.size() < 2);
+            assertEquals(headers.get(1).getId(), cursor);
+            final List<WorkflowInstanceHeader> secondPart = new ArrayList<>();
+            assertNull(engine.getDbStorage().streamWorkflowInstances(filter, WorkflowInstanceProjection.FULL, cursor, 3, h -> secondPart.add(h)));
+            assertEquals(NUMB_OF_WFI - 2, secondPart.size());
+            assertEquals(headers.get(2).getId(), secondPart.get(0).getId());
+            for (WorkflowInstanceHeader h : secondPart) {
+                assertNotNull(h.getWorkflow());
+                assertEquals(h.getId(), h.getWorkflow().getId());
+                assertNotNull(h.getErrorData());
+                assertTrue(h.getErrorData().getExceptionStackTrace().contains("Test!!!"));
+            }
+
+            // max limits the total number of streamed instances
+            filter.setMax(4);
+            final List<WorkflowInstanceHeader> limited = new ArrayList<>();
+            cursor = engine.getDbStorage().streamWorkflowInstances(filter, WorkflowInstanceProjection.HEADER, null, 3, h -> limited.add(h));
+            assertEquals(4, limited.size());
+            assertEquals(headers.get(3).getId(), cursor);
+        }
+        finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+        assertEquals(0, engine.getNumberOfWorkflowInstances());
+    }
+
     public void testJmxQueryWithOffsetWorkflowInstancesERROR(DataSourceType dsType) throws Exception {
         assumeFalse(skipTests());
         final PersistentEngineTestContext context = createContext(dsType);
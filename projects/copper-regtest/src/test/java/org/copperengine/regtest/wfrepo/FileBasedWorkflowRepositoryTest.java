@@ -15,9 +15,13 @@
  */
 package org.copperengine.regtest.wfrepo;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.List;
 
+import org.copperengine.core.Workflow;
 import org.copperengine.core.WorkflowFactory;
+import org.copperengine.core.util.FileUtil;
 import org.copperengine.core.wfrepo.FileBasedWorkflowRepository;
 import org.copperengine.management.model.WorkflowClassInfo;
 import org.junit.Assert;
@@ -72,4 +76,58 @@ public class FileBasedWorkflowRepositoryTest {
         }
 
     }
+
+    @Test
+    public void testBuildCache() throws Exception {
+        final File cacheDir = new File("build/workflow_cache");
+        FileUtil.deleteDirectory(cacheDir);
+        final int numberOfWorkflows = startWithCache(cacheDir);
+        Assert.assertEquals(1, new File(cacheDir, "classes").list().length);
+        Assert.assertTrue(new File(cacheDir, "instrumented").list().length >= numberOfWorkflows);
+
+        // second start takes everything from the cache
+        Assert.assertEquals(numberOfWorkflows, startWithCache(cacheDir));
+        Assert.assertEquals(1, new File(cacheDir, "classes").list().length);
+    }
+
+    private int startWithCache(File cacheDir) throws Exception {
+        FileBasedWorkflowRepository repo = new FileBasedWorkflowRepository();
+        repo.addSourceDir("src/workflow/java");
+        repo.setTargetDir("build/compiled_workflow_cached");
+        repo.setCacheDir(cacheDir.getPath());
+        final long startTS = System.currentTimeMillis();
+        repo.start();
+        try {
+            logger.info("Repository started in {} msec", System.currentTimeMillis() - startTS);
+            WorkflowFactory<Object> factory = repo.createWorkflowFactory("VersionTestWorkflow");
+            Workflow<Object> wf = factory.newInstance();
+            Assert.assertNotNull(repo.getClassInfo(wf.getClass()));
+            return repo.getWorkflows().size();
+        } finally {
+            repo.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelInstrumentation() throws Exception {
+        final File sequential = instrument("build/compiled_workflow_sequential", 1);
+        final File parallel = instrument("build/compiled_workflow_parallel", 4);
+        final File[] classfiles = FileUtil.findFiles(sequential, ".class");
+        Assert.assertTrue(classfiles.length >= 54);
+        Assert.assertEquals(classfiles.length, FileUtil.findFiles(parallel, ".class").length);
+        for (File f : classfiles) {
+            final File f2 = new File(parallel, sequential.toURI().relativize(f.toURI()).getPath());
+            Assert.assertArrayEquals(f.getPath(), Files.readAllBytes(f.toPath()), Files.readAllBytes(f2.toPath()));
+        }
+    }
+
+    private File instrument(String targetDir, int parallelism) {
+        FileBasedWorkflowRepository repo = new FileBasedWorkflowRepository();
+        repo.addSourceDir("src/workflow/java");
+        repo.setTargetDir(targetDir);
+        repo.setInstrumentationParallelism(parallelism);
+        repo.start();
+        repo.shutdown();
+        return new File(new File(targetDir).listFiles()[0], "adapted");
+    }
 }
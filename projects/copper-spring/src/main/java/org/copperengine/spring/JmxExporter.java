@@ -18,6 +18,7 @@ package org.copperengine.spring;
 import java.util.Map;
 
 import org.copperengine.core.common.AbstractJmxExporter;
+import org.copperengine.management.AdmissionControllerMXBean;
 import org.copperengine.management.AuditTrailMXBean;
 import org.copperengine.management.AuditTrailQueryMXBean;
 import org.copperengine.management.BatcherMXBean;
@@ -26,6 +27,8 @@ import org.copperengine.management.DatabaseDialectMXBean;
 import org.copperengine.management.ProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
 import org.copperengine.management.StatisticsCollectorMXBean;
+import org.copperengine.management.TicketPoolMXBean;
+import org.copperengine.management.WorkflowParkingMXBean;
 import org.copperengine.management.WorkflowRepositoryMXBean;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -91,4 +94,19 @@ public class JmxExporter extends AbstractJmxExporter implements ApplicationConte
         return applicationContext.getBeansOfType(AuditTrailQueryMXBean.class);
     }
 
+    @Override
+    protected Map<String, TicketPoolMXBean> getTicketPoolMXBeans() {
+        return applicationContext.getBeansOfType(TicketPoolMXBean.class);
+    }
+
+    @Override
+    protected Map<String, AdmissionControllerMXBean> getAdmissionControllerMXBeans() {
+        return applicationContext.getBeansOfType(AdmissionControllerMXBean.class);
+    }
+
+    @Override
+    protected Map<String, WorkflowParkingMXBean> getWorkflowParkingMXBeans() {
+        return applicationContext.getBeansOfType(WorkflowParkingMXBean.class);
+    }
+
 }
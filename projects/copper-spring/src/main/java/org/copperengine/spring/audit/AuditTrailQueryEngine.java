@@ -18,6 +18,8 @@ package org.copperengine.spring.audit;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.sql.Clob;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -26,6 +28,7 @@ import java.util.Collections;
 import java.util.List;
 
 import org.copperengine.core.audit.MessagePostProcessor;
+import org.copperengine.core.audit.StreamingMessagePostProcessor;
 import org.copperengine.management.AuditTrailQueryMXBean;
 import org.copperengine.management.model.AuditTrailInfo;
 import org.copperengine.management.model.AuditTrailInstanceFilter;
@@ -198,6 +201,53 @@ public class AuditTrailQueryEngine extends JdbcDaoSupport implements AuditTrailQ
         return (jdbcTemplate != null) ? jdbcTemplate.query(customSelect, rse, new Object[] { id }) : null;
     }
 
+    /**
+     * Writes the decoded message to <code>out</code>. With a {@link StreamingMessagePostProcessor}, the message is
+     * decoded from the column's character stream, so large messages are never held in memory as a whole.
+     */
+    public void writeMessage(long id, final Writer out) {
+        if (messagePostProcessor == null) {
+            throw new NullPointerException("Message Post Processor is not set. use byte[] getMessage(long id) method or set Message Post Processor");
+        }
+
+        String customSelect = "select LONG_MESSAGE from COP_AUDIT_TRAIL_EVENT where SEQ_ID = ? ";
+        ResultSetExtractor<Void> rse = new ResultSetExtractor<Void>() {
+
+            @Override
+            public Void extractData(ResultSet rs) throws SQLException,
+                    DataAccessException {
+                if (!rs.next()) {
+                    return null;
+                }
+                try {
+                    if (messagePostProcessor instanceof StreamingMessagePostProcessor) {
+                        Reader message = rs.getCharacterStream("LONG_MESSAGE");
+                        if (message != null) {
+                            try {
+                                ((StreamingMessagePostProcessor) messagePostProcessor).deserialize(message, out);
+                            } finally {
+                                message.close();
+                            }
+                        }
+                    } else {
+                        Clob message = rs.getClob("LONG_MESSAGE");
+                        if (message != null && message.length() > 0) {
+                            out.write(messagePostProcessor.deserialize(message.getSubString(1, (int) message.length())));
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new SQLException("Decoding message " + id + " failed", e);
+                }
+                return null;
+            }
+        };
+
+        JdbcTemplate jdbcTemplate = getJdbcTemplate();
+        if (jdbcTemplate != null) {
+            jdbcTemplate.query(customSelect, rse, new Object[] { id });
+        }
+    }
+
     private byte[] convertToArray(InputStream messageStream) {
         if (messageStream == null) {
             return new byte[0];